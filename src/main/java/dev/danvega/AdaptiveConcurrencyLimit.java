@@ -0,0 +1,77 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthenticationAdmissionProperties;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adjusts itself to observed latency with additive increase,
+ * multiplicative decrease (AIMD).
+ * <p>
+ * A request that completes within the latency target while at least half the limit is in use
+ * raises the limit by {@code 1 / limit}, so by about one per limit's worth of completions, as
+ * TCP does per round trip; one that takes longer multiplies it by the backoff ratio. The limit
+ * therefore settles near the concurrency at which the protected work starts queueing.
+ * Admission is a compare-and-set on the in-flight count; only completions take a lock, to
+ * update the limit.
+ */
+final class AdaptiveConcurrencyLimit {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoffRatio;
+
+    private volatile double limit;
+
+    AdaptiveConcurrencyLimit(AuthenticationAdmissionProperties properties) {
+        this.minLimit = properties.minLimit();
+        this.maxLimit = properties.maxLimit();
+        this.latencyTargetNanos = properties.latencyTarget().toNanos();
+        this.backoffRatio = properties.backoffRatio();
+        this.limit = properties.initialLimit();
+    }
+
+    /**
+     * Take a slot if the limit allows.
+     *
+     * @return true if admitted, in which case {@link #release} must be called once it completes
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a slot and adjust the limit.
+     *
+     * @param latencyNanos how long the admitted request took
+     */
+    void release(long latencyNanos) {
+        int inFlightBefore = inFlight.getAndDecrement();
+        synchronized (this) {
+            double current = limit;
+            if (latencyNanos > latencyTargetNanos) {
+                limit = Math.max(minLimit, current * backoffRatio);
+            } else if (inFlightBefore * 2 >= current) {
+                limit = Math.min(maxLimit, current + 1 / current);
+            }
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,75 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthenticationAdmissionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Admission control for the authentication endpoints: form login ({@code POST /login}) and
+ * the OAuth2 callback ({@code /login/oauth2/code/*}).
+ * <p>
+ * At most {@link AdaptiveConcurrencyLimit#limit()} of these requests run at once, a limit
+ * that adapts to their latency. Requests beyond it are shed right away with 503 and a
+ * {@code Retry-After} header instead of queueing for a Tomcat thread or the password hashing
+ * pool. Publishes the {@code auth.admission.limit} and {@code auth.admission.inflight} gauges
+ * and the {@code auth.admission.rejected} counter.
+ */
+public class AuthenticationAdmissionFilter extends OncePerRequestFilter {
+
+    private static final String FORM_LOGIN_URL = "/login";
+    private static final String OAUTH2_CALLBACK_PREFIX = "/login/oauth2/code/";
+
+    private final AdaptiveConcurrencyLimit limit;
+    private final String retryAfterSeconds;
+    private final Counter rejected;
+
+    public AuthenticationAdmissionFilter(AuthenticationAdmissionProperties properties, MeterRegistry meterRegistry) {
+        this.limit = new AdaptiveConcurrencyLimit(properties);
+        this.retryAfterSeconds = Long.toString(Math.max(1, properties.retryAfter().toSeconds()));
+
+        Gauge.builder("auth.admission.limit", limit, AdaptiveConcurrencyLimit::limit)
+                .description("Concurrent authentication requests currently allowed")
+                .register(meterRegistry);
+        Gauge.builder("auth.admission.inflight", limit, AdaptiveConcurrencyLimit::inFlight)
+                .description("Authentication requests currently running")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("auth.admission.rejected")
+                .description("Authentication requests shed because the concurrency limit was reached")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        boolean formLogin = HttpMethod.POST.matches(request.getMethod()) && FORM_LOGIN_URL.equals(path);
+        return !formLogin && !path.startsWith(OAUTH2_CALLBACK_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!limit.tryAcquire()) {
+            rejected.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent logins");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            limit.release(System.nanoTime() - start);
+        }
+    }
+}
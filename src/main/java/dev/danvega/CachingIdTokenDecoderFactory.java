@@ -0,0 +1,128 @@
+package dev.danvega;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import dev.danvega.config.JwkCacheProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenDecoderFactory;
+import org.springframework.security.oauth2.client.oidc.authentication.OidcIdTokenValidator;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.converter.ClaimTypeConverter;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtDecoderFactory;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * ID token decoders for OIDC logins whose keys come from a {@link CachingJwkSource} per JWK
+ * set URI, in place of the default {@link OidcIdTokenDecoderFactory}, which fetches the key
+ * set on the first login and again inline whenever its five-minute cache has expired.
+ * <p>
+ * OAuth2 login picks this factory up as the {@link JwtDecoderFactory} bean. Once all singletons
+ * exist, the key set of every registered provider is fetched in the background, so the first
+ * login does not wait for it either. Tokens are validated as the default factory does (RS256
+ * signature, timestamps and the OIDC ID token claims).
+ */
+@Component
+public class CachingIdTokenDecoderFactory
+        implements JwtDecoderFactory<ClientRegistration>, SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingIdTokenDecoderFactory.class);
+
+    private final ClientRegistrationRepository clientRegistrationRepository;
+    private final JwkCacheProperties settings;
+    private final MeterRegistry meterRegistry;
+    private final RestClient restClient;
+
+    private final ScheduledExecutorService refresher =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("jwk-refresh").factory());
+    private final Map<String, CachingJwkSource> sources = new ConcurrentHashMap<>();
+    private final Map<String, JwtDecoder> decoders = new ConcurrentHashMap<>();
+
+    public CachingIdTokenDecoderFactory(ClientRegistrationRepository clientRegistrationRepository,
+            JwkCacheProperties settings, MeterRegistry meterRegistry) {
+        this.clientRegistrationRepository = clientRegistrationRepository;
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(settings.timeout());
+        requestFactory.setReadTimeout(settings.timeout());
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+    }
+
+    @Override
+    public JwtDecoder createDecoder(ClientRegistration clientRegistration) {
+        return decoders.computeIfAbsent(clientRegistration.getRegistrationId(),
+                id -> buildDecoder(clientRegistration));
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!(clientRegistrationRepository instanceof Iterable<?> registrations)) {
+            return;
+        }
+        for (Object registration : registrations) {
+            String jwkSetUri = ((ClientRegistration) registration).getProviderDetails().getJwkSetUri();
+            if (StringUtils.hasText(jwkSetUri)) {
+                source(jwkSetUri).prewarm();
+                logger.info("✓ Prefetching JWK set of {}", ((ClientRegistration) registration).getRegistrationId());
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    private JwtDecoder buildDecoder(ClientRegistration clientRegistration) {
+        String jwkSetUri = clientRegistration.getProviderDetails().getJwkSetUri();
+        if (!StringUtils.hasText(jwkSetUri)) {
+            // Same error the default factory reports
+            throw new OAuth2AuthenticationException(new OAuth2Error("missing_signature_verifier",
+                    "Failed to find a Signature Verifier for Client Registration: '"
+                            + clientRegistration.getRegistrationId()
+                            + "'. Check to ensure you have configured the JwkSet URI.",
+                    null));
+        }
+
+        DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+        processor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, source(jwkSetUri)));
+        // Claims are checked by the validators below
+        processor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(processor);
+        decoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+                new JwtTimestampValidator(), new OidcIdTokenValidator(clientRegistration)));
+        decoder.setClaimSetConverter(
+                new ClaimTypeConverter(OidcIdTokenDecoderFactory.createDefaultClaimTypeConverters()));
+        return decoder;
+    }
+
+    private CachingJwkSource source(String jwkSetUri) {
+        return sources.computeIfAbsent(jwkSetUri,
+                uri -> new CachingJwkSource(URI.create(uri), restClient, settings, refresher, meterRegistry));
+    }
+}
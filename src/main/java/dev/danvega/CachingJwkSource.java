@@ -0,0 +1,187 @@
+package dev.danvega;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import dev.danvega.config.JwkCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+
+import java.net.URI;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JWK set of one provider, fetched ahead of time and kept fresh in the background, so that
+ * ID token validation does not wait for the provider's key endpoint on the login path.
+ * <p>
+ * A fetched set is fresh for the response's {@code Cache-Control: max-age}, or
+ * {@code app.oauth2.jwk-cache.ttl} without one, and is refetched in the background
+ * {@code refresh-ahead} before it goes stale. When that fails, the previous keys keep being
+ * served, stale if need be, and the fetch is retried every {@code retry-interval}. A token
+ * signed with a key id the set does not contain (the provider rotated its keys) triggers an
+ * immediate refetch, at most once per {@code unknown-key-refetch-interval}. Concurrent fetches
+ * share one request. Only a lookup made before any set was fetched waits for the provider.
+ * <p>
+ * Fetches are counted by {@code oauth2.jwks.fetches}, tagged {@code result=success|failure}.
+ */
+final class CachingJwkSource implements JWKSource<SecurityContext> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingJwkSource.class);
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    private final URI jwkSetUri;
+    private final RestClient restClient;
+    private final JwkCacheProperties settings;
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter successfulFetches;
+    private final Counter failedFetches;
+
+    private final AtomicReference<CompletableFuture<JWKSet>> inFlight = new AtomicReference<>();
+    private volatile JWKSet keys;
+    private volatile long lastFetchNanos;
+    private ScheduledFuture<?> nextRefresh;
+
+    CachingJwkSource(URI jwkSetUri, RestClient restClient, JwkCacheProperties settings,
+            ScheduledExecutorService scheduler, MeterRegistry meterRegistry) {
+        this.jwkSetUri = jwkSetUri;
+        this.restClient = restClient;
+        this.settings = settings;
+        this.scheduler = scheduler;
+        this.lastFetchNanos = System.nanoTime() - settings.unknownKeyRefetchInterval().toNanos();
+
+        this.successfulFetches = fetchCounter(meterRegistry, "success");
+        this.failedFetches = fetchCounter(meterRegistry, "failure");
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) throws KeySourceException {
+        JWKSet current = keys;
+        if (current == null) {
+            current = fetchNow();
+        }
+
+        List<JWK> matches = selector.select(current);
+        if (matches.isEmpty() && hasUnknownKeyId(selector, current) && mayRefetch()) {
+            logger.info("JWK set of {} has no key for {}, refetching", jwkSetUri, selector.getMatcher().getKeyIDs());
+            matches = selector.select(fetchNow());
+        }
+        return matches;
+    }
+
+    /**
+     * Fetch the key set in the background, so it is ready before the first login.
+     */
+    void prewarm() {
+        scheduler.execute(this::refresh);
+    }
+
+    private void refresh() {
+        try {
+            fetch().join();
+        } catch (CompletionException e) {
+            if (keys != null) {
+                logger.warn("Could not refresh JWK set of {}, serving the previous keys", jwkSetUri, e.getCause());
+            } else {
+                logger.warn("Could not fetch JWK set of {}", jwkSetUri, e.getCause());
+            }
+        }
+    }
+
+    private JWKSet fetchNow() throws KeySourceException {
+        try {
+            return fetch().join();
+        } catch (CompletionException e) {
+            JWKSet previous = keys;
+            if (previous != null) {
+                return previous;
+            }
+            throw new KeySourceException("Could not fetch JWK set from " + jwkSetUri, e.getCause());
+        }
+    }
+
+    // Start a fetch, or join the one already running
+    private CompletableFuture<JWKSet> fetch() {
+        CompletableFuture<JWKSet> fetch = new CompletableFuture<>();
+        CompletableFuture<JWKSet> running = inFlight.compareAndExchange(null, fetch);
+        if (running != null) {
+            return running;
+        }
+
+        lastFetchNanos = System.nanoTime();
+        try {
+            ResponseEntity<String> response = restClient.get().uri(jwkSetUri).retrieve().toEntity(String.class);
+            JWKSet fetched = JWKSet.parse(response.getBody());
+            keys = fetched;
+            successfulFetches.increment();
+
+            Duration freshFor = maxAge(response.getHeaders());
+            scheduleRefresh(freshFor.minus(settings.refreshAhead()));
+            logger.info("✓ Fetched {} keys from {}, fresh for {}s", fetched.size(), jwkSetUri, freshFor.toSeconds());
+            fetch.complete(fetched);
+        } catch (RuntimeException | ParseException e) {
+            failedFetches.increment();
+            scheduleRefresh(settings.retryInterval());
+            fetch.completeExceptionally(e);
+        } finally {
+            inFlight.set(null);
+        }
+        return fetch;
+    }
+
+    private synchronized void scheduleRefresh(Duration delay) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        // Providers that send a short or zero max-age are not polled in a tight loop
+        long delayMillis = Math.max(delay.toMillis(), settings.retryInterval().toMillis() / 10);
+        nextRefresh = scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean mayRefetch() {
+        return System.nanoTime() - lastFetchNanos >= settings.unknownKeyRefetchInterval().toNanos();
+    }
+
+    private Duration maxAge(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            Matcher matcher = MAX_AGE.matcher(cacheControl);
+            if (matcher.find()) {
+                return Duration.ofSeconds(Long.parseLong(matcher.group(1)));
+            }
+        }
+        return settings.ttl();
+    }
+
+    private static boolean hasUnknownKeyId(JWKSelector selector, JWKSet keys) {
+        Set<String> keyIds = selector.getMatcher().getKeyIDs();
+        return keyIds != null && !keyIds.isEmpty() && keyIds.stream().allMatch(id -> keys.getKeyByKeyId(id) == null);
+    }
+
+    private static Counter fetchCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("oauth2.jwks.fetches")
+                .description("Fetches of OIDC provider JWK sets")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,81 @@
+package dev.danvega;
+
+import java.time.Duration;
+
+/**
+ * Consecutive-failure circuit breaker.
+ * <p>
+ * Closed, it lets every call through and opens after {@code failureThreshold} failures in a
+ * row. Open, it rejects calls until {@code openDuration} has passed, then lets a single trial
+ * call through (half-open): its success closes the circuit, its failure opens it again. Calls
+ * are rare next to the work they guard, so state changes simply take the monitor.
+ * <p>
+ * Times are {@link System#nanoTime()} readings passed in by the caller.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Ask to make a call.
+     *
+     * @param now current time in nanoseconds
+     * @return true if the call may go ahead, in which case {@link #onSuccess} or
+     *         {@link #onFailure} must be called once it completes
+     */
+    synchronized boolean tryAcquire(long now) {
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> {
+                if (now - openedAt < openNanos) {
+                    yield false;
+                }
+                // This call is the trial; others are rejected until it completes
+                state = State.HALF_OPEN;
+                yield true;
+            }
+            case HALF_OPEN -> false;
+        };
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    synchronized void onFailure(long now) {
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+            consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Whether calls are currently being rejected without a trial call due.
+     *
+     * @param now current time in nanoseconds
+     */
+    synchronized boolean isOpen(long now) {
+        return state == State.OPEN && now - openedAt < openNanos
+                || state == State.HALF_OPEN;
+    }
+
+    synchronized State state() {
+        return state;
+    }
+}
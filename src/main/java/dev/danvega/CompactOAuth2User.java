@@ -0,0 +1,120 @@
+package dev.danvega;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OAuth2 login principal that keeps only what the application reads from it, in place of
+ * {@code DefaultOAuth2User}, which keeps every attribute the provider returned (GitHub's
+ * {@code /user} has some thirty) for as long as the session lives.
+ * <p>
+ * Of the attributes, only the user name attribute and those in {@link #RETAINED_ATTRIBUTES}
+ * are kept, in an immutable map. Authorities are meant to be the shared instances handed out
+ * by {@code AuthorityRegistry}, with the attribute-carrying {@link OAuth2UserAuthority}
+ * replaced first (see {@link #withoutUserAttributes}).
+ */
+public class CompactOAuth2User implements OAuth2User, Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Attributes kept besides the user name attribute: what {@link DashboardController} shows.
+     */
+    public static final List<String> RETAINED_ATTRIBUTES = List.of("name", "email", "custom_claim");
+
+    private final Map<String, Object> attributes;
+    private final List<GrantedAuthority> authorities;
+    private final String nameAttributeKey;
+
+    /**
+     * @param attributes       attributes to keep, as picked by {@link #retainedAttributes}
+     * @param authorities      the user's authorities
+     * @param nameAttributeKey the attribute holding the user's name
+     */
+    public CompactOAuth2User(Map<String, Object> attributes, Collection<? extends GrantedAuthority> authorities,
+            String nameAttributeKey) {
+        if (attributes.get(nameAttributeKey) == null) {
+            throw new IllegalArgumentException("Missing attribute '" + nameAttributeKey + "' in attributes");
+        }
+        this.attributes = Map.copyOf(attributes);
+        // Sorted like DefaultOAuth2User sorts them, in an array-backed list
+        this.authorities = authorities.stream()
+                .sorted(Comparator.comparing(GrantedAuthority::getAuthority))
+                .map(GrantedAuthority.class::cast)
+                .toList();
+        this.nameAttributeKey = nameAttributeKey;
+    }
+
+    /**
+     * Pick the attributes worth keeping in the session.
+     *
+     * @param attributes       all attributes of the user, as returned by the provider
+     * @param nameAttributeKey the attribute holding the user's name, which is always kept
+     * @return a new mutable map with the non-null retained attributes
+     */
+    public static Map<String, Object> retainedAttributes(Map<String, Object> attributes, String nameAttributeKey) {
+        Map<String, Object> retained = new HashMap<>();
+        retained.put(nameAttributeKey, attributes.get(nameAttributeKey));
+        for (String key : RETAINED_ATTRIBUTES) {
+            Object value = attributes.get(key);
+            if (value != null) {
+                retained.put(key, value);
+            }
+        }
+        return retained;
+    }
+
+    /**
+     * Replace the {@link OAuth2UserAuthority} (and {@code OidcUserAuthority}) Spring Security
+     * grants, which carries every attribute (and the ID token) a second time, with a plain
+     * authority of the same name.
+     *
+     * @param authorities the authorities granted by the user service
+     * @return the same authorities without user attributes
+     */
+    public static List<GrantedAuthority> withoutUserAttributes(Collection<? extends GrantedAuthority> authorities) {
+        return authorities.stream()
+                .map(authority -> authority instanceof OAuth2UserAuthority
+                        ? new SimpleGrantedAuthority(authority.getAuthority())
+                        : (GrantedAuthority) authority)
+                .toList();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    @Override
+    public String getName() {
+        return attributes.get(nameAttributeKey).toString();
+    }
+
+    /**
+     * @return the attribute holding the user's name
+     */
+    public String getNameAttributeKey() {
+        return nameAttributeKey;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " [name=" + getName() + ", authorities=" + authorities + "]";
+    }
+}
@@ -0,0 +1,96 @@
+package dev.danvega;
+
+import com.nimbusds.jwt.JWTParser;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+
+import java.io.Serial;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * OIDC login principal that keeps only what the application reads from it (see
+ * {@link CompactOAuth2User}), in place of {@code DefaultOidcUser}, which keeps the parsed ID
+ * token, the userinfo claims and their merge, all for as long as the session lives.
+ * <p>
+ * The claims are the retained attributes, so the standard claim accessors work for them.
+ * The ID token is kept as its compact serialization only and parsed again, without being
+ * re-validated, the first time {@link #getIdToken()} is called (for example for an
+ * {@code id_token_hint} on logout). {@link #getUserInfo()} returns null.
+ */
+public class CompactOidcUser extends CompactOAuth2User implements OidcUser {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final String idTokenValue;
+    private transient volatile OidcIdToken idToken;
+
+    /**
+     * @param attributes       attributes to keep, as picked by {@link #retainedAttributes}
+     * @param authorities      the user's authorities
+     * @param idToken          the validated ID token of the login, of which only the token value
+     *                         is kept
+     * @param nameAttributeKey the attribute holding the user's name
+     */
+    public CompactOidcUser(Map<String, Object> attributes, Collection<? extends GrantedAuthority> authorities,
+            OidcIdToken idToken, String nameAttributeKey) {
+        this(attributes, authorities, idToken.getTokenValue(), nameAttributeKey);
+    }
+
+    /**
+     * @param attributes       attributes to keep, as picked by {@link #retainedAttributes}
+     * @param authorities      the user's authorities
+     * @param idTokenValue     the compact serialization of the login's validated ID token
+     * @param nameAttributeKey the attribute holding the user's name
+     */
+    CompactOidcUser(Map<String, Object> attributes, Collection<? extends GrantedAuthority> authorities,
+            String idTokenValue, String nameAttributeKey) {
+        super(attributes, authorities, nameAttributeKey);
+        this.idTokenValue = idTokenValue;
+    }
+
+    /**
+     * @return the compact serialization of the ID token, without parsing it
+     */
+    public String getIdTokenValue() {
+        return idTokenValue;
+    }
+
+    @Override
+    public Map<String, Object> getClaims() {
+        return getAttributes();
+    }
+
+    @Override
+    public OidcUserInfo getUserInfo() {
+        return null;
+    }
+
+    @Override
+    public OidcIdToken getIdToken() {
+        OidcIdToken token = idToken;
+        if (token == null) {
+            token = parseIdToken(idTokenValue);
+            idToken = token;
+        }
+        return token;
+    }
+
+    private static OidcIdToken parseIdToken(String tokenValue) {
+        try {
+            Map<String, Object> claims = new HashMap<>(JWTParser.parse(tokenValue).getJWTClaimsSet().getClaims());
+            // Nimbus reads timestamps as Dates, Spring Security expects Instants
+            claims.replaceAll((claim, value) -> value instanceof Date date ? date.toInstant() : value);
+            return new OidcIdToken(tokenValue, (Instant) claims.get("iat"), (Instant) claims.get("exp"), claims);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Could not parse stored ID token", e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.danvega;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encrypts and authenticates cookie values with AES-GCM.
+ * <p>
+ * A sealed value is {@code version | key id | IV | ciphertext and tag}, Base64url-encoded; the
+ * version and key id are authenticated too. Every key decrypts; the first one encrypts. A
+ * value names its key by a fingerprint, so keys can be rotated without invalidating the
+ * cookies already handed out. With no keys configured a random key is generated, which no
+ * other node and no later run can read.
+ */
+final class CookieSealer {
+
+    private static final byte VERSION = 1;
+    private static final int KEY_ID_LENGTH = 4;
+    private static final int IV_LENGTH = 12;
+    private static final int HEADER_LENGTH = 1 + KEY_ID_LENGTH + IV_LENGTH;
+    private static final int TAG_LENGTH = 16;
+    private static final int KEY_LENGTH = 32;
+    private static final String CIPHER = "AES/GCM/NoPadding";
+
+    private final List<Key> keys;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param encodedKeys  Base64-encoded 256-bit AES keys, the encrypting one first; empty for a
+     *                     random key
+     * @param keysProperty the property the keys come from, for error messages
+     */
+    CookieSealer(List<String> encodedKeys, String keysProperty) {
+        this.keys = keys(encodedKeys, keysProperty);
+    }
+
+    String seal(byte[] payload) throws GeneralSecurityException {
+        Key key = keys.getFirst();
+        byte[] sealed = new byte[HEADER_LENGTH + payload.length + TAG_LENGTH];
+        ByteBuffer.wrap(sealed).put(VERSION).putInt(key.id());
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        System.arraycopy(iv, 0, sealed, 1 + KEY_ID_LENGTH, IV_LENGTH);
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.ENCRYPT_MODE, key.secret(), new GCMParameterSpec(TAG_LENGTH * 8, iv));
+        cipher.updateAAD(sealed, 0, 1 + KEY_ID_LENGTH);
+        cipher.doFinal(payload, 0, payload.length, sealed, HEADER_LENGTH);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sealed);
+    }
+
+    /**
+     * Decrypt a sealed value.
+     *
+     * @return the payload, or null if the value was sealed with a key that is not configured
+     * @throws IllegalArgumentException if the value is not a sealed value
+     * @throws GeneralSecurityException if the value was altered
+     */
+    byte[] open(String value) throws GeneralSecurityException {
+        byte[] sealed = Base64.getUrlDecoder().decode(value);
+        if (sealed.length < HEADER_LENGTH + TAG_LENGTH || sealed[0] != VERSION) {
+            throw new IllegalArgumentException("Not a sealed cookie value");
+        }
+        int keyId = ByteBuffer.wrap(sealed, 1, KEY_ID_LENGTH).getInt();
+        Key key = keys.stream().filter(candidate -> candidate.id() == keyId).findFirst().orElse(null);
+        if (key == null) {
+            return null;
+        }
+
+        Cipher cipher = Cipher.getInstance(CIPHER);
+        cipher.init(Cipher.DECRYPT_MODE, key.secret(),
+                new GCMParameterSpec(TAG_LENGTH * 8, sealed, 1 + KEY_ID_LENGTH, IV_LENGTH));
+        cipher.updateAAD(sealed, 0, 1 + KEY_ID_LENGTH);
+        return cipher.doFinal(sealed, HEADER_LENGTH, sealed.length - HEADER_LENGTH);
+    }
+
+    private static List<Key> keys(List<String> encodedKeys, String keysProperty) {
+        if (encodedKeys.isEmpty()) {
+            try {
+                KeyGenerator generator = KeyGenerator.getInstance("AES");
+                generator.init(KEY_LENGTH * 8);
+                return List.of(key(generator.generateKey()));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not generate a cookie key", e);
+            }
+        }
+
+        List<Key> keys = new ArrayList<>();
+        for (String encodedKey : encodedKeys) {
+            byte[] bytes = Base64.getDecoder().decode(encodedKey.trim());
+            if (bytes.length != KEY_LENGTH) {
+                throw new IllegalArgumentException(keysProperty + " entries must be Base64-encoded 256-bit keys");
+            }
+            keys.add(key(new SecretKeySpec(bytes, "AES")));
+        }
+        return List.copyOf(keys);
+    }
+
+    // Identified by the start of the key's SHA-256, which says nothing usable about the key
+    private static Key key(SecretKey secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getEncoded());
+            return new Key(ByteBuffer.wrap(digest).getInt(), secret);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Key(int id, SecretKey secret) {
+    }
+}
@@ -4,8 +4,28 @@ import gg.jte.Content;
 import gg.jte.TemplateOutput;
 import org.springframework.security.web.csrf.CsrfToken;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hidden form field carrying the request's CSRF token.
+ * <p>
+ * The token is only read when the field is rendered, so pages without a form never generate
+ * one. The fixed parts of the markup are kept as UTF-8 bytes and copied straight into jte's
+ * binary output, and the parameter name and token are escaped as they are written, so
+ * rendering allocates nothing beyond what producing the token itself does.
+ */
 public class CsrfHiddenInput implements Content {
 
+    private static final byte[] START = bytes("<input type=\"hidden\" name=\"");
+    private static final byte[] VALUE = bytes("\" value=\"");
+    private static final byte[] END = bytes("\">");
+
+    private static final byte[] AMP = bytes("&amp;");
+    private static final byte[] LT = bytes("&lt;");
+    private static final byte[] GT = bytes("&gt;");
+    private static final byte[] QUOT = bytes("&#34;");
+    private static final byte[] APOS = bytes("&#39;");
+
     private final CsrfToken csrfToken;
 
     public CsrfHiddenInput(CsrfToken csrfToken) {
@@ -15,8 +35,40 @@ public class CsrfHiddenInput implements Content {
     @Override
     public void writeTo(TemplateOutput templateOutput) {
         if (this.csrfToken != null) {
-            templateOutput.writeContent("<input type=\"hidden\" name=\"%s\" value=\"%s\">"
-                    .formatted(csrfToken.getParameterName(), csrfToken.getToken()));
+            templateOutput.writeBinaryContent(START);
+            writeEscaped(templateOutput, csrfToken.getParameterName());
+            templateOutput.writeBinaryContent(VALUE);
+            writeEscaped(templateOutput, csrfToken.getToken());
+            templateOutput.writeBinaryContent(END);
         }
     }
+
+    // Unescaped runs are written as slices of the value rather than copied first
+    private static void writeEscaped(TemplateOutput templateOutput, String value) {
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            byte[] entity = switch (value.charAt(i)) {
+                case '&' -> AMP;
+                case '<' -> LT;
+                case '>' -> GT;
+                case '"' -> QUOT;
+                case '\'' -> APOS;
+                default -> null;
+            };
+            if (entity != null) {
+                if (i > start) {
+                    templateOutput.writeContent(value, start, i);
+                }
+                templateOutput.writeBinaryContent(entity);
+                start = i + 1;
+            }
+        }
+        if (start < value.length()) {
+            templateOutput.writeContent(value, start, value.length());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -5,6 +5,15 @@ import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ModelAttribute;
 
+/**
+ * Exposes the request's CSRF token to every template.
+ * <p>
+ * Nothing here resolves the token: Spring Security puts a deferred token in the request, which
+ * is only loaded or generated (and its cookie written) when its value is read. That happens
+ * when a template renders {@link CsrfHiddenInput} inside a form, so pages without a form never
+ * touch it. The hidden input is created once per request and shared by every controller and
+ * template that renders it.
+ */
 @ControllerAdvice
 public class CsrfTokenAdvice {
 
@@ -15,6 +24,11 @@ public class CsrfTokenAdvice {
 
     @ModelAttribute("csrfHiddenInput")
     public CsrfHiddenInput csrfHiddenInput(HttpServletRequest request) {
-        return new CsrfHiddenInput(csrf(request));
+        CsrfHiddenInput csrfHiddenInput = (CsrfHiddenInput) request.getAttribute(CsrfHiddenInput.class.getName());
+        if (csrfHiddenInput == null) {
+            csrfHiddenInput = new CsrfHiddenInput(csrf(request));
+            request.setAttribute(CsrfHiddenInput.class.getName(), csrfHiddenInput);
+        }
+        return csrfHiddenInput;
     }
 }
@@ -1,10 +1,8 @@
 package dev.danvega;
 
-import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.core.user.OAuth2User;
-import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,7 +11,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 public class DashboardController {
 
     @GetMapping("/dashboard")
-    public String dashboard(Authentication authentication, HttpServletRequest request, Model model) {
+    public String dashboard(Authentication authentication, Model model) {
 
         if (authentication.getPrincipal() instanceof UserDetails userDetails) {
             model.addAttribute("username", userDetails.getUsername());
@@ -25,12 +23,6 @@ public class DashboardController {
             model.addAttribute("attributes", oauth2User.getAttributes());
         }
 
-        // Add CSRF token
-        CsrfToken csrf = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
-        if (csrf != null) {
-            model.addAttribute("csrfHiddenInput", new CsrfHiddenInput(csrf));
-        }
-
         return "pages/dashboard";
     }
 }
@@ -0,0 +1,33 @@
+package dev.danvega;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClient;
+import org.springframework.security.oauth2.client.web.OAuth2AuthorizedClientRepository;
+
+/**
+ * Authorized client repository that keeps nothing.
+ * <p>
+ * The application never calls a provider API after login, so the access token the login
+ * obtained is not needed afterwards. Used when the security context lives in a cookie, where
+ * the default in-memory store would be the only per-user state left on a node.
+ */
+final class DiscardingAuthorizedClientRepository implements OAuth2AuthorizedClientRepository {
+
+    @Override
+    public <T extends OAuth2AuthorizedClient> T loadAuthorizedClient(String clientRegistrationId,
+            Authentication principal, HttpServletRequest request) {
+        return null;
+    }
+
+    @Override
+    public void saveAuthorizedClient(OAuth2AuthorizedClient authorizedClient, Authentication principal,
+            HttpServletRequest request, HttpServletResponse response) {
+    }
+
+    @Override
+    public void removeAuthorizedClient(String clientRegistrationId, Authentication principal,
+            HttpServletRequest request, HttpServletResponse response) {
+    }
+}
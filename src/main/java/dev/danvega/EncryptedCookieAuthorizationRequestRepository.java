@@ -0,0 +1,260 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthorizationRequestCookieProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.oauth2.client.web.AuthorizationRequestRepository;
+import org.springframework.security.oauth2.client.web.HttpSessionOAuth2AuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Authorization request repository that keeps an OAuth2 login in progress in an encrypted
+ * cookie instead of the HTTP session, so sending a visitor to the provider creates no session
+ * and the callback can be handled by any node that has the key.
+ * <p>
+ * The cookie carries what the callback needs: the client id, authorization and redirect URIs,
+ * scopes, state, and the additional parameters and attributes (registration id, nonce, PKCE
+ * code verifier). The nonce and code verifier must stay secret, so the value is encrypted
+ * with {@link CookieSealer}, and its expiry is inside the encrypted part. As with the session
+ * repository, a request is only returned to a callback that presents its state. Requests with
+ * parameters that are not strings are kept in the HTTP session instead.
+ * <p>
+ * Publishes {@code oauth2.authorization.request.cookie.rejected} (tagged
+ * {@code reason=invalid|expired|unknown-key}).
+ */
+public class EncryptedCookieAuthorizationRequestRepository
+        implements AuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+
+    private static final Logger logger = LoggerFactory.getLogger(EncryptedCookieAuthorizationRequestRepository.class);
+
+    private final AuthorizationRequestCookieProperties settings;
+    private final Clock clock;
+    private final CookieSealer sealer;
+    private final HttpSessionOAuth2AuthorizationRequestRepository sessionRepository =
+            new HttpSessionOAuth2AuthorizationRequestRepository();
+
+    private final Counter invalid;
+    private final Counter expired;
+    private final Counter unknownKey;
+
+    public EncryptedCookieAuthorizationRequestRepository(AuthorizationRequestCookieProperties settings,
+            MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, Clock.systemUTC());
+    }
+
+    EncryptedCookieAuthorizationRequestRepository(AuthorizationRequestCookieProperties settings,
+            MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.sealer = new CookieSealer(settings.keys(), "app.oauth2.authorization-request-cookie.keys");
+        if (settings.keys().isEmpty()) {
+            logger.info("No app.oauth2.authorization-request-cookie.keys configured, using a random key: OAuth2 "
+                    + "callbacks must return to the node that sent the user to the provider");
+        }
+
+        this.invalid = rejected(meterRegistry, "invalid");
+        this.expired = rejected(meterRegistry, "expired");
+        this.unknownKey = rejected(meterRegistry, "unknown-key");
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest loadAuthorizationRequest(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, settings.name());
+        if (cookie == null) {
+            return sessionRepository.loadAuthorizationRequest(request);
+        }
+        String state = request.getParameter(OAuth2ParameterNames.STATE);
+        if (state == null) {
+            return null;
+        }
+        OAuth2AuthorizationRequest authorizationRequest = read(cookie.getValue());
+        return authorizationRequest != null && state.equals(authorizationRequest.getState())
+                ? authorizationRequest
+                : null;
+    }
+
+    @Override
+    public void saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest, HttpServletRequest request,
+            HttpServletResponse response) {
+        if (authorizationRequest == null) {
+            removeAuthorizationRequest(request, response);
+            return;
+        }
+
+        String value = write(authorizationRequest);
+        if (value == null) {
+            clearCookie(request, response);
+            sessionRepository.saveAuthorizationRequest(authorizationRequest, request, response);
+            return;
+        }
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, value, settings.maxAge().toSeconds()));
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request,
+            HttpServletResponse response) {
+        if (WebUtils.getCookie(request, settings.name()) == null) {
+            return sessionRepository.removeAuthorizationRequest(request, response);
+        }
+        OAuth2AuthorizationRequest authorizationRequest = loadAuthorizationRequest(request);
+        clearCookie(request, response);
+        return authorizationRequest;
+    }
+
+    private void clearCookie(HttpServletRequest request, HttpServletResponse response) {
+        if (WebUtils.getCookie(request, settings.name()) != null) {
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, "", 0));
+        }
+    }
+
+    // SameSite=Lax still sends the cookie on the provider's top-level redirect back
+    private String cookie(HttpServletRequest request, String value, long maxAgeSeconds) {
+        String path = request.getContextPath();
+        return ResponseCookie.from(settings.name(), value)
+                .path(path.isEmpty() ? "/" : path)
+                .httpOnly(true)
+                .secure(settings.secure())
+                .sameSite("Lax")
+                .maxAge(maxAgeSeconds)
+                .build()
+                .toString();
+    }
+
+    /**
+     * Encode and encrypt an authorization request.
+     *
+     * @return the cookie value, or null if the request has no compact encoding
+     */
+    private String write(OAuth2AuthorizationRequest authorizationRequest) {
+        try {
+            byte[] payload = encode(authorizationRequest);
+            return payload != null ? sealer.seal(payload) : null;
+        } catch (IOException | GeneralSecurityException e) {
+            logger.warn("Could not write authorization request cookie, keeping it in the session instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypt and decode a cookie value.
+     *
+     * @return the authorization request, or null if the cookie is invalid, expired or sealed
+     *         with an unknown key
+     */
+    private OAuth2AuthorizationRequest read(String value) {
+        try {
+            byte[] payload = sealer.open(value);
+            if (payload == null) {
+                unknownKey.increment();
+                return null;
+            }
+            return decode(payload);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            invalid.increment();
+            logger.debug("Rejected authorization request cookie", e);
+            return null;
+        }
+    }
+
+    private byte[] encode(OAuth2AuthorizationRequest authorizationRequest) throws IOException {
+        if (authorizationRequest.getState() == null || authorizationRequest.getRedirectUri() == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(clock.instant().plus(settings.maxAge()).getEpochSecond());
+        out.writeUTF(authorizationRequest.getAuthorizationUri());
+        out.writeUTF(authorizationRequest.getClientId());
+        out.writeUTF(authorizationRequest.getRedirectUri());
+        out.writeUTF(authorizationRequest.getState());
+        out.writeShort(authorizationRequest.getScopes().size());
+        for (String scope : authorizationRequest.getScopes()) {
+            out.writeUTF(scope);
+        }
+        // The authorization request URI is not kept; the builder derives it again
+        if (!writeParameters(out, authorizationRequest.getAdditionalParameters())
+                || !writeParameters(out, authorizationRequest.getAttributes())) {
+            return null;
+        }
+        return bytes.toByteArray();
+    }
+
+    private OAuth2AuthorizationRequest decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (clock.instant().getEpochSecond() >= in.readLong()) {
+            expired.increment();
+            return null;
+        }
+
+        String authorizationUri = in.readUTF();
+        String clientId = in.readUTF();
+        String redirectUri = in.readUTF();
+        String state = in.readUTF();
+        int scopeCount = in.readUnsignedShort();
+        Set<String> scopes = new LinkedHashSet<>(scopeCount);
+        for (int i = 0; i < scopeCount; i++) {
+            scopes.add(in.readUTF());
+        }
+        Map<String, Object> additionalParameters = readParameters(in);
+        Map<String, Object> attributes = readParameters(in);
+
+        return OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri(authorizationUri)
+                .clientId(clientId)
+                .redirectUri(redirectUri)
+                .scopes(scopes)
+                .state(state)
+                .additionalParameters(additionalParameters)
+                .attributes(attributes)
+                .build();
+    }
+
+    private static boolean writeParameters(DataOutputStream out, Map<String, Object> parameters) throws IOException {
+        out.writeShort(parameters.size());
+        for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            if (!(parameter.getValue() instanceof String value)) {
+                return false;
+            }
+            out.writeUTF(parameter.getKey());
+            out.writeUTF(value);
+        }
+        return true;
+    }
+
+    private static Map<String, Object> readParameters(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        Map<String, Object> parameters = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            parameters.put(in.readUTF(), in.readUTF());
+        }
+        return parameters;
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("oauth2.authorization.request.cookie.rejected")
+                .description("Authorization request cookies that were not accepted")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
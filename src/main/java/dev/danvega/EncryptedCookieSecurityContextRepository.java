@@ -0,0 +1,396 @@
+package dev.danvega;
+
+import dev.danvega.config.SecurityContextCookieProperties;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleSetAuthority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.DeferredSecurityContext;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.web.context.HttpRequestResponseHolder;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.security.web.context.SecurityContextRepository;
+import org.springframework.web.util.WebUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Security context repository that keeps the logged-in user in an encrypted cookie instead
+ * of the HTTP session, so no node holds state for them and any node can serve their next
+ * request.
+ * <p>
+ * The cookie carries a compact binary encoding of the login: the username for form logins,
+ * or the registration id, the retained attributes (see {@link CompactOAuth2User}) and, for
+ * OIDC, the raw ID token for OAuth2 logins, plus the names of the granted authorities. It is
+ * encrypted and authenticated with AES-GCM, and the login's expiry is inside the encrypted
+ * part, so a cookie replayed after {@code max-age} is rejected. Authorities are rebuilt from
+ * the shared instances of {@link AuthorityRegistry} and {@link RoleBits} when it is read.
+ * <p>
+ * Every configured key decrypts; the first one encrypts (see {@link CookieSealer}), so keys
+ * can be rotated without logging anyone out. Security contexts whose
+ * cookie would exceed {@code max-size}, or whose principal has no compact encoding, are kept
+ * in the HTTP session instead.
+ * <p>
+ * Publishes {@code security.context.cookie.size} and {@code security.context.cookie.rejected}
+ * (tagged {@code reason=invalid|expired|unknown-key|oversized}).
+ */
+public class EncryptedCookieSecurityContextRepository implements SecurityContextRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(EncryptedCookieSecurityContextRepository.class);
+
+    // Login types
+    private static final byte FORM = 0;
+    private static final byte OAUTH2 = 1;
+    private static final byte OIDC = 2;
+
+    // Attribute value types
+    private static final byte STRING = 0;
+    private static final byte INTEGER = 1;
+    private static final byte LONG = 2;
+    private static final byte BOOLEAN = 3;
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final SecurityContextCookieProperties settings;
+    private final AuthorityRegistry authorityRegistry;
+    private final RoleBits roleBits;
+    private final Clock clock;
+    private final CookieSealer sealer;
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private final SecurityContextHolderStrategy securityContextHolderStrategy =
+            SecurityContextHolder.getContextHolderStrategy();
+    private final HttpSessionSecurityContextRepository sessionRepository = new HttpSessionSecurityContextRepository();
+
+    private final DistributionSummary cookieSize;
+    private final Counter invalid;
+    private final Counter expired;
+    private final Counter unknownKey;
+    private final Counter oversized;
+
+    public EncryptedCookieSecurityContextRepository(SecurityContextCookieProperties settings,
+            AuthorityRegistry authorityRegistry, RoleBits roleBits, MeterRegistry meterRegistry) {
+        this(settings, authorityRegistry, roleBits, meterRegistry, Clock.systemUTC());
+    }
+
+    EncryptedCookieSecurityContextRepository(SecurityContextCookieProperties settings,
+            AuthorityRegistry authorityRegistry, RoleBits roleBits, MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.authorityRegistry = authorityRegistry;
+        this.roleBits = roleBits;
+        this.clock = clock;
+        this.sealer = new CookieSealer(settings.keys(), "app.security-context.cookie.keys");
+        if (settings.keys().isEmpty()) {
+            logger.warn("No app.security-context.cookie.keys configured, using a random key: logins will not "
+                    + "survive a restart or be readable by other nodes");
+        }
+
+        this.cookieSize = DistributionSummary.builder("security.context.cookie.size")
+                .description("Size of the security context cookies written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.invalid = rejected(meterRegistry, "invalid");
+        this.expired = rejected(meterRegistry, "expired");
+        this.unknownKey = rejected(meterRegistry, "unknown-key");
+        this.oversized = rejected(meterRegistry, "oversized");
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public SecurityContext loadContext(HttpRequestResponseHolder requestResponseHolder) {
+        return loadDeferredContext(requestResponseHolder.getRequest()).get();
+    }
+
+    @Override
+    public DeferredSecurityContext loadDeferredContext(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, settings.name());
+        if (cookie == null) {
+            return sessionRepository.loadDeferredContext(request);
+        }
+        return new CookieSecurityContext(cookie.getValue());
+    }
+
+    @Override
+    public void saveContext(SecurityContext context, HttpServletRequest request, HttpServletResponse response) {
+        Authentication authentication = context.getAuthentication();
+        if (!trustResolver.isAuthenticated(authentication)) {
+            // Logged out (or anonymous): also drop what an oversized login left in the session,
+            // without creating one
+            clearCookie(request, response);
+            sessionRepository.saveContext(securityContextHolderStrategy.createEmptyContext(), request, response);
+            return;
+        }
+
+        String value = write(authentication);
+        if (value == null || value.length() > settings.maxSize()) {
+            if (value != null) {
+                oversized.increment();
+                logger.warn("Security context of '{}' needs a {} byte cookie, keeping it in the session instead",
+                        authentication.getName(), value.length());
+            }
+            clearCookie(request, response);
+            sessionRepository.saveContext(context, request, response);
+            return;
+        }
+
+        cookieSize.record(value.length());
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, value, settings.maxAge().toSeconds()));
+        if (sessionRepository.containsContext(request)) {
+            // Drop what an earlier oversized login left in the session
+            sessionRepository.saveContext(securityContextHolderStrategy.createEmptyContext(), request, response);
+        }
+    }
+
+    @Override
+    public boolean containsContext(HttpServletRequest request) {
+        return WebUtils.getCookie(request, settings.name()) != null || sessionRepository.containsContext(request);
+    }
+
+    private void clearCookie(HttpServletRequest request, HttpServletResponse response) {
+        if (WebUtils.getCookie(request, settings.name()) != null) {
+            response.addHeader(HttpHeaders.SET_COOKIE, cookie(request, "", 0));
+        }
+    }
+
+    private String cookie(HttpServletRequest request, String value, long maxAgeSeconds) {
+        String path = request.getContextPath();
+        return ResponseCookie.from(settings.name(), value)
+                .path(path.isEmpty() ? "/" : path)
+                .httpOnly(true)
+                .secure(settings.secure())
+                .sameSite("Lax")
+                .maxAge(maxAgeSeconds)
+                .build()
+                .toString();
+    }
+
+    /**
+     * Encode and encrypt an authentication.
+     *
+     * @return the cookie value, or null if the principal has no compact encoding
+     */
+    private String write(Authentication authentication) {
+        try {
+            byte[] payload = encode(authentication);
+            return payload != null ? sealer.seal(payload) : null;
+        } catch (IOException | GeneralSecurityException e) {
+            logger.warn("Could not write security context cookie, keeping it in the session instead", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypt and decode a cookie value.
+     *
+     * @return the authentication, or null if the cookie is invalid, expired or sealed with an
+     *         unknown key
+     */
+    private Authentication read(String value) {
+        try {
+            byte[] payload = sealer.open(value);
+            if (payload == null) {
+                unknownKey.increment();
+                return null;
+            }
+            return decode(payload);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            invalid.increment();
+            logger.debug("Rejected security context cookie", e);
+            return null;
+        }
+    }
+
+    private byte[] encode(Authentication authentication) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(clock.instant().plus(settings.maxAge()).getEpochSecond());
+
+        Object principal = authentication.getPrincipal();
+        if (authentication instanceof UsernamePasswordAuthenticationToken && principal instanceof UserDetails user) {
+            out.writeByte(FORM);
+            out.writeUTF(user.getUsername());
+        } else if (authentication instanceof OAuth2AuthenticationToken token
+                && principal instanceof CompactOAuth2User user) {
+            out.writeByte(user instanceof CompactOidcUser ? OIDC : OAUTH2);
+            out.writeUTF(token.getAuthorizedClientRegistrationId());
+            out.writeUTF(user.getNameAttributeKey());
+            out.writeByte(user.getAttributes().size());
+            for (Map.Entry<String, Object> attribute : user.getAttributes().entrySet()) {
+                out.writeUTF(attribute.getKey());
+                if (!writeValue(out, attribute.getValue())) {
+                    return null;
+                }
+            }
+            if (user instanceof CompactOidcUser oidcUser) {
+                out.writeUTF(oidcUser.getIdTokenValue());
+            }
+        } else {
+            return null;
+        }
+
+        // Role bitsets are rebuilt from the role names
+        List<String> names = authentication.getAuthorities().stream()
+                .filter(authority -> !(authority instanceof RoleSetAuthority))
+                .map(GrantedAuthority::getAuthority)
+                .toList();
+        out.writeShort(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Authentication decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        if (clock.instant().getEpochSecond() >= in.readLong()) {
+            expired.increment();
+            return null;
+        }
+
+        byte type = in.readByte();
+        if (type == FORM) {
+            String username = in.readUTF();
+            Set<GrantedAuthority> authorities = readAuthorities(in);
+            User user = (User) User.withUsername(username).password("").authorities(authorities).build();
+            user.eraseCredentials();
+            return UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+        }
+        if (type != OAUTH2 && type != OIDC) {
+            throw new IOException("Unknown login type " + type);
+        }
+
+        String registrationId = in.readUTF();
+        String nameAttributeKey = in.readUTF();
+        int attributeCount = in.readUnsignedByte();
+        Map<String, Object> attributes = new HashMap<>(attributeCount);
+        for (int i = 0; i < attributeCount; i++) {
+            attributes.put(in.readUTF(), readValue(in));
+        }
+        String idTokenValue = type == OIDC ? in.readUTF() : null;
+        Set<GrantedAuthority> authorities = readAuthorities(in);
+
+        CompactOAuth2User user = type == OIDC
+                ? new CompactOidcUser(attributes, authorities, idTokenValue, nameAttributeKey)
+                : new CompactOAuth2User(attributes, authorities, nameAttributeKey);
+        return new OAuth2AuthenticationToken(user, user.getAuthorities(), registrationId);
+    }
+
+    private Set<GrantedAuthority> readAuthorities(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<String> roleNames = new ArrayList<>(count);
+        List<String> otherNames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            (name.startsWith(ROLE_PREFIX) ? roleNames : otherNames).add(name);
+        }
+        Set<GrantedAuthority> roles = roleBits.withRoleSet(authorityRegistry.authorities(roleNames));
+        return otherNames.isEmpty() ? roles : authorityRegistry.merge(authorityRegistry.authorities(otherNames), roles);
+    }
+
+    private static boolean writeValue(DataOutputStream out, Object value) throws IOException {
+        switch (value) {
+            case String string -> {
+                out.writeByte(STRING);
+                out.writeUTF(string);
+            }
+            case Integer number -> {
+                out.writeByte(INTEGER);
+                out.writeInt(number);
+            }
+            case Long number -> {
+                out.writeByte(LONG);
+                out.writeLong(number);
+            }
+            case Boolean flag -> {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean(flag);
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        return switch (type) {
+            case STRING -> in.readUTF();
+            case INTEGER -> in.readInt();
+            case LONG -> in.readLong();
+            case BOOLEAN -> in.readBoolean();
+            default -> throw new IOException("Unknown attribute type " + type);
+        };
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("security.context.cookie.rejected")
+                .description("Security context cookies that were not accepted or not written")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Context read from the cookie the first time it is needed, so requests that never look
+     * at the user skip the decryption.
+     */
+    private final class CookieSecurityContext implements DeferredSecurityContext {
+
+        private final String value;
+        private SecurityContext context;
+        private boolean generated;
+
+        CookieSecurityContext(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public SecurityContext get() {
+            if (context == null) {
+                Authentication authentication = read(value);
+                context = securityContextHolderStrategy.createEmptyContext();
+                if (authentication != null) {
+                    context.setAuthentication(authentication);
+                } else {
+                    generated = true;
+                }
+            }
+            return context;
+        }
+
+        @Override
+        public boolean isGenerated() {
+            get();
+            return generated;
+        }
+    }
+}
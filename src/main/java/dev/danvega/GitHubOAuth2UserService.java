@@ -0,0 +1,128 @@
+package dev.danvega;
+
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.RequestEntity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * OAuth2 user service for GitHub logins that resolves the user's email and loads their
+ * database roles, as the OIDC user service in {@link SecurityConfig} does for Google.
+ * <p>
+ * GitHub's {@code /user} resource only carries an email if the user made one public, so the
+ * {@code /user/emails} resource (readable with the {@code user:email} scope) is requested on the
+ * lookup executor while the delegate fetches {@code /user}. The primary verified address from
+ * it becomes the {@code email} attribute; if that request fails, the public email is used.
+ * Users without any email get no database roles. Logins with other providers are handed to
+ * the delegate unchanged.
+ */
+public class GitHubOAuth2UserService implements OAuth2UserService<OAuth2UserRequest, OAuth2User> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitHubOAuth2UserService.class);
+
+    static final String REGISTRATION_ID = "github";
+
+    private static final ParameterizedTypeReference<List<Map<String, Object>>> EMAILS =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private final OAuth2UserService<OAuth2UserRequest, OAuth2User> delegate;
+    private final RestOperations restOperations;
+    private final RoleService roleService;
+    private final AuthorityRegistry authorityRegistry;
+    private final RoleBits roleBits;
+    // Fetches /user/emails while /user is
+    private final ExecutorService lookupExecutor;
+
+    public GitHubOAuth2UserService(OAuth2UserService<OAuth2UserRequest, OAuth2User> delegate,
+            RestOperations restOperations, RoleService roleService, AuthorityRegistry authorityRegistry,
+            RoleBits roleBits, ExecutorService lookupExecutor) {
+        this.delegate = delegate;
+        this.restOperations = restOperations;
+        this.roleService = roleService;
+        this.authorityRegistry = authorityRegistry;
+        this.roleBits = roleBits;
+        this.lookupExecutor = lookupExecutor;
+    }
+
+    @Override
+    public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
+        if (!REGISTRATION_ID.equals(userRequest.getClientRegistration().getRegistrationId())) {
+            return delegate.loadUser(userRequest);
+        }
+
+        CompletableFuture<String> primaryEmail = CompletableFuture.supplyAsync(
+                () -> fetchPrimaryEmail(userRequest), lookupExecutor);
+        OAuth2User user = delegate.loadUser(userRequest);
+
+        String email = primaryEmail.join();
+        if (email == null) {
+            email = user.getAttribute("email");
+        }
+
+        Set<GrantedAuthority> dbRoles = email != null
+                ? roleService.getRolesForUser(RoleService.buildOAuth2UserIdentifier(REGISTRATION_ID, email))
+                : Set.of();
+        Set<GrantedAuthority> mappedAuthorities = authorityRegistry.merge(
+                CompactOAuth2User.withoutUserAttributes(user.getAuthorities()), roleBits.withRoleSet(dbRoles));
+
+        logger.info("✓ GitHub user '{}' authenticated with roles: {}", email, mappedAuthorities);
+
+        // The session keeps only the attributes the dashboard shows, not all of /user
+        String userNameAttributeName = userRequest.getClientRegistration().getProviderDetails()
+                .getUserInfoEndpoint().getUserNameAttributeName();
+        Map<String, Object> attributes = CompactOAuth2User.retainedAttributes(user.getAttributes(),
+                userNameAttributeName);
+        if (email != null) {
+            attributes.put("email", email);
+        }
+        if (dbRoles.stream().anyMatch(auth -> "ROLE_POWER_USER".equals(auth.getAuthority()))) {
+            attributes.put("custom_claim", "Power User Active");
+        }
+
+        return new CompactOAuth2User(attributes, mappedAuthorities, userNameAttributeName);
+    }
+
+    // Primary verified address from /user/emails, or null if it has none or cannot be read
+    private String fetchPrimaryEmail(OAuth2UserRequest userRequest) {
+        URI emailsUri = URI.create(userRequest.getClientRegistration().getProviderDetails()
+                .getUserInfoEndpoint().getUri() + "/emails");
+        RequestEntity<Void> request = RequestEntity.get(emailsUri)
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> headers.setBearerAuth(userRequest.getAccessToken().getTokenValue()))
+                .build();
+        try {
+            List<Map<String, Object>> emails = restOperations.exchange(request, EMAILS).getBody();
+            if (emails == null) {
+                return null;
+            }
+            return emails.stream()
+                    .filter(entry -> Boolean.TRUE.equals(entry.get("primary"))
+                            && Boolean.TRUE.equals(entry.get("verified")))
+                    .map(entry -> (String) entry.get("email"))
+                    .findFirst()
+                    .orElse(null);
+        } catch (RestClientException e) {
+            logger.warn("Could not read GitHub emails, falling back to the public email: {}", e.getMessage());
+            return null;
+        }
+    }
+}
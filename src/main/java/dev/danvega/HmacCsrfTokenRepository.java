@@ -0,0 +1,316 @@
+package dev.danvega;
+
+import dev.danvega.config.CsrfTokenProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextHolderStrategy;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.CsrfTokenRepository;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.web.util.WebUtils;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * CSRF token repository that keeps no state on the server: a token is an HMAC-SHA256 over what it
+ * is bound to and the time it was issued, so any node with the key can check it.
+ * <p>
+ * Tokens of logged-in users are bound to how they logged in (the OAuth2 registration id, or
+ * {@code form}) and their name, so the same name at two providers does not share tokens. Before
+ * login, they are bound to a random value in an HttpOnly cookie, set the first time a page renders
+ * a form for the visitor, so no session is needed and a token taken from one browser is useless
+ * in another. A token is
+ * {@code issued | key id | HMAC}, Base64url-encoded, and is accepted until {@code max-age}
+ * after it was issued; the HMAC is compared in constant time.
+ * <p>
+ * The filter compares the submitted token with the one this repository loads, so
+ * {@link #loadToken} returns the submitted token itself once it has verified it. Tokens are
+ * submitted masked by {@code XorCsrfTokenRequestAttributeHandler} (as {@link CsrfHiddenInput}
+ * renders them, so pages stay BREACH-safe), which is undone here before verifying. Every
+ * configured key verifies; the first one signs.
+ * <p>
+ * Publishes {@code csrf.token.rejected} (tagged {@code reason=invalid|expired|unknown-key}).
+ */
+public class HmacCsrfTokenRepository implements CsrfTokenRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(HmacCsrfTokenRepository.class);
+
+    static final String HEADER_NAME = "X-CSRF-TOKEN";
+    static final String PARAMETER_NAME = "_csrf";
+
+    private static final int ISSUED_LENGTH = 8;
+    private static final int KEY_ID_LENGTH = 4;
+    private static final int MAC_LENGTH = 32;
+    private static final int TOKEN_LENGTH = ISSUED_LENGTH + KEY_ID_LENGTH + MAC_LENGTH;
+    private static final int MIN_KEY_LENGTH = 32;
+    private static final int BINDING_LENGTH = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    // Binding created while rendering this request, not yet sent to the browser
+    private static final String NEW_BINDING = HmacCsrfTokenRepository.class.getName() + ".NEW_BINDING";
+
+    private final CsrfTokenProperties settings;
+    private final Clock clock;
+    private final List<Key> keys;
+    private final SecureRandom random = new SecureRandom();
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private final SecurityContextHolderStrategy securityContextHolderStrategy =
+            SecurityContextHolder.getContextHolderStrategy();
+
+    private final Counter invalid;
+    private final Counter expired;
+    private final Counter unknownKey;
+
+    public HmacCsrfTokenRepository(CsrfTokenProperties settings, MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, Clock.systemUTC());
+    }
+
+    HmacCsrfTokenRepository(CsrfTokenProperties settings, MeterRegistry meterRegistry, Clock clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.keys = keys(settings.keys());
+
+        this.invalid = rejected(meterRegistry, "invalid");
+        this.expired = rejected(meterRegistry, "expired");
+        this.unknownKey = rejected(meterRegistry, "unknown-key");
+    }
+
+    @Override
+    public CsrfToken generateToken(HttpServletRequest request) {
+        return new DefaultCsrfToken(HEADER_NAME, PARAMETER_NAME,
+                sign(binding(request, true), clock.instant().getEpochSecond()));
+    }
+
+    @Override
+    public void saveToken(CsrfToken token, HttpServletRequest request, HttpServletResponse response) {
+        if (token == null) {
+            // Logged in or out: the next token gets a new binding
+            if (WebUtils.getCookie(request, settings.bindingCookie()) != null) {
+                response.addHeader(HttpHeaders.SET_COOKIE, bindingCookie(request, "", 0));
+            }
+            return;
+        }
+        String newBinding = (String) request.getAttribute(NEW_BINDING);
+        if (newBinding != null) {
+            response.addHeader(HttpHeaders.SET_COOKIE, bindingCookie(request, newBinding, -1));
+        }
+    }
+
+    @Override
+    public CsrfToken loadToken(HttpServletRequest request) {
+        String submitted = request.getHeader(HEADER_NAME);
+        if (submitted == null) {
+            submitted = request.getParameter(PARAMETER_NAME);
+        }
+        String binding = binding(request, false);
+        if (submitted == null || binding == null) {
+            return null;
+        }
+
+        String token = unmask(submitted);
+        Counter rejection = verify(token, binding);
+        if (rejection != null) {
+            rejection.increment();
+            return null;
+        }
+        return new DefaultCsrfToken(HEADER_NAME, PARAMETER_NAME, token);
+    }
+
+    /**
+     * What tokens for this request are bound to.
+     *
+     * @param create whether a visitor without a binding gets a new one
+     * @return the binding, or null if the visitor has none and {@code create} is false
+     */
+    private String binding(HttpServletRequest request, boolean create) {
+        Authentication authentication = securityContextHolderStrategy.getContext().getAuthentication();
+        if (trustResolver.isAuthenticated(authentication)) {
+            String source = authentication instanceof OAuth2AuthenticationToken oauth2
+                    ? oauth2.getAuthorizedClientRegistrationId()
+                    : "form";
+            return "user:" + source + ":" + authentication.getName();
+        }
+
+        String value = (String) request.getAttribute(NEW_BINDING);
+        if (value == null) {
+            Cookie cookie = WebUtils.getCookie(request, settings.bindingCookie());
+            value = cookie != null && !cookie.getValue().isEmpty() ? cookie.getValue() : null;
+        }
+        if (value == null && create) {
+            byte[] bytes = new byte[BINDING_LENGTH];
+            random.nextBytes(bytes);
+            value = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            request.setAttribute(NEW_BINDING, value);
+        }
+        return value != null ? "visitor:" + value : null;
+    }
+
+    private String bindingCookie(HttpServletRequest request, String value, long maxAgeSeconds) {
+        String path = request.getContextPath();
+        return ResponseCookie.from(settings.bindingCookie(), value)
+                .path(path.isEmpty() ? "/" : path)
+                .httpOnly(true)
+                .secure(settings.secure())
+                .sameSite("Lax")
+                .maxAge(maxAgeSeconds)
+                .build()
+                .toString();
+    }
+
+    private String sign(String binding, long issued) {
+        Key key = keys.getFirst();
+        ByteBuffer token = ByteBuffer.allocate(TOKEN_LENGTH).putLong(issued).putInt(key.id());
+        token.put(mac(key, binding, issued));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+    }
+
+    /**
+     * Check a token against the binding of the request it was submitted with.
+     *
+     * @return null if the token is valid, otherwise the counter for why it is not
+     */
+    private Counter verify(String token, String binding) {
+        if (token == null) {
+            return invalid;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return invalid;
+        }
+        if (bytes.length != TOKEN_LENGTH) {
+            return invalid;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long issued = buffer.getLong();
+        int keyId = buffer.getInt();
+        Key key = keys.stream().filter(candidate -> candidate.id() == keyId).findFirst().orElse(null);
+        if (key == null) {
+            return unknownKey;
+        }
+        byte[] mac = new byte[MAC_LENGTH];
+        buffer.get(mac);
+        if (!MessageDigest.isEqual(mac(key, binding, issued), mac)) {
+            return invalid;
+        }
+
+        // The issue time is only trusted once the HMAC has been checked
+        long now = clock.instant().getEpochSecond();
+        if (issued > now + CLOCK_SKEW.toSeconds()) {
+            return invalid;
+        }
+        if (now - issued >= settings.maxAge().toSeconds()) {
+            return expired;
+        }
+        return null;
+    }
+
+    private static byte[] mac(Key key, String binding, long issued) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key.secret());
+            mac.update(binding.getBytes(StandardCharsets.UTF_8));
+            mac.update(ByteBuffer.allocate(ISSUED_LENGTH).putLong(issued).array());
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+
+    /**
+     * Undo the masking of {@code XorCsrfTokenRequestAttributeHandler}: random bytes followed by
+     * the token's bytes XORed with them.
+     *
+     * @return the token, or null if the value is not masked
+     */
+    private static String unmask(String value) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length == 0 || bytes.length % 2 != 0) {
+            return null;
+        }
+        int length = bytes.length / 2;
+        byte[] token = new byte[length];
+        for (int i = 0; i < length; i++) {
+            token[i] = (byte) (bytes[i] ^ bytes[length + i]);
+        }
+        return new String(token, StandardCharsets.UTF_8);
+    }
+
+    private static List<Key> keys(List<String> encodedKeys) {
+        if (encodedKeys.isEmpty()) {
+            logger.info("No app.csrf.keys configured, using a random key: forms rendered before a restart or by "
+                    + "other nodes will be rejected");
+            try {
+                KeyGenerator generator = KeyGenerator.getInstance(ALGORITHM);
+                generator.init(MIN_KEY_LENGTH * 8);
+                return List.of(key(generator.generateKey()));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not generate a CSRF token key", e);
+            }
+        }
+
+        List<Key> keys = new ArrayList<>();
+        for (String encodedKey : encodedKeys) {
+            byte[] bytes = Base64.getDecoder().decode(encodedKey.trim());
+            if (bytes.length < MIN_KEY_LENGTH) {
+                throw new IllegalArgumentException("app.csrf.keys entries must be Base64-encoded keys of at least "
+                        + "256 bits");
+            }
+            keys.add(key(new SecretKeySpec(bytes, ALGORITHM)));
+        }
+        return List.copyOf(keys);
+    }
+
+    // Identified by the start of the key's SHA-256, which says nothing usable about the key
+    private static Key key(SecretKey secret) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(secret.getEncoded());
+            return new Key(ByteBuffer.wrap(digest).getInt(), secret);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static Counter rejected(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("csrf.token.rejected")
+                .description("Submitted CSRF tokens that were not accepted")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private record Key(int id, SecretKey secret) {
+    }
+}
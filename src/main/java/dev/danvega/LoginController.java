@@ -1,36 +1,77 @@
 package dev.danvega;
 
 
-import jakarta.servlet.http.HttpServletRequest;
+import dev.danvega.PrerenderedPages.LoginVariant;
+import dev.danvega.PrerenderedPages.StaticPage;
+import gg.jte.output.Utf8ByteOutput;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.ModelAttribute;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the home and login pages from {@link PrerenderedPages} instead of rendering them
+ * through the view resolver on every request.
+ */
 @Controller
 public class LoginController {
 
+    static final String INVALID_CREDENTIALS = "Invalid username or password";
+    static final String PROVIDER_UNAVAILABLE =
+            "That sign-in provider is temporarily unavailable. Please try again shortly or use another way to sign in.";
+
     private final OAuth2ClientConditionService oauthService;
+    private final OAuth2ProviderGuards providerGuards;
+    private final PrerenderedPages pages;
 
-    public LoginController(OAuth2ClientConditionService oauthService) {
+    public LoginController(OAuth2ClientConditionService oauthService, OAuth2ProviderGuards providerGuards,
+                           PrerenderedPages pages) {
         this.oauthService = oauthService;
+        this.providerGuards = providerGuards;
+        this.pages = pages;
     }
 
+    // Carries a fresh CSRF token every time, so it is never cached or answered with a 304
     @GetMapping("/login")
-    public String login(HttpServletRequest request, Model model, String error, String logout) {
+    public void login(@ModelAttribute(name = "csrfHiddenInput", binding = false) CsrfHiddenInput csrfHiddenInput,
+                      HttpServletResponse response, String error, String logout, String unavailable)
+            throws IOException {
 
+        String errorMessage = null;
         if (error != null) {
-            model.addAttribute("error", true);
-            model.addAttribute("errorMessage", "Invalid username or password");
+            errorMessage = INVALID_CREDENTIALS;
+        } else if (unavailable != null) {
+            errorMessage = PROVIDER_UNAVAILABLE;
         }
 
-        model.addAttribute("googleEnabled", oauthService.isGoogleEnabled());
-        model.addAttribute("githubEnabled", oauthService.isGithubEnabled());
+        // Providers whose circuit is open are shown, but flagged instead of linked
+        LoginVariant variant = new LoginVariant(errorMessage,
+                oauthService.isGoogleEnabled(), oauthService.isGithubEnabled(),
+                providerGuards.isOpen("google"), providerGuards.isOpen("github"));
+
+        Utf8ByteOutput output = new Utf8ByteOutput();
+        pages.login(variant).writeTo(output, csrfHiddenInput);
 
-        return "pages/login";
+        response.setContentType(MediaType.TEXT_HTML_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setContentLength(output.getContentLength());
+        output.writeTo(response.getOutputStream());
     }
 
+    // Identical for everyone; browsers revalidate it and get a 304 while the ETag matches
     @GetMapping("/")
-    public String home() {
-        return "pages/home";
+    public ResponseEntity<byte[]> home() {
+        StaticPage page = pages.home();
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8))
+                .cacheControl(CacheControl.noCache())
+                .eTag(page.eTag())
+                .body(page.body());
     }
 }
@@ -0,0 +1,111 @@
+package dev.danvega;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.danvega.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throttles form login attempts per submitted username and per client IP address, so that
+ * hammering {@code POST /login} cannot keep the password hashing pool busy.
+ * <p>
+ * Each username and each client IP gets a {@link TokenBucket}. An attempt that finds either
+ * bucket empty is answered with 429 and a {@code Retry-After} header without reaching
+ * {@code UsernamePasswordAuthenticationFilter}, so no password is hashed for it; the filter
+ * runs ahead of {@link AuthenticationAdmissionFilter}, so it takes no admission slot either.
+ * Buckets live in bounded caches and are dropped once idle long enough to have refilled
+ * completely, which loses no state. Rejections are counted by {@code login.throttle.rejected}, tagged
+ * {@code key=username|ip}.
+ * <p>
+ * The client IP is {@link HttpServletRequest#getRemoteAddr()}; behind a proxy, enable
+ * {@code server.forward-headers-strategy} so it is the client's and not the proxy's.
+ */
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoginThrottleFilter.class);
+
+    private static final String LOGIN_PROCESSING_URL = "/login";
+
+    private final Throttle byUsername;
+    private final Throttle byClientIp;
+
+    public LoginThrottleFilter(LoginThrottleProperties properties, MeterRegistry meterRegistry) {
+        this.byUsername = new Throttle(properties.username(), properties.maximumKeys(),
+                rejectedCounter(meterRegistry, "username"));
+        this.byClientIp = new Throttle(properties.clientIp(), properties.maximumKeys(),
+                rejectedCounter(meterRegistry, "ip"));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !HttpMethod.POST.matches(request.getMethod()) || !LOGIN_PROCESSING_URL.equals(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long now = System.nanoTime();
+
+        long wait = byClientIp.tryAcquire(request.getRemoteAddr(), now);
+        if (wait == 0) {
+            String username = request.getParameter("username");
+            wait = byUsername.tryAcquire(username != null ? username : "", now);
+        }
+        if (wait > 0) {
+            logger.debug("Login attempt from {} throttled", request.getRemoteAddr());
+            long retryAfterSeconds = Math.ceilDiv(wait, TimeUnit.SECONDS.toNanos(1));
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(), "Too many login attempts");
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String key) {
+        return Counter.builder("login.throttle.rejected")
+                .description("Login attempts rejected before any password was hashed")
+                .tag("key", key)
+                .register(meterRegistry);
+    }
+
+    private static final class Throttle {
+
+        private final LoginThrottleProperties.Limit limit;
+        private final Cache<String, TokenBucket> buckets;
+        private final Counter rejected;
+
+        Throttle(LoginThrottleProperties.Limit limit, long maximumKeys, Counter rejected) {
+            this.limit = limit;
+            // A bucket idle for burst * period is full again, same as a new one
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maximumKeys)
+                    .expireAfterAccess(limit.period().multipliedBy(limit.burst()))
+                    .build();
+            this.rejected = rejected;
+        }
+
+        long tryAcquire(String key, long now) {
+            long wait = buckets.get(key, k -> new TokenBucket(limit.burst(), limit.period(), now)).tryConsume(now);
+            if (wait > 0) {
+                rejected.increment();
+            }
+            return wait;
+        }
+    }
+}
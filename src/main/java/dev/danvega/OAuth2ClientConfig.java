@@ -1,12 +1,15 @@
 package dev.danvega;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
@@ -24,12 +27,39 @@ public class OAuth2ClientConfig {
 
     private static final Logger log = LoggerFactory.getLogger(OAuth2ClientConfig.class);
 
+    /**
+     * Provider configuration metadata key holding a registration's {@link UserInfoMode}.
+     */
+    public static final String USERINFO_MODE = "userinfo_mode";
+
+    /**
+     * Provider configuration metadata key listing the ID token claims that must be present
+     * for {@link UserInfoMode#CLAIMS} to skip the userinfo request.
+     */
+    public static final String USERINFO_REQUIRED_CLAIMS = "userinfo_required_claims";
+
+    /**
+     * How an OIDC login obtains the user's attributes.
+     */
+    public enum UserInfoMode {
+        /** Call the userinfo endpoint on every login (Spring Security's default). */
+        ALWAYS,
+        /**
+         * Build the user from the validated ID token's claims, and call the userinfo endpoint
+         * only if one of the required claims is missing.
+         */
+        CLAIMS
+    }
+
     @Value("${GOOGLE_CLIENT_ID:}")
     private String googleClientId;
 
     @Value("${GOOGLE_CLIENT_SECRET:}")
     private String googleClientSecret;
 
+    @Value("${app.oauth2.google.userinfo-mode:claims}")
+    private UserInfoMode googleUserInfoMode;
+
     @Value("${GITHUB_CLIENT_ID:}")
     private String githubClientId;
 
@@ -73,6 +103,24 @@ public class OAuth2ClientConfig {
                 || isConfigured(githubClientId, githubClientSecret);
     }
 
+    /**
+     * Check whether an OIDC login can skip the userinfo request: its registration is in
+     * {@link UserInfoMode#CLAIMS} mode and the ID token carries every required claim.
+     *
+     * @param userRequest the OIDC user request, with its already validated ID token
+     * @return true if the user can be built from the ID token alone
+     */
+    public static boolean isIdTokenSufficient(OidcUserRequest userRequest) {
+        Map<String, Object> metadata = userRequest.getClientRegistration().getProviderDetails()
+                .getConfigurationMetadata();
+        if (!UserInfoMode.CLAIMS.name().equals(metadata.get(USERINFO_MODE))) {
+            return false;
+        }
+        Map<String, Object> claims = userRequest.getIdToken().getClaims();
+        return !(metadata.get(USERINFO_REQUIRED_CLAIMS) instanceof Collection<?> requiredClaims)
+                || requiredClaims.stream().allMatch(claim -> claims.get(claim) != null);
+    }
+
     private ClientRegistration googleClientRegistration() {
         return ClientRegistration.withRegistrationId("google")
                 .clientId(googleClientId)
@@ -86,6 +134,10 @@ public class OAuth2ClientConfig {
                 .userInfoUri("https://www.googleapis.com/oauth2/v3/userinfo")
                 .userNameAttributeName(IdTokenClaimNames.SUB)
                 .jwkSetUri("https://www.googleapis.com/oauth2/v3/certs")
+                // With the profile and email scopes, Google's ID token carries what the app reads
+                .providerConfigurationMetadata(Map.of(
+                        USERINFO_MODE, googleUserInfoMode.name(),
+                        USERINFO_REQUIRED_CLAIMS, List.of("email", "name")))
                 .clientName("Google")
                 .build();
     }
@@ -0,0 +1,235 @@
+package dev.danvega;
+
+import dev.danvega.config.OAuth2HttpClientProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.http.Outcome;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.converter.FormHttpMessageConverter;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AccessTokenResponseClient;
+import org.springframework.security.oauth2.client.endpoint.OAuth2AuthorizationCodeGrantRequest;
+import org.springframework.security.oauth2.client.endpoint.RestClientAuthorizationCodeTokenResponseClient;
+import org.springframework.security.oauth2.client.http.OAuth2ErrorResponseErrorHandler;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
+import org.springframework.security.oauth2.core.http.converter.OAuth2AccessTokenResponseHttpMessageConverter;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Pooled, keep-alive HTTP client for the token and userinfo endpoints of the OAuth2
+ * providers, in place of the unpooled clients Spring Security creates by default.
+ * <p>
+ * Every registered provider gets its own connection pool, sized by
+ * {@code app.oauth2.http.max-connections} and with the registration's connect and read
+ * timeouts. Requests are routed to a pool by the host they go to, so successive logins reuse
+ * the kept-alive connections of earlier ones instead of each paying for a TLS handshake. The
+ * token and userinfo endpoints of one provider are usually on different hosts, so within a
+ * single login they still use separate connections. Requests to other hosts share a default
+ * pool. Requests to a
+ * registered provider also pass its bulkhead and circuit breaker (see
+ * {@link OAuth2ProviderGuards}). JWK set fetches do not go through this client; they are rare,
+ * made in the background, and use {@link CachingIdTokenDecoderFactory}'s own.
+ * <p>
+ * Publishes Micrometer's {@code httpcomponents.httpclient.pool.*} gauges, tagged
+ * {@code httpclient=<registration id>}, and {@code oauth2.client.requests}, the latency of
+ * each request tagged with {@code provider} and {@code outcome}.
+ */
+@Component
+public class OAuth2HttpClient implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(OAuth2HttpClient.class);
+
+    static final String DEFAULT_POOL = "default";
+
+    private final OAuth2ProviderGuards guards;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Pool> poolsByHost = new HashMap<>();
+    private final List<Pool> pools = new ArrayList<>();
+    private final Pool defaultPool;
+
+    private final RestClient tokenRestClient;
+    private final RestTemplate userInfoRestTemplate;
+
+    public OAuth2HttpClient(ClientRegistrationRepository clientRegistrationRepository,
+            OAuth2HttpClientProperties settings, OAuth2ProviderGuards guards, MeterRegistry meterRegistry) {
+        this.guards = guards;
+        this.meterRegistry = meterRegistry;
+
+        // Close the pools built so far if a registration cannot be set up
+        try {
+            if (clientRegistrationRepository instanceof Iterable<?> registrations) {
+                for (Object registration : registrations) {
+                    addPool((ClientRegistration) registration, settings);
+                }
+            }
+            this.defaultPool = createPool(DEFAULT_POOL, settings);
+        } catch (RuntimeException e) {
+            destroy();
+            throw e;
+        }
+
+        ClientHttpRequestFactory requestFactory = (uri, method) -> poolFor(uri).requestFactory()
+                .createRequest(uri, method);
+
+        // Same converters and error handling as Spring Security's own clients
+        this.tokenRestClient = RestClient.builder()
+                .requestFactory(requestFactory)
+                .requestInterceptor(this::intercept)
+                .messageConverters(converters -> {
+                    converters.clear();
+                    converters.add(new FormHttpMessageConverter());
+                    converters.add(new OAuth2AccessTokenResponseHttpMessageConverter());
+                })
+                .defaultStatusHandler(new OAuth2ErrorResponseErrorHandler())
+                .build();
+        this.userInfoRestTemplate = new RestTemplate(requestFactory);
+        this.userInfoRestTemplate.getInterceptors().add(this::intercept);
+        this.userInfoRestTemplate.setErrorHandler(new OAuth2ErrorResponseErrorHandler());
+    }
+
+    /**
+     * Client for the authorization code token exchange.
+     */
+    public OAuth2AccessTokenResponseClient<OAuth2AuthorizationCodeGrantRequest> accessTokenResponseClient() {
+        RestClientAuthorizationCodeTokenResponseClient client = new RestClientAuthorizationCodeTokenResponseClient();
+        client.setRestClient(tokenRestClient);
+        return client;
+    }
+
+    /**
+     * User service that calls the userinfo endpoint, for OAuth2 logins and as the userinfo
+     * delegate of OIDC logins.
+     */
+    public OAuth2UserService<OAuth2UserRequest, OAuth2User> userInfoService() {
+        DefaultOAuth2UserService userService = new DefaultOAuth2UserService();
+        userService.setRestOperations(userInfoRestTemplate);
+        return userService;
+    }
+
+    /**
+     * Client for other requests to provider APIs made on behalf of a logged-in user.
+     */
+    public RestOperations restOperations() {
+        return userInfoRestTemplate;
+    }
+
+    @Override
+    public void destroy() {
+        for (Pool pool : pools) {
+            pool.httpClient().close(CloseMode.GRACEFUL);
+        }
+    }
+
+    private void addPool(ClientRegistration registration, OAuth2HttpClientProperties settings) {
+        Pool pool = createPool(registration.getRegistrationId(), settings);
+        ClientRegistration.ProviderDetails provider = registration.getProviderDetails();
+        Stream.of(provider.getTokenUri(), provider.getUserInfoEndpoint().getUri())
+                .filter(StringUtils::hasText)
+                .map(uri -> host(URI.create(uri)))
+                .forEach(host -> poolsByHost.putIfAbsent(host, pool));
+        logger.info("✓ HTTP connection pool for {} ({} connections)", pool.name(), settings.maxConnections());
+    }
+
+    private Pool createPool(String name, OAuth2HttpClientProperties settings) {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(settings.connectTimeout(name)))
+                .setSocketTimeout(Timeout.of(settings.readTimeout(name)))
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(settings.maxConnections())
+                .setMaxConnPerRoute(settings.maxConnections())
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.of(settings.readTimeout(name)))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(settings.idleTimeout()))
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        Map<Outcome, Timer> requestTimers = new EnumMap<>(Outcome.class);
+        for (Outcome outcome : Outcome.values()) {
+            requestTimers.put(outcome, Timer.builder("oauth2.client.requests")
+                    .description("Requests to OAuth2 provider endpoints")
+                    .tag("provider", name)
+                    .tag("outcome", outcome.name())
+                    .register(meterRegistry));
+        }
+
+        Pool pool = new Pool(name, httpClient, new HttpComponentsClientHttpRequestFactory(httpClient),
+                requestTimers);
+        pools.add(pool);
+        return pool;
+    }
+
+    private Pool poolFor(URI uri) {
+        return poolsByHost.getOrDefault(host(uri), defaultPool);
+    }
+
+    // Passes the provider's guards, then times the requests they let through
+    private ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Pool pool = poolFor(request.getURI());
+        return guards.execute(pool.name(), request, body,
+                (guardedRequest, guardedBody) -> timed(pool, guardedRequest, guardedBody, execution));
+    }
+
+    private ClientHttpResponse timed(Pool pool, HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Outcome outcome = Outcome.UNKNOWN;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            outcome = Outcome.forStatus(response.getStatusCode().value());
+            return response;
+        } finally {
+            sample.stop(pool.requestTimers().get(outcome));
+        }
+    }
+
+    private static String host(URI uri) {
+        return uri.getHost() != null ? uri.getHost().toLowerCase(Locale.ROOT) : "";
+    }
+
+    private record Pool(String name, CloseableHttpClient httpClient, ClientHttpRequestFactory requestFactory,
+                        Map<Outcome, Timer> requestTimers) {
+    }
+}
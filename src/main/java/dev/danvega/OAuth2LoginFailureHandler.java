@@ -0,0 +1,45 @@
+package dev.danvega;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.DefaultRedirectStrategy;
+import org.springframework.security.web.RedirectStrategy;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+
+/**
+ * OAuth2 login failure handler that sends logins failed by
+ * {@link OAuth2ProviderUnavailableException} back to {@code /login?unavailable=<registration id>},
+ * so the login page can say the provider is temporarily unavailable, and hands every other
+ * failure to the delegate.
+ */
+public class OAuth2LoginFailureHandler implements AuthenticationFailureHandler {
+
+    private final AuthenticationFailureHandler delegate;
+    private final RedirectStrategy redirectStrategy = new DefaultRedirectStrategy();
+
+    public OAuth2LoginFailureHandler(AuthenticationFailureHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+            AuthenticationException exception) throws IOException, ServletException {
+        // Spring Security wraps the client's exception, so look down the cause chain
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OAuth2ProviderUnavailableException unavailable) {
+                String loginUrl = UriComponentsBuilder.fromPath("/login")
+                        .queryParam("unavailable", unavailable.getRegistrationId())
+                        .encode()
+                        .toUriString();
+                redirectStrategy.sendRedirect(request, response, loginUrl);
+                return;
+            }
+        }
+        delegate.onAuthenticationFailure(request, response, exception);
+    }
+}
@@ -0,0 +1,198 @@
+package dev.danvega;
+
+import dev.danvega.config.OAuth2ResilienceProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bulkhead and circuit breaker per OAuth2 provider around its token and userinfo requests,
+ * so that a slow or failing provider cannot tie up the request threads other logins need.
+ * <p>
+ * A provider may have {@code app.oauth2.resilience.max-concurrent-calls} requests in flight,
+ * each counted until its response is closed, so a provider that is slow to send the body
+ * still fills the bulkhead; beyond that, and while its circuit is open (see {@link CircuitBreaker}), requests fail at
+ * once with {@link OAuth2ProviderUnavailableException}. I/O errors, including timeouts, and
+ * 5xx responses count as failures; any other response counts as a success.
+ * <p>
+ * Publishes {@code oauth2.circuit.open} (1 while a provider's circuit is open) and
+ * {@code oauth2.client.rejected}, tagged {@code provider} and
+ * {@code reason=circuit_open|bulkhead_full}.
+ */
+@Component
+public class OAuth2ProviderGuards {
+
+    private static final Logger logger = LoggerFactory.getLogger(OAuth2ProviderGuards.class);
+
+    private final Map<String, Guard> guards = new HashMap<>();
+
+    public OAuth2ProviderGuards(ClientRegistrationRepository clientRegistrationRepository,
+            OAuth2ResilienceProperties settings, MeterRegistry meterRegistry) {
+        if (clientRegistrationRepository instanceof Iterable<?> registrations) {
+            for (Object registration : registrations) {
+                String registrationId = ((ClientRegistration) registration).getRegistrationId();
+                guards.put(registrationId, new Guard(registrationId, settings, meterRegistry));
+            }
+        }
+    }
+
+    /**
+     * Check whether logins with a provider currently fail fast.
+     *
+     * @param registrationId the client registration id (e.g., "github")
+     * @return true while the provider's circuit is open
+     */
+    public boolean isOpen(String registrationId) {
+        Guard guard = guards.get(registrationId);
+        return guard != null && guard.breaker.isOpen(System.nanoTime());
+    }
+
+    /**
+     * Send a request to a provider through its bulkhead and circuit breaker.
+     *
+     * @param registrationId the provider the request goes to; requests for unknown ids are
+     *                       sent unguarded
+     */
+    ClientHttpResponse execute(String registrationId, HttpRequest request, byte[] body,
+            ClientHttpRequestExecution execution) throws IOException {
+        Guard guard = guards.get(registrationId);
+        return guard != null ? guard.execute(request, body, execution) : execution.execute(request, body);
+    }
+
+    private static final class Guard {
+
+        private final String registrationId;
+        private final Semaphore bulkhead;
+        private final CircuitBreaker breaker;
+
+        private final Counter circuitOpenRejections;
+        private final Counter bulkheadFullRejections;
+
+        Guard(String registrationId, OAuth2ResilienceProperties settings, MeterRegistry meterRegistry) {
+            this.registrationId = registrationId;
+            this.bulkhead = new Semaphore(settings.maxConcurrentCalls());
+            this.breaker = new CircuitBreaker(settings.failureThreshold(), settings.openDuration());
+
+            this.circuitOpenRejections = rejectionCounter(meterRegistry, "circuit_open");
+            this.bulkheadFullRejections = rejectionCounter(meterRegistry, "bulkhead_full");
+            Gauge.builder("oauth2.circuit.open", breaker, b -> b.isOpen(System.nanoTime()) ? 1 : 0)
+                    .description("Whether requests to the OAuth2 provider fail fast")
+                    .tag("provider", registrationId)
+                    .register(meterRegistry);
+        }
+
+        ClientHttpResponse execute(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            if (!bulkhead.tryAcquire()) {
+                bulkheadFullRejections.increment();
+                throw new OAuth2ProviderUnavailableException(registrationId,
+                        "Too many requests in flight to " + registrationId);
+            }
+            boolean released = false;
+            try {
+                if (!breaker.tryAcquire(System.nanoTime())) {
+                    circuitOpenRejections.increment();
+                    throw new OAuth2ProviderUnavailableException(registrationId,
+                            "Circuit for " + registrationId + " is open");
+                }
+                ClientHttpResponse response = new PermitHoldingResponse(
+                        executeThroughBreaker(request, body, execution), bulkhead);
+                released = true;
+                return response;
+            } finally {
+                if (!released) {
+                    bulkhead.release();
+                }
+            }
+        }
+
+        private ClientHttpResponse executeThroughBreaker(HttpRequest request, byte[] body,
+                ClientHttpRequestExecution execution) throws IOException {
+            boolean succeeded = false;
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                succeeded = !response.getStatusCode().is5xxServerError();
+                return response;
+            } finally {
+                if (succeeded) {
+                    breaker.onSuccess();
+                } else {
+                    breaker.onFailure(System.nanoTime());
+                    if (breaker.state() == CircuitBreaker.State.OPEN) {
+                        logger.warn("Circuit for OAuth2 provider {} is open, failing its logins fast",
+                                registrationId);
+                    }
+                }
+            }
+        }
+
+        private Counter rejectionCounter(MeterRegistry meterRegistry, String reason) {
+            return Counter.builder("oauth2.client.rejected")
+                    .description("OAuth2 provider requests failed without being sent")
+                    .tag("provider", registrationId)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+    }
+
+    // Gives the bulkhead permit back once the caller has read the body and closed the response
+    private static final class PermitHoldingResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final Semaphore bulkhead;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        PermitHoldingResponse(ClientHttpResponse response, Semaphore bulkhead) {
+            this.response = response;
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public HttpStatusCode getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.close();
+            } finally {
+                if (closed.compareAndSet(false, true)) {
+                    bulkhead.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package dev.danvega;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request to an OAuth2 provider whose circuit is open or whose
+ * bulkhead is full.
+ * <p>
+ * It is an {@link IOException} so that the HTTP clients report it like a connection failure;
+ * Spring Security then wraps it into the {@code AuthenticationException} the login fails
+ * with, where {@link OAuth2LoginFailureHandler} finds it again.
+ */
+public class OAuth2ProviderUnavailableException extends IOException {
+
+    private final String registrationId;
+
+    public OAuth2ProviderUnavailableException(String registrationId, String message) {
+        super(message);
+        this.registrationId = registrationId;
+    }
+
+    public String getRegistrationId() {
+        return registrationId;
+    }
+}
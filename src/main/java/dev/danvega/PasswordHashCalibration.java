@@ -0,0 +1,193 @@
+package dev.danvega;
+
+import dev.danvega.config.PasswordHashingProperties;
+import dev.danvega.config.PasswordHashingProperties.Algorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the application's {@link DelegatingPasswordEncoder}, with the cost of the configured
+ * algorithm calibrated at startup so that one hash takes about
+ * {@code app.password-hashing.target-time} on the machine it runs on.
+ * <p>
+ * New hashes are stored with an {@code {id}} prefix. Every supported algorithm and cost stays
+ * registered for matching, and {@link DelegatingPasswordEncoder#upgradeEncoding} reports hashes
+ * made with another algorithm or a lower cost, so they are re-encoded on the next successful
+ * login. Hashes with a higher cost are kept, so a node that calibrated lower, or a restart on
+ * a slower machine, does not weaken them. Hashes without a prefix, like the seeded admin
+ * user's, are matched as BCrypt.
+ * <p>
+ * A BCrypt hash records its strength, so one {@code bcrypt} id covers all of them. A PBKDF2
+ * hash does not record its iteration count, so PBKDF2 is calibrated to one of a fixed ladder
+ * of counts, each registered under its own {@code pbkdf2-<iterations>} id.
+ */
+public final class PasswordHashCalibration {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashCalibration.class);
+
+    static final String BCRYPT_ID = "bcrypt";
+
+    // BCryptPasswordEncoder's default, never calibrated below
+    static final int MIN_BCRYPT_STRENGTH = 10;
+    private static final int MAX_BCRYPT_STRENGTH = 31;
+    private static final int BCRYPT_PROBE_STRENGTH = 8;
+
+    // Pbkdf2PasswordEncoder's default for SHA-256, doubled for each further rung
+    static final int MIN_PBKDF2_ITERATIONS = 310_000;
+    private static final int PBKDF2_RUNGS = 8;
+    private static final int PBKDF2_PROBE_ITERATIONS = 20_000;
+    private static final int PBKDF2_SALT_LENGTH = 16;
+    private static final String PBKDF2_ID_PREFIX = "pbkdf2-";
+
+    private static final int PROBE_RUNS = 3;
+
+    private PasswordHashCalibration() {
+    }
+
+    /**
+     * Calibrate the configured algorithm and build the encoder.
+     *
+     * @param properties the algorithm and target time
+     * @return the delegating encoder, encoding with the calibrated algorithm and cost
+     */
+    public static PasswordEncoder create(PasswordHashingProperties properties) {
+        Algorithm algorithm = properties.algorithm();
+        Duration target = properties.targetTime();
+
+        int cost;
+        Duration estimate;
+        if (algorithm == Algorithm.BCRYPT) {
+            Duration probe = probe(new BCryptPasswordEncoder(BCRYPT_PROBE_STRENGTH));
+            cost = bcryptStrength(probe, target);
+            estimate = probe.multipliedBy(1L << (cost - BCRYPT_PROBE_STRENGTH));
+        } else {
+            Duration probe = probe(pbkdf2(PBKDF2_PROBE_ITERATIONS));
+            cost = pbkdf2Iterations(probe, target);
+            estimate = probe.multipliedBy(cost / PBKDF2_PROBE_ITERATIONS);
+        }
+
+        logger.info("✓ Password hashing calibrated to {} cost {} (~{} ms per hash, target {} ms)",
+                algorithm, cost, estimate.toMillis(), target.toMillis());
+
+        return create(algorithm, cost);
+    }
+
+    /**
+     * Build the encoder for a given algorithm and cost, without calibrating.
+     *
+     * @param algorithm algorithm new hashes are created with
+     * @param cost      BCrypt strength, or PBKDF2 iteration count (one of the ladder's rungs)
+     * @return the delegating encoder
+     */
+    static DelegatingPasswordEncoder create(Algorithm algorithm, int cost) {
+        Map<String, PasswordEncoder> encoders = new HashMap<>();
+        encoders.put(BCRYPT_ID, new BCryptPasswordEncoder(algorithm == Algorithm.BCRYPT ? cost : MIN_BCRYPT_STRENGTH));
+        for (int rung = 0; rung < PBKDF2_RUNGS; rung++) {
+            int iterations = MIN_PBKDF2_ITERATIONS << rung;
+            encoders.put(pbkdf2Id(iterations), pbkdf2(iterations));
+        }
+
+        String idForEncode = algorithm == Algorithm.BCRYPT ? BCRYPT_ID : pbkdf2Id(cost);
+        DelegatingPasswordEncoder encoder = new CalibratedPasswordEncoder(idForEncode, encoders);
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
+    }
+
+    /**
+     * Highest BCrypt strength whose hash fits in the target time, given the time of one hash
+     * at the probe strength. Each step of strength doubles the work.
+     */
+    static int bcryptStrength(Duration probe, Duration target) {
+        double headroom = (double) target.toNanos() / Math.max(1, probe.toNanos());
+        int steps = (int) Math.floor(Math.log(headroom) / Math.log(2));
+        return Math.clamp(BCRYPT_PROBE_STRENGTH + (long) steps, MIN_BCRYPT_STRENGTH, MAX_BCRYPT_STRENGTH);
+    }
+
+    /**
+     * Highest PBKDF2 ladder rung whose hash fits in the target time, given the time of one hash
+     * with the probe iteration count. Work grows linearly with the count.
+     */
+    static int pbkdf2Iterations(Duration probe, Duration target) {
+        double affordable = (double) PBKDF2_PROBE_ITERATIONS * target.toNanos() / Math.max(1, probe.toNanos());
+        int iterations = MIN_PBKDF2_ITERATIONS;
+        for (int rung = 1; rung < PBKDF2_RUNGS && (MIN_PBKDF2_ITERATIONS << rung) <= affordable; rung++) {
+            iterations = MIN_PBKDF2_ITERATIONS << rung;
+        }
+        return iterations;
+    }
+
+    static String pbkdf2Id(int iterations) {
+        return PBKDF2_ID_PREFIX + iterations;
+    }
+
+    // Iteration count of a pbkdf2-<iterations> id, or -1 for any other id
+    private static int pbkdf2Iterations(String id) {
+        if (id == null || !id.startsWith(PBKDF2_ID_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(id.substring(PBKDF2_ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Pbkdf2PasswordEncoder pbkdf2(int iterations) {
+        return new Pbkdf2PasswordEncoder("", PBKDF2_SALT_LENGTH, iterations,
+                SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+    }
+
+    // Fastest of a few runs after a warm-up, so JIT compilation and noise do not inflate it
+    private static Duration probe(PasswordEncoder encoder) {
+        encoder.encode("calibration");
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < PROBE_RUNS; i++) {
+            long start = System.nanoTime();
+            encoder.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Duration.ofNanos(best);
+    }
+
+    /**
+     * Compares PBKDF2 hashes by iteration count rather than by id, which the plain
+     * {@link DelegatingPasswordEncoder} would report for upgrade whenever the rungs differ, even
+     * when the stored hash is the stronger one. BCrypt hashes share an id, so BCrypt's own
+     * strength check already applies to them.
+     */
+    private static final class CalibratedPasswordEncoder extends DelegatingPasswordEncoder {
+
+        private final int iterationsForEncode;
+
+        CalibratedPasswordEncoder(String idForEncode, Map<String, PasswordEncoder> encoders) {
+            super(idForEncode, encoders);
+            this.iterationsForEncode = pbkdf2Iterations(idForEncode);
+        }
+
+        @Override
+        public boolean upgradeEncoding(String prefixEncodedPassword) {
+            int stored = pbkdf2Iterations(extractId(prefixEncodedPassword));
+            if (stored > 0 && iterationsForEncode > 0) {
+                return stored < iterationsForEncode;
+            }
+            return super.upgradeEncoding(prefixEncodedPassword);
+        }
+
+        private static String extractId(String prefixEncodedPassword) {
+            if (prefixEncodedPassword == null || !prefixEncodedPassword.startsWith("{")) {
+                return null;
+            }
+            int end = prefixEncodedPassword.indexOf('}');
+            return end < 0 ? null : prefixEncodedPassword.substring(1, end);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package dev.danvega;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Form login failure handler that answers {@link PasswordHashingUnavailableException} with
+ * 503 and a {@code Retry-After} header, and hands every other failure to the delegate.
+ */
+public class PasswordHashingFailureHandler implements AuthenticationFailureHandler {
+
+    private final AuthenticationFailureHandler delegate;
+    private final String retryAfterSeconds;
+
+    public PasswordHashingFailureHandler(AuthenticationFailureHandler delegate, Duration retryAfter) {
+        this.delegate = delegate;
+        this.retryAfterSeconds = Long.toString(Math.max(1, retryAfter.toSeconds()));
+    }
+
+    @Override
+    public void onAuthenticationFailure(HttpServletRequest request, HttpServletResponse response,
+            AuthenticationException exception) throws IOException, ServletException {
+        if (exception instanceof PasswordHashingUnavailableException) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exception.getMessage());
+            return;
+        }
+        delegate.onAuthenticationFailure(request, response, exception);
+    }
+}
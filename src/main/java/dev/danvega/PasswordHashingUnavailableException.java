@@ -0,0 +1,16 @@
+package dev.danvega;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+
+/**
+ * Thrown when a password cannot be checked because the hashing pool and its queue are full.
+ * <p>
+ * Being an {@link AuthenticationServiceException}, it fails the login attempt without counting
+ * as bad credentials; {@link PasswordHashingFailureHandler} answers it with 503.
+ */
+public class PasswordHashingUnavailableException extends AuthenticationServiceException {
+
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+}
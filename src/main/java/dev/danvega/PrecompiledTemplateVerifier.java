@@ -0,0 +1,95 @@
+package dev.danvega;
+
+import gg.jte.TemplateEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Loads every precompiled jte template while the application starts, so a build that is missing
+ * one fails the deployment instead of the first request for that page, and no request pays for
+ * loading and initialising a template class.
+ * <p>
+ * The build copies the template sources to {@code META-INF/jte} next to the classes generated
+ * from them; each one listed there must have a precompiled class. Only used with
+ * {@code gg.jte.usePrecompiledTemplates=true}, as the {@code prod} profile sets.
+ */
+public class PrecompiledTemplateVerifier implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrecompiledTemplateVerifier.class);
+
+    static final String TEMPLATE_ROOT = "META-INF/jte/";
+    private static final String TEMPLATE_PATTERN = "classpath*:" + TEMPLATE_ROOT + "**/*.jte";
+
+    private final TemplateEngine templateEngine;
+    private final ResourcePatternResolver resourcePatternResolver;
+
+    public PrecompiledTemplateVerifier(TemplateEngine templateEngine) {
+        this(templateEngine, new PathMatchingResourcePatternResolver());
+    }
+
+    PrecompiledTemplateVerifier(TemplateEngine templateEngine, ResourcePatternResolver resourcePatternResolver) {
+        this.templateEngine = templateEngine;
+        this.resourcePatternResolver = resourcePatternResolver;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        verify();
+    }
+
+    /**
+     * Load every listed template.
+     *
+     * @return the number of templates loaded
+     * @throws IllegalStateException if no templates are listed or any of them fails to load
+     */
+    int verify() {
+        long start = System.nanoTime();
+        List<String> names = templateNames();
+        if (names.isEmpty()) {
+            throw new IllegalStateException("No jte templates listed under " + TEMPLATE_ROOT
+                    + "; build the application with Maven so its templates are precompiled");
+        }
+
+        List<String> failed = new ArrayList<>();
+        for (String name : names) {
+            try {
+                templateEngine.prepareForRendering(name);
+            } catch (RuntimeException e) {
+                logger.error("✗ Precompiled template {} could not be loaded", name, e);
+                failed.add(name);
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException("Precompiled jte templates missing or broken: " + failed);
+        }
+
+        logger.info("✓ Loaded {} precompiled templates in {} ms", names.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        return names.size();
+    }
+
+    // Template names are the paths below META-INF/jte, e.g. pages/login.jte
+    private List<String> templateNames() {
+        TreeSet<String> names = new TreeSet<>();
+        try {
+            for (Resource resource : resourcePatternResolver.getResources(TEMPLATE_PATTERN)) {
+                String url = resource.getURL().toString();
+                names.add(url.substring(url.lastIndexOf(TEMPLATE_ROOT) + TEMPLATE_ROOT.length()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list the jte templates under " + TEMPLATE_ROOT, e);
+        }
+        return List.copyOf(names);
+    }
+}
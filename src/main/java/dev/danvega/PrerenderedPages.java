@@ -0,0 +1,168 @@
+package dev.danvega;
+
+import gg.jte.Content;
+import gg.jte.TemplateEngine;
+import gg.jte.TemplateOutput;
+import gg.jte.output.Utf8ByteOutput;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The home and login pages, rendered once per variant and then served as bytes.
+ * <p>
+ * The home page never changes, so it is kept whole with a strong ETag over its bytes. The login
+ * page only varies by the error shown and which providers are enabled or unavailable, which
+ * gives a few dozen variants at most. Each is rendered with a placeholder where the CSRF field
+ * goes and split there, so a request writes the two halves and the token.
+ * <p>
+ * In jte development mode nothing is kept, so edited templates still show on the next request.
+ */
+@Component
+public class PrerenderedPages {
+
+    static final String HOME = "pages/home.jte";
+    static final String LOGIN = "pages/login.jte";
+
+    private final TemplateEngine templateEngine;
+    private final boolean developmentMode;
+    private final Map<LoginVariant, LoginPage> loginPages = new ConcurrentHashMap<>();
+    private volatile StaticPage home;
+
+    public PrerenderedPages(TemplateEngine templateEngine,
+                            @Value("${gg.jte.development-mode:false}") boolean developmentMode) {
+        this.templateEngine = templateEngine;
+        this.developmentMode = developmentMode;
+    }
+
+    public StaticPage home() {
+        if (developmentMode) {
+            return renderHome();
+        }
+        StaticPage page = home;
+        if (page == null) {
+            page = renderHome();
+            home = page;
+        }
+        return page;
+    }
+
+    public LoginPage login(LoginVariant variant) {
+        if (developmentMode) {
+            return renderLogin(variant);
+        }
+        return loginPages.computeIfAbsent(variant, this::renderLogin);
+    }
+
+    private StaticPage renderHome() {
+        byte[] body = render(HOME, Map.of());
+        return new StaticPage(body, eTag(body));
+    }
+
+    private LoginPage renderLogin(LoginVariant variant) {
+        CsrfSlot slot = new CsrfSlot();
+        Map<String, Object> params = new HashMap<>();
+        params.put("error", variant.errorMessage() != null);
+        params.put("errorMessage", variant.errorMessage());
+        params.put("csrfHiddenInput", slot);
+        params.put("googleEnabled", variant.googleEnabled());
+        params.put("githubEnabled", variant.githubEnabled());
+        params.put("googleUnavailable", variant.googleUnavailable());
+        params.put("githubUnavailable", variant.githubUnavailable());
+        byte[] page = render(LOGIN, params);
+
+        int at = indexOf(page, slot.marker, 0);
+        if (at < 0 || indexOf(page, slot.marker, at + 1) >= 0) {
+            throw new IllegalStateException(LOGIN + " must render its CSRF field exactly once");
+        }
+        return new LoginPage(Arrays.copyOfRange(page, 0, at),
+                Arrays.copyOfRange(page, at + slot.marker.length, page.length));
+    }
+
+    private byte[] render(String name, Map<String, Object> params) {
+        Utf8ByteOutput output = new Utf8ByteOutput();
+        templateEngine.render(name, params, output);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(output.getContentLength());
+        try {
+            output.writeTo(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static String eTag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return '"' + HexFormat.of().formatHex(digest, 0, 16) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target, int from) {
+        outer:
+        for (int i = from; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * What the login page shows besides the form.
+     *
+     * @param errorMessage the message above the form, or null for none
+     */
+    public record LoginVariant(String errorMessage, boolean googleEnabled, boolean githubEnabled,
+                               boolean googleUnavailable, boolean githubUnavailable) {
+    }
+
+    /** A page without per-request content, and the strong ETag of its bytes. */
+    public record StaticPage(byte[] body, String eTag) {
+    }
+
+    /** A login page variant, split where the CSRF field goes. */
+    public record LoginPage(byte[] beforeCsrf, byte[] afterCsrf) {
+
+        /**
+         * Write the page with this request's CSRF field.
+         *
+         * @param output where to write, typically the response's {@link Utf8ByteOutput}
+         * @param csrfHiddenInput the request's CSRF field
+         */
+        public void writeTo(TemplateOutput output, Content csrfHiddenInput) {
+            output.writeBinaryContent(beforeCsrf);
+            csrfHiddenInput.writeTo(output);
+            output.writeBinaryContent(afterCsrf);
+        }
+    }
+
+    // Rendered in place of the CSRF field; random so no page text can collide with it
+    private static final class CsrfSlot implements Content {
+
+        private final String text = "<!--csrf-" + UUID.randomUUID() + "-->";
+        private final byte[] marker = text.getBytes(StandardCharsets.UTF_8);
+
+        @Override
+        public void writeTo(TemplateOutput output) {
+            output.writeContent(text);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package dev.danvega;
+
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleSetAuthority;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Role check that tests the user's {@link RoleSetAuthority} against the required roles with
+ * a single AND instead of comparing authority strings.
+ * <p>
+ * Falls back to matching role names, like {@code hasAnyRole}, when the user carries no role
+ * bitset (e.g., {@code @WithMockUser} in tests) or when a required role is not a row of the
+ * {@code roles} table and therefore has no bit.
+ *
+ * @param <T> the secured object type
+ */
+public final class RoleAuthorizationManager<T> implements AuthorizationManager<T> {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final RoleBits roleBits;
+    private final Set<String> roleNames;
+
+    private volatile RequiredRoles required;
+
+    private RoleAuthorizationManager(RoleBits roleBits, Set<String> roleNames) {
+        this.roleBits = roleBits;
+        this.roleNames = roleNames;
+    }
+
+    /**
+     * Grant access when the user has any of the given roles.
+     *
+     * @param roleBits the role bit positions
+     * @param roles    the roles without the {@code ROLE_} prefix (e.g., "ADMIN")
+     * @return the authorization manager
+     */
+    public static <T> RoleAuthorizationManager<T> hasAnyRole(RoleBits roleBits, String... roles) {
+        Set<String> roleNames = Arrays.stream(roles)
+                .map(role -> ROLE_PREFIX + role)
+                .collect(Collectors.toUnmodifiableSet());
+        return new RoleAuthorizationManager<>(roleBits, roleNames);
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, T object) {
+        Authentication current = authentication.get();
+        return new AuthorizationDecision(current != null && current.isAuthenticated()
+                && isGranted(current.getAuthorities()));
+    }
+
+    /**
+     * @deprecated use {@link #authorize(Supplier, Object)}
+     */
+    @Deprecated
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, T object) {
+        return (AuthorizationDecision) authorize(authentication, object);
+    }
+
+    private boolean isGranted(Collection<? extends GrantedAuthority> authorities) {
+        RoleSetAuthority requiredSet = required().roleSet();
+        if (requiredSet != null) {
+            for (GrantedAuthority authority : authorities) {
+                if (authority instanceof RoleSetAuthority roleSet) {
+                    return roleSet.intersects(requiredSet);
+                }
+            }
+        }
+        for (GrantedAuthority authority : authorities) {
+            if (roleNames.contains(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Resolved on first use: the roles table is only guaranteed to exist once Liquibase has run
+    private RequiredRoles required() {
+        RequiredRoles resolved = required;
+        if (resolved == null) {
+            boolean allKnown = roleNames.stream().allMatch(name -> roleBits.position(name) >= 0);
+            resolved = new RequiredRoles(allKnown ? roleBits.encodeNames(roleNames) : null);
+            required = resolved;
+        }
+        return resolved;
+    }
+
+    @Override
+    public String toString() {
+        return "RoleAuthorizationManager[hasAnyRole=" + roleNames + "]";
+    }
+
+    private record RequiredRoles(RoleSetAuthority roleSet) {
+    }
+}
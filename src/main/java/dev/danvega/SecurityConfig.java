@@ -1,31 +1,43 @@
 package dev.danvega;
 
+import dev.danvega.config.AuthenticationAdmissionProperties;
+import dev.danvega.config.AuthorizationRequestCookieProperties;
+import dev.danvega.config.CsrfTokenProperties;
+import dev.danvega.config.LoginThrottleProperties;
+import dev.danvega.config.OAuth2LookupExecutorConfig;
+import dev.danvega.config.PasswordHashingProperties;
+import dev.danvega.config.SecurityContextCookieProperties;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.RoleBits;
 import dev.danvega.service.RoleService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.userdetails.User;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserService;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
-import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
-import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.client.web.OAuth2LoginAuthenticationFilter;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.security.web.savedrequest.CookieRequestCache;
 
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 @EnableWebSecurity
@@ -35,96 +47,204 @@ public class SecurityConfig {
 
     private final ClientRegistrationRepository clientRegistrationRepository;
     private final RoleService roleService;
-    private final PasswordEncoder passwordEncoder;
+    private final AuthorityRegistry authorityRegistry;
+    private final RoleBits roleBits;
+    // Runs the role query of an OIDC login while userinfo is fetched, and GitHub's email
+    // request while /user is
+    private final ExecutorService lookupExecutor;
 
-    public SecurityConfig(ClientRegistrationRepository clientRegistrationRepository, RoleService roleService) {
+    public SecurityConfig(ClientRegistrationRepository clientRegistrationRepository, RoleService roleService,
+            AuthorityRegistry authorityRegistry, RoleBits roleBits,
+            @Qualifier(OAuth2LookupExecutorConfig.OAUTH2_LOOKUP_EXECUTOR) ExecutorService lookupExecutor) {
         this.clientRegistrationRepository = clientRegistrationRepository;
         this.roleService = roleService;
-        this.passwordEncoder = new BCryptPasswordEncoder();
+        this.authorityRegistry = authorityRegistry;
+        this.roleBits = roleBits;
+        this.lookupExecutor = lookupExecutor;
     }
 
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, PasswordHashingProperties passwordHashing,
+            LoginThrottleProperties loginThrottle, AuthenticationAdmissionProperties authAdmission,
+            MeterRegistry meterRegistry, OAuth2HttpClient oauth2HttpClient,
+            SecurityContextCookieProperties securityContextCookie,
+            AuthorizationRequestCookieProperties authorizationRequestCookie, CsrfTokenProperties csrfTokens)
+            throws Exception {
         http
                 .authorizeHttpRequests(authorize -> authorize
                         .requestMatchers("/", "/login", "/error").permitAll()
                         // H2 console access: ADMIN has full access, POWER_USER can access (read-only
-                        // enforced via connection)
-                        .requestMatchers("/h2-console/**").hasAnyRole("ADMIN", "POWER_USER")
+                        // enforced via connection). Checked against the user's role bitset.
+                        .requestMatchers("/h2-console/**")
+                        .access(RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN", "POWER_USER"))
                         .anyRequest().authenticated())
                 .formLogin(form -> form
                         .loginPage("/login")
                         .defaultSuccessUrl("/dashboard", false) // false = use saved request if available
+                        // 503 instead of a login error when the password hashing pool is full
+                        .failureHandler(new PasswordHashingFailureHandler(
+                                loginErrorHandler(), passwordHashing.retryAfter()))
                         .permitAll())
                 .logout(logout -> logout
                         .logoutSuccessUrl("/")
+                        .deleteCookies(securityContextCookie.name())
                         .permitAll())
                 // Allow H2 console to use frames
                 .headers(headers -> headers.frameOptions(frame -> frame.sameOrigin()))
+                // Anonymous visitors get no session: the page they asked for before logging in
+                // is kept in a cookie, and CSRF tokens are signed rather than stored. A token is
+                // only generated when a page renders a form (see CsrfHiddenInput)
+                .requestCache(cache -> cache.requestCache(new CookieRequestCache()))
                 // Disable CSRF for H2 console
-                .csrf(csrf -> csrf.ignoringRequestMatchers("/h2-console/**"));
+                .csrf(csrf -> csrf
+                        .csrfTokenRepository(new HmacCsrfTokenRepository(csrfTokens, meterRegistry))
+                        .ignoringRequestMatchers("/h2-console/**"));
 
-        // Only enable OAuth2 login if at least one provider is configured
+        // Keep the logged-in user in an encrypted cookie instead of the HTTP session, so any
+        // node can serve any request
+        if (securityContextCookie.enabled()) {
+            http.securityContext(context -> context.securityContextRepository(
+                    new EncryptedCookieSecurityContextRepository(securityContextCookie, authorityRegistry, roleBits,
+                            meterRegistry)));
+        }
+
+        // Turn away floods of login attempts before any password is hashed, and before they
+        // take an admission slot
+        if (loginThrottle.enabled()) {
+            http.addFilterBefore(new LoginThrottleFilter(loginThrottle, meterRegistry),
+                    OAuth2LoginAuthenticationFilter.class);
+        }
+
+        // Shed form logins and OAuth2 callbacks beyond an adaptive concurrency limit; placed
+        // ahead of both authentication filters. Filters added at the same position keep the
+        // order they were added in, so this one runs after the throttle
+        if (authAdmission.enabled()) {
+            http.addFilterBefore(new AuthenticationAdmissionFilter(authAdmission, meterRegistry),
+                    OAuth2LoginAuthenticationFilter.class);
+        }
+
+        // Only enable OAuth2 login if at least one provider is configured; token and userinfo
+        // requests go through the pooled client, and logins with a provider whose circuit is
+        // open return to the login page flagged as unavailable
         if (hasOAuth2Providers()) {
+            OAuth2UserService<OAuth2UserRequest, OAuth2User> userInfoService = oauth2HttpClient.userInfoService();
             http.oauth2Login(oauth2 -> oauth2
                     .loginPage("/login")
                     .defaultSuccessUrl("/dashboard", false) // false = use saved request if available
+                    .failureHandler(new OAuth2LoginFailureHandler(loginErrorHandler()))
+                    // The login in progress waits for the provider's callback in a cookie
+                    .authorizationEndpoint(authorization -> authorization
+                            .authorizationRequestRepository(new EncryptedCookieAuthorizationRequestRepository(
+                                    authorizationRequestCookie, meterRegistry)))
+                    .tokenEndpoint(token -> token
+                            .accessTokenResponseClient(oauth2HttpClient.accessTokenResponseClient()))
                     .userInfoEndpoint(userInfo -> userInfo
-                            .oidcUserService(oidcUserService())));
+                            .userService(new GitHubOAuth2UserService(userInfoService,
+                                    oauth2HttpClient.restOperations(), roleService, authorityRegistry, roleBits,
+                                    lookupExecutor))
+                            .oidcUserService(oidcUserService(userInfoService))));
+            if (securityContextCookie.enabled()) {
+                // Nothing reads the access token after login; don't keep it on the node
+                http.oauth2Login(oauth2 -> oauth2
+                        .authorizedClientRepository(new DiscardingAuthorizedClientRepository()));
+            }
         }
 
         return http.build();
     }
 
+    /**
+     * Failure handler that redirects to {@code /login?error}. The login page shows a fixed
+     * message, so the exception is not stored in a session created just for it.
+     */
+    private static SimpleUrlAuthenticationFailureHandler loginErrorHandler() {
+        SimpleUrlAuthenticationFailureHandler handler = new SimpleUrlAuthenticationFailureHandler("/login?error");
+        handler.setAllowSessionCreation(false);
+        return handler;
+    }
+
     /**
      * Custom OIDC user service that loads roles from the database.
+     * <p>
+     * The ID token is already validated when this runs. Registrations in claims-only mode
+     * whose ID token carries the required claims skip the userinfo request altogether (see
+     * {@link OAuth2ClientConfig#isIdTokenSufficient}); with nothing to wait for, their roles are
+     * looked up on the calling thread. When userinfo is requested and the ID token carries the
+     * email (Google's does), the role lookup starts first on the lookup executor and overlaps
+     * the userinfo request made by the delegate. Otherwise, or if the merged claims report a
+     * different email, roles are looked up for that email once the user is loaded.
+     *
+     * @param userInfoService the service that calls the userinfo endpoint
      */
-    private OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService() {
+    private OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService(
+            OAuth2UserService<OAuth2UserRequest, OAuth2User> userInfoService) {
         final OidcUserService delegate = new OidcUserService();
+        delegate.setOauth2UserService(userInfoService);
+        final OidcUserService idTokenOnlyDelegate = new OidcUserService();
+        idTokenOnlyDelegate.setRetrieveUserInfo(userRequest -> false);
 
         return (userRequest) -> {
-            // Delegate to the default implementation for loading the user
-            OidcUser oidcUser = delegate.loadUser(userRequest);
-
             String provider = userRequest.getClientRegistration().getRegistrationId();
+
+            // Delegate to the default implementation for loading the user. If it will call the
+            // userinfo endpoint, start the role lookup for the ID token's email first
+            String idTokenEmail = userRequest.getIdToken().getEmail();
+            CompletableFuture<Set<GrantedAuthority>> earlyRoles = null;
+            OidcUser oidcUser;
+            if (OAuth2ClientConfig.isIdTokenSufficient(userRequest)) {
+                oidcUser = idTokenOnlyDelegate.loadUser(userRequest);
+            } else {
+                if (idTokenEmail != null) {
+                    earlyRoles = CompletableFuture.supplyAsync(() -> roleService.getRolesForUser(
+                            RoleService.buildOAuth2UserIdentifier(provider, idTokenEmail)), lookupExecutor);
+                }
+                oidcUser = delegate.loadUser(userRequest);
+            }
             String email = oidcUser.getAttribute("email");
 
-            // Build user identifier and load roles from database
+            // Build user identifier and load roles from database; scope and role authorities
+            // are swapped for the shared instances so sessions do not hold private copies
             String userIdentifier = RoleService.buildOAuth2UserIdentifier(provider, email);
-            Set<GrantedAuthority> mappedAuthorities = new HashSet<>(oidcUser.getAuthorities());
-            Set<GrantedAuthority> dbRoles = roleService.getRolesForUser(userIdentifier);
-            mappedAuthorities.addAll(dbRoles);
+            Set<GrantedAuthority> dbRoles = earlyRoles != null && Objects.equals(email, idTokenEmail)
+                    ? join(earlyRoles)
+                    : roleService.getRolesForUser(userIdentifier);
+            Set<GrantedAuthority> mappedAuthorities = authorityRegistry.merge(
+                    CompactOAuth2User.withoutUserAttributes(oidcUser.getAuthorities()),
+                    roleBits.withRoleSet(dbRoles));
 
             logger.info("✓ OAuth2 user '{}' authenticated with roles: {}", email, mappedAuthorities);
 
+            // The session keeps only the attributes the dashboard shows, not every ID token and
+            // userinfo claim
+            String userNameAttributeName = userRequest.getClientRegistration().getProviderDetails()
+                    .getUserInfoEndpoint().getUserNameAttributeName();
+            Map<String, Object> attributes = CompactOAuth2User.retainedAttributes(oidcUser.getAttributes(),
+                    userNameAttributeName);
+
             // Check if user has ROLE_POWER_USER to add custom claim
             boolean isPowerUser = dbRoles.stream()
                     .anyMatch(auth -> "ROLE_POWER_USER".equals(auth.getAuthority()));
 
             if (isPowerUser) {
                 // Add custom claim for power users
-                Map<String, Object> claims = new HashMap<>();
-                if (oidcUser.getUserInfo() != null) {
-                    claims.putAll(oidcUser.getUserInfo().getClaims());
-                }
-                claims.put("custom_claim", "Power User Active");
-                OidcUserInfo userInfo = new OidcUserInfo(claims);
-
-                String userNameAttributeName = userRequest.getClientRegistration().getProviderDetails()
-                        .getUserInfoEndpoint().getUserNameAttributeName();
-
-                return new DefaultOidcUser(mappedAuthorities, oidcUser.getIdToken(), userInfo, userNameAttributeName);
+                attributes.put("custom_claim", "Power User Active");
             }
 
-            // Return user with database-loaded authorities
-            String userNameAttributeName = userRequest.getClientRegistration().getProviderDetails()
-                    .getUserInfoEndpoint().getUserNameAttributeName();
-
-            return new DefaultOidcUser(mappedAuthorities, oidcUser.getIdToken(), oidcUser.getUserInfo(),
-                    userNameAttributeName);
+            return new CompactOidcUser(attributes, mappedAuthorities, oidcUser.getIdToken(), userNameAttributeName);
         };
     }
 
+    private static Set<GrantedAuthority> join(CompletableFuture<Set<GrantedAuthority>> roles) {
+        try {
+            return roles.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
     private boolean hasOAuth2Providers() {
         // Check if repository can find any registration (google or github)
         try {
@@ -135,33 +255,14 @@ public class SecurityConfig {
         }
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return passwordEncoder;
-    }
-
     /**
-     * Custom UserDetailsService that loads roles from the database.
+     * Password encoder with a cost calibrated to this machine (see
+     * {@link PasswordHashCalibration}) whose hashing runs on a bounded pool instead of the
+     * request threads (see {@link BoundedPasswordEncoder}).
      */
     @Bean
-    public UserDetailsService userDetailsService() {
-        return username -> {
-            // For demo purposes, only "admin" user is supported
-            // In a real app, you would load user credentials from a database too
-            if ("admin".equals(username)) {
-                String userIdentifier = RoleService.buildFormUserIdentifier(username);
-                Set<GrantedAuthority> authorities = roleService.getRolesForUser(userIdentifier);
-
-                logger.info("✓ Form user '{}' authenticated with roles: {}", username, authorities);
-
-                return User.builder()
-                        .username(username)
-                        .password(passwordEncoder.encode("admin123"))
-                        .authorities(authorities)
-                        .build();
-            }
-
-            throw new UsernameNotFoundException("User not found: " + username);
-        };
+    public PasswordEncoder passwordEncoder(PasswordHashingProperties passwordHashing, MeterRegistry meterRegistry) {
+        return new BoundedPasswordEncoder(PasswordHashCalibration.create(passwordHashing), passwordHashing,
+                meterRegistry);
     }
 }
@@ -0,0 +1,45 @@
+package dev.danvega;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding up to {@code burst} tokens and regaining one every
+ * {@code period}.
+ * <p>
+ * Stored as a single timestamp, the time at which the bucket will be full again (the
+ * generic cell rate algorithm), so taking a token is one compare-and-set and a bucket costs
+ * a few dozen bytes. Times are {@link System#nanoTime()} values supplied by the caller.
+ */
+final class TokenBucket {
+
+    private final long periodNanos;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(int burst, Duration period, long now) {
+        this.periodNanos = period.toNanos();
+        this.burstNanos = (burst - 1) * periodNanos;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * Take a token if one is available.
+     *
+     * @param now the current {@link System#nanoTime()}
+     * @return 0 if a token was taken, otherwise the nanoseconds until one is available
+     */
+    long tryConsume(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long base = current - now > 0 ? current : now;
+            long wait = base - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, base + periodNanos)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the adaptive concurrency limit on the authentication endpoints.
+ *
+ * <p>Bound from the {@code app.auth-admission.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param enabled whether requests beyond the limit are shed (default true)
+ * @param initialLimit concurrent authentication requests allowed at startup (default 20)
+ * @param minLimit the limit never drops below this (default 2)
+ * @param maxLimit the limit never grows beyond this (default 200)
+ * @param latencyTarget a request taking longer than this counts as overload and shrinks the
+ *     limit (default 1 second)
+ * @param backoffRatio factor the limit is multiplied by on overload (default 0.9)
+ * @param retryAfter value of the {@code Retry-After} header sent with a shed request's 503
+ *     (default 1 second)
+ */
+@ConfigurationProperties(prefix = "app.auth-admission")
+public record AuthenticationAdmissionProperties(
+    Boolean enabled,
+    int initialLimit,
+    int minLimit,
+    int maxLimit,
+    Duration latencyTarget,
+    double backoffRatio,
+    Duration retryAfter) {
+
+  public AuthenticationAdmissionProperties {
+    enabled = enabled != null ? enabled : true;
+    minLimit = minLimit > 0 ? minLimit : 2;
+    maxLimit = maxLimit >= minLimit ? maxLimit : Math.max(200, minLimit);
+    initialLimit = Math.clamp(initialLimit > 0 ? initialLimit : 20, minLimit, maxLimit);
+    latencyTarget = latencyTarget != null ? latencyTarget : Duration.ofSeconds(1);
+    backoffRatio = backoffRatio > 0 && backoffRatio < 1 ? backoffRatio : 0.9;
+    retryAfter = retryAfter != null ? retryAfter : Duration.ofSeconds(1);
+  }
+
+  /** Properties with every value left at its default. */
+  public static AuthenticationAdmissionProperties defaults() {
+    return new AuthenticationAdmissionProperties(null, 0, 0, 0, null, 0, null);
+  }
+}
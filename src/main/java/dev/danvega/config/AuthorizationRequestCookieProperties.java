@@ -0,0 +1,41 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the encrypted cookie that carries an OAuth2 login in progress (state, nonce
+ * and PKCE verifier) from the redirect to the provider until its callback, instead of the
+ * HTTP session.
+ *
+ * <p>Bound from the {@code app.oauth2.authorization-request-cookie.*} properties. Missing values
+ * fall back to the documented defaults, so an empty configuration is always valid.
+ *
+ * @param name name of the cookie (default {@code APP_OAUTH2_REQUEST})
+ * @param keys Base64-encoded 256-bit AES keys; the first encrypts, all of them decrypt. When
+ *     empty, a random key is generated at startup and a callback can only be handled by the
+ *     node that sent the user to the provider (default none)
+ * @param maxAge time the user has to complete the login at the provider (default 10 minutes)
+ * @param secure whether the cookie is only sent over HTTPS (default true; browsers also send
+ *     secure cookies to {@code http://localhost})
+ */
+@ConfigurationProperties(prefix = "app.oauth2.authorization-request-cookie")
+public record AuthorizationRequestCookieProperties(
+    String name,
+    List<String> keys,
+    Duration maxAge,
+    Boolean secure) {
+
+  public AuthorizationRequestCookieProperties {
+    name = name != null && !name.isBlank() ? name : "APP_OAUTH2_REQUEST";
+    keys = keys != null ? List.copyOf(keys) : List.of();
+    maxAge = maxAge != null && maxAge.isPositive() ? maxAge : Duration.ofMinutes(10);
+    secure = secure != null ? secure : true;
+  }
+
+  /** Properties with every value left at its default. */
+  public static AuthorizationRequestCookieProperties defaults() {
+    return new AuthorizationRequestCookieProperties(null, null, null, null);
+  }
+}
@@ -0,0 +1,43 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the stateless CSRF tokens, which are signed with HMAC-SHA256 instead of being
+ * stored on the server.
+ *
+ * <p>Bound from the {@code app.csrf.*} properties. Missing values fall back to the documented
+ * defaults, so an empty configuration is always valid.
+ *
+ * @param keys Base64-encoded HMAC keys of at least 256 bits; the first signs, all of them
+ *     verify, so a new key is rolled out by putting it first and the old one is retired after
+ *     {@code max-age}. When empty, a random key is generated at startup and forms rendered
+ *     before a restart, or by another node, are rejected (default none)
+ * @param maxAge how long a token is accepted after the page carrying it was rendered (default
+ *     8 hours)
+ * @param bindingCookie name of the cookie holding the random value a visitor's tokens are bound
+ *     to until they log in (default {@code APP_CSRF})
+ * @param secure whether that cookie is only sent over HTTPS (default true; browsers also send
+ *     secure cookies to {@code http://localhost})
+ */
+@ConfigurationProperties(prefix = "app.csrf")
+public record CsrfTokenProperties(
+    List<String> keys,
+    Duration maxAge,
+    String bindingCookie,
+    Boolean secure) {
+
+  public CsrfTokenProperties {
+    keys = keys != null ? List.copyOf(keys) : List.of();
+    maxAge = maxAge != null && maxAge.isPositive() ? maxAge : Duration.ofHours(8);
+    bindingCookie = bindingCookie != null && !bindingCookie.isBlank() ? bindingCookie : "APP_CSRF";
+    secure = secure != null ? secure : true;
+  }
+
+  /** Properties with every value left at its default. */
+  public static CsrfTokenProperties defaults() {
+    return new CsrfTokenProperties(null, null, null, null);
+  }
+}
@@ -0,0 +1,32 @@
+package dev.danvega.config;
+
+import dev.danvega.repository.WriteBehindJdbcSessionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.session.config.annotation.web.http.EnableSpringHttpSession;
+
+/**
+ * Replaces the servlet container's sessions with Spring Session backed by {@link
+ * WriteBehindJdbcSessionRepository}, so sessions survive restarts and are shared by every node
+ * on the same database.
+ *
+ * <p>The default {@code jdbc:h2:mem} database lives inside one process, so with it sessions
+ * only survive as long as that process and are not shared; nodes share sessions once {@code
+ * spring.datasource.url} points at a database server they all use.
+ *
+ * <p>Only active with {@code app.session.jdbc.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.session.jdbc.enabled", havingValue = "true")
+@EnableSpringHttpSession
+public class JdbcSessionConfig {
+
+  @Bean
+  public WriteBehindJdbcSessionRepository sessionRepository(
+      DataSource dataSource, JdbcSessionProperties properties, MeterRegistry meterRegistry) {
+    return new WriteBehindJdbcSessionRepository(dataSource, properties, meterRegistry);
+  }
+}
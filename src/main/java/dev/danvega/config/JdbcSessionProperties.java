@@ -0,0 +1,42 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for keeping HTTP sessions in the application's database.
+ *
+ * <p>Bound from the {@code app.session.jdbc.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param enabled whether sessions are stored in the {@code app_sessions} table instead of the
+ *     servlet container's memory (default false)
+ * @param timeout how long a session may go unused before it expires (default 30 minutes)
+ * @param flushInterval how often batched session updates are written (default 1 second)
+ * @param batchSize session updates written per flush interval, in one JDBC batch (default 500)
+ * @param cleanupInterval how often expired sessions are deleted (default 1 minute)
+ */
+@ConfigurationProperties(prefix = "app.session.jdbc")
+public record JdbcSessionProperties(
+    boolean enabled,
+    Duration timeout,
+    Duration flushInterval,
+    int batchSize,
+    Duration cleanupInterval) {
+
+  public JdbcSessionProperties {
+    timeout = timeout != null && timeout.isPositive() ? timeout : Duration.ofMinutes(30);
+    flushInterval =
+        flushInterval != null && flushInterval.isPositive() ? flushInterval : Duration.ofSeconds(1);
+    batchSize = batchSize > 0 ? batchSize : 500;
+    cleanupInterval =
+        cleanupInterval != null && cleanupInterval.isPositive()
+            ? cleanupInterval
+            : Duration.ofMinutes(1);
+  }
+
+  /** Properties with every value left at its default. */
+  public static JdbcSessionProperties defaults() {
+    return new JdbcSessionProperties(false, null, null, 0, null);
+  }
+}
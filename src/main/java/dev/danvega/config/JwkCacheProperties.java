@@ -0,0 +1,43 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the cached JWK sets used to validate OIDC ID tokens.
+ *
+ * <p>Bound from the {@code app.oauth2.jwk-cache.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param ttl how long a fetched key set is considered fresh when the response carries no
+ *     {@code Cache-Control: max-age} (default 5 minutes)
+ * @param refreshAhead how long before a key set goes stale it is refetched in the background
+ *     (default 1 minute)
+ * @param retryInterval delay before retrying a failed background fetch; the previous keys are
+ *     served meanwhile (default 30 seconds)
+ * @param unknownKeyRefetchInterval minimum time between refetches triggered by a token signed
+ *     with a key id the cached set does not contain (default 30 seconds)
+ * @param timeout connect and read timeout of a fetch (default 5 seconds)
+ */
+@ConfigurationProperties(prefix = "app.oauth2.jwk-cache")
+public record JwkCacheProperties(
+    Duration ttl,
+    Duration refreshAhead,
+    Duration retryInterval,
+    Duration unknownKeyRefetchInterval,
+    Duration timeout) {
+
+  public JwkCacheProperties {
+    ttl = ttl != null ? ttl : Duration.ofMinutes(5);
+    refreshAhead = refreshAhead != null ? refreshAhead : Duration.ofMinutes(1);
+    retryInterval = retryInterval != null ? retryInterval : Duration.ofSeconds(30);
+    unknownKeyRefetchInterval =
+        unknownKeyRefetchInterval != null ? unknownKeyRefetchInterval : Duration.ofSeconds(30);
+    timeout = timeout != null ? timeout : Duration.ofSeconds(5);
+  }
+
+  /** Properties with every value left at its default. */
+  public static JwkCacheProperties defaults() {
+    return new JwkCacheProperties(null, null, null, null, null);
+  }
+}
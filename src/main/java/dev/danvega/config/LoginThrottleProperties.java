@@ -0,0 +1,47 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for throttling form login attempts before any password is hashed.
+ *
+ * <p>Bound from the {@code app.login-throttle.*} properties. Missing values fall back to the
+ * defaults documented on each nested record, so an empty configuration is always valid.
+ *
+ * @param enabled whether login attempts are throttled (default true)
+ * @param username attempts allowed per submitted username (default 5, then 1 every 12 seconds)
+ * @param clientIp attempts allowed per client IP address (default 20, then 1 every 3 seconds)
+ * @param maximumKeys maximum number of usernames, and of client IPs, tracked at once; the least
+ *     recently used are dropped beyond it (default 100,000)
+ */
+@ConfigurationProperties(prefix = "app.login-throttle")
+public record LoginThrottleProperties(
+    Boolean enabled, Limit username, Limit clientIp, long maximumKeys) {
+
+  public LoginThrottleProperties {
+    enabled = enabled != null ? enabled : true;
+    username = username != null ? username : new Limit(5, Duration.ofSeconds(12));
+    clientIp = clientIp != null ? clientIp : new Limit(20, Duration.ofSeconds(3));
+    maximumKeys = maximumKeys > 0 ? maximumKeys : 100_000;
+  }
+
+  /** Properties with every value left at its default. */
+  public static LoginThrottleProperties defaults() {
+    return new LoginThrottleProperties(null, null, null, 0);
+  }
+
+  /**
+   * Token bucket: up to {@code burst} attempts at once, refilled by one every {@code period}.
+   *
+   * @param burst attempts allowed back to back (default 1)
+   * @param period time to regain one attempt (default 1 second)
+   */
+  public record Limit(int burst, Duration period) {
+
+    public Limit {
+      burst = burst > 0 ? burst : 1;
+      period = period != null && period.isPositive() ? period : Duration.ofSeconds(1);
+    }
+  }
+}
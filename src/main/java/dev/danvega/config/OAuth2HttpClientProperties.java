@@ -0,0 +1,62 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import java.util.Map;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the pooled HTTP client used for token exchanges and userinfo requests.
+ *
+ * <p>Bound from the {@code app.oauth2.http.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param maxConnections maximum number of open connections per provider (default 20)
+ * @param connectTimeout default connect timeout (default 2 seconds)
+ * @param readTimeout default time to wait for a response (default 5 seconds)
+ * @param idleTimeout how long an unused connection is kept open for reuse (default 30 seconds)
+ * @param registrations timeouts for individual client registrations, keyed by registration
+ *     id; unset values fall back to the defaults above
+ */
+@ConfigurationProperties(prefix = "app.oauth2.http")
+public record OAuth2HttpClientProperties(
+    int maxConnections,
+    Duration connectTimeout,
+    Duration readTimeout,
+    Duration idleTimeout,
+    Map<String, Timeouts> registrations) {
+
+  public OAuth2HttpClientProperties {
+    maxConnections = maxConnections > 0 ? maxConnections : 20;
+    connectTimeout = connectTimeout != null ? connectTimeout : Duration.ofSeconds(2);
+    readTimeout = readTimeout != null ? readTimeout : Duration.ofSeconds(5);
+    idleTimeout = idleTimeout != null ? idleTimeout : Duration.ofSeconds(30);
+    registrations = registrations != null ? Map.copyOf(registrations) : Map.of();
+  }
+
+  /** Properties with every value left at its default. */
+  public static OAuth2HttpClientProperties defaults() {
+    return new OAuth2HttpClientProperties(0, null, null, null, null);
+  }
+
+  /** Connect timeout for a client registration. */
+  public Duration connectTimeout(String registrationId) {
+    Timeouts timeouts = registrations.get(registrationId);
+    return timeouts != null && timeouts.connectTimeout() != null
+        ? timeouts.connectTimeout()
+        : connectTimeout;
+  }
+
+  /** Read timeout for a client registration. */
+  public Duration readTimeout(String registrationId) {
+    Timeouts timeouts = registrations.get(registrationId);
+    return timeouts != null && timeouts.readTimeout() != null ? timeouts.readTimeout() : readTimeout;
+  }
+
+  /**
+   * Timeouts overriding the defaults for one client registration.
+   *
+   * @param connectTimeout connect timeout, or null for the default
+   * @param readTimeout time to wait for a response, or null for the default
+   */
+  public record Timeouts(Duration connectTimeout, Duration readTimeout) {}
+}
@@ -0,0 +1,26 @@
+package dev.danvega.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Executor for the lookups an OAuth2 login runs alongside its provider requests: the role query
+ * of an OIDC login and GitHub's {@code /user/emails} request.
+ *
+ * <p>Each task gets its own virtual thread, since the tasks only wait on the database or the
+ * network. The executor is closed with the context, which waits for lookups still in flight. It
+ * is not a default candidate, so it does not replace Spring Boot's {@code applicationTaskExecutor}
+ * and is only injected where asked for by name.
+ */
+@Configuration
+public class OAuth2LookupExecutorConfig {
+
+  public static final String OAUTH2_LOOKUP_EXECUTOR = "oauth2LookupExecutor";
+
+  @Bean(name = OAUTH2_LOOKUP_EXECUTOR, destroyMethod = "close", defaultCandidate = false)
+  public ExecutorService oauth2LookupExecutor() {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("oauth2-lookup-", 0).factory());
+  }
+}
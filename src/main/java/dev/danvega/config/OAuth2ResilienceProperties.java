@@ -0,0 +1,35 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for the bulkhead and circuit breaker each OAuth2 provider's token and userinfo
+ * requests go through.
+ *
+ * <p>Bound from the {@code app.oauth2.resilience.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param maxConcurrentCalls requests that may be in flight to one provider at once; further
+ *     ones fail immediately (default 10)
+ * @param failureThreshold consecutive failed requests (I/O errors and 5xx responses) that open
+ *     a provider's circuit (default 5)
+ * @param openDuration how long an open circuit fails requests before letting one trial
+ *     request through (default 30 seconds)
+ */
+@ConfigurationProperties(prefix = "app.oauth2.resilience")
+public record OAuth2ResilienceProperties(
+    int maxConcurrentCalls, int failureThreshold, Duration openDuration) {
+
+  public OAuth2ResilienceProperties {
+    maxConcurrentCalls = maxConcurrentCalls > 0 ? maxConcurrentCalls : 10;
+    failureThreshold = failureThreshold > 0 ? failureThreshold : 5;
+    openDuration =
+        openDuration != null && openDuration.isPositive() ? openDuration : Duration.ofSeconds(30);
+  }
+
+  /** Properties with every value left at its default. */
+  public static OAuth2ResilienceProperties defaults() {
+    return new OAuth2ResilienceProperties(0, 0, null);
+  }
+}
@@ -0,0 +1,45 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for how passwords are hashed: the algorithm and cost, and the pool that runs
+ * hashing off the request threads.
+ *
+ * <p>Bound from the {@code app.password-hashing.*} properties. Missing values fall back to the
+ * documented defaults, so an empty configuration is always valid.
+ *
+ * @param threads number of hashing threads (default: available processors)
+ * @param queueCapacity hashing requests that may wait for a thread before further logins are
+ *     turned away with 503 (default 4 per thread)
+ * @param retryAfter value of the {@code Retry-After} header sent with that 503 (default 1
+ *     second)
+ * @param algorithm algorithm new hashes are created with (default bcrypt)
+ * @param targetTime time one hash should take on this machine; the cost factor is calibrated
+ *     at startup to the highest one that stays within it, but never below the algorithm's
+ *     minimum (default 50 milliseconds)
+ */
+@ConfigurationProperties(prefix = "app.password-hashing")
+public record PasswordHashingProperties(
+    int threads, int queueCapacity, Duration retryAfter, Algorithm algorithm, Duration targetTime) {
+
+  public PasswordHashingProperties {
+    threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    queueCapacity = queueCapacity > 0 ? queueCapacity : threads * 4;
+    retryAfter = retryAfter != null ? retryAfter : Duration.ofSeconds(1);
+    algorithm = algorithm != null ? algorithm : Algorithm.BCRYPT;
+    targetTime = targetTime != null ? targetTime : Duration.ofMillis(50);
+  }
+
+  /** Properties with every value left at its default. */
+  public static PasswordHashingProperties defaults() {
+    return new PasswordHashingProperties(0, 0, null, null, null);
+  }
+
+  /** Password hashing algorithms new hashes can be created with. */
+  public enum Algorithm {
+    BCRYPT,
+    PBKDF2
+  }
+}
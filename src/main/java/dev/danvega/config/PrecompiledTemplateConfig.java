@@ -0,0 +1,24 @@
+package dev.danvega.config;
+
+import dev.danvega.PrecompiledTemplateVerifier;
+import gg.jte.TemplateEngine;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Checks at startup that every jte template was precompiled, and loads them all before the
+ * first request.
+ *
+ * <p>Only active with {@code gg.jte.use-precompiled-templates=true}, which the {@code prod}
+ * profile sets. In development mode templates are compiled from {@code src/main/jte} on demand.
+ */
+@Configuration
+@ConditionalOnProperty(name = "gg.jte.use-precompiled-templates", havingValue = "true")
+public class PrecompiledTemplateConfig {
+
+  @Bean
+  public PrecompiledTemplateVerifier precompiledTemplateVerifier(TemplateEngine templateEngine) {
+    return new PrecompiledTemplateVerifier(templateEngine);
+  }
+}
@@ -0,0 +1,84 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for how {@link dev.danvega.service.RoleService} resolves user roles.
+ *
+ * <p>Bound from the {@code app.roles.*} properties. Missing values fall back to the defaults
+ * documented on each nested record, so an empty configuration is always valid.
+ */
+@ConfigurationProperties(prefix = "app.roles")
+public record RoleLookupProperties(Cache cache, Index index, Filter filter) {
+
+  public RoleLookupProperties {
+    cache = cache != null ? cache : new Cache(0, null, null);
+    index = index != null ? index : new Index(false, null, null);
+    filter = filter != null ? filter : new Filter(null, 0, null, null);
+  }
+
+  /** Properties with every value left at its default. */
+  public static RoleLookupProperties defaults() {
+    return new RoleLookupProperties(null, null, null);
+  }
+
+  /**
+   * Per-user role cache in front of the database.
+   *
+   * @param maximumSize maximum number of cached users (default 10,000)
+   * @param ttl hard expiry after a load, after which the next read blocks on the database
+   *     (default 10 minutes)
+   * @param refreshAfter age after which a read still returns the cached roles but triggers a
+   *     background reload (default 1 minute)
+   */
+  public record Cache(long maximumSize, Duration ttl, Duration refreshAfter) {
+
+    public Cache {
+      maximumSize = maximumSize > 0 ? maximumSize : 10_000;
+      ttl = ttl != null ? ttl : Duration.ofMinutes(10);
+      refreshAfter = refreshAfter != null ? refreshAfter : Duration.ofMinutes(1);
+    }
+  }
+
+  /**
+   * In-memory snapshot of every role assignment, served without touching the database.
+   *
+   * @param enabled whether lookups are answered from the snapshot (default false)
+   * @param pollInterval how often the {@code role_assignment_changes} log is checked for new
+   *     writes (default 5 seconds)
+   * @param changeRetention age after which entries of the change log are deleted (default 1
+   *     hour)
+   */
+  public record Index(boolean enabled, Duration pollInterval, Duration changeRetention) {
+
+    public Index {
+      pollInterval = pollInterval != null ? pollInterval : Duration.ofSeconds(5);
+      changeRetention = changeRetention != null ? changeRetention : Duration.ofHours(1);
+    }
+  }
+
+  /**
+   * Bloom filter of every user with at least one role assignment, consulted before the cache
+   * so users without roles never reach the database.
+   *
+   * @param enabled whether lookups are filtered (default true)
+   * @param falsePositiveRate share of users without roles that the filter is sized to let
+   *     through to the database (default 0.01)
+   * @param rebuildInterval how often the filter is rebuilt from {@code role_assignments},
+   *     which drops removed users (default 10 minutes)
+   * @param pollInterval how often users with new entries in the {@code role_assignment_changes}
+   *     log are added, which picks up writes made outside JPA (default 5 seconds)
+   */
+  public record Filter(
+      Boolean enabled, double falsePositiveRate, Duration rebuildInterval, Duration pollInterval) {
+
+    public Filter {
+      enabled = enabled != null ? enabled : true;
+      falsePositiveRate =
+          falsePositiveRate > 0 && falsePositiveRate < 1 ? falsePositiveRate : 0.01;
+      rebuildInterval = rebuildInterval != null ? rebuildInterval : Duration.ofMinutes(10);
+      pollInterval = pollInterval != null ? pollInterval : Duration.ofSeconds(5);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for keeping the security context in an encrypted cookie instead of the HTTP
+ * session.
+ *
+ * <p>Bound from the {@code app.security-context.cookie.*} properties. Missing values fall back
+ * to the documented defaults, so an empty configuration is always valid.
+ *
+ * @param enabled whether the security context is kept in the cookie (default false)
+ * @param name name of the cookie (default {@code APP_AUTH})
+ * @param keys Base64-encoded 256-bit AES keys; the first encrypts, all of them decrypt, so a
+ *     new key is rolled out by putting it first and the old one is retired once no cookie
+ *     encrypted with it is still valid. When empty, a random key is generated at startup and
+ *     logins do not survive a restart or move between nodes (default none)
+ * @param maxAge lifetime of a login, after which the cookie is rejected (default 8 hours)
+ * @param maxSize largest encoded cookie value written; larger security contexts are kept in the
+ *     HTTP session instead (default 3,800 bytes, leaving room for the attributes within the
+ *     4 KB browsers guarantee per cookie)
+ * @param secure whether the cookie is only sent over HTTPS (default true; browsers also send
+ *     secure cookies to {@code http://localhost})
+ */
+@ConfigurationProperties(prefix = "app.security-context.cookie")
+public record SecurityContextCookieProperties(
+    boolean enabled,
+    String name,
+    List<String> keys,
+    Duration maxAge,
+    int maxSize,
+    Boolean secure) {
+
+  public SecurityContextCookieProperties {
+    name = name != null && !name.isBlank() ? name : "APP_AUTH";
+    keys = keys != null ? List.copyOf(keys) : List.of();
+    maxAge = maxAge != null && maxAge.isPositive() ? maxAge : Duration.ofHours(8);
+    maxSize = maxSize > 0 ? maxSize : 3_800;
+    secure = secure != null ? secure : true;
+  }
+
+  /** Properties with every value left at its default. */
+  public static SecurityContextCookieProperties defaults() {
+    return new SecurityContextCookieProperties(false, null, null, null, 0, null);
+  }
+}
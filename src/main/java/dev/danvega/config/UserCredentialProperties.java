@@ -0,0 +1,38 @@
+package dev.danvega.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for how {@link dev.danvega.service.FormUserDetailsService} loads form login users.
+ *
+ * <p>Bound from the {@code app.users.*} properties. Missing values fall back to the defaults
+ * documented on each nested record, so an empty configuration is always valid.
+ */
+@ConfigurationProperties(prefix = "app.users")
+public record UserCredentialProperties(Cache cache) {
+
+  public UserCredentialProperties {
+    cache = cache != null ? cache : new Cache(0, null);
+  }
+
+  /** Properties with every value left at its default. */
+  public static UserCredentialProperties defaults() {
+    return new UserCredentialProperties(null);
+  }
+
+  /**
+   * Per-user credential cache in front of the database.
+   *
+   * @param maximumSize maximum number of cached users (default 10,000)
+   * @param ttl expiry after a load, bounding how long a password or status changed outside
+   *     the application keeps its old value (default 5 minutes)
+   */
+  public record Cache(long maximumSize, Duration ttl) {
+
+    public Cache {
+      maximumSize = maximumSize > 0 ? maximumSize : 10_000;
+      ttl = ttl != null ? ttl : Duration.ofMinutes(5);
+    }
+  }
+}
@@ -6,8 +6,11 @@ import jakarta.persistence.*;
  * Entity representing the assignment of a role to a user.
  * User is identified by a string: "provider:identifier" format.
  * Examples: "form:admin", "google:user@gmail.com", "github:username"
+ * <p>
+ * Writes are announced as {@link RoleAssignmentChangedEvent}s so role caches can be evicted.
  */
 @Entity
+@EntityListeners(RoleAssignmentListener.class)
 @Table(name = "role_assignments", indexes = {
         @Index(name = "idx_user_identifier", columnList = "user_identifier")
 })
@@ -0,0 +1,10 @@
+package dev.danvega.domain;
+
+/**
+ * Published whenever a {@link RoleAssignment} is inserted, updated or deleted through JPA.
+ * Listeners use it to drop any role data they have cached for the affected user.
+ *
+ * @param userIdentifier the identifier of the user whose roles changed (e.g., "form:admin")
+ */
+public record RoleAssignmentChangedEvent(String userIdentifier) {
+}
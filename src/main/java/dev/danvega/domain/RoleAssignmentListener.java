@@ -0,0 +1,43 @@
+package dev.danvega.domain;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA entity listener that turns writes to {@link RoleAssignment} into
+ * {@link RoleAssignmentChangedEvent}s.
+ * <p>
+ * The event is published as soon as the write is flushed, so readers in the same
+ * transaction see fresh roles, and once more after the transaction completes, so
+ * anything cached from uncommitted (or rolled back) data is dropped as well.
+ * Instantiated by Hibernate through Spring's bean container.
+ */
+public class RoleAssignmentListener {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public RoleAssignmentListener(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    void onRoleAssignmentWritten(RoleAssignment assignment) {
+        RoleAssignmentChangedEvent event = new RoleAssignmentChangedEvent(assignment.getUserIdentifier());
+        eventPublisher.publishEvent(event);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    eventPublisher.publishEvent(event);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dev.danvega.repository;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * H2 row trigger on {@code role_assignments} that appends the affected user identifier
+ * to {@code role_assignment_changes}.
+ * <p>
+ * The change log records every write, including ones made outside JPA (for example through
+ * the H2 console), and its increasing ids act as the version counter the role index uses
+ * for incremental refreshes. Registered by the Liquibase changeset
+ * {@code 004-create-role-assignment-changes.yaml}.
+ * <p>
+ * When the database runs in this JVM (the embedded H2 database), the trigger also passes each
+ * identifier to the registered listeners, inside the writing transaction and before it commits.
+ */
+public class RoleAssignmentChangeTrigger implements Trigger {
+
+    private static final int USER_IDENTIFIER_COLUMN = 1;
+
+    private static final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private static final String INSERT_CHANGE_SQL =
+            "INSERT INTO role_assignment_changes (user_identifier) VALUES (?)";
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        Object oldIdentifier = oldRow != null ? oldRow[USER_IDENTIFIER_COLUMN] : null;
+        Object newIdentifier = newRow != null ? newRow[USER_IDENTIFIER_COLUMN] : null;
+
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_CHANGE_SQL)) {
+            if (oldIdentifier != null) {
+                insert.setObject(1, oldIdentifier);
+                insert.executeUpdate();
+            }
+            if (newIdentifier != null && !Objects.equals(oldIdentifier, newIdentifier)) {
+                insert.setObject(1, newIdentifier);
+                insert.executeUpdate();
+            }
+        }
+
+        for (Consumer<String> listener : listeners) {
+            if (oldIdentifier != null) {
+                listener.accept(oldIdentifier.toString());
+            }
+            if (newIdentifier != null && !Objects.equals(oldIdentifier, newIdentifier)) {
+                listener.accept(newIdentifier.toString());
+            }
+        }
+    }
+
+    /**
+     * Register a callback for the user identifier of every row written to
+     * {@code role_assignments}, including writes that are later rolled back.
+     * <p>
+     * Listeners are shared by every database in this JVM that has the trigger.
+     *
+     * @param listener called with each identifier; an exception fails the write
+     */
+    public static void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+}
@@ -2,6 +2,8 @@ package dev.danvega.repository;
 
 import dev.danvega.domain.RoleAssignment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -20,4 +22,18 @@ public interface RoleAssignmentRepository extends JpaRepository<RoleAssignment,
      * @return list of role assignments for the user
      */
     List<RoleAssignment> findByUserIdentifier(String userIdentifier);
+
+    /**
+     * Find the names of all roles assigned to a user.
+     * <p>
+     * Resolved with a single join that selects only the role name, so no
+     * {@link RoleAssignment} or {@link dev.danvega.domain.Role} entities are
+     * hydrated, registered in the persistence context or dirty-checked.
+     *
+     * @param userIdentifier the user identifier (e.g., "form:admin",
+     *                       "google:user@gmail.com")
+     * @return role names assigned to the user (e.g., "ROLE_ADMIN")
+     */
+    @Query("select r.name from RoleAssignment ra join ra.role r where ra.userIdentifier = :userIdentifier")
+    List<String> findRoleNamesByUserIdentifier(@Param("userIdentifier") String userIdentifier);
 }
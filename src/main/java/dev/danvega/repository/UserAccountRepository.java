@@ -0,0 +1,58 @@
+package dev.danvega.repository;
+
+import dev.danvega.domain.UserAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for UserAccount entities.
+ */
+@Repository
+public interface UserAccountRepository extends JpaRepository<UserAccount, Long> {
+
+    /**
+     * Find a user by username.
+     *
+     * @param username the username (e.g., "admin")
+     * @return the user if found
+     */
+    Optional<UserAccount> findByUsername(String username);
+
+    /**
+     * Load a user's credentials together with their role names in one query.
+     * <p>
+     * Role assignments are left joined, so a user without roles still yields one row with a
+     * null role name. An unknown user yields no rows.
+     *
+     * @param username       the username (e.g., "admin")
+     * @param userIdentifier the user's identifier in {@code role_assignments} (e.g., "form:admin")
+     * @return one row per assigned role, or a single row if the user has none
+     */
+    @Query("""
+            select new dev.danvega.repository.UserCredentialRow(u.passwordHash, u.enabled, r.name)
+            from UserAccount u
+            left join RoleAssignment ra on ra.userIdentifier = :userIdentifier
+            left join ra.role r
+            where u.username = :username""")
+    List<UserCredentialRow> findCredentialsByUsername(@Param("username") String username,
+            @Param("userIdentifier") String userIdentifier);
+
+    /**
+     * Replace a user's password hash.
+     *
+     * @param username     the username (e.g., "admin")
+     * @param passwordHash the new encoded password
+     * @return the number of users updated (0 if the user does not exist)
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserAccount u set u.passwordHash = :passwordHash where u.username = :username")
+    int updatePasswordHash(@Param("username") String username, @Param("passwordHash") String passwordHash);
+}
@@ -0,0 +1,12 @@
+package dev.danvega.repository;
+
+/**
+ * One row of {@link UserAccountRepository#findCredentialsByUsername}: the user's password
+ * hash and status, joined with one of their role names.
+ *
+ * @param passwordHash the encoded password
+ * @param enabled      whether the account may log in
+ * @param roleName     a role assigned to the user, or null if they have none
+ */
+public record UserCredentialRow(String passwordHash, boolean enabled, String roleName) {
+}
@@ -0,0 +1,548 @@
+package dev.danvega.repository;
+
+import dev.danvega.config.JdbcSessionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.MapSession;
+import org.springframework.session.PrincipalNameIndexResolver;
+import org.springframework.session.Session;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spring Session repository that keeps sessions in the {@code app_sessions} table of the
+ * application's database, one row per session with its attributes serialized together.
+ * <p>
+ * Most saves only move the last access time, or change an attribute such as the CSRF token
+ * or the saved request, so they are not written right away: the latest state of each such
+ * session waits in memory and they are written in a JDBC batch every
+ * {@code app.session.jdbc.flush-interval}, at most {@code batch-size} of them per interval.
+ * Saving a session again before then only replaces its pending state. New sessions, sessions
+ * whose id or principal changed (login, logout) and deletions are written immediately, so
+ * every node on the same database sees them at once. Until it is flushed, a pending change is
+ * visible on this node only. Batched writes are updates, so they never bring back a session
+ * another node deleted. A batch is written without holding up immediate writes; only an
+ * immediate write of a session in the batch being written waits for it, so that it is not
+ * overtaken by the older state.
+ * <p>
+ * Only standard SQL is used, so the table can live in any database: an immediate write updates
+ * the row, and inserts it if there was none.
+ * <p>
+ * Sessions can be looked up by principal name, which has its own indexed column. Expired
+ * rows are deleted every {@code cleanup-interval}. Publishes {@code sessions.jdbc.writes}
+ * (tagged {@code mode=immediate|batched}), {@code sessions.jdbc.coalesced} (saves absorbed by
+ * an update that was already pending) and {@code sessions.jdbc.pending}.
+ */
+public class WriteBehindJdbcSessionRepository
+        implements FindByIndexNameSessionRepository<WriteBehindJdbcSessionRepository.JdbcSession>,
+        SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindJdbcSessionRepository.class);
+
+    static final String INSERT_SQL = """
+            INSERT INTO app_sessions (session_id, creation_time, last_access_time, max_inactive_interval,
+                expiry_time, principal_name, attributes)
+            VALUES (?, ?, ?, ?, ?, ?, ?)""";
+
+    static final String REPLACE_SQL = """
+            UPDATE app_sessions SET creation_time = ?, last_access_time = ?, max_inactive_interval = ?,
+                expiry_time = ?, principal_name = ?, attributes = ?
+            WHERE session_id = ?""";
+
+    static final String TOUCH_SQL =
+            "UPDATE app_sessions SET last_access_time = ?, expiry_time = ? WHERE session_id = ?";
+
+    static final String UPDATE_SQL = """
+            UPDATE app_sessions SET last_access_time = ?, max_inactive_interval = ?, expiry_time = ?,
+                attributes = ?
+            WHERE session_id = ?""";
+
+    static final String DELETE_SQL = "DELETE FROM app_sessions WHERE session_id = ?";
+
+    static final String DELETE_EXPIRED_SQL = "DELETE FROM app_sessions WHERE expiry_time < ?";
+
+    private static final String SELECT_COLUMNS =
+            "SELECT session_id, creation_time, last_access_time, max_inactive_interval, principal_name, attributes"
+                    + " FROM app_sessions";
+
+    static final String SELECT_SQL = SELECT_COLUMNS + " WHERE session_id = ?";
+
+    static final String SELECT_BY_PRINCIPAL_SQL = SELECT_COLUMNS + " WHERE principal_name = ? AND expiry_time >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcSessionProperties settings;
+    private final PrincipalNameIndexResolver<Session> principalNameResolver = new PrincipalNameIndexResolver<>();
+    private final SerializingConverter serializer = new SerializingConverter();
+    private final DeserializingConverter deserializer = new DeserializingConverter(getClass().getClassLoader());
+    private final RowMapper<StoredSession> rowMapper = this::mapRow;
+
+    // Latest unwritten state of each session changed on this node, keyed by session id
+    private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<>();
+    // The batch being written, still read in place of the rows it is about to replace
+    private volatile Batch flushing = Batch.NONE;
+    // Keeps immediate writes from racing each other or the draining of a batch
+    private final Object writeLock = new Object();
+    // One batch written at a time; taken before writeLock, never while holding it
+    private final Object flushLock = new Object();
+
+    private final Counter immediateWrites;
+    private final Counter batchedWrites;
+    private final Counter coalesced;
+
+    private ScheduledExecutorService flusher;
+
+    public WriteBehindJdbcSessionRepository(DataSource dataSource, JdbcSessionProperties settings,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.settings = settings;
+
+        this.immediateWrites = Counter.builder("sessions.jdbc.writes")
+                .description("Session rows written")
+                .tag("mode", "immediate")
+                .register(meterRegistry);
+        this.batchedWrites = Counter.builder("sessions.jdbc.writes")
+                .description("Session rows written")
+                .tag("mode", "batched")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("sessions.jdbc.coalesced")
+                .description("Session saves absorbed by an update that was already pending")
+                .register(meterRegistry);
+        Gauge.builder("sessions.jdbc.pending", pending, Map::size)
+                .description("Sessions with changes waiting for the next batch")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        long flushMillis = settings.flushInterval().toMillis();
+        long cleanupMillis = settings.cleanupInterval().toMillis();
+        flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("session-flusher").factory());
+        flusher.scheduleWithFixedDelay(this::flushBatchQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        flusher.scheduleWithFixedDelay(this::deleteExpiredQuietly, cleanupMillis, cleanupMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Writing pending session changes on shutdown failed", e);
+        }
+    }
+
+    @Override
+    public JdbcSession createSession() {
+        MapSession session = new MapSession();
+        session.setMaxInactiveInterval(settings.timeout());
+        return new JdbcSession(session, null, null);
+    }
+
+    @Override
+    public void save(JdbcSession session) {
+        String principalName = session.attributesChanged
+                ? principalNameResolver.resolveIndexValueFor(session)
+                : session.principalName;
+        if (session.storedId == null || !session.getId().equals(session.storedId)
+                || !Objects.equals(principalName, session.principalName)) {
+            writeNow(session, principalName);
+        } else {
+            writeLater(session, principalName);
+        }
+        session.storedId = session.getId();
+        session.principalName = principalName;
+        session.attributesChanged = false;
+    }
+
+    @Override
+    public JdbcSession findById(String id) {
+        StoredSession stored = find(id);
+        if (stored == null) {
+            return null;
+        }
+        if (stored.session().isExpired()) {
+            deleteById(id);
+            return null;
+        }
+        return new JdbcSession(stored.session(), id, stored.principalName());
+    }
+
+    @Override
+    public void deleteById(String id) {
+        synchronized (writeLock) {
+            awaitBatchWith(id);
+            pending.remove(id);
+            jdbcTemplate.update(DELETE_SQL, id);
+        }
+    }
+
+    @Override
+    public Map<String, JdbcSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        if (!PRINCIPAL_NAME_INDEX_NAME.equals(indexName)) {
+            return Map.of();
+        }
+        Map<String, JdbcSession> sessions = new LinkedHashMap<>();
+        for (StoredSession row : jdbcTemplate.query(SELECT_BY_PRINCIPAL_SQL, rowMapper, indexValue,
+                Instant.now().toEpochMilli())) {
+            String id = row.session().getId();
+            // A pending change on this node is newer than the row
+            Pending change = unwritten(id);
+            StoredSession stored = change != null ? change.toStoredSession() : row;
+            if (!stored.session().isExpired()) {
+                sessions.put(id, new JdbcSession(stored.session(), id, stored.principalName()));
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Write all pending session changes now, one batch after another.
+     */
+    public void flush() {
+        do {
+            flushBatch();
+        } while (!pending.isEmpty());
+    }
+
+    /**
+     * Write up to one batch of pending session changes. Immediate writes of other sessions
+     * go ahead meanwhile.
+     *
+     * @return the number of sessions written
+     */
+    public int flushBatch() {
+        synchronized (flushLock) {
+            Batch batch;
+            Map<String, Pending> drained;
+            synchronized (writeLock) {
+                batch = new Batch(nextBatch());
+                if (batch.changes().isEmpty()) {
+                    return 0;
+                }
+                // Published before the changes leave pending, so reads never miss them
+                flushing = batch;
+                drained = drain(batch.changes());
+            }
+            try {
+                write(drained);
+                return drained.size();
+            } finally {
+                flushing = Batch.NONE;
+                batch.written().countDown();
+            }
+        }
+    }
+
+    private void write(Map<String, Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Object[]> touches = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        batch.forEach((id, change) -> {
+            MapSession session = change.session();
+            long lastAccess = session.getLastAccessedTime().toEpochMilli();
+            if (change.attributesChanged()) {
+                updates.add(new Object[] {lastAccess, (int) session.getMaxInactiveInterval().toSeconds(),
+                        expiryTime(session), serialize(session), id});
+            } else {
+                touches.add(new Object[] {lastAccess, expiryTime(session), id});
+            }
+        });
+        try {
+            if (!touches.isEmpty()) {
+                jdbcTemplate.batchUpdate(TOUCH_SQL, touches);
+            }
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+            }
+            batchedWrites.increment(batch.size());
+        } catch (DataAccessException e) {
+            // Put the changes back unless newer ones arrived meanwhile
+            batch.forEach((id, change) -> pending.merge(id, change, (newer, failed) -> newer.absorb(failed)));
+            throw e;
+        }
+    }
+
+    /**
+     * Delete the rows of sessions that expired.
+     *
+     * @return the number of sessions deleted
+     */
+    public int deleteExpiredSessions() {
+        int deleted = jdbcTemplate.update(DELETE_EXPIRED_SQL, Instant.now().toEpochMilli());
+        if (deleted > 0) {
+            logger.debug("Deleted {} expired sessions", deleted);
+        }
+        return deleted;
+    }
+
+    private void writeNow(JdbcSession session, String principalName) {
+        MapSession snapshot = new MapSession(session.delegate);
+        synchronized (writeLock) {
+            awaitBatchWith(session.storedId);
+            awaitBatchWith(snapshot.getId());
+            if (session.storedId != null) {
+                pending.remove(session.storedId);
+                if (!session.storedId.equals(snapshot.getId())) {
+                    jdbcTemplate.update(DELETE_SQL, session.storedId);
+                }
+            }
+            pending.remove(snapshot.getId());
+            long creationTime = snapshot.getCreationTime().toEpochMilli();
+            long lastAccess = snapshot.getLastAccessedTime().toEpochMilli();
+            int maxInactive = (int) snapshot.getMaxInactiveInterval().toSeconds();
+            byte[] attributes = serialize(snapshot);
+            int replaced = jdbcTemplate.update(REPLACE_SQL, creationTime, lastAccess, maxInactive,
+                    expiryTime(snapshot), principalName, attributes, snapshot.getId());
+            if (replaced == 0) {
+                jdbcTemplate.update(INSERT_SQL, snapshot.getId(), creationTime, lastAccess, maxInactive,
+                        expiryTime(snapshot), principalName, attributes);
+            }
+        }
+        immediateWrites.increment();
+    }
+
+    // Called with writeLock held: wait until a batch holding an older state of the session is
+    // written. Writing a batch never needs writeLock, so this cannot deadlock
+    private void awaitBatchWith(String id) {
+        Batch batch = flushing;
+        if (id == null || !batch.changes().containsKey(id)) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                batch.written().await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLater(JdbcSession session, String principalName) {
+        Pending change = new Pending(new MapSession(session.delegate), principalName, session.attributesChanged);
+        pending.merge(session.getId(), change, (previous, current) -> {
+            coalesced.increment();
+            return current.absorb(previous);
+        });
+    }
+
+    private StoredSession find(String id) {
+        Pending change = unwritten(id);
+        if (change != null) {
+            return change.toStoredSession();
+        }
+        List<StoredSession> rows = jdbcTemplate.query(SELECT_SQL, rowMapper, id);
+        return rows.isEmpty() ? null : rows.getFirst();
+    }
+
+    // Latest state of a session not yet in its row: pending, or in the batch being written
+    private Pending unwritten(String id) {
+        Pending change = pending.get(id);
+        return change != null ? change : flushing.changes().get(id);
+    }
+
+    private Map<String, Pending> nextBatch() {
+        Map<String, Pending> batch = new HashMap<>();
+        for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+            if (batch.size() >= settings.batchSize()) {
+                break;
+            }
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        return batch;
+    }
+
+    // Take the changes out of pending; one replaced by a newer save meanwhile waits for the next batch
+    private Map<String, Pending> drain(Map<String, Pending> batch) {
+        Map<String, Pending> drained = new HashMap<>();
+        batch.forEach((id, change) -> {
+            if (pending.remove(id, change)) {
+                drained.put(id, change);
+            }
+        });
+        return drained;
+    }
+
+    private StoredSession mapRow(ResultSet rs, int rowNum) throws SQLException {
+        MapSession session = new MapSession(rs.getString("session_id"));
+        session.setCreationTime(Instant.ofEpochMilli(rs.getLong("creation_time")));
+        session.setLastAccessedTime(Instant.ofEpochMilli(rs.getLong("last_access_time")));
+        session.setMaxInactiveInterval(Duration.ofSeconds(rs.getInt("max_inactive_interval")));
+        @SuppressWarnings("unchecked")
+        Map<String, Object> attributes = (Map<String, Object>) deserializer.convert(rs.getBytes("attributes"));
+        attributes.forEach(session::setAttribute);
+        return new StoredSession(session, rs.getString("principal_name"));
+    }
+
+    private byte[] serialize(MapSession session) {
+        Map<String, Object> attributes = new HashMap<>();
+        for (String name : session.getAttributeNames()) {
+            attributes.put(name, session.getAttribute(name));
+        }
+        return serializer.convert(attributes);
+    }
+
+    private static long expiryTime(MapSession session) {
+        return session.getLastAccessedTime().plus(session.getMaxInactiveInterval()).toEpochMilli();
+    }
+
+    private void flushBatchQuietly() {
+        try {
+            flushBatch();
+        } catch (RuntimeException e) {
+            logger.warn("Writing pending session changes failed, retrying with the next batch", e);
+        }
+    }
+
+    private void deleteExpiredQuietly() {
+        try {
+            deleteExpiredSessions();
+        } catch (RuntimeException e) {
+            logger.warn("Deleting expired sessions failed", e);
+        }
+    }
+
+    private record StoredSession(MapSession session, String principalName) {
+    }
+
+    private record Batch(Map<String, Pending> changes, CountDownLatch written) {
+
+        static final Batch NONE = new Batch(Map.of());
+
+        Batch(Map<String, Pending> changes) {
+            this(changes, new CountDownLatch(1));
+        }
+    }
+
+    private record Pending(MapSession session, String principalName, boolean attributesChanged) {
+
+        // A newer snapshot carries the attributes too, so an older attribute change is still written
+        Pending absorb(Pending older) {
+            return older.attributesChanged() && !attributesChanged
+                    ? new Pending(session, principalName, true)
+                    : this;
+        }
+
+        StoredSession toStoredSession() {
+            return new StoredSession(new MapSession(session), principalName);
+        }
+    }
+
+    /**
+     * A session as handed to Spring Session, tracking what changed since it was loaded.
+     */
+    public static final class JdbcSession implements Session {
+
+        private final MapSession delegate;
+        // Id of the row, null until the session is first saved
+        private String storedId;
+        private String principalName;
+        private boolean attributesChanged;
+
+        JdbcSession(MapSession delegate, String storedId, String principalName) {
+            this.delegate = delegate;
+            this.storedId = storedId;
+            this.principalName = principalName;
+        }
+
+        @Override
+        public String getId() {
+            return delegate.getId();
+        }
+
+        @Override
+        public String changeSessionId() {
+            return delegate.changeSessionId();
+        }
+
+        @Override
+        public <T> T getAttribute(String attributeName) {
+            return delegate.getAttribute(attributeName);
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            return delegate.getAttributeNames();
+        }
+
+        @Override
+        public void setAttribute(String attributeName, Object attributeValue) {
+            delegate.setAttribute(attributeName, attributeValue);
+            attributesChanged = true;
+        }
+
+        @Override
+        public void removeAttribute(String attributeName) {
+            delegate.removeAttribute(attributeName);
+            attributesChanged = true;
+        }
+
+        @Override
+        public Instant getCreationTime() {
+            return delegate.getCreationTime();
+        }
+
+        @Override
+        public void setLastAccessedTime(Instant lastAccessedTime) {
+            delegate.setLastAccessedTime(lastAccessedTime);
+        }
+
+        @Override
+        public Instant getLastAccessedTime() {
+            return delegate.getLastAccessedTime();
+        }
+
+        @Override
+        public void setMaxInactiveInterval(Duration interval) {
+            delegate.setMaxInactiveInterval(interval);
+            attributesChanged = true;
+        }
+
+        @Override
+        public Duration getMaxInactiveInterval() {
+            return delegate.getMaxInactiveInterval();
+        }
+
+        @Override
+        public boolean isExpired() {
+            return delegate.isExpired();
+        }
+    }
+}
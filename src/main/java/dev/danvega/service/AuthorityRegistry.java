@@ -0,0 +1,99 @@
+package dev.danvega.service;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out one shared {@link SimpleGrantedAuthority} per authority name and one shared
+ * immutable set per combination of names.
+ * <p>
+ * Thousands of users share a handful of role combinations, so every session, cache entry
+ * and index entry points at the same few objects instead of carrying private copies, and
+ * {@link SimpleGrantedAuthority#equals} short-circuits on identity. Both pools grow with the
+ * number of distinct roles and combinations, which is bounded by the {@code roles} table
+ * and the scopes the configured providers grant.
+ * <p>
+ * Spring Security copies the authorities it is given into its own collections (for example
+ * {@code DefaultOidcUser} and {@code User}), so across sessions it is the authority
+ * instances that end up shared; the canonical sets are shared by the role cache and index.
+ */
+@Component
+public class AuthorityRegistry {
+
+    private final ConcurrentMap<String, SimpleGrantedAuthority> authorities = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Set<String>, Set<GrantedAuthority>> authoritySets = new ConcurrentHashMap<>();
+
+    /**
+     * Get the canonical authority for a name.
+     *
+     * @param name the authority name (e.g., "ROLE_ADMIN")
+     * @return the shared authority instance
+     */
+    public SimpleGrantedAuthority authority(String name) {
+        return authorities.computeIfAbsent(name, SimpleGrantedAuthority::new);
+    }
+
+    /**
+     * Get the canonical immutable set for a combination of authority names.
+     *
+     * @param names the authority names, in any order and possibly with duplicates
+     * @return the shared set holding the canonical authority of every name
+     */
+    public Set<GrantedAuthority> authorities(Collection<String> names) {
+        if (names.isEmpty()) {
+            return Set.of();
+        }
+        Set<String> key = Set.copyOf(names);
+        Set<GrantedAuthority> existing = authoritySets.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        return authoritySets.computeIfAbsent(key, this::createSet);
+    }
+
+    /**
+     * Merge authorities, replacing every plain {@link SimpleGrantedAuthority} with its
+     * canonical instance.
+     * <p>
+     * When all authorities are plain, the canonical set of the combination is returned.
+     * Authorities that carry per-user state (such as {@code OidcUserAuthority}) cannot be
+     * shared, in which case a new set with those kept as-is is returned.
+     *
+     * @param first  the first group of authorities (e.g., those granted by the provider)
+     * @param second the second group of authorities (e.g., roles loaded from the database)
+     * @return the merged authorities
+     */
+    public Set<GrantedAuthority> merge(Collection<? extends GrantedAuthority> first,
+            Collection<? extends GrantedAuthority> second) {
+        Set<String> names = new LinkedHashSet<>();
+        Set<GrantedAuthority> merged = new LinkedHashSet<>();
+        boolean canonical = true;
+        for (Collection<? extends GrantedAuthority> group : List.of(first, second)) {
+            for (GrantedAuthority authority : group) {
+                if (authority.getClass() == SimpleGrantedAuthority.class) {
+                    names.add(authority.getAuthority());
+                    merged.add(authority(authority.getAuthority()));
+                } else {
+                    canonical = false;
+                    merged.add(authority);
+                }
+            }
+        }
+        return canonical ? authorities(names) : merged;
+    }
+
+    private Set<GrantedAuthority> createSet(Set<String> names) {
+        Set<GrantedAuthority> set = new LinkedHashSet<>(names.size());
+        names.forEach(name -> set.add(authority(name)));
+        return Collections.unmodifiableSet(set);
+    }
+}
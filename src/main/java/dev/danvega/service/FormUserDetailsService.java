@@ -0,0 +1,141 @@
+package dev.danvega.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import dev.danvega.config.UserCredentialProperties;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
+import dev.danvega.repository.UserAccountRepository;
+import dev.danvega.repository.UserCredentialRow;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Loads form login users from the {@code users} table.
+ * <p>
+ * The password hash, account status and role names come back from a single query and are
+ * kept in a bounded per-user cache, so a repeated login only costs the password check.
+ * The cache holds the loaded values rather than {@link UserDetails}: Spring Security erases
+ * the password of the instance it authenticates with, so every call builds a fresh one.
+ * Entries expire after {@code app.users.cache.ttl} and are evicted as soon as a role
+ * assignment for the user is written. Unknown users are not cached. Hit, miss and load
+ * metrics are published under the {@code cache.*} meters tagged {@code cache=users}.
+ * <p>
+ * As a {@link UserDetailsPasswordService}, it stores the new hash when Spring Security
+ * re-encodes a password after a successful login because the stored one uses an outdated
+ * algorithm or cost.
+ */
+@Service
+public class FormUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FormUserDetailsService.class);
+
+    static final String CACHE_NAME = "users";
+
+    private static final String FORM_PREFIX = RoleService.buildFormUserIdentifier("");
+
+    private final UserAccountRepository userAccountRepository;
+    private final AuthorityRegistry authorityRegistry;
+    private final RoleBits roleBits;
+    private final LoadingCache<String, Credentials> credentialCache;
+
+    public FormUserDetailsService(UserAccountRepository userAccountRepository, AuthorityRegistry authorityRegistry,
+            RoleBits roleBits, UserCredentialProperties properties, MeterRegistry meterRegistry) {
+        this.userAccountRepository = userAccountRepository;
+        this.authorityRegistry = authorityRegistry;
+        this.roleBits = roleBits;
+
+        UserCredentialProperties.Cache cache = properties.cache();
+        this.credentialCache = Caffeine.newBuilder()
+                .maximumSize(cache.maximumSize())
+                .expireAfterWrite(cache.ttl())
+                .recordStats()
+                .build(this::loadCredentials);
+        CaffeineCacheMetrics.monitor(meterRegistry, credentialCache, CACHE_NAME);
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        Credentials credentials = credentialCache.get(username);
+        if (credentials == null) {
+            throw new UsernameNotFoundException("User not found: " + username);
+        }
+
+        logger.info("✓ Form user '{}' loaded with roles: {}", username, credentials.authorities());
+
+        return User.withUsername(username)
+                .password(credentials.passwordHash())
+                .disabled(!credentials.enabled())
+                .authorities(credentials.authorities())
+                .build();
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userAccountRepository.updatePasswordHash(user.getUsername(), newPassword);
+        evict(user.getUsername());
+
+        logger.info("✓ Password hash of form user '{}' upgraded", user.getUsername());
+
+        return User.withUserDetails(user)
+                .password(newPassword)
+                .build();
+    }
+
+    /**
+     * Drop the cached credentials of a user, e.g. after their password changed.
+     *
+     * @param username the username
+     */
+    public void evict(String username) {
+        credentialCache.invalidate(username);
+    }
+
+    /**
+     * Drop the cached credentials of a form user whose role assignments were written.
+     *
+     * @param event the change event published by the role assignment entity listener
+     */
+    @EventListener
+    public void onRoleAssignmentChanged(RoleAssignmentChangedEvent event) {
+        String userIdentifier = event.userIdentifier();
+        if (userIdentifier.startsWith(FORM_PREFIX)) {
+            evict(userIdentifier.substring(FORM_PREFIX.length()));
+        }
+    }
+
+    private Credentials loadCredentials(String username) {
+        List<UserCredentialRow> rows = userAccountRepository.findCredentialsByUsername(username,
+                RoleService.buildFormUserIdentifier(username));
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        List<String> roleNames = rows.stream()
+                .map(UserCredentialRow::roleName)
+                .filter(Objects::nonNull)
+                .toList();
+        Set<GrantedAuthority> authorities = roleBits.withRoleSet(authorityRegistry.authorities(roleNames));
+        UserCredentialRow first = rows.getFirst();
+
+        logger.debug("Loaded credentials and {} roles for form user '{}'", roleNames.size(), username);
+
+        return new Credentials(first.passwordHash(), first.enabled(), authorities);
+    }
+
+    private record Credentials(String passwordHash, boolean enabled, Set<GrantedAuthority> authorities) {
+    }
+}
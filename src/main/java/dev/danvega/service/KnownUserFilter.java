@@ -0,0 +1,245 @@
+package dev.danvega.service;
+
+import dev.danvega.config.RoleLookupProperties;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
+import dev.danvega.repository.RoleAssignmentChangeTrigger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bloom filter of every user identifier that has a row in {@code role_assignments}, so that
+ * {@link RoleService} can answer "no roles" for most users without one without querying the
+ * database.
+ * <p>
+ * Built once all singletons exist (Liquibase has run by then) and rebuilt every
+ * {@code app.roles.filter.rebuild-interval}, which drops removed users. A user is added
+ * before any role assignment for them commits, so the filter never reports a user with
+ * committed assignments as unknown: writes through JPA add the user when they are flushed,
+ * and writes made outside JPA (e.g., from the H2 console) when the
+ * {@link RoleAssignmentChangeTrigger} fires for them in the embedded database.
+ * <p>
+ * As a safety net, users the trigger logged in {@code role_assignment_changes} are also added
+ * every {@code app.roles.filter.poll-interval}. Adding a user twice is harmless, so each poll
+ * reads everything logged since the previous one started, plus the {@link RoleIndex}'s late
+ * commit window. Until the first build succeeds, every user is reported as possibly known.
+ * <p>
+ * Publishes {@code roles.filter.lookups} (tagged {@code result=negative|positive}),
+ * {@code roles.filter.false.positives} (positive lookups for users that turned out to have
+ * no roles), {@code roles.filter.expected.fpp} and {@code roles.filter.memory}.
+ */
+@Component
+public class KnownUserFilter implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnownUserFilter.class);
+
+    private static final int FETCH_SIZE = 10_000;
+
+    // Headroom so users added between rebuilds do not push the false positive rate up
+    private static final double GROWTH_FACTOR = 1.5;
+
+    static final String COUNT_USERS_SQL = "SELECT COUNT(DISTINCT user_identifier) FROM role_assignments";
+
+    static final String LOAD_USERS_SQL = "SELECT DISTINCT user_identifier FROM role_assignments";
+
+    static final String CHANGED_USERS_SQL =
+            "SELECT DISTINCT user_identifier FROM role_assignment_changes WHERE changed_at >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RoleLookupProperties.Filter settings;
+
+    private final Counter negativeLookups;
+    private final Counter positiveLookups;
+    private final Counter falsePositives;
+
+    private final Consumer<String> triggerListener = this::add;
+
+    private final Object rebuildLock = new Object();
+    private volatile BloomFilter filter;
+    private Set<String> addedDuringRebuild;
+    private volatile Instant lastPoll;
+
+    private ScheduledExecutorService rebuilder;
+
+    public KnownUserFilter(DataSource dataSource, RoleLookupProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.settings = properties.filter();
+
+        this.negativeLookups = Counter.builder("roles.filter.lookups")
+                .description("Role lookups answered by the known user filter")
+                .tag("result", "negative")
+                .register(meterRegistry);
+        this.positiveLookups = Counter.builder("roles.filter.lookups")
+                .description("Role lookups answered by the known user filter")
+                .tag("result", "positive")
+                .register(meterRegistry);
+        this.falsePositives = Counter.builder("roles.filter.false.positives")
+                .description("Positive filter lookups for users that have no roles")
+                .register(meterRegistry);
+        Gauge.builder("roles.filter.expected.fpp", this, f -> f.filter != null ? f.filter.expectedFalsePositiveRate() : 0)
+                .description("Estimated false positive probability of the known user filter")
+                .register(meterRegistry);
+        Gauge.builder("roles.filter.memory", this, f -> f.filter != null ? f.filter.sizeInBytes() : 0)
+                .description("Size of the known user filter's bit array")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Check whether a user may have role assignments.
+     *
+     * @param userIdentifier the user identifier (e.g., "google:user@gmail.com")
+     * @return false only if the user certainly has no role assignments
+     */
+    public boolean mightHaveRoles(String userIdentifier) {
+        BloomFilter current = filter;
+        if (current == null) {
+            return true;
+        }
+        if (current.mightContain(userIdentifier)) {
+            positiveLookups.increment();
+            return true;
+        }
+        negativeLookups.increment();
+        return false;
+    }
+
+    /**
+     * Record that a user let through by the filter had no roles.
+     */
+    public void recordFalsePositive() {
+        if (filter != null) {
+            falsePositives.increment();
+        }
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!settings.enabled()) {
+            return;
+        }
+        // Before the first build, so writes made while it loads are kept for it
+        RoleAssignmentChangeTrigger.addListener(triggerListener);
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("Could not build known user filter, querying roles for every user until the next rebuild", e);
+        }
+
+        long rebuildMillis = settings.rebuildInterval().toMillis();
+        long pollMillis = settings.pollInterval().toMillis();
+        rebuilder = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("known-user-filter").factory());
+        rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, rebuildMillis, rebuildMillis, TimeUnit.MILLISECONDS);
+        rebuilder.scheduleWithFixedDelay(this::pollQuietly, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        RoleAssignmentChangeTrigger.removeListener(triggerListener);
+        if (rebuilder != null) {
+            rebuilder.shutdownNow();
+        }
+    }
+
+    /**
+     * Add a user whose role assignments were written.
+     *
+     * @param event the change event published by the role assignment entity listener
+     */
+    @EventListener
+    public void onRoleAssignmentChanged(RoleAssignmentChangedEvent event) {
+        add(event.userIdentifier());
+    }
+
+    /**
+     * Add the users logged in {@code role_assignment_changes} since the previous poll.
+     */
+    public void poll() {
+        synchronized (rebuildLock) {
+            Instant started = Instant.now();
+            Instant since = (lastPoll != null ? lastPoll : started).minus(RoleIndex.LATE_COMMIT_WINDOW);
+            List<String> changedUsers = jdbcTemplate.queryForList(CHANGED_USERS_SQL, String.class,
+                    Timestamp.from(since));
+            changedUsers.forEach(this::add);
+            lastPoll = started;
+        }
+    }
+
+    /**
+     * Replace the filter with one built from the current contents of {@code role_assignments}.
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            if (lastPoll == null) {
+                lastPoll = Instant.now();
+            }
+            Set<String> added = ConcurrentHashMap.newKeySet();
+            synchronized (this) {
+                addedDuringRebuild = added;
+            }
+            try {
+                long users = jdbcTemplate.queryForObject(COUNT_USERS_SQL, Long.class);
+                BloomFilter next = BloomFilter.create((long) (users * GROWTH_FACTOR) + 1,
+                        settings.falsePositiveRate());
+                jdbcTemplate.query(LOAD_USERS_SQL, rs -> {
+                    next.put(rs.getString(1));
+                });
+
+                synchronized (this) {
+                    // Users written while loading may not be in the rows read above
+                    added.forEach(next::put);
+                    filter = next;
+                }
+                logger.info("✓ Known user filter built for {} users ({} bytes)", users, next.sizeInBytes());
+            } finally {
+                synchronized (this) {
+                    addedDuringRebuild = null;
+                }
+            }
+        }
+    }
+
+    private synchronized void add(String userIdentifier) {
+        if (filter != null) {
+            filter.put(userIdentifier);
+        }
+        if (addedDuringRebuild != null) {
+            addedDuringRebuild.add(userIdentifier);
+        }
+    }
+
+    private void pollQuietly() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            logger.warn("Known user filter poll failed, retrying at the next poll", e);
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("Known user filter rebuild failed, keeping the previous filter", e);
+        }
+    }
+}
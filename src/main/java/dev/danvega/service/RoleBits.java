@@ -0,0 +1,134 @@
+package dev.danvega.service;
+
+import dev.danvega.domain.Role;
+import dev.danvega.repository.RoleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigns every row of the {@code roles} table a bit position and encodes role sets as
+ * {@link RoleSetAuthority} bitsets.
+ * <p>
+ * A role's position is {@code id - 1}. Role ids never change or get reused, so positions
+ * stay stable across restarts and a bitset in an existing session keeps its meaning. The
+ * positions are read from the database on first use and re-read when a {@code ROLE_} name
+ * is not known yet, which covers roles added at runtime. A name that is still unknown after
+ * that is remembered for {@value #MISS_TTL_SECONDS} seconds, so asking for it again does not
+ * reload the table every time. Authorities that are not rows of the {@code roles} table (such
+ * as OAuth2 scopes) have no position and are ignored.
+ */
+@Component
+public class RoleBits {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoleBits.class);
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    static final long MISS_TTL_SECONDS = 60;
+    private static final long MISS_TTL_NANOS = TimeUnit.SECONDS.toNanos(MISS_TTL_SECONDS);
+
+    private final RoleRepository roleRepository;
+
+    private volatile Map<String, Integer> positions;
+    // Role names not found by the last reload, and when they were looked up
+    private final ConcurrentMap<String, Long> misses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RoleSetAuthority, RoleSetAuthority> roleSets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Set<GrantedAuthority>, Set<GrantedAuthority>> withRoleSets = new ConcurrentHashMap<>();
+
+    public RoleBits(RoleRepository roleRepository) {
+        this.roleRepository = roleRepository;
+    }
+
+    /**
+     * Get the bit position of a role.
+     *
+     * @param roleName the role name (e.g., "ROLE_ADMIN")
+     * @return the position, or -1 if no role with that name exists
+     */
+    public int position(String roleName) {
+        Map<String, Integer> current = positions;
+        Integer position = current != null ? current.get(roleName) : null;
+        if (position == null && (current == null || roleName.startsWith(ROLE_PREFIX) && !isRecentMiss(roleName))) {
+            position = reload().get(roleName);
+            if (position == null) {
+                misses.put(roleName, System.nanoTime());
+            }
+        }
+        return position != null ? position : -1;
+    }
+
+    /**
+     * Encode the roles among a collection of authorities.
+     *
+     * @param authorities the authorities; those without a position are skipped
+     * @return the shared bitset of the roles, empty when none of them is a known role
+     */
+    public RoleSetAuthority encode(Collection<? extends GrantedAuthority> authorities) {
+        return encodeNames(authorities.stream()
+                .filter(authority -> !(authority instanceof RoleSetAuthority))
+                .map(GrantedAuthority::getAuthority)
+                .toList());
+    }
+
+    /**
+     * Encode roles given by name.
+     *
+     * @param roleNames the role names (e.g., "ROLE_ADMIN"); unknown names are skipped
+     * @return the shared bitset of the roles, empty when none of them is a known role
+     */
+    public RoleSetAuthority encodeNames(Collection<String> roleNames) {
+        int[] bits = roleNames.stream()
+                .mapToInt(this::position)
+                .filter(position -> position >= 0)
+                .toArray();
+        RoleSetAuthority roleSet = RoleSetAuthority.of(bits);
+        return roleSets.computeIfAbsent(roleSet, key -> key);
+    }
+
+    /**
+     * Add the bitset of a user's roles to those roles, so authorization rules built with
+     * {@code RoleAuthorizationManager} can check them with a single AND.
+     *
+     * @param roles the user's roles
+     * @return the roles plus their {@link RoleSetAuthority}, or the roles unchanged when
+     *         none of them is a known role; shared between users with the same roles
+     */
+    public Set<GrantedAuthority> withRoleSet(Set<GrantedAuthority> roles) {
+        return withRoleSets.computeIfAbsent(roles, key -> {
+            RoleSetAuthority roleSet = encode(key);
+            if (roleSet.isEmpty()) {
+                return key;
+            }
+            Set<GrantedAuthority> authorities = new LinkedHashSet<>(key);
+            authorities.add(roleSet);
+            return Collections.unmodifiableSet(authorities);
+        });
+    }
+
+    private boolean isRecentMiss(String roleName) {
+        Long missedAt = misses.get(roleName);
+        return missedAt != null && System.nanoTime() - missedAt < MISS_TTL_NANOS;
+    }
+
+    private synchronized Map<String, Integer> reload() {
+        Map<String, Integer> loaded = new HashMap<>();
+        for (Role role : roleRepository.findAll()) {
+            loaded.put(role.getName(), Math.toIntExact(role.getId() - 1));
+        }
+        positions = Map.copyOf(loaded);
+        logger.debug("Loaded bit positions for {} roles", loaded.size());
+        return positions;
+    }
+}
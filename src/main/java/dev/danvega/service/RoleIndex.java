@@ -0,0 +1,259 @@
+package dev.danvega.service;
+
+import dev.danvega.config.RoleLookupProperties;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Immutable, copy-on-write snapshot of every role assignment, keyed by user identifier.
+ * <p>
+ * Enabled with {@code app.roles.index.enabled=true}. The snapshot is built once all
+ * singletons exist (Liquibase has run by then) and is replaced atomically, so readers
+ * never take a lock. A background task polls the {@code role_assignment_changes} log,
+ * whose ids act as a version counter, and only reloads the users that changed since the
+ * snapshot's version. A full rebuild happens when the log has been pruned past that version.
+ * <p>
+ * Ids are assigned on insert, not on commit, so a change can become visible after one with a
+ * higher id has already been applied. Changes logged within the last
+ * {@value #LATE_COMMIT_WINDOW_SECONDS} seconds are therefore read again on every poll, and
+ * applied if they have not been seen before.
+ * <p>
+ * Users with a write that the snapshot has not caught up with yet are reported as unknown
+ * ({@link #lookup} returns an empty {@link Optional}) so that {@link RoleService} falls back
+ * to the database for them. Role sets come from the {@link AuthorityRegistry}, so users with the
+ * same roles share one set.
+ */
+@Component
+public class RoleIndex implements SmartInitializingSingleton, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoleIndex.class);
+
+    private static final int FETCH_SIZE = 10_000;
+
+    static final long LATE_COMMIT_WINDOW_SECONDS = 60;
+    static final Duration LATE_COMMIT_WINDOW = Duration.ofSeconds(LATE_COMMIT_WINDOW_SECONDS);
+
+    static final String LOAD_ALL_SQL = """
+            SELECT ra.user_identifier, r.name
+            FROM role_assignments ra JOIN roles r ON r.id = ra.role_id""";
+
+    static final String LOAD_USER_SQL = """
+            SELECT r.name
+            FROM role_assignments ra JOIN roles r ON r.id = ra.role_id
+            WHERE ra.user_identifier = ?""";
+
+    static final String LATEST_CHANGE_SQL = "SELECT COALESCE(MAX(id), 0) FROM role_assignment_changes";
+
+    static final String OLDEST_CHANGE_SQL = "SELECT MIN(id) FROM role_assignment_changes";
+
+    static final String CHANGES_SINCE_SQL = """
+            SELECT id, user_identifier, changed_at FROM role_assignment_changes
+            WHERE id > ? OR changed_at >= ? ORDER BY id""";
+
+    static final String PRUNE_CHANGES_SQL = "DELETE FROM role_assignment_changes WHERE changed_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuthorityRegistry authorityRegistry;
+    private final RoleLookupProperties.Index settings;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final ConcurrentMap<String, Long> pendingChanges = new ConcurrentHashMap<>();
+    private final AtomicLong changeSequence = new AtomicLong();
+    // Ids of changes read within the late commit window, and when they were logged; guarded by this
+    private final Map<Long, Instant> recentChanges = new HashMap<>();
+
+    private ScheduledExecutorService refresher;
+
+    public RoleIndex(DataSource dataSource, AuthorityRegistry authorityRegistry, RoleLookupProperties properties,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.authorityRegistry = authorityRegistry;
+        this.settings = properties.index();
+
+        Gauge.builder("roles.index.users", snapshot, s -> s.get() != null ? s.get().rolesByUser().size() : 0)
+                .description("Users held in the in-memory role index")
+                .register(meterRegistry);
+        Gauge.builder("roles.index.version", snapshot, s -> s.get() != null ? s.get().version() : 0)
+                .description("Last role_assignment_changes id applied to the role index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Look up the roles of a user in the current snapshot.
+     *
+     * @param userIdentifier the user identifier (e.g., "form:admin")
+     * @return the user's roles (an empty set when the user has none), or an empty
+     *         {@link Optional} when the index is disabled, not built yet, or behind a write
+     *         for this user
+     */
+    public Optional<Set<GrantedAuthority>> lookup(String userIdentifier) {
+        Snapshot current = snapshot.get();
+        if (current == null || pendingChanges.containsKey(userIdentifier)) {
+            return Optional.empty();
+        }
+        return Optional.of(current.rolesByUser().getOrDefault(userIdentifier, Set.of()));
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!settings.enabled()) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("Could not build role index, serving roles from the database until the next refresh", e);
+        }
+
+        long intervalMillis = settings.pollInterval().toMillis();
+        refresher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("role-index-refresh").factory());
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Mark a user as changed so lookups bypass the snapshot until the change is applied.
+     *
+     * @param event the change event published by the role assignment entity listener
+     */
+    @EventListener
+    public void onRoleAssignmentChanged(RoleAssignmentChangedEvent event) {
+        if (settings.enabled()) {
+            pendingChanges.put(event.userIdentifier(), changeSequence.incrementAndGet());
+        }
+    }
+
+    /**
+     * Apply every change logged since the current snapshot and prune old log entries.
+     */
+    public synchronized void refresh() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            rebuild();
+            return;
+        }
+
+        Map<String, Long> drained = Map.copyOf(pendingChanges);
+        Long oldest = jdbcTemplate.queryForObject(OLDEST_CHANGE_SQL, Long.class);
+        if (oldest != null && oldest > current.version() + 1) {
+            logger.info("Role change log pruned past index version {}, rebuilding", current.version());
+            rebuild();
+            return;
+        }
+
+        Instant windowStart = Instant.now().minus(LATE_COMMIT_WINDOW);
+        List<Change> changes = jdbcTemplate.query(CHANGES_SINCE_SQL,
+                (rs, rowNum) -> new Change(rs.getLong(1), rs.getString(2), rs.getTimestamp(3).toInstant()),
+                current.version(), Timestamp.from(windowStart));
+        changes.removeIf(change -> recentChanges.containsKey(change.id()));
+        if (!changes.isEmpty()) {
+            Set<String> changedUsers = new LinkedHashSet<>();
+            changes.forEach(change -> changedUsers.add(change.userIdentifier()));
+
+            Map<String, Set<GrantedAuthority>> next = new HashMap<>(current.rolesByUser());
+            for (String userIdentifier : changedUsers) {
+                Set<GrantedAuthority> roles = loadUser(userIdentifier);
+                if (roles.isEmpty()) {
+                    next.remove(userIdentifier);
+                } else {
+                    next.put(userIdentifier, roles);
+                }
+            }
+
+            long version = Math.max(current.version(), changes.get(changes.size() - 1).id());
+            snapshot.set(new Snapshot(Collections.unmodifiableMap(next), version));
+            logger.debug("Applied {} role changes for {} users to the role index (version {})",
+                    changes.size(), changedUsers.size(), version);
+        }
+        changes.forEach(change -> recentChanges.put(change.id(), change.changedAt()));
+        recentChanges.values().removeIf(changedAt -> changedAt.isBefore(windowStart));
+        // A user marked again while this ran keeps the newer mark until the next refresh
+        drained.forEach((userIdentifier, sequence) -> pendingChanges.remove(userIdentifier, sequence));
+
+        jdbcTemplate.update(PRUNE_CHANGES_SQL, Timestamp.from(Instant.now().minus(settings.changeRetention())));
+    }
+
+    /**
+     * Replace the snapshot with a complete reload of {@code role_assignments}.
+     */
+    public synchronized void rebuild() {
+        Map<String, Long> drained = Map.copyOf(pendingChanges);
+        // Read the version first: a write landing during the load is then applied again later
+        long version = jdbcTemplate.queryForObject(LATEST_CHANGE_SQL, Long.class);
+
+        Map<String, List<String>> roleNamesByUser = new HashMap<>();
+        jdbcTemplate.query(LOAD_ALL_SQL, rs -> {
+            roleNamesByUser.computeIfAbsent(rs.getString(1), id -> new ArrayList<>(2)).add(rs.getString(2));
+        });
+        Map<String, Set<GrantedAuthority>> rolesByUser = HashMap.newHashMap(roleNamesByUser.size());
+        roleNamesByUser.forEach((userIdentifier, names) -> rolesByUser.put(userIdentifier,
+                authorityRegistry.authorities(names)));
+
+        snapshot.set(new Snapshot(Collections.unmodifiableMap(rolesByUser), version));
+        // Changes the load already saw are applied once more on the next refresh, which is harmless
+        recentChanges.clear();
+        drained.forEach((userIdentifier, sequence) -> pendingChanges.remove(userIdentifier, sequence));
+
+        logger.info("✓ Role index built with {} users (version {})", rolesByUser.size(), version);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.warn("Role index refresh failed, keeping version {}", currentVersion(), e);
+        }
+    }
+
+    private long currentVersion() {
+        Snapshot current = snapshot.get();
+        return current != null ? current.version() : 0;
+    }
+
+    private Set<GrantedAuthority> loadUser(String userIdentifier) {
+        return authorityRegistry.authorities(
+                jdbcTemplate.queryForList(LOAD_USER_SQL, String.class, userIdentifier));
+    }
+
+    private record Snapshot(Map<String, Set<GrantedAuthority>> rolesByUser, long version) {
+    }
+
+    private record Change(long id, String userIdentifier, Instant changedAt) {
+    }
+}
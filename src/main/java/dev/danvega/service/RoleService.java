@@ -1,29 +1,69 @@
 package dev.danvega.service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import dev.danvega.config.RoleLookupProperties;
 import dev.danvega.domain.RoleAssignment;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
 import dev.danvega.repository.RoleAssignmentRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Service for managing and retrieving user roles from the database.
+ * <p>
+ * Lookups go through a bounded per-user cache. Entries are reloaded in the background
+ * once they are older than {@code app.roles.cache.refresh-after} (the stale roles are
+ * served meanwhile, and kept if the reload fails), expire after {@code app.roles.cache.ttl},
+ * and are evicted as soon as a {@link RoleAssignment} for the user is written. Concurrent
+ * misses for the same user share a single database query, which selects role names only
+ * instead of hydrating {@link RoleAssignment} entities, and the result is the canonical
+ * set of the {@link AuthorityRegistry} so users with the same roles share one set. Hit, miss, eviction and load
+ * time metrics are published under the {@code cache.*} meters tagged {@code cache=roles}.
+ * <p>
+ * When the {@link RoleIndex} is enabled, lookups are answered from its in-memory snapshot
+ * and only users it cannot answer for go through the cache. Before that, the
+ * {@link KnownUserFilter} answers with no roles for users that have no role assignments,
+ * without touching the cache or the database.
  */
 @Service
 public class RoleService {
 
     private static final Logger logger = LoggerFactory.getLogger(RoleService.class);
 
+    static final String CACHE_NAME = "roles";
+
     private final RoleAssignmentRepository roleAssignmentRepository;
+    private final RoleIndex roleIndex;
+    private final KnownUserFilter knownUserFilter;
+    private final AuthorityRegistry authorityRegistry;
+    private final LoadingCache<String, Set<GrantedAuthority>> roleCache;
 
-    public RoleService(RoleAssignmentRepository roleAssignmentRepository) {
+    public RoleService(RoleAssignmentRepository roleAssignmentRepository, RoleIndex roleIndex,
+            KnownUserFilter knownUserFilter, AuthorityRegistry authorityRegistry, RoleLookupProperties properties,
+            MeterRegistry meterRegistry) {
         this.roleAssignmentRepository = roleAssignmentRepository;
+        this.roleIndex = roleIndex;
+        this.knownUserFilter = knownUserFilter;
+        this.authorityRegistry = authorityRegistry;
+
+        RoleLookupProperties.Cache cache = properties.cache();
+        this.roleCache = Caffeine.newBuilder()
+                .maximumSize(cache.maximumSize())
+                .expireAfterWrite(cache.ttl())
+                .refreshAfterWrite(cache.refreshAfter())
+                .recordStats()
+                .build(this::loadRolesForUser);
+        CaffeineCacheMetrics.monitor(meterRegistry, roleCache, CACHE_NAME);
     }
 
     /**
@@ -31,14 +71,38 @@ public class RoleService {
      *
      * @param userIdentifier the user identifier in format "provider:id"
      *                       (e.g., "form:admin", "google:user@gmail.com")
-     * @return set of granted authorities for the user
+     * @return unmodifiable set of granted authorities for the user
      */
     public Set<GrantedAuthority> getRolesForUser(String userIdentifier) {
-        List<RoleAssignment> assignments = roleAssignmentRepository.findByUserIdentifier(userIdentifier);
+        Optional<Set<GrantedAuthority>> indexed = roleIndex.lookup(userIdentifier);
+        if (indexed.isPresent()) {
+            return indexed.get();
+        }
+        if (!knownUserFilter.mightHaveRoles(userIdentifier)) {
+            return Set.of();
+        }
+
+        Set<GrantedAuthority> roles = roleCache.get(userIdentifier);
+        if (roles.isEmpty()) {
+            knownUserFilter.recordFalsePositive();
+        }
+        return roles;
+    }
+
+    /**
+     * Drop the cached roles of a user whose role assignments were written.
+     *
+     * @param event the change event published by the role assignment entity listener
+     */
+    @EventListener
+    public void onRoleAssignmentChanged(RoleAssignmentChangedEvent event) {
+        roleCache.invalidate(event.userIdentifier());
+    }
+
+    private Set<GrantedAuthority> loadRolesForUser(String userIdentifier) {
+        List<String> roleNames = roleAssignmentRepository.findRoleNamesByUserIdentifier(userIdentifier);
 
-        Set<GrantedAuthority> authorities = assignments.stream()
-                .map(ra -> new SimpleGrantedAuthority(ra.getRole().getName()))
-                .collect(Collectors.toSet());
+        Set<GrantedAuthority> authorities = authorityRegistry.authorities(roleNames);
 
         logger.debug("Found {} roles for user '{}': {}", authorities.size(), userIdentifier, authorities);
 
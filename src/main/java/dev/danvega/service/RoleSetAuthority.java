@@ -0,0 +1,113 @@
+package dev.danvega.service;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Arrays;
+
+/**
+ * A user's database roles encoded as one bitset authority, with bit {@code n} standing for
+ * the role whose position is {@code n} (see {@link RoleBits}).
+ * <p>
+ * The first 64 roles fit in a single {@code long}, so checking a rule against them is one
+ * AND. Larger role tables spill into further words and are checked word by word.
+ * Instances are immutable and handed out by {@link RoleBits}, which shares one per
+ * combination.
+ */
+public final class RoleSetAuthority implements GrantedAuthority {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Prefix of {@link #getAuthority()}, which is never a role name.
+     */
+    public static final String PREFIX = "ROLESET_";
+
+    private final long[] words;
+
+    RoleSetAuthority(long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) {
+            length--;
+        }
+        this.words = Arrays.copyOf(words, length);
+    }
+
+    /**
+     * Build a bitset from role positions.
+     *
+     * @param positions role positions, each zero or greater
+     * @return the bitset with one bit set per position
+     */
+    static RoleSetAuthority of(int... positions) {
+        int maxPosition = Arrays.stream(positions).max().orElse(-1);
+        long[] words = new long[(maxPosition >> 6) + 1];
+        for (int position : positions) {
+            words[position >> 6] |= 1L << position;
+        }
+        return new RoleSetAuthority(words);
+    }
+
+    /**
+     * Whether this set shares at least one role with another.
+     *
+     * @param other the other role set, typically the roles a rule requires
+     * @return true if any bit is set in both
+     */
+    public boolean intersects(RoleSetAuthority other) {
+        long[] mine = words;
+        long[] theirs = other.words;
+        if (mine.length == 1 && theirs.length == 1) {
+            return (mine[0] & theirs[0]) != 0;
+        }
+        for (int i = 0, n = Math.min(mine.length, theirs.length); i < n; i++) {
+            if ((mine[i] & theirs[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the role at a position is in this set.
+     *
+     * @param position the role position
+     * @return true if the bit for the position is set
+     */
+    public boolean contains(int position) {
+        int word = position >> 6;
+        return position >= 0 && word < words.length && (words[word] & (1L << position)) != 0;
+    }
+
+    public boolean isEmpty() {
+        return words.length == 0;
+    }
+
+    @Override
+    public String getAuthority() {
+        StringBuilder authority = new StringBuilder(PREFIX);
+        if (words.length == 0) {
+            return authority.append('0').toString();
+        }
+        authority.append(Long.toHexString(words[words.length - 1]));
+        for (int i = words.length - 2; i >= 0; i--) {
+            String word = Long.toHexString(words[i]);
+            authority.append("0".repeat(16 - word.length())).append(word);
+        }
+        return authority.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj || obj instanceof RoleSetAuthority other && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return getAuthority();
+    }
+}
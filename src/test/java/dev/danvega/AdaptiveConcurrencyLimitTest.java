@@ -0,0 +1,79 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthenticationAdmissionProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AdaptiveConcurrencyLimit.
+ */
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(5).toNanos();
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+            new AuthenticationAdmissionProperties(true, 4, 2, 6, Duration.ofSeconds(1), 0.5, null));
+
+    @Test
+    void tryAcquire_admitsUpToLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limit.tryAcquire());
+        }
+
+        assertFalse(limit.tryAcquire());
+        assertEquals(4, limit.inFlight());
+    }
+
+    @Test
+    void release_fastWhileBusy_growsLimitUpToMax() {
+        for (int i = 0; i < 50; i++) {
+            fillAndRelease(FAST);
+        }
+
+        assertEquals(6, limit.limit());
+    }
+
+    @Test
+    void release_fastWhileMostlyIdle_keepsLimit() {
+        limit.tryAcquire();
+        limit.release(FAST);
+
+        assertEquals(4, limit.limit());
+    }
+
+    @Test
+    void release_slow_shrinksLimitDownToMin() {
+        limit.tryAcquire();
+        limit.release(SLOW);
+        assertEquals(2, limit.limit());
+
+        limit.tryAcquire();
+        limit.release(SLOW);
+        assertEquals(2, limit.limit());
+    }
+
+    @Test
+    void release_freesSlot() {
+        while (limit.tryAcquire()) {
+            // fill
+        }
+
+        limit.release(FAST);
+
+        assertTrue(limit.tryAcquire());
+    }
+
+    private void fillAndRelease(long latency) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limit.release(latency);
+        }
+    }
+}
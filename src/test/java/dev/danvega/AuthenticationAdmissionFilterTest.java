@@ -0,0 +1,72 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthenticationAdmissionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AuthenticationAdmissionFilter.
+ */
+class AuthenticationAdmissionFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AuthenticationAdmissionFilter filter = new AuthenticationAdmissionFilter(
+            new AuthenticationAdmissionProperties(true, 1, 1, 1, null, 0, Duration.ofSeconds(3)), meterRegistry);
+
+    @Test
+    void requestBeyondLimit_isShedWith503() throws Exception {
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain blockingChain = (request, response) -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> {
+            try {
+                filter.doFilter(new MockHttpServletRequest("POST", "/login"), new MockHttpServletResponse(),
+                        blockingChain);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/login/oauth2/code/google"), response, chain);
+
+        assertEquals(503, response.getStatus());
+        assertEquals("3", response.getHeader("Retry-After"));
+        assertNull(chain.getRequest());
+        assertEquals(1, meterRegistry.get("auth.admission.rejected").counter().count());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(0, meterRegistry.get("auth.admission.inflight").gauge().value());
+    }
+
+    @Test
+    void otherRequests_areNotLimited() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/login"), new MockHttpServletResponse(), chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(0, meterRegistry.get("auth.admission.inflight").gauge().value());
+    }
+}
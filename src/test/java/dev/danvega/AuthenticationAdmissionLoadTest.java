@@ -0,0 +1,141 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthenticationAdmissionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test for AuthenticationAdmissionFilter: ten times more concurrent logins than the
+ * protected work can serve.
+ * <p>
+ * The simulated login holds one of {@value #CAPACITY} slots for {@link #SERVICE_TIME}, so
+ * extra concurrency only queues and pushes latency past the target. Without admission control
+ * every login would wait behind the other nine in ten, about {@code 10 * SERVICE_TIME}. The
+ * test measures the latency of every request, admitted or shed, and checks its p99 against a
+ * bound of twice the latency target and service time together; alongside that, the limit backs off
+ * from its initial value towards the concurrency the work can serve, the excess is shed with
+ * 503, and every slot is given back.
+ */
+class AuthenticationAdmissionLoadTest {
+
+    private static final int CAPACITY = 2;
+    private static final int CLIENTS = CAPACITY * 10;
+    private static final int INITIAL_LIMIT = CLIENTS;
+    private static final Duration SERVICE_TIME = Duration.ofMillis(20);
+    // Met by up to CAPACITY * 2.5 logins at once: latency grows by SERVICE_TIME per CAPACITY queued
+    private static final Duration LATENCY_TARGET = Duration.ofMillis(50);
+    private static final Duration WARM_UP = Duration.ofMillis(500);
+    private static final Duration RUN = Duration.ofMillis(1500);
+    // What a shed client waits before trying again
+    private static final Duration CLIENT_BACKOFF = Duration.ofMillis(5);
+    // Generous: a login admitted at the target still waits for one slot to free up
+    private static final Duration P99_BOUND = LATENCY_TARGET.plus(SERVICE_TIME).multipliedBy(2);
+
+    @Test
+    void tenfoldOverload_keepsP99BoundedAndShedsExcess() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AuthenticationAdmissionFilter filter = new AuthenticationAdmissionFilter(
+                new AuthenticationAdmissionProperties(true, INITIAL_LIMIT, 1, 200, LATENCY_TARGET, 0.9, null),
+                meterRegistry);
+
+        Load load = run(filter);
+
+        Duration p99 = load.p99();
+        assertTrue(p99.compareTo(P99_BOUND) < 0, "p99 latency under overload: " + p99.toMillis() + " ms");
+
+        double limit = meterRegistry.get("auth.admission.limit").gauge().value();
+        assertTrue(limit < INITIAL_LIMIT / 2.0, "limit after overload: " + limit);
+        assertTrue(load.peakAfterWarmUp() < INITIAL_LIMIT / 2,
+                "logins running at once after warm-up: " + load.peakAfterWarmUp());
+        assertTrue(load.admitted() > 0);
+        assertEquals(load.shed(), meterRegistry.get("auth.admission.rejected").counter().count());
+        assertTrue(load.shed() > 0);
+        assertEquals(0, meterRegistry.get("auth.admission.inflight").gauge().value());
+    }
+
+    /**
+     * What happened during a run.
+     *
+     * @param admitted        logins that reached the protected work
+     * @param shed            logins answered with 503
+     * @param peakAfterWarmUp most logins in the protected work at once, after the warm-up
+     * @param latencies       end-to-end latency of every request in nanoseconds, unsorted
+     */
+    private record Load(int admitted, int shed, int peakAfterWarmUp, long[] latencies) {
+
+        Duration p99() {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return Duration.ofNanos(sorted[(int) Math.ceil(sorted.length * 0.99) - 1]);
+        }
+    }
+
+    private static Load run(Filter filter) throws Exception {
+        Semaphore capacity = new Semaphore(CAPACITY, true);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peakAfterWarmUp = new AtomicInteger();
+        long start = System.nanoTime();
+        long measureFrom = start + WARM_UP.toNanos();
+        long end = start + RUN.toNanos();
+        FilterChain login = (request, response) -> {
+            int now = running.incrementAndGet();
+            if (System.nanoTime() >= measureFrom) {
+                peakAfterWarmUp.accumulateAndGet(now, Math::max);
+            }
+            try {
+                capacity.acquire();
+                try {
+                    Thread.sleep(SERVICE_TIME);
+                } finally {
+                    capacity.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        };
+
+        AtomicInteger admitted = new AtomicInteger();
+        AtomicInteger shed = new AtomicInteger();
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < CLIENTS; i++) {
+                clients.execute(() -> {
+                    try {
+                        while (System.nanoTime() < end) {
+                            MockHttpServletResponse response = new MockHttpServletResponse();
+                            long sent = System.nanoTime();
+                            filter.doFilter(new MockHttpServletRequest("POST", "/login"), response, login);
+                            latencies.add(System.nanoTime() - sent);
+                            if (response.getStatus() == 503) {
+                                shed.incrementAndGet();
+                                Thread.sleep(CLIENT_BACKOFF);
+                            } else {
+                                admitted.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+        }
+        return new Load(admitted.get(), shed.get(), peakAfterWarmUp.get(),
+                latencies.stream().mapToLong(Long::longValue).toArray());
+    }
+}
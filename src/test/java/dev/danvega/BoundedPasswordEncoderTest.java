@@ -0,0 +1,98 @@
+package dev.danvega;
+
+import dev.danvega.config.PasswordHashingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for BoundedPasswordEncoder.
+ */
+class BoundedPasswordEncoderTest {
+
+    private final PasswordEncoder delegate = mock(PasswordEncoder.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.close();
+    }
+
+    @Test
+    void matches_hashesOnPoolThreadAndRecordsTimes() {
+        encoder = new BoundedPasswordEncoder(delegate, PasswordHashingProperties.defaults(), meterRegistry);
+        AtomicReference<String> hashingThread = new AtomicReference<>();
+        when(delegate.matches("secret", "hash")).thenAnswer(invocation -> {
+            hashingThread.set(Thread.currentThread().getName());
+            return true;
+        });
+
+        assertTrue(encoder.matches("secret", "hash"));
+
+        assertTrue(hashingThread.get().startsWith("password-hashing-"));
+        assertEquals(1, meterRegistry.get("password.hashing.duration").tag("operation", "matches").timer().count());
+        assertEquals(1, meterRegistry.get("password.hashing.wait").timer().count());
+    }
+
+    @Test
+    void encode_delegatesOnPool() {
+        encoder = new BoundedPasswordEncoder(delegate, PasswordHashingProperties.defaults(), meterRegistry);
+        when(delegate.encode("secret")).thenReturn("hash");
+
+        assertEquals("hash", encoder.encode("secret"));
+        assertEquals(1, meterRegistry.get("password.hashing.duration").tag("operation", "encode").timer().count());
+    }
+
+    @Test
+    void upgradeEncoding_delegates() {
+        encoder = new BoundedPasswordEncoder(delegate, PasswordHashingProperties.defaults(), meterRegistry);
+        when(delegate.upgradeEncoding("hash")).thenReturn(true);
+
+        assertTrue(encoder.upgradeEncoding("hash"));
+    }
+
+    @Test
+    void matches_delegateFails_rethrowsOnCaller() {
+        encoder = new BoundedPasswordEncoder(delegate, PasswordHashingProperties.defaults(), meterRegistry);
+        when(delegate.matches("secret", "bad")).thenThrow(new IllegalArgumentException("Invalid hash"));
+
+        assertThrows(IllegalArgumentException.class, () -> encoder.matches("secret", "bad"));
+    }
+
+    @Test
+    void matches_poolAndQueueFull_failsFast() throws Exception {
+        encoder = new BoundedPasswordEncoder(delegate, new PasswordHashingProperties(1, 1, null, null, null), meterRegistry);
+        CountDownLatch hashing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.matches(anyString(), anyString())).thenAnswer(invocation -> {
+            hashing.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+
+        // One login occupies the only thread, a second one takes the only queue slot
+        CompletableFuture<Boolean> running = CompletableFuture.supplyAsync(() -> encoder.matches("a", "hash"));
+        assertTrue(hashing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> encoder.matches("b", "hash"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("password.hashing.queue").gauge().value() < 1 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(PasswordHashingUnavailableException.class, () -> encoder.matches("c", "hash"));
+        assertEquals(1, meterRegistry.get("password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+}
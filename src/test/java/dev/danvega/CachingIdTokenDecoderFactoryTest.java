@@ -0,0 +1,158 @@
+package dev.danvega;
+
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.config.JwkCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CachingIdTokenDecoderFactory, decoding ID tokens signed with keys served by
+ * a local stub JWK set endpoint.
+ */
+class CachingIdTokenDecoderFactoryTest {
+
+    private static final String ISSUER = "https://accounts.google.com";
+
+    private RSAKey signingKey;
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private ClientRegistration registration;
+    private CachingIdTokenDecoderFactory factory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        signingKey = new RSAKeyGenerator(2048).keyID("google-key").generate();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/jwks", exchange -> {
+            requests.incrementAndGet();
+            byte[] body = new JWKSet(signingKey).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        registration = registration("http://127.0.0.1:" + server.getAddress().getPort() + "/jwks");
+        factory = new CachingIdTokenDecoderFactory(new InMemoryClientRegistrationRepository(registration),
+                JwkCacheProperties.defaults(), new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    void afterSingletonsInstantiated_prefetchesKeysSoLoginsDoNotFetch() throws Exception {
+        factory.afterSingletonsInstantiated();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (requests.get() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        JwtDecoder decoder = factory.createDecoder(registration);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("12345", decoder.decode(idToken("test-client-id")).getSubject());
+        }
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void createDecoder_validIdToken_decodesClaims() throws Exception {
+        Jwt jwt = factory.createDecoder(registration).decode(idToken("test-client-id"));
+
+        assertEquals("12345", jwt.getSubject());
+        assertEquals("user@example.com", jwt.getClaimAsString("email"));
+        // Converted to Instant like the default factory does
+        assertInstanceOf(Instant.class, jwt.getClaims().get("iat"));
+    }
+
+    @Test
+    void createDecoder_sameRegistration_reusesDecoder() {
+        assertSame(factory.createDecoder(registration), factory.createDecoder(registration));
+    }
+
+    @Test
+    void createDecoder_tokenForAnotherClient_failsValidation() throws Exception {
+        JwtDecoder decoder = factory.createDecoder(registration);
+        String idToken = idToken("other-client-id");
+
+        assertThrows(JwtValidationException.class, () -> decoder.decode(idToken));
+    }
+
+    @Test
+    void createDecoder_noJwkSetUri_throwsMissingSignatureVerifier() {
+        ClientRegistration withoutJwks = registration(null);
+
+        OAuth2AuthenticationException e = assertThrows(OAuth2AuthenticationException.class,
+                () -> factory.createDecoder(withoutJwks));
+        assertEquals("missing_signature_verifier", e.getError().getErrorCode());
+    }
+
+    private String idToken(String audience) throws Exception {
+        Instant now = Instant.now();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("12345")
+                .audience(audience)
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plusSeconds(3600)))
+                .claim("email", "user@example.com")
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256)
+                .keyID(signingKey.getKeyID())
+                .type(JOSEObjectType.JWT)
+                .build(), claims);
+        jwt.sign(new RSASSASigner(signingKey));
+        return jwt.serialize();
+    }
+
+    private static ClientRegistration registration(String jwkSetUri) {
+        return ClientRegistration.withRegistrationId("google")
+                .clientId("test-client-id")
+                .clientSecret("test-client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("openid", "email", "profile")
+                .authorizationUri("http://127.0.0.1/auth")
+                .tokenUri("http://127.0.0.1/token")
+                .userInfoUri("http://127.0.0.1/userinfo")
+                .userNameAttributeName("sub")
+                .jwkSetUri(jwkSetUri)
+                .clientName("Google")
+                .build();
+    }
+}
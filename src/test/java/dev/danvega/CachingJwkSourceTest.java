@@ -0,0 +1,186 @@
+package dev.danvega;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.config.JwkCacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CachingJwkSource, against a local stub JWK set endpoint.
+ */
+class CachingJwkSourceTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static RSAKey firstKey;
+    private static RSAKey secondKey;
+
+    private HttpServer server;
+    private ScheduledExecutorService scheduler;
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile String body;
+    private volatile int status = 200;
+    private volatile String cacheControl;
+    private volatile CountDownLatch responseGate = new CountDownLatch(0);
+
+    @BeforeAll
+    static void generateKeys() throws Exception {
+        firstKey = new RSAKeyGenerator(2048).keyID("first").generate();
+        secondKey = new RSAKeyGenerator(2048).keyID("second").generate();
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        body = new JWKSet(firstKey).toString();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/jwks", exchange -> {
+            requests.incrementAndGet();
+            try {
+                responseGate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (cacheControl != null) {
+                exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+            }
+            exchange.sendResponseHeaders(status, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    void prewarm_fetchesInBackground_thenServesLookupsFromCache() throws Exception {
+        CachingJwkSource source = source(JwkCacheProperties.defaults());
+
+        source.prewarm();
+        awaitTrue(() -> requests.get() == 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(List.of(firstKey.toPublicJWK()), source.get(selector("first"), null));
+        }
+
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void get_beforeAnyFetch_fetchesInline() throws Exception {
+        CachingJwkSource source = source(JwkCacheProperties.defaults());
+
+        assertEquals(List.of(firstKey.toPublicJWK()), source.get(selector("first"), null));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void get_unknownKeyId_refetchesOnceForConcurrentLookups() throws Exception {
+        CachingJwkSource source = source(new JwkCacheProperties(null, null, null, Duration.ZERO, null));
+        source.get(selector("first"), null);
+        body = new JWKSet(List.of(firstKey, secondKey)).toString();
+        responseGate = new CountDownLatch(1);
+
+        List<Future<List<JWK>>> lookups = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                lookups.add(clients.submit(() -> source.get(selector("second"), null)));
+            }
+            // Let every lookup reach the refetch before it completes
+            awaitTrue(() -> requests.get() == 2);
+            Thread.sleep(100);
+            responseGate.countDown();
+            for (Future<List<JWK>> lookup : lookups) {
+                assertEquals(List.of(secondKey.toPublicJWK()), lookup.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void get_unknownKeyIdWithinRefetchInterval_doesNotRefetch() throws Exception {
+        CachingJwkSource source = source(new JwkCacheProperties(null, null, null, Duration.ofHours(1), null));
+        source.get(selector("first"), null);
+
+        assertEquals(List.of(), source.get(selector("second"), null));
+        assertEquals(List.of(), source.get(selector("second"), null));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void refresh_honoursMaxAgeAndKeepsServingKeysWhenProviderFails() throws Exception {
+        cacheControl = "public, max-age=1";
+        CachingJwkSource source = source(
+                new JwkCacheProperties(null, Duration.ZERO, Duration.ofMillis(100), Duration.ofHours(1), null));
+        source.get(selector("first"), null);
+
+        status = 500;
+        // One refresh when max-age runs out, then retries after each failure
+        awaitTrue(() -> requests.get() >= 3);
+
+        assertEquals(List.of(firstKey.toPublicJWK()), source.get(selector("first"), null));
+    }
+
+    @Test
+    void get_providerUnreachableBeforeFirstFetch_throwsKeySourceException() {
+        status = 500;
+        CachingJwkSource source = source(JwkCacheProperties.defaults());
+
+        assertThrows(KeySourceException.class, () -> source.get(selector("first"), null));
+    }
+
+    private CachingJwkSource source(JwkCacheProperties settings) {
+        URI jwkSetUri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/jwks");
+        return new CachingJwkSource(jwkSetUri, RestClient.create(), settings, scheduler, new SimpleMeterRegistry());
+    }
+
+    private static JWKSelector selector(String keyId) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CircuitBreaker.
+ */
+class CircuitBreakerTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(3, Duration.ofSeconds(10));
+
+    @Test
+    void onFailure_thresholdConsecutiveFailures_opensCircuit() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertTrue(breaker.tryAcquire(0));
+
+        breaker.onFailure(0);
+
+        assertTrue(breaker.isOpen(0));
+        assertFalse(breaker.tryAcquire(SECOND));
+    }
+
+    @Test
+    void onSuccess_resetsFailureCount() {
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+
+        assertFalse(breaker.isOpen(0));
+        assertTrue(breaker.tryAcquire(0));
+    }
+
+    @Test
+    void tryAcquire_afterOpenDuration_letsOneTrialCallThrough() {
+        open();
+
+        assertTrue(breaker.tryAcquire(10 * SECOND));
+        assertFalse(breaker.tryAcquire(10 * SECOND));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    }
+
+    @Test
+    void onSuccess_trialCall_closesCircuit() {
+        open();
+        breaker.tryAcquire(10 * SECOND);
+
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertTrue(breaker.tryAcquire(10 * SECOND));
+    }
+
+    @Test
+    void onFailure_trialCall_reopensCircuitForAnotherPeriod() {
+        open();
+        breaker.tryAcquire(10 * SECOND);
+
+        breaker.onFailure(10 * SECOND);
+
+        assertTrue(breaker.isOpen(19 * SECOND));
+        assertFalse(breaker.tryAcquire(19 * SECOND));
+        assertTrue(breaker.tryAcquire(20 * SECOND));
+    }
+
+    private void open() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(0);
+        }
+    }
+}
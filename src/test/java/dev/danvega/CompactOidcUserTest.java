@@ -0,0 +1,116 @@
+package dev.danvega;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Unit tests for CompactOidcUser. */
+class CompactOidcUserTest {
+
+    private static final Instant ISSUED_AT = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private static final Instant EXPIRES_AT = ISSUED_AT.plusSeconds(3600);
+
+    @Test
+    void retainedAttributes_keepsOnlyNameAttributeAndDashboardAttributes() {
+        Map<String, Object> attributes = CompactOAuth2User.retainedAttributes(Map.of(
+                "sub", "12345", "email", "user@example.com", "name", "Test User",
+                "picture", "https://example.com/photo.jpg", "locale", "en"), "sub");
+
+        assertEquals(Map.of("sub", "12345", "email", "user@example.com", "name", "Test User"), attributes);
+    }
+
+    @Test
+    void withoutUserAttributes_replacesOidcUserAuthority() {
+        OidcUserAuthority oidcUserAuthority = new OidcUserAuthority(idToken());
+        GrantedAuthority scope = new SimpleGrantedAuthority("SCOPE_openid");
+
+        List<GrantedAuthority> authorities = CompactOAuth2User.withoutUserAttributes(List.of(oidcUserAuthority, scope));
+
+        assertEquals(List.of(new SimpleGrantedAuthority("OIDC_USER"), scope), authorities);
+        assertSame(scope, authorities.get(1));
+    }
+
+    @Test
+    void constructor_missingNameAttribute_throws() {
+        Map<String, Object> attributes = Map.of("email", "user@example.com");
+        List<GrantedAuthority> authorities = List.of();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new CompactOidcUser(attributes, authorities, idToken(), "sub"));
+    }
+
+    @Test
+    void accessors_exposeRetainedAttributesAsClaims() {
+        CompactOidcUser user = user();
+
+        assertEquals("12345", user.getName());
+        assertEquals("user@example.com", user.getEmail());
+        assertEquals("Test User", user.getFullName());
+        assertEquals(user.getAttributes(), user.getClaims());
+        assertNull(user.getUserInfo());
+        assertEquals(List.of("ROLE_USER", "SCOPE_openid"),
+                user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void getIdToken_afterSerialization_parsesStoredToken() throws Exception {
+        CompactOidcUser user = user();
+
+        CompactOidcUser restored = roundTrip(user);
+
+        OidcIdToken idToken = restored.getIdToken();
+        assertEquals(user.getIdToken().getTokenValue(), idToken.getTokenValue());
+        assertEquals("12345", idToken.getSubject());
+        assertEquals(ISSUED_AT, idToken.getIssuedAt());
+        assertEquals(EXPIRES_AT, idToken.getExpiresAt());
+        assertSame(idToken, restored.getIdToken());
+        assertEquals(user.getAttributes(), restored.getAttributes());
+        assertEquals(user.getAuthorities(), restored.getAuthorities());
+    }
+
+    private static CompactOidcUser user() {
+        Map<String, Object> attributes = CompactOAuth2User.retainedAttributes(Map.of(
+                "sub", "12345", "email", "user@example.com", "name", "Test User"), "sub");
+        List<GrantedAuthority> authorities = List.of(new SimpleGrantedAuthority("SCOPE_openid"),
+                new SimpleGrantedAuthority("ROLE_USER"));
+        return new CompactOidcUser(attributes, authorities, idToken(), "sub");
+    }
+
+    private static OidcIdToken idToken() {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("12345")
+                .issuer("https://accounts.google.com")
+                .issueTime(Date.from(ISSUED_AT))
+                .expirationTime(Date.from(EXPIRES_AT))
+                .claim("email", "user@example.com")
+                .build();
+        return new OidcIdToken(new PlainJWT(claims).serialize(), ISSUED_AT, EXPIRES_AT,
+                Map.of("sub", "12345", "iss", "https://accounts.google.com", "email", "user@example.com"));
+    }
+
+    private static CompactOidcUser roundTrip(CompactOidcUser user) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(user);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (CompactOidcUser) in.readObject();
+        }
+    }
+}
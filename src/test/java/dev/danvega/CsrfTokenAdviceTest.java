@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.web.csrf.CsrfToken;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -45,7 +46,8 @@ class CsrfTokenAdviceTest {
 
     @Test
     void csrfHiddenInput_returnsCsrfHiddenInputWithToken() {
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(csrfToken);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(CsrfToken.class.getName(), csrfToken);
 
         CsrfTokenAdvice advice = new CsrfTokenAdvice();
         CsrfHiddenInput result = advice.csrfHiddenInput(request);
@@ -53,9 +55,31 @@ class CsrfTokenAdviceTest {
         assertNotNull(result);
     }
 
+    @Test
+    void csrfHiddenInput_isCreatedOncePerRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(CsrfToken.class.getName(), csrfToken);
+
+        CsrfTokenAdvice advice = new CsrfTokenAdvice();
+
+        assertSame(advice.csrfHiddenInput(request), advice.csrfHiddenInput(request));
+    }
+
+    @Test
+    void csrfHiddenInput_doesNotResolveTokenUntilRendered() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(CsrfToken.class.getName(), csrfToken);
+
+        CsrfTokenAdvice advice = new CsrfTokenAdvice();
+        advice.csrf(request);
+        advice.csrfHiddenInput(request);
+
+        verifyNoInteractions(csrfToken);
+    }
+
     @Test
     void csrfHiddenInput_returnsCsrfHiddenInputWithNullToken() {
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(null);
+        MockHttpServletRequest request = new MockHttpServletRequest();
 
         CsrfTokenAdvice advice = new CsrfTokenAdvice();
         CsrfHiddenInput result = advice.csrfHiddenInput(request);
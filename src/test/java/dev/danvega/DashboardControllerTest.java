@@ -1,6 +1,5 @@
 package dev.danvega;
 
-import jakarta.servlet.http.HttpServletRequest;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
@@ -10,7 +9,6 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.oauth2.core.user.OAuth2User;
-import org.springframework.security.web.csrf.CsrfToken;
 import org.springframework.ui.Model;
 
 import java.util.Collection;
@@ -29,15 +27,9 @@ class DashboardControllerTest {
     @Mock
     private Authentication authentication;
 
-    @Mock
-    private HttpServletRequest request;
-
     @Mock
     private Model model;
 
-    @Mock
-    private CsrfToken csrfToken;
-
     @Mock
     private OAuth2User oauth2User;
 
@@ -53,14 +45,12 @@ class DashboardControllerTest {
                 .build();
 
         when(authentication.getPrincipal()).thenReturn(userDetails);
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(csrfToken);
 
-        String viewName = dashboardController.dashboard(authentication, request, model);
+        String viewName = dashboardController.dashboard(authentication, model);
 
         assertEquals("pages/dashboard", viewName);
         verify(model).addAttribute("username", "admin");
         verify(model).addAttribute("authorities", userDetails.getAuthorities());
-        verify(model).addAttribute(eq("csrfHiddenInput"), any(CsrfHiddenInput.class));
     }
 
     @Test
@@ -76,20 +66,18 @@ class DashboardControllerTest {
         when(oauth2User.getAuthorities()).thenReturn(authorities);
         when(oauth2User.getAttributes()).thenReturn(attributes);
         when(authentication.getPrincipal()).thenReturn(oauth2User);
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(csrfToken);
 
-        String viewName = dashboardController.dashboard(authentication, request, model);
+        String viewName = dashboardController.dashboard(authentication, model);
 
         assertEquals("pages/dashboard", viewName);
         verify(model).addAttribute("username", "John Doe");
         verify(model).addAttribute("email", "john@example.com");
         verify(model).addAttribute("authorities", authorities);
         verify(model).addAttribute("attributes", attributes);
-        verify(model).addAttribute(eq("csrfHiddenInput"), any(CsrfHiddenInput.class));
     }
 
     @Test
-    void dashboard_withNullCsrfToken_doesNotSetCsrfAttribute() {
+    void dashboard_leavesCsrfHiddenInputToAdvice() {
         Collection authorities = List.of(new SimpleGrantedAuthority("ROLE_USER"));
         UserDetails userDetails = User.builder()
                 .username("user")
@@ -98,9 +86,8 @@ class DashboardControllerTest {
                 .build();
 
         when(authentication.getPrincipal()).thenReturn(userDetails);
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(null);
 
-        String viewName = dashboardController.dashboard(authentication, request, model);
+        String viewName = dashboardController.dashboard(authentication, model);
 
         assertEquals("pages/dashboard", viewName);
         verify(model).addAttribute("username", "user");
@@ -108,16 +95,14 @@ class DashboardControllerTest {
     }
 
     @Test
-    void dashboard_withUnknownPrincipalType_handlesCsrfOnly() {
+    void dashboard_withUnknownPrincipalType_setsNoUserAttributes() {
         Object unknownPrincipal = new Object();
 
         when(authentication.getPrincipal()).thenReturn(unknownPrincipal);
-        when(request.getAttribute(CsrfToken.class.getName())).thenReturn(csrfToken);
 
-        String viewName = dashboardController.dashboard(authentication, request, model);
+        String viewName = dashboardController.dashboard(authentication, model);
 
         assertEquals("pages/dashboard", viewName);
         verify(model, never()).addAttribute(eq("username"), anyString());
-        verify(model).addAttribute(eq("csrfHiddenInput"), any(CsrfHiddenInput.class));
     }
 }
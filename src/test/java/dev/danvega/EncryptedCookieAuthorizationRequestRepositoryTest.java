@@ -0,0 +1,230 @@
+package dev.danvega;
+
+import dev.danvega.config.AuthorizationRequestCookieProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.security.oauth2.core.endpoint.PkceParameterNames;
+import org.springframework.security.oauth2.core.oidc.endpoint.OidcParameterNames;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Unit tests for EncryptedCookieAuthorizationRequestRepository. */
+class EncryptedCookieAuthorizationRequestRepositoryTest {
+
+    private static final String KEY = key(1);
+    private static final String OTHER_KEY = key(2);
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+    private static final String STATE = "state-123";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void roundTrip_restoresAuthorizationRequest() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        OAuth2AuthorizationRequest authorizationRequest = authorizationRequest();
+
+        OAuth2AuthorizationRequest restored = repository.loadAuthorizationRequest(
+                callback(save(repository, authorizationRequest), STATE));
+
+        assertNotNull(restored);
+        assertEquals(authorizationRequest.getAuthorizationUri(), restored.getAuthorizationUri());
+        assertEquals(authorizationRequest.getClientId(), restored.getClientId());
+        assertEquals(authorizationRequest.getRedirectUri(), restored.getRedirectUri());
+        assertEquals(authorizationRequest.getScopes(), restored.getScopes());
+        assertEquals(STATE, restored.getState());
+        assertEquals(authorizationRequest.getAdditionalParameters(), restored.getAdditionalParameters());
+        assertEquals(authorizationRequest.getAttributes(), restored.getAttributes());
+        assertEquals(authorizationRequest.getAuthorizationRequestUri(), restored.getAuthorizationRequestUri());
+    }
+
+    @Test
+    void saveAuthorizationRequest_writesHttpOnlyCookieWithoutCreatingSession() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveAuthorizationRequest(authorizationRequest(), request, response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_OAUTH2_REQUEST="));
+        assertTrue(setCookie.contains("HttpOnly"));
+        assertTrue(setCookie.contains("Secure"));
+        assertTrue(setCookie.contains("SameSite=Lax"));
+        assertTrue(response.getCookie("APP_OAUTH2_REQUEST").getValue().length() < 1_000);
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void loadAuthorizationRequest_otherState_returnsNull() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        Cookie cookie = save(repository, authorizationRequest());
+
+        assertNull(repository.loadAuthorizationRequest(callback(cookie, "other-state")));
+        assertNull(repository.loadAuthorizationRequest(callback(cookie, null)));
+    }
+
+    @Test
+    void rotatedKey_stillReadsCookiesSealedWithThePreviousKey() {
+        EncryptedCookieAuthorizationRequestRepository before = repository(settings(List.of(KEY)), NOW);
+        EncryptedCookieAuthorizationRequestRepository after = repository(settings(List.of(OTHER_KEY, KEY)), NOW);
+
+        assertNotNull(after.loadAuthorizationRequest(callback(save(before, authorizationRequest()), STATE)));
+    }
+
+    @Test
+    void retiredKey_rejectsCookie() {
+        EncryptedCookieAuthorizationRequestRepository before = repository(settings(List.of(KEY)), NOW);
+        EncryptedCookieAuthorizationRequestRepository after = repository(settings(List.of(OTHER_KEY)), NOW);
+
+        assertNull(after.loadAuthorizationRequest(callback(save(before, authorizationRequest()), STATE)));
+        assertEquals(1, rejected("unknown-key"));
+    }
+
+    @Test
+    void expiredCookie_isRejected() {
+        AuthorizationRequestCookieProperties settings = settings(List.of(KEY));
+        EncryptedCookieAuthorizationRequestRepository before = repository(settings, NOW);
+        EncryptedCookieAuthorizationRequestRepository after = repository(settings,
+                NOW.plus(settings.maxAge()).plusSeconds(1));
+
+        assertNull(after.loadAuthorizationRequest(callback(save(before, authorizationRequest()), STATE)));
+        assertEquals(1, rejected("expired"));
+    }
+
+    @Test
+    void tamperedCookie_isRejected() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        byte[] sealed = Base64.getUrlDecoder().decode(save(repository, authorizationRequest()).getValue());
+        sealed[sealed.length - 1] ^= 1;
+        Cookie tampered = new Cookie("APP_OAUTH2_REQUEST", Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(sealed));
+
+        assertNull(repository.loadAuthorizationRequest(callback(tampered, STATE)));
+        assertEquals(1, rejected("invalid"));
+    }
+
+    @Test
+    void removeAuthorizationRequest_returnsRequestAndClearsCookie() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        OAuth2AuthorizationRequest removed = repository.removeAuthorizationRequest(
+                callback(save(repository, authorizationRequest()), STATE), response);
+
+        assertNotNull(removed);
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_OAUTH2_REQUEST=;"));
+        assertTrue(setCookie.contains("Max-Age=0"));
+    }
+
+    @Test
+    void saveAuthorizationRequest_nonStringAttribute_fallsBackToSession() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        OAuth2AuthorizationRequest authorizationRequest = OAuth2AuthorizationRequest.from(authorizationRequest())
+                .attributes(attributes -> attributes.put("attempt", 2))
+                .build();
+
+        repository.saveAuthorizationRequest(authorizationRequest, request, response);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        assertNotNull(request.getSession(false));
+        request.setParameter(OAuth2ParameterNames.STATE, STATE);
+        assertEquals(authorizationRequest.getAttributes(),
+                repository.loadAuthorizationRequest(request).getAttributes());
+    }
+
+    @Test
+    void loadAuthorizationRequest_noCookie_doesNotCreateSession() {
+        EncryptedCookieAuthorizationRequestRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = callback(null, STATE);
+
+        assertNull(repository.loadAuthorizationRequest(request));
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void constructor_keyOfWrongLength_throws() {
+        AuthorizationRequestCookieProperties settings = settings(List.of(Base64.getEncoder()
+                .encodeToString(new byte[16])));
+
+        assertThrows(IllegalArgumentException.class, () -> repository(settings, NOW));
+    }
+
+    private static Cookie save(EncryptedCookieAuthorizationRequestRepository repository,
+            OAuth2AuthorizationRequest authorizationRequest) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveAuthorizationRequest(authorizationRequest, new MockHttpServletRequest(), response);
+        Cookie cookie = response.getCookie("APP_OAUTH2_REQUEST");
+        assertNotNull(cookie);
+        return new Cookie(cookie.getName(), cookie.getValue());
+    }
+
+    private static MockHttpServletRequest callback(Cookie cookie, String state) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/login/oauth2/code/google");
+        if (cookie != null) {
+            request.setCookies(cookie);
+        }
+        if (state != null) {
+            request.setParameter(OAuth2ParameterNames.STATE, state);
+        }
+        return request;
+    }
+
+    // Shaped like the requests DefaultOAuth2AuthorizationRequestResolver builds for OIDC with PKCE
+    private static OAuth2AuthorizationRequest authorizationRequest() {
+        return OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri("https://accounts.google.com/o/oauth2/v2/auth")
+                .clientId("test-google-id")
+                .redirectUri("http://localhost:8080/login/oauth2/code/google")
+                .scopes(Set.of("openid", "profile", "email"))
+                .state(STATE)
+                .additionalParameters(Map.of(
+                        OidcParameterNames.NONCE, "hashed-nonce",
+                        PkceParameterNames.CODE_CHALLENGE, "challenge",
+                        PkceParameterNames.CODE_CHALLENGE_METHOD, "S256"))
+                .attributes(Map.of(
+                        OAuth2ParameterNames.REGISTRATION_ID, "google",
+                        OidcParameterNames.NONCE, "nonce",
+                        PkceParameterNames.CODE_VERIFIER, "verifier"))
+                .build();
+    }
+
+    private EncryptedCookieAuthorizationRequestRepository repository(AuthorizationRequestCookieProperties settings,
+            Instant now) {
+        return new EncryptedCookieAuthorizationRequestRepository(settings, meterRegistry,
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static AuthorizationRequestCookieProperties settings(List<String> keys) {
+        return new AuthorizationRequestCookieProperties(null, keys, Duration.ofMinutes(10), null);
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("oauth2.authorization.request.cookie.rejected").tag("reason", reason).counter()
+                .count();
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+}
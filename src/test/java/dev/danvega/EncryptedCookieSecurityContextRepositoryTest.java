@@ -0,0 +1,298 @@
+package dev.danvega;
+
+import dev.danvega.config.SecurityContextCookieProperties;
+import dev.danvega.domain.Role;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleSetAuthority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/** Unit tests for EncryptedCookieSecurityContextRepository. */
+class EncryptedCookieSecurityContextRepositoryTest {
+
+    private static final String KEY = key(1);
+    private static final String OTHER_KEY = key(2);
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RoleBits roleBits;
+
+    @BeforeEach
+    void setUp() {
+        RoleRepository roleRepository = mock(RoleRepository.class);
+        when(roleRepository.findAll()).thenReturn(List.of(role(1, "ROLE_USER"), role(2, "ROLE_ADMIN"),
+                role(3, "ROLE_POWER_USER")));
+        roleBits = new RoleBits(roleRepository);
+    }
+
+    @Test
+    void formLogin_roundTrip_restoresUserAndRoleSet() {
+        Set<GrantedAuthority> authorities = roleBits.withRoleSet(authorityRegistry.authorities(List.of("ROLE_ADMIN")));
+        UserDetails user = User.withUsername("admin").password("{noop}secret").authorities(authorities).build();
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+
+        Authentication restored = roundTrip(repository, repository,
+                UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+
+        assertInstanceOf(UsernamePasswordAuthenticationToken.class, restored);
+        assertTrue(restored.isAuthenticated());
+        UserDetails restoredUser = (UserDetails) restored.getPrincipal();
+        assertEquals("admin", restoredUser.getUsername());
+        assertNull(restoredUser.getPassword());
+        assertEquals(Set.copyOf(user.getAuthorities()), Set.copyOf(restored.getAuthorities()));
+        assertTrue(restored.getAuthorities().stream().anyMatch(RoleSetAuthority.class::isInstance));
+    }
+
+    @Test
+    void oidcLogin_roundTrip_restoresCompactOidcUser() {
+        CompactOidcUser user = oidcUser("Power User Active");
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+
+        Authentication restored = roundTrip(repository, repository,
+                new OAuth2AuthenticationToken(user, user.getAuthorities(), "google"));
+
+        OAuth2AuthenticationToken token = assertInstanceOf(OAuth2AuthenticationToken.class, restored);
+        assertEquals("google", token.getAuthorizedClientRegistrationId());
+        CompactOidcUser restoredUser = assertInstanceOf(CompactOidcUser.class, token.getPrincipal());
+        assertEquals(user.getAttributes(), restoredUser.getAttributes());
+        assertEquals("12345", restoredUser.getName());
+        assertEquals(user.getIdTokenValue(), restoredUser.getIdTokenValue());
+        assertEquals(Set.copyOf(user.getAuthorities()), Set.copyOf(restoredUser.getAuthorities()));
+    }
+
+    @Test
+    void oauth2Login_numericNameAttribute_keepsItsType() {
+        Map<String, Object> attributes = Map.of("id", 42, "name", "Octocat", "email", "octocat@example.com");
+        CompactOAuth2User user = new CompactOAuth2User(attributes,
+                authorityRegistry.authorities(List.of("OAUTH2_USER", "SCOPE_read:user", "ROLE_USER")), "id");
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+
+        Authentication restored = roundTrip(repository, repository,
+                new OAuth2AuthenticationToken(user, user.getAuthorities(), "github"));
+
+        CompactOAuth2User restoredUser = assertInstanceOf(CompactOAuth2User.class, restored.getPrincipal());
+        assertFalse(restoredUser instanceof CompactOidcUser);
+        assertEquals(42, restoredUser.<Integer>getAttribute("id"));
+        assertEquals("42", restoredUser.getName());
+    }
+
+    @Test
+    void rotatedKey_stillReadsCookiesSealedWithThePreviousKey() {
+        EncryptedCookieSecurityContextRepository before = repository(settings(List.of(KEY)), NOW);
+        EncryptedCookieSecurityContextRepository after = repository(settings(List.of(OTHER_KEY, KEY)), NOW);
+
+        Authentication restored = roundTrip(before, after, formLogin());
+
+        assertNotNull(restored);
+        assertEquals("admin", restored.getName());
+    }
+
+    @Test
+    void retiredKey_rejectsCookie() {
+        EncryptedCookieSecurityContextRepository before = repository(settings(List.of(KEY)), NOW);
+        EncryptedCookieSecurityContextRepository after = repository(settings(List.of(OTHER_KEY)), NOW);
+
+        assertNull(roundTrip(before, after, formLogin()));
+        assertEquals(1, rejected("unknown-key"));
+    }
+
+    @Test
+    void expiredCookie_isRejected() {
+        SecurityContextCookieProperties settings = settings(List.of(KEY));
+        EncryptedCookieSecurityContextRepository before = repository(settings, NOW);
+        EncryptedCookieSecurityContextRepository after = repository(settings,
+                NOW.plus(settings.maxAge()).plusSeconds(1));
+
+        assertNull(roundTrip(before, after, formLogin()));
+        assertEquals(1, rejected("expired"));
+    }
+
+    @Test
+    void tamperedCookie_isRejected() {
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+        String value = save(repository, formLogin(), new MockHttpServletRequest()).getValue();
+        byte[] sealed = Base64.getUrlDecoder().decode(value);
+        sealed[sealed.length - 1] ^= 1;
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie("APP_AUTH", Base64.getUrlEncoder().withoutPadding().encodeToString(sealed)));
+        SecurityContext context = repository.loadDeferredContext(request).get();
+
+        assertNull(context.getAuthentication());
+        assertEquals(1, rejected("invalid"));
+    }
+
+    @Test
+    void saveContext_writesHttpOnlyCookieWithoutCreatingSession() {
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveContext(new SecurityContextImpl(formLogin()), request, response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_AUTH="));
+        assertTrue(setCookie.contains("HttpOnly"));
+        assertTrue(setCookie.contains("Secure"));
+        assertTrue(setCookie.contains("SameSite=Lax"));
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void saveContext_oversizedContext_fallsBackToSession() {
+        EncryptedCookieSecurityContextRepository repository = repository(
+                new SecurityContextCookieProperties(true, null, List.of(KEY), null, 100, null), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CompactOidcUser user = oidcUser(null);
+
+        repository.saveContext(new SecurityContextImpl(
+                new OAuth2AuthenticationToken(user, user.getAuthorities(), "google")), request, response);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        assertNotNull(request.getSession(false)
+                .getAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY));
+        assertEquals(user, repository.loadDeferredContext(request).get().getAuthentication().getPrincipal());
+        assertEquals(1, rejected("oversized"));
+    }
+
+    @Test
+    void saveContext_emptyContext_clearsCookie() {
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(save(repository, formLogin(), new MockHttpServletRequest()));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveContext(new SecurityContextImpl(), request, response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_AUTH=;"));
+        assertTrue(setCookie.contains("Max-Age=0"));
+    }
+
+    @Test
+    void saveContext_anonymous_writesNothing() {
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveContext(new SecurityContextImpl(new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"))), request, response);
+
+        assertNull(response.getHeader(HttpHeaders.SET_COOKIE));
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void loadDeferredContext_noCookie_isGenerated() {
+        EncryptedCookieSecurityContextRepository repository = repository(settings(List.of(KEY)), NOW);
+
+        assertTrue(repository.loadDeferredContext(new MockHttpServletRequest()).isGenerated());
+        assertFalse(repository.containsContext(new MockHttpServletRequest()));
+    }
+
+    @Test
+    void constructor_keyOfWrongLength_throws() {
+        SecurityContextCookieProperties settings = settings(List.of(Base64.getEncoder().encodeToString(new byte[16])));
+
+        assertThrows(IllegalArgumentException.class, () -> repository(settings, NOW));
+    }
+
+    private Authentication roundTrip(EncryptedCookieSecurityContextRepository writer,
+            EncryptedCookieSecurityContextRepository reader, Authentication authentication) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(save(writer, authentication, new MockHttpServletRequest()));
+        return reader.loadDeferredContext(request).get().getAuthentication();
+    }
+
+    private static Cookie save(EncryptedCookieSecurityContextRepository repository, Authentication authentication,
+            MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveContext(new SecurityContextImpl(authentication), request, response);
+        Cookie cookie = response.getCookie("APP_AUTH");
+        assertNotNull(cookie);
+        return new Cookie(cookie.getName(), cookie.getValue());
+    }
+
+    private Authentication formLogin() {
+        UserDetails user = User.withUsername("admin").password("{noop}secret")
+                .authorities(roleBits.withRoleSet(authorityRegistry.authorities(List.of("ROLE_ADMIN"))))
+                .build();
+        return UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities());
+    }
+
+    private CompactOidcUser oidcUser(String customClaim) {
+        Map<String, Object> attributes = new HashMap<>(Map.of("sub", "12345", "email", "user@example.com",
+                "name", "Test User"));
+        if (customClaim != null) {
+            attributes.put("custom_claim", customClaim);
+        }
+        Set<GrantedAuthority> authorities = authorityRegistry.merge(
+                authorityRegistry.authorities(List.of("OIDC_USER", "SCOPE_openid", "SCOPE_email")),
+                roleBits.withRoleSet(authorityRegistry.authorities(List.of("ROLE_POWER_USER"))));
+        OidcIdToken idToken = new OidcIdToken("header." + "p".repeat(600) + ".signature", NOW,
+                NOW.plusSeconds(3600), Map.of("sub", "12345"));
+        return new CompactOidcUser(attributes, authorities, idToken, "sub");
+    }
+
+    private EncryptedCookieSecurityContextRepository repository(SecurityContextCookieProperties settings,
+            Instant now) {
+        return new EncryptedCookieSecurityContextRepository(settings, authorityRegistry, roleBits, meterRegistry,
+                Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static SecurityContextCookieProperties settings(List<String> keys) {
+        return new SecurityContextCookieProperties(true, null, keys, Duration.ofHours(8), 0, null);
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("security.context.cookie.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private static Role role(long id, String name) {
+        Role role = new Role(name);
+        role.setId(id);
+        return role;
+    }
+}
@@ -0,0 +1,184 @@
+package dev.danvega;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.config.OAuth2LookupExecutorConfig;
+import dev.danvega.config.RoleLookupProperties;
+import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.KnownUserFilter;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleIndex;
+import dev.danvega.service.RoleService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.web.client.RestTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests GitHubOAuth2UserService against a local GitHub stub whose {@code /user} and
+ * {@code /user/emails} resources each take {@link #RESOURCE_DELAY} to answer.
+ */
+class GitHubOAuth2UserServiceTest {
+
+    private static final Duration RESOURCE_DELAY = Duration.ofMillis(300);
+
+    private HttpServer server;
+    private volatile String userBody;
+    private volatile String emailsBody;
+    private volatile int emailsStatus = 200;
+
+    private RoleAssignmentRepository roleAssignmentRepository;
+    private final ExecutorService lookupExecutor = new OAuth2LookupExecutorConfig().oauth2LookupExecutor();
+    private GitHubOAuth2UserService userService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/user", exchange -> {
+            boolean emails = exchange.getRequestURI().getPath().equals("/user/emails");
+            respond(exchange, emails ? emailsStatus : 200, emails ? emailsBody : userBody);
+        });
+        server.start();
+
+        roleAssignmentRepository = mock(RoleAssignmentRepository.class);
+        AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+        KnownUserFilter knownUserFilter = new KnownUserFilter(mock(DataSource.class), RoleLookupProperties.defaults(),
+                new SimpleMeterRegistry());
+        RoleIndex roleIndex = mock(RoleIndex.class);
+        lenient().when(roleIndex.lookup(anyString())).thenReturn(Optional.empty());
+        RoleService roleService = new RoleService(roleAssignmentRepository, roleIndex, knownUserFilter,
+                authorityRegistry, RoleLookupProperties.defaults(), new SimpleMeterRegistry());
+        userService = new GitHubOAuth2UserService(new DefaultOAuth2UserService(), new RestTemplate(), roleService,
+                authorityRegistry, new RoleBits(mock(RoleRepository.class)), lookupExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        lookupExecutor.close();
+    }
+
+    @Test
+    void loadUser_fetchesUserAndEmailsConcurrently() {
+        userBody = """
+                {"id": 42, "login": "octocat", "email": null}""";
+        emailsBody = """
+                [{"email": "octocat@users.noreply.github.com", "primary": false, "verified": true},
+                 {"email": "octocat@example.com", "primary": true, "verified": true}]""";
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("github:octocat@example.com"))
+                .thenReturn(List.of("ROLE_ADMIN"));
+        userService.loadUser(userRequest());
+
+        long start = System.nanoTime();
+        OAuth2User user = userService.loadUser(userRequest());
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // Sequential requests would take at least twice the delay
+        assertTrue(elapsed.compareTo(RESOURCE_DELAY.multipliedBy(2)) < 0, "login took " + elapsed);
+        assertEquals("octocat@example.com", user.getAttribute("email"));
+        assertEquals("42", user.getName());
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+    }
+
+    @Test
+    void loadUser_noVerifiedPrimaryEmail_usesPublicEmail() {
+        userBody = """
+                {"id": 42, "login": "octocat", "email": "public@example.com"}""";
+        emailsBody = """
+                [{"email": "unverified@example.com", "primary": true, "verified": false}]""";
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("github:public@example.com"))
+                .thenReturn(List.of("ROLE_POWER_USER"));
+
+        OAuth2User user = userService.loadUser(userRequest());
+
+        assertEquals("public@example.com", user.getAttribute("email"));
+        assertEquals("Power User Active", user.getAttribute("custom_claim"));
+    }
+
+    @Test
+    void loadUser_emailsForbidden_usesPublicEmail() {
+        userBody = """
+                {"id": 42, "login": "octocat", "email": "public@example.com"}""";
+        emailsBody = """
+                {"message": "Resource not accessible by integration"}""";
+        emailsStatus = 403;
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("github:public@example.com"))
+                .thenReturn(List.of("ROLE_USER"));
+
+        OAuth2User user = userService.loadUser(userRequest());
+
+        assertEquals("public@example.com", user.getAttribute("email"));
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_USER".equals(a.getAuthority())));
+    }
+
+    @Test
+    void loadUser_noEmailAtAll_skipsRoleLookup() {
+        userBody = """
+                {"id": 42, "login": "octocat", "email": null}""";
+        emailsBody = "[]";
+
+        OAuth2User user = userService.loadUser(userRequest());
+
+        assertNull(user.getAttribute("email"));
+        verifyNoInteractions(roleAssignmentRepository);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        try {
+            Thread.sleep(RESOURCE_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private OAuth2UserRequest userRequest() {
+        String baseUri = "http://127.0.0.1:" + server.getAddress().getPort();
+        ClientRegistration github = ClientRegistration.withRegistrationId("github")
+                .clientId("test-client-id")
+                .clientSecret("test-client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("read:user", "user:email")
+                .authorizationUri(baseUri + "/login/oauth/authorize")
+                .tokenUri(baseUri + "/login/oauth/access_token")
+                .userInfoUri(baseUri + "/user")
+                .userNameAttributeName("id")
+                .clientName("GitHub")
+                .build();
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "test-access-token", Instant.now(), Instant.now().plusSeconds(3600), Set.of("read:user", "user:email"));
+        return new OAuth2UserRequest(github, accessToken);
+    }
+}
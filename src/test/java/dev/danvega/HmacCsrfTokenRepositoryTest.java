@@ -0,0 +1,242 @@
+package dev.danvega;
+
+import dev.danvega.config.CsrfTokenProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.XorCsrfTokenRequestAttributeHandler;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Unit tests for HmacCsrfTokenRepository. */
+class HmacCsrfTokenRepositoryTest {
+
+    private static final String KEY = key(1);
+    private static final String OTHER_KEY = key(2);
+    private static final Instant NOW = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void visitor_maskedTokenFromRenderedForm_isAccepted() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        Rendered rendered = render(repository, null);
+
+        CsrfToken loaded = repository.loadToken(submit(rendered.maskedToken(), rendered.bindingCookie()));
+
+        assertNotNull(loaded);
+        assertEquals(rendered.token(), loaded.getToken());
+        assertNotEquals(rendered.token(), rendered.maskedToken());
+    }
+
+    @Test
+    void visitor_firstForm_setsHttpOnlyBindingCookieWithoutCreatingSession() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveToken(repository.generateToken(request), request, response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_CSRF="));
+        assertTrue(setCookie.contains("HttpOnly"));
+        assertTrue(setCookie.contains("SameSite=Lax"));
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void visitor_knownBinding_setsNoCookie() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        Rendered first = render(repository, null);
+
+        Rendered second = render(repository, first.bindingCookie());
+
+        assertNull(second.bindingCookie());
+    }
+
+    @Test
+    void visitor_tokenWithAnotherVisitorsCookie_isRejected() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        Rendered victim = render(repository, null);
+        Rendered attacker = render(repository, null);
+
+        assertNull(repository.loadToken(submit(attacker.maskedToken(), victim.bindingCookie())));
+        assertNull(repository.loadToken(submit(attacker.maskedToken(), null)));
+        assertEquals(1, rejected("invalid"));
+    }
+
+    @Test
+    void user_tokenIsBoundToName() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        logIn("admin");
+        Rendered rendered = render(repository, null);
+
+        assertNull(rendered.bindingCookie());
+        assertNotNull(repository.loadToken(submit(rendered.maskedToken(), null)));
+
+        logIn("user");
+        assertNull(repository.loadToken(submit(rendered.maskedToken(), null)));
+        assertEquals(1, rejected("invalid"));
+    }
+
+    @Test
+    void user_sameNameAtAnotherProvider_isRejected() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        logIn("google", "12345");
+        Rendered rendered = render(repository, null);
+
+        assertNotNull(repository.loadToken(submit(rendered.maskedToken(), null)));
+
+        logIn("github", "12345");
+        assertNull(repository.loadToken(submit(rendered.maskedToken(), null)));
+        logIn("12345");
+        assertNull(repository.loadToken(submit(rendered.maskedToken(), null)));
+        assertEquals(2, rejected("invalid"));
+    }
+
+    @Test
+    void expiredToken_isRejected() {
+        CsrfTokenProperties settings = settings(List.of(KEY));
+        Rendered rendered = render(repository(settings, NOW), null);
+        HmacCsrfTokenRepository later = repository(settings, NOW.plus(settings.maxAge()));
+
+        assertNull(later.loadToken(submit(rendered.maskedToken(), rendered.bindingCookie())));
+        assertEquals(1, rejected("expired"));
+    }
+
+    @Test
+    void rotatedKey_stillAcceptsTokensSignedWithThePreviousKey() {
+        Rendered rendered = render(repository(settings(List.of(KEY)), NOW), null);
+        HmacCsrfTokenRepository after = repository(settings(List.of(OTHER_KEY, KEY)), NOW);
+
+        assertNotNull(after.loadToken(submit(rendered.maskedToken(), rendered.bindingCookie())));
+    }
+
+    @Test
+    void retiredKey_rejectsToken() {
+        Rendered rendered = render(repository(settings(List.of(KEY)), NOW), null);
+        HmacCsrfTokenRepository after = repository(settings(List.of(OTHER_KEY)), NOW);
+
+        assertNull(after.loadToken(submit(rendered.maskedToken(), rendered.bindingCookie())));
+        assertEquals(1, rejected("unknown-key"));
+    }
+
+    @Test
+    void tamperedToken_isRejected() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        Rendered rendered = render(repository, null);
+        byte[] masked = Base64.getUrlDecoder().decode(rendered.maskedToken());
+        // Change a character inside the HMAC; the last one also holds unused bits, which
+        // decoding ignores, so changing it may leave the token as it was
+        masked[masked.length - 2] ^= 1;
+
+        assertNull(repository.loadToken(submit(Base64.getUrlEncoder().encodeToString(masked),
+                rendered.bindingCookie())));
+        assertEquals(1, rejected("invalid"));
+    }
+
+    @Test
+    void saveToken_null_clearsBindingCookie() {
+        HmacCsrfTokenRepository repository = repository(settings(List.of(KEY)), NOW);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(render(repository, null).bindingCookie());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        repository.saveToken(null, request, response);
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertTrue(setCookie.startsWith("APP_CSRF=;"));
+        assertTrue(setCookie.contains("Max-Age=0"));
+    }
+
+    @Test
+    void constructor_shortKey_throws() {
+        CsrfTokenProperties settings = settings(List.of(Base64.getEncoder().encodeToString(new byte[16])));
+
+        assertThrows(IllegalArgumentException.class, () -> repository(settings, NOW));
+    }
+
+    /** Generate a token as a page rendering a form does, and mask it as the form carries it. */
+    private static Rendered render(HmacCsrfTokenRepository repository, Cookie bindingCookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (bindingCookie != null) {
+            request.setCookies(bindingCookie);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        CsrfToken token = repository.loadDeferredToken(request, response).get();
+        new XorCsrfTokenRequestAttributeHandler().handle(request, response, () -> token);
+        CsrfToken masked = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+
+        String maskedToken = masked.getToken();
+        Cookie cookie = response.getCookie("APP_CSRF");
+        return new Rendered(token.getToken(), maskedToken,
+                cookie != null ? new Cookie(cookie.getName(), cookie.getValue()) : null);
+    }
+
+    private static MockHttpServletRequest submit(String maskedToken, Cookie bindingCookie) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/logout");
+        request.setParameter(HmacCsrfTokenRepository.PARAMETER_NAME, maskedToken);
+        if (bindingCookie != null) {
+            request.setCookies(bindingCookie);
+        }
+        return request;
+    }
+
+    private static void logIn(String username) {
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                username, null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+    private static void logIn(String registrationId, String name) {
+        OAuth2User user = new DefaultOAuth2User(AuthorityUtils.createAuthorityList("ROLE_USER"),
+                Map.of("id", name), "id");
+        SecurityContextHolder.getContext().setAuthentication(
+                new OAuth2AuthenticationToken(user, user.getAuthorities(), registrationId));
+    }
+
+    private HmacCsrfTokenRepository repository(CsrfTokenProperties settings, Instant now) {
+        return new HmacCsrfTokenRepository(settings, meterRegistry, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static CsrfTokenProperties settings(List<String> keys) {
+        return new CsrfTokenProperties(keys, Duration.ofHours(8), null, null);
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("csrf.token.rejected").tag("reason", reason).counter().count();
+    }
+
+    private static String key(int seed) {
+        byte[] key = new byte[32];
+        Arrays.fill(key, (byte) seed);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    private record Rendered(String token, String maskedToken, Cookie bindingCookie) {
+    }
+}
@@ -1,5 +1,6 @@
 package dev.danvega;
 
+import dev.danvega.config.OAuth2LookupExecutorConfig;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -36,6 +37,12 @@ class JteLoginApplicationTests {
 		assertNotNull(securityFilterChain);
 	}
 
+	@Test
+	void oauth2LookupExecutor_leavesApplicationTaskExecutorInPlace() {
+		assertTrue(applicationContext.containsBean(OAuth2LookupExecutorConfig.OAUTH2_LOOKUP_EXECUTOR));
+		assertTrue(applicationContext.containsBean("applicationTaskExecutor"));
+	}
+
 	@Test
 	void passwordEncoderBeanExists() {
 		PasswordEncoder passwordEncoder = applicationContext.getBean(PasswordEncoder.class);
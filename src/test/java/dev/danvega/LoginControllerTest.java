@@ -1,14 +1,22 @@
 package dev.danvega;
 
-import jakarta.servlet.http.HttpServletRequest;
+import dev.danvega.PrerenderedPages.LoginPage;
+import dev.danvega.PrerenderedPages.LoginVariant;
+import dev.danvega.PrerenderedPages.StaticPage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.ui.Model;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+
+import java.nio.charset.StandardCharsets;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 /**
@@ -17,77 +25,113 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class LoginControllerTest {
 
+    private static final LoginPage LOGIN_PAGE = new LoginPage(bytes("<form>"), bytes("</form>"));
+
     @Mock
     private OAuth2ClientConditionService oauthService;
 
     @Mock
-    private HttpServletRequest request;
+    private OAuth2ProviderGuards providerGuards;
 
     @Mock
-    private Model model;
+    private PrerenderedPages pages;
+
+    private final CsrfHiddenInput csrfHiddenInput =
+            new CsrfHiddenInput(new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token"));
+
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
 
     private LoginController loginController;
 
     @BeforeEach
     void setUp() {
-        loginController = new LoginController(oauthService);
+        loginController = new LoginController(oauthService, providerGuards, pages);
     }
 
     @Test
-    void login_withNoError_setsOAuthFlags() {
+    void login_withNoError_requestsVariantWithProviderFlags() throws Exception {
         when(oauthService.isGoogleEnabled()).thenReturn(true);
         when(oauthService.isGithubEnabled()).thenReturn(false);
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
 
-        String viewName = loginController.login(request, model, null, null);
+        loginController.login(csrfHiddenInput, response, null, null, null);
 
-        assertEquals("pages/login", viewName);
-        verify(model).addAttribute("googleEnabled", true);
-        verify(model).addAttribute("githubEnabled", false);
-        verify(model, never()).addAttribute(eq("error"), any());
+        verify(pages).login(new LoginVariant(null, true, false, false, false));
     }
 
     @Test
-    void login_withError_setsErrorAttributes() {
+    void login_withError_requestsInvalidCredentialsVariant() throws Exception {
         when(oauthService.isGoogleEnabled()).thenReturn(false);
         when(oauthService.isGithubEnabled()).thenReturn(true);
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
 
-        String viewName = loginController.login(request, model, "error", null);
+        loginController.login(csrfHiddenInput, response, "error", null, null);
 
-        assertEquals("pages/login", viewName);
-        verify(model).addAttribute("error", true);
-        verify(model).addAttribute("errorMessage", "Invalid username or password");
-        verify(model).addAttribute("googleEnabled", false);
-        verify(model).addAttribute("githubEnabled", true);
+        verify(pages).login(new LoginVariant("Invalid username or password", false, true, false, false));
     }
 
     @Test
-    void login_withLogout_setsOAuthFlags() {
+    void login_withLogout_requestsVariantWithoutError() throws Exception {
         when(oauthService.isGoogleEnabled()).thenReturn(true);
         when(oauthService.isGithubEnabled()).thenReturn(true);
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
 
-        String viewName = loginController.login(request, model, null, "true");
+        loginController.login(csrfHiddenInput, response, null, "true", null);
 
-        assertEquals("pages/login", viewName);
-        verify(model).addAttribute("googleEnabled", true);
-        verify(model).addAttribute("githubEnabled", true);
+        verify(pages).login(new LoginVariant(null, true, true, false, false));
     }
 
     @Test
-    void login_withBothProvidersDisabled_setsDisabledFlags() {
-        when(oauthService.isGoogleEnabled()).thenReturn(false);
-        when(oauthService.isGithubEnabled()).thenReturn(false);
+    void login_withUnavailableProvider_requestsUnavailableVariant() throws Exception {
+        when(oauthService.isGoogleEnabled()).thenReturn(true);
+        when(oauthService.isGithubEnabled()).thenReturn(true);
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
 
-        String viewName = loginController.login(request, model, null, null);
+        loginController.login(csrfHiddenInput, response, null, null, "github");
 
-        assertEquals("pages/login", viewName);
-        verify(model).addAttribute("googleEnabled", false);
-        verify(model).addAttribute("githubEnabled", false);
+        verify(pages).login(new LoginVariant(LoginController.PROVIDER_UNAVAILABLE, true, true, false, false));
+        assertTrue(LoginController.PROVIDER_UNAVAILABLE.contains("temporarily unavailable"));
     }
 
     @Test
-    void home_returnsHomeView() {
-        String viewName = loginController.home();
+    void login_withOpenCircuit_flagsProvider() throws Exception {
+        when(oauthService.isGoogleEnabled()).thenReturn(true);
+        when(oauthService.isGithubEnabled()).thenReturn(true);
+        when(providerGuards.isOpen("google")).thenReturn(false);
+        when(providerGuards.isOpen("github")).thenReturn(true);
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
+
+        loginController.login(csrfHiddenInput, response, null, null, null);
+
+        verify(pages).login(new LoginVariant(null, true, true, false, true));
+    }
+
+    @Test
+    void login_writesPageAroundCsrfField() throws Exception {
+        when(pages.login(any())).thenReturn(LOGIN_PAGE);
+
+        loginController.login(csrfHiddenInput, response, null, null, null);
+
+        String expected = "<form><input type=\"hidden\" name=\"_csrf\" value=\"token\"></form>";
+        assertEquals(expected, response.getContentAsString());
+        assertEquals(expected.length(), response.getContentLength());
+        assertEquals("text/html;charset=UTF-8", response.getContentType());
+    }
+
+    @Test
+    void home_returnsPrerenderedPageWithETag() {
+        StaticPage page = new StaticPage(bytes("<html></html>"), "\"abc\"");
+        when(pages.home()).thenReturn(page);
+
+        ResponseEntity<byte[]> home = loginController.home();
+
+        assertEquals(HttpStatus.OK, home.getStatusCode());
+        assertSame(page.body(), home.getBody());
+        assertEquals("\"abc\"", home.getHeaders().getETag());
+        assertEquals("no-cache", home.getHeaders().getCacheControl());
+    }
 
-        assertEquals("pages/home", viewName);
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,58 @@
+package dev.danvega;
+
+import jakarta.servlet.http.Cookie;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Adds the CSRF token the login page renders, and its binding cookie, to a form post.
+ * <p>
+ * Used instead of spring-security-test's {@code csrf()}, which swaps the CSRF token repository
+ * of the application context for a session-backed one, so later tests sharing the context
+ * create sessions and no longer exercise the signed tokens.
+ */
+final class LoginPageCsrf {
+
+    private static final Pattern TOKEN = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+    private LoginPageCsrf() {
+    }
+
+    /**
+     * Load the login page and return a post-processor that submits its token.
+     *
+     * @param mockMvc the application to load the login page from
+     */
+    static RequestPostProcessor csrfFromLoginPage(MockMvc mockMvc) throws Exception {
+        MvcResult loginPage = mockMvc.perform(get("/login")).andReturn();
+        String token = renderedCsrfToken(loginPage);
+        Cookie bindingCookie = loginPage.getResponse().getCookie("APP_CSRF");
+        return request -> {
+            request.addParameter("_csrf", token);
+            if (bindingCookie != null) {
+                List<Cookie> cookies = new ArrayList<>();
+                if (request.getCookies() != null) {
+                    cookies.addAll(List.of(request.getCookies()));
+                }
+                cookies.add(bindingCookie);
+                request.setCookies(cookies.toArray(Cookie[]::new));
+            }
+            return request;
+        };
+    }
+
+    static String renderedCsrfToken(MvcResult page) throws Exception {
+        Matcher matcher = TOKEN.matcher(page.getResponse().getContentAsString());
+        assertTrue(matcher.find());
+        return matcher.group(1);
+    }
+}
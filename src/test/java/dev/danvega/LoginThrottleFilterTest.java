@@ -0,0 +1,79 @@
+package dev.danvega;
+
+import dev.danvega.config.LoginThrottleProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LoginThrottleFilter.
+ */
+class LoginThrottleFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LoginThrottleFilter filter = new LoginThrottleFilter(new LoginThrottleProperties(true,
+            new LoginThrottleProperties.Limit(2, Duration.ofMinutes(1)),
+            new LoginThrottleProperties.Limit(3, Duration.ofMinutes(1)), 0), meterRegistry);
+
+    @Test
+    void loginAttempts_beyondUsernameBurst_areRejectedWith429() throws Exception {
+        assertEquals(200, attempt("admin", "10.0.0.1").getStatus());
+        assertEquals(200, attempt("admin", "10.0.0.2").getStatus());
+
+        MockHttpServletResponse rejected = attempt("admin", "10.0.0.3");
+
+        assertEquals(429, rejected.getStatus());
+        assertEquals("60", rejected.getHeader("Retry-After"));
+        assertEquals(1, meterRegistry.get("login.throttle.rejected").tag("key", "username").counter().count());
+    }
+
+    @Test
+    void loginAttempts_beyondClientIpBurst_areRejectedAcrossUsernames() throws Exception {
+        assertEquals(200, attempt("alice", "10.0.0.1").getStatus());
+        assertEquals(200, attempt("bob", "10.0.0.1").getStatus());
+        assertEquals(200, attempt("carol", "10.0.0.1").getStatus());
+
+        assertEquals(429, attempt("dave", "10.0.0.1").getStatus());
+        assertEquals(1, meterRegistry.get("login.throttle.rejected").tag("key", "ip").counter().count());
+    }
+
+    @Test
+    void rejectedAttempt_doesNotReachTheChain() throws Exception {
+        attempt("admin", "10.0.0.1");
+        attempt("admin", "10.0.0.1");
+
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(loginRequest("admin", "10.0.0.1"), new MockHttpServletResponse(), chain);
+
+        assertNull(chain.getRequest());
+    }
+
+    @Test
+    void otherRequests_areNotThrottled() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockFilterChain chain = new MockFilterChain();
+            filter.doFilter(new MockHttpServletRequest("GET", "/login"), new MockHttpServletResponse(), chain);
+            assertNotNull(chain.getRequest());
+        }
+    }
+
+    private MockHttpServletResponse attempt(String username, String clientIp) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(loginRequest(username, clientIp), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest loginRequest(String username, String clientIp) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+        request.setRemoteAddr(clientIp);
+        request.setParameter("username", username);
+        request.setParameter("password", "password");
+        return request;
+    }
+}
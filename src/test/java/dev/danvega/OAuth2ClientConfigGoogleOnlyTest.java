@@ -7,6 +7,9 @@ import org.springframework.security.oauth2.client.registration.ClientRegistratio
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.test.context.TestPropertySource;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -36,6 +39,15 @@ class OAuth2ClientConfigGoogleOnlyTest {
         assertEquals("Google", google.getClientName());
     }
 
+    @Test
+    void clientRegistrationRepository_withGoogleOnly_defaultsToClaimsOnlyUserInfoMode() {
+        ClientRegistration google = clientRegistrationRepository.findByRegistrationId("google");
+        Map<String, Object> metadata = google.getProviderDetails().getConfigurationMetadata();
+
+        assertEquals("CLAIMS", metadata.get(OAuth2ClientConfig.USERINFO_MODE));
+        assertEquals(List.of("email", "name"), metadata.get(OAuth2ClientConfig.USERINFO_REQUIRED_CLAIMS));
+    }
+
     @Test
     void clientRegistrationRepository_withGoogleOnly_doesNotRegisterGitHub() {
         assertNull(clientRegistrationRepository.findByRegistrationId("github"));
@@ -0,0 +1,134 @@
+package dev.danvega;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.config.OAuth2HttpClientProperties;
+import dev.danvega.config.OAuth2ResilienceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OAuth2HttpClient, against a local stub userinfo endpoint.
+ */
+class OAuth2HttpClientTest {
+
+    private HttpServer server;
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private volatile long responseDelayMillis;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private OAuth2HttpClient httpClient;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/user", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try {
+                Thread.sleep(responseDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = """
+                    {"id": 42, "login": "octocat"}""".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (httpClient != null) {
+            httpClient.destroy();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    void userInfoService_repeatedLogins_reuseOneConnection() {
+        httpClient = httpClient(OAuth2HttpClientProperties.defaults());
+
+        for (int i = 0; i < 5; i++) {
+            OAuth2User user = httpClient.userInfoService().loadUser(userRequest());
+            assertEquals("octocat", user.getAttribute("login"));
+        }
+
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    void userInfoService_recordsLatencyAndPoolMetricsPerProvider() {
+        httpClient = httpClient(OAuth2HttpClientProperties.defaults());
+
+        httpClient.userInfoService().loadUser(userRequest());
+        httpClient.userInfoService().loadUser(userRequest());
+
+        assertEquals(2, meterRegistry.get("oauth2.client.requests")
+                .tag("provider", "github").tag("outcome", "SUCCESS").timer().count());
+        assertEquals(20, meterRegistry.get("httpcomponents.httpclient.pool.total.max")
+                .tag("httpclient", "github").gauge().value());
+        assertNotNull(meterRegistry.get("httpcomponents.httpclient.pool.total.max")
+                .tag("httpclient", OAuth2HttpClient.DEFAULT_POOL).gauge());
+    }
+
+    @Test
+    void userInfoService_slowerThanRegistrationReadTimeout_fails() {
+        OAuth2HttpClientProperties settings = new OAuth2HttpClientProperties(0, null, null, null,
+                Map.of("github", new OAuth2HttpClientProperties.Timeouts(null, Duration.ofMillis(200))));
+        httpClient = httpClient(settings);
+        responseDelayMillis = 1000;
+
+        assertThrows(OAuth2AuthenticationException.class, () -> httpClient.userInfoService().loadUser(userRequest()));
+    }
+
+    private OAuth2HttpClient httpClient(OAuth2HttpClientProperties settings) {
+        InMemoryClientRegistrationRepository repository = new InMemoryClientRegistrationRepository(registration());
+        return new OAuth2HttpClient(repository, settings,
+                new OAuth2ProviderGuards(repository, OAuth2ResilienceProperties.defaults(), meterRegistry), meterRegistry);
+    }
+
+    private ClientRegistration registration() {
+        String baseUri = "http://127.0.0.1:" + server.getAddress().getPort();
+        return ClientRegistration.withRegistrationId("github")
+                .clientId("test-client-id")
+                .clientSecret("test-client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("read:user", "user:email")
+                .authorizationUri(baseUri + "/login/oauth/authorize")
+                .tokenUri(baseUri + "/login/oauth/access_token")
+                .userInfoUri(baseUri + "/user")
+                .userNameAttributeName("id")
+                .clientName("GitHub")
+                .build();
+    }
+
+    private OAuth2UserRequest userRequest() {
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "test-access-token", Instant.now(), Instant.now().plusSeconds(3600), Set.of("read:user"));
+        return new OAuth2UserRequest(registration(), accessToken);
+    }
+}
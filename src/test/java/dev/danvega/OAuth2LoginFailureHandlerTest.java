@@ -0,0 +1,48 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AuthorizationException;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.web.client.ResourceAccessException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for OAuth2LoginFailureHandler.
+ */
+class OAuth2LoginFailureHandlerTest {
+
+    private final AuthenticationFailureHandler delegate = mock(AuthenticationFailureHandler.class);
+    private final OAuth2LoginFailureHandler handler = new OAuth2LoginFailureHandler(delegate);
+
+    @Test
+    void onAuthenticationFailure_providerUnavailable_redirectsToLoginWithProvider() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        // Wrapped the way the token response client and login provider wrap it
+        OAuth2Error error = new OAuth2Error("invalid_token_response");
+        OAuth2AuthenticationException exception = new OAuth2AuthenticationException(error,
+                new OAuth2AuthorizationException(error, new ResourceAccessException("I/O error",
+                        new OAuth2ProviderUnavailableException("github", "Circuit for github is open"))));
+
+        handler.onAuthenticationFailure(new MockHttpServletRequest(), response, exception);
+
+        assertEquals("/login?unavailable=github", response.getRedirectedUrl());
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void onAuthenticationFailure_otherError_delegates() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        OAuth2AuthenticationException exception = new OAuth2AuthenticationException("invalid_user_info_response");
+
+        handler.onAuthenticationFailure(request, response, exception);
+
+        verify(delegate).onAuthenticationFailure(request, response, exception);
+    }
+}
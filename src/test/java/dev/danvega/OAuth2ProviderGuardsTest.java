@@ -0,0 +1,155 @@
+package dev.danvega;
+
+import dev.danvega.config.OAuth2ResilienceProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.InMemoryClientRegistrationRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for OAuth2ProviderGuards.
+ */
+class OAuth2ProviderGuardsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HttpRequest request = new MockClientHttpRequest(HttpMethod.POST,
+            URI.create("https://github.com/login/oauth/access_token"));
+    private final ClientHttpRequestExecution execution = mock(ClientHttpRequestExecution.class);
+
+    @Test
+    void execute_consecutiveServerErrors_opensCircuitAndFailsFast() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(10, 3, Duration.ofMinutes(1)));
+        when(execution.execute(any(), any())).thenAnswer(invocation ->
+                new MockClientHttpResponse(new byte[0], HttpStatus.BAD_GATEWAY));
+
+        for (int i = 0; i < 3; i++) {
+            guards.execute("github", request, new byte[0], execution);
+        }
+        OAuth2ProviderUnavailableException e = assertThrows(OAuth2ProviderUnavailableException.class,
+                () -> guards.execute("github", request, new byte[0], execution));
+
+        assertEquals("github", e.getRegistrationId());
+        assertTrue(guards.isOpen("github"));
+        verify(execution, times(3)).execute(any(), any());
+        assertEquals(1, meterRegistry.get("oauth2.client.rejected")
+                .tag("provider", "github").tag("reason", "circuit_open").counter().count());
+        assertEquals(1, meterRegistry.get("oauth2.circuit.open").tag("provider", "github").gauge().value());
+    }
+
+    @Test
+    void execute_ioErrors_countAsFailures() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(10, 2, Duration.ofMinutes(1)));
+        when(execution.execute(any(), any())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        assertThrows(SocketTimeoutException.class, () -> guards.execute("github", request, new byte[0], execution));
+        assertThrows(SocketTimeoutException.class, () -> guards.execute("github", request, new byte[0], execution));
+
+        assertTrue(guards.isOpen("github"));
+    }
+
+    @Test
+    void execute_clientErrors_doNotOpenCircuit() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(10, 2, Duration.ofMinutes(1)));
+        when(execution.execute(any(), any())).thenAnswer(invocation ->
+                new MockClientHttpResponse(new byte[0], HttpStatus.BAD_REQUEST));
+
+        for (int i = 0; i < 5; i++) {
+            guards.execute("github", request, new byte[0], execution);
+        }
+
+        assertFalse(guards.isOpen("github"));
+    }
+
+    @Test
+    void execute_bulkheadFull_failsFastWithoutSending() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(1, 5, Duration.ofMinutes(1)));
+        CountDownLatch inFlight = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(execution.execute(any(), any())).thenAnswer(invocation -> {
+            inFlight.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new MockClientHttpResponse(new byte[0], HttpStatus.OK);
+        });
+
+        CompletableFuture<Void> slowCall = CompletableFuture.runAsync(() -> {
+            try {
+                guards.execute("github", request, new byte[0], execution);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(inFlight.await(5, TimeUnit.SECONDS));
+
+        assertThrows(OAuth2ProviderUnavailableException.class,
+                () -> guards.execute("github", request, new byte[0], execution));
+        release.countDown();
+        slowCall.get(5, TimeUnit.SECONDS);
+
+        verify(execution, times(1)).execute(any(), any());
+        assertEquals(1, meterRegistry.get("oauth2.client.rejected")
+                .tag("provider", "github").tag("reason", "bulkhead_full").counter().count());
+        assertFalse(guards.isOpen("github"));
+    }
+
+    @Test
+    void execute_responseNotYetClosed_holdsBulkheadPermit() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(1, 5, Duration.ofMinutes(1)));
+        when(execution.execute(any(), any())).thenAnswer(invocation ->
+                new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+
+        ClientHttpResponse response = guards.execute("github", request, new byte[0], execution);
+        assertThrows(OAuth2ProviderUnavailableException.class,
+                () -> guards.execute("github", request, new byte[0], execution));
+
+        response.close();
+        response.close();
+        guards.execute("github", request, new byte[0], execution).close();
+        guards.execute("github", request, new byte[0], execution).close();
+
+        verify(execution, times(3)).execute(any(), any());
+    }
+
+    @Test
+    void execute_unknownRegistration_sendsUnguarded() throws Exception {
+        OAuth2ProviderGuards guards = guards(new OAuth2ResilienceProperties(1, 1, Duration.ofMinutes(1)));
+        when(execution.execute(any(), any())).thenThrow(new SocketTimeoutException("Read timed out"));
+
+        assertThrows(SocketTimeoutException.class, () -> guards.execute("default", request, new byte[0], execution));
+        assertThrows(SocketTimeoutException.class, () -> guards.execute("default", request, new byte[0], execution));
+
+        assertFalse(guards.isOpen("default"));
+    }
+
+    private OAuth2ProviderGuards guards(OAuth2ResilienceProperties settings) {
+        ClientRegistration github = ClientRegistration.withRegistrationId("github")
+                .clientId("test-client-id")
+                .clientSecret("test-client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .authorizationUri("https://github.com/login/oauth/authorize")
+                .tokenUri("https://github.com/login/oauth/access_token")
+                .userInfoUri("https://api.github.com/user")
+                .userNameAttributeName("id")
+                .build();
+        return new OAuth2ProviderGuards(new InMemoryClientRegistrationRepository(github), settings, meterRegistry);
+    }
+}
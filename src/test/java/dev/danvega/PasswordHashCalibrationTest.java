@@ -0,0 +1,116 @@
+package dev.danvega;
+
+import dev.danvega.config.PasswordHashingProperties;
+import dev.danvega.config.PasswordHashingProperties.Algorithm;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PasswordHashCalibration.
+ */
+class PasswordHashCalibrationTest {
+
+    // Seeded admin user's hash of "admin123", stored without an id prefix
+    private static final String LEGACY_HASH = "$2a$10$Tfv9my5koN08dz0AL77vA.26XHC1qJoDe.6.FrjGU2sq7dQG3lDzW";
+
+    @Test
+    void bcryptStrength_picksHighestStrengthWithinTarget() {
+        // 1 ms at strength 8: 32 ms at 13, 64 ms at 14
+        assertEquals(13, PasswordHashCalibration.bcryptStrength(Duration.ofMillis(1), Duration.ofMillis(50)));
+    }
+
+    @Test
+    void bcryptStrength_slowMachine_neverGoesBelowMinimum() {
+        assertEquals(PasswordHashCalibration.MIN_BCRYPT_STRENGTH,
+                PasswordHashCalibration.bcryptStrength(Duration.ofMillis(40), Duration.ofMillis(50)));
+    }
+
+    @Test
+    void pbkdf2Iterations_picksHighestRungWithinTarget() {
+        // 0.5 ms per 20,000 iterations affords 2,000,000 in 50 ms
+        assertEquals(1_240_000,
+                PasswordHashCalibration.pbkdf2Iterations(Duration.ofNanos(500_000), Duration.ofMillis(50)));
+    }
+
+    @Test
+    void pbkdf2Iterations_slowMachine_neverGoesBelowMinimum() {
+        assertEquals(PasswordHashCalibration.MIN_PBKDF2_ITERATIONS,
+                PasswordHashCalibration.pbkdf2Iterations(Duration.ofMillis(10), Duration.ofMillis(50)));
+    }
+
+    @Test
+    void create_bcrypt_encodesWithPrefixAndMatchesLegacyHash() {
+        DelegatingPasswordEncoder encoder = PasswordHashCalibration.create(Algorithm.BCRYPT, 10);
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(hash.startsWith("{bcrypt}$2a$10$"));
+        assertTrue(encoder.matches("secret", hash));
+        assertTrue(encoder.matches("admin123", LEGACY_HASH));
+        assertFalse(encoder.matches("wrong", LEGACY_HASH));
+    }
+
+    @Test
+    void upgradeEncoding_legacyOrWeakerHash_isUpgraded() {
+        DelegatingPasswordEncoder encoder = PasswordHashCalibration.create(Algorithm.BCRYPT, 11);
+
+        assertTrue(encoder.upgradeEncoding(LEGACY_HASH));
+        assertTrue(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(10).encode("secret")));
+        assertFalse(encoder.upgradeEncoding("{bcrypt}" + new BCryptPasswordEncoder(11).encode("secret")));
+    }
+
+    @Test
+    void create_pbkdf2_matchesHashesOfOtherRungsAndUpgradesThem() {
+        int iterations = PasswordHashCalibration.MIN_PBKDF2_ITERATIONS;
+        String hash = PasswordHashCalibration.create(Algorithm.PBKDF2, iterations).encode("secret");
+        DelegatingPasswordEncoder stronger = PasswordHashCalibration.create(Algorithm.PBKDF2, iterations * 2);
+
+        assertTrue(hash.startsWith("{" + PasswordHashCalibration.pbkdf2Id(iterations) + "}"));
+        assertTrue(stronger.matches("secret", hash));
+        assertTrue(stronger.upgradeEncoding(hash));
+        assertTrue(stronger.upgradeEncoding(LEGACY_HASH));
+    }
+
+    @Test
+    void upgradeEncoding_pbkdf2HashOfHigherRung_isKept() {
+        int iterations = PasswordHashCalibration.MIN_PBKDF2_ITERATIONS;
+        String hash = PasswordHashCalibration.create(Algorithm.PBKDF2, iterations * 2).encode("secret");
+        DelegatingPasswordEncoder weaker = PasswordHashCalibration.create(Algorithm.PBKDF2, iterations);
+
+        assertTrue(weaker.matches("secret", hash));
+        assertFalse(weaker.upgradeEncoding(hash));
+        assertFalse(PasswordHashCalibration.create(Algorithm.PBKDF2, iterations * 2).upgradeEncoding(hash));
+    }
+
+    @Test
+    void upgradeEncoding_otherAlgorithm_isUpgraded() {
+        String pbkdf2Hash = PasswordHashCalibration.create(Algorithm.PBKDF2,
+                PasswordHashCalibration.MIN_PBKDF2_ITERATIONS).encode("secret");
+        String bcryptHash = PasswordHashCalibration.create(Algorithm.BCRYPT, 10).encode("secret");
+
+        assertTrue(PasswordHashCalibration.create(Algorithm.BCRYPT, 10).upgradeEncoding(pbkdf2Hash));
+        assertTrue(PasswordHashCalibration.create(Algorithm.PBKDF2,
+                PasswordHashCalibration.MIN_PBKDF2_ITERATIONS).upgradeEncoding(bcryptHash));
+    }
+
+    @Test
+    void create_pbkdf2_iterationsNotOnLadder_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PasswordHashCalibration.create(Algorithm.PBKDF2, 12_345));
+    }
+
+    @Test
+    void create_fromProperties_calibratesAndEncodes() {
+        PasswordEncoder encoder = PasswordHashCalibration.create(PasswordHashingProperties.defaults());
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(hash.startsWith("{bcrypt}"));
+        assertTrue(encoder.matches("secret", hash));
+    }
+}
@@ -0,0 +1,45 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for PasswordHashingFailureHandler.
+ */
+class PasswordHashingFailureHandlerTest {
+
+    private final AuthenticationFailureHandler delegate = mock(AuthenticationFailureHandler.class);
+    private final PasswordHashingFailureHandler handler = new PasswordHashingFailureHandler(delegate,
+            Duration.ofSeconds(2));
+
+    @Test
+    void onAuthenticationFailure_hashingUnavailable_returns503WithRetryAfter() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        handler.onAuthenticationFailure(new MockHttpServletRequest(), response,
+                new PasswordHashingUnavailableException("busy"));
+
+        assertEquals(503, response.getStatus());
+        assertEquals("2", response.getHeader("Retry-After"));
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void onAuthenticationFailure_badCredentials_delegates() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        BadCredentialsException exception = new BadCredentialsException("Bad credentials");
+
+        handler.onAuthenticationFailure(request, response, exception);
+
+        verify(delegate).onAuthenticationFailure(request, response, exception);
+    }
+}
@@ -0,0 +1,82 @@
+package dev.danvega;
+
+import gg.jte.TemplateEngine;
+import gg.jte.TemplateNotFoundException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/** Unit tests for PrecompiledTemplateVerifier. */
+@ExtendWith(MockitoExtension.class)
+class PrecompiledTemplateVerifierTest {
+
+    @Mock
+    private TemplateEngine templateEngine;
+
+    @Mock
+    private ResourcePatternResolver resourcePatternResolver;
+
+    @Test
+    void verify_loadsEveryListedTemplate() throws IOException {
+        listTemplates("layout/default.jte", "pages/login.jte");
+
+        assertEquals(2, verifier().verify());
+
+        verify(templateEngine).prepareForRendering("layout/default.jte");
+        verify(templateEngine).prepareForRendering("pages/login.jte");
+    }
+
+    @Test
+    void verify_templateNotPrecompiled_throwsNamingIt() throws IOException {
+        listTemplates("pages/home.jte", "pages/login.jte");
+        // Lenient, since pages/home.jte is loaded through the same method without a stub
+        lenient().doThrow(new TemplateNotFoundException("pages/login.jte not found"))
+                .when(templateEngine).prepareForRendering("pages/login.jte");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> verifier().verify());
+
+        assertTrue(e.getMessage().contains("pages/login.jte"));
+        assertFalse(e.getMessage().contains("pages/home.jte"));
+        verify(templateEngine).prepareForRendering("pages/home.jte");
+    }
+
+    @Test
+    void verify_noTemplatesListed_throws() throws IOException {
+        listTemplates();
+
+        assertThrows(IllegalStateException.class, () -> verifier().verify());
+        verify(templateEngine, never()).prepareForRendering(anyString());
+    }
+
+    @Test
+    void afterSingletonsInstantiated_verifies() throws IOException {
+        listTemplates("pages/home.jte");
+
+        verifier().afterSingletonsInstantiated();
+
+        verify(templateEngine).prepareForRendering("pages/home.jte");
+    }
+
+    private PrecompiledTemplateVerifier verifier() {
+        return new PrecompiledTemplateVerifier(templateEngine, resourcePatternResolver);
+    }
+
+    private void listTemplates(String... names) throws IOException {
+        Resource[] resources = Arrays.stream(names)
+                .map(name -> UrlResource.from("jar:file:/app.jar!/BOOT-INF/classes/"
+                        + PrecompiledTemplateVerifier.TEMPLATE_ROOT + name))
+                .toArray(Resource[]::new);
+        when(resourcePatternResolver.getResources(anyString())).thenReturn(resources);
+    }
+}
@@ -0,0 +1,45 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests that the prod profile renders the templates precompiled by the build.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("prod")
+@TestPropertySource(properties = {
+        "GOOGLE_CLIENT_ID=test-google-id",
+        "GOOGLE_CLIENT_SECRET=test-google-secret"
+})
+class PrecompiledTemplatesTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PrecompiledTemplateVerifier verifier;
+
+    @Test
+    void everyTemplateIsPrecompiled() {
+        assertEquals(4, verifier.verify());
+    }
+
+    @Test
+    void loginPage_rendersFromPrecompiledTemplate() throws Exception {
+        mockMvc.perform(get("/login"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("name=\"_csrf\"")));
+    }
+}
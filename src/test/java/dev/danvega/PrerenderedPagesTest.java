@@ -0,0 +1,112 @@
+package dev.danvega;
+
+import dev.danvega.PrerenderedPages.LoginPage;
+import dev.danvega.PrerenderedPages.LoginVariant;
+import dev.danvega.PrerenderedPages.StaticPage;
+import gg.jte.ContentType;
+import gg.jte.TemplateEngine;
+import gg.jte.output.StringOutput;
+import gg.jte.resolve.DirectoryCodeResolver;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Unit tests for PrerenderedPages. */
+class PrerenderedPagesTest {
+
+    private static final TemplateEngine TEMPLATE_ENGINE =
+            TemplateEngine.create(new DirectoryCodeResolver(Path.of("src/main/jte")),
+                    Path.of("target/jte-test-classes"), ContentType.Html);
+
+    private static final LoginVariant NO_ERROR = new LoginVariant(null, true, true, false, true);
+
+    @Test
+    void login_writesTheRequestsCsrfFieldIntoTheForm() {
+        LoginPage page = new PrerenderedPages(TEMPLATE_ENGINE, false).login(NO_ERROR);
+
+        StringOutput output = new StringOutput();
+        page.writeTo(output, new CsrfHiddenInput(new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token-1")));
+        String html = output.toString();
+
+        assertTrue(html.contains("<form class=\"mt-8 space-y-6\" action=\"/login\" method=\"POST\">"));
+        assertTrue(html.contains("<input type=\"hidden\" name=\"_csrf\" value=\"token-1\">"));
+        assertTrue(html.contains("href=\"/oauth2/authorization/google\""));
+        assertTrue(html.contains("GitHub (unavailable)"));
+        assertFalse(html.contains("<!--csrf-"));
+        assertFalse(html.contains("role=\"alert\""));
+    }
+
+    @Test
+    void login_matchesTemplateRenderedPerRequest() {
+        LoginVariant variant = new LoginVariant("Invalid <username> or password", false, true, false, false);
+        CsrfHiddenInput csrfHiddenInput = new CsrfHiddenInput(new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token-1"));
+
+        StringOutput prerendered = new StringOutput();
+        new PrerenderedPages(TEMPLATE_ENGINE, false).login(variant).writeTo(prerendered, csrfHiddenInput);
+
+        StringOutput rendered = new StringOutput();
+        TEMPLATE_ENGINE.render(PrerenderedPages.LOGIN, Map.of(
+                "error", true,
+                "errorMessage", variant.errorMessage(),
+                "csrfHiddenInput", csrfHiddenInput,
+                "googleEnabled", false,
+                "githubEnabled", true,
+                "googleUnavailable", false,
+                "githubUnavailable", false), rendered);
+
+        assertEquals(rendered.toString(), prerendered.toString());
+        assertTrue(prerendered.toString().contains("Invalid &lt;username&gt; or password"));
+    }
+
+    @Test
+    void login_everyVariant_rendersRealTemplateWithCsrfField() {
+        PrerenderedPages pages = new PrerenderedPages(TEMPLATE_ENGINE, false);
+        CsrfHiddenInput csrfHiddenInput = new CsrfHiddenInput(new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", "token-1"));
+
+        for (int flags = 0; flags < 32; flags++) {
+            LoginVariant variant = new LoginVariant((flags & 1) != 0 ? "Invalid username or password" : null,
+                    (flags & 2) != 0, (flags & 4) != 0, (flags & 8) != 0, (flags & 16) != 0);
+
+            StringOutput output = new StringOutput();
+            pages.login(variant).writeTo(output, csrfHiddenInput);
+            String html = output.toString();
+
+            assertEquals(html.indexOf("name=\"_csrf\" value=\"token-1\""),
+                    html.lastIndexOf("name=\"_csrf\" value=\"token-1\""), variant.toString());
+            assertTrue(html.contains("name=\"_csrf\" value=\"token-1\""), variant.toString());
+        }
+    }
+
+    @Test
+    void login_keepsEachVariant() {
+        PrerenderedPages pages = new PrerenderedPages(TEMPLATE_ENGINE, false);
+
+        assertSame(pages.login(NO_ERROR), pages.login(new LoginVariant(null, true, true, false, true)));
+        assertNotSame(pages.login(NO_ERROR), pages.login(new LoginVariant(null, true, true, false, false)));
+    }
+
+    @Test
+    void home_isKeptWithStrongETag() {
+        PrerenderedPages pages = new PrerenderedPages(TEMPLATE_ENGINE, false);
+
+        StaticPage home = pages.home();
+
+        assertSame(home, pages.home());
+        assertTrue(new String(home.body(), StandardCharsets.UTF_8).contains("<h1 class=\"text-4xl font-bold text-center\">Welcome</h1>"));
+        assertTrue(home.eTag().matches("\"[0-9a-f]{32}\""));
+    }
+
+    @Test
+    void developmentMode_rendersEveryTime() {
+        PrerenderedPages pages = new PrerenderedPages(TEMPLATE_ENGINE, true);
+
+        assertNotSame(pages.home(), pages.home());
+        assertEquals(pages.home().eTag(), pages.home().eTag());
+        assertNotSame(pages.login(NO_ERROR), pages.login(NO_ERROR));
+    }
+}
@@ -0,0 +1,123 @@
+package dev.danvega;
+
+import dev.danvega.domain.Role;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.RoleBits;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RoleAuthorizationManager.
+ */
+class RoleAuthorizationManagerTest {
+
+    private RoleRepository roleRepository;
+    private RoleBits roleBits;
+
+    @BeforeEach
+    void setUp() {
+        roleRepository = mock(RoleRepository.class);
+        List<Role> roles = new ArrayList<>();
+        for (String name : List.of("ROLE_USER", "ROLE_ADMIN", "ROLE_POWER_USER")) {
+            Role role = new Role(name);
+            role.setId(roles.size() + 1L);
+            roles.add(role);
+        }
+        when(roleRepository.findAll()).thenReturn(roles);
+        roleBits = new RoleBits(roleRepository);
+    }
+
+    @Test
+    void check_userWithRequiredRoleInBitset_isGranted() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN", "POWER_USER");
+
+        assertTrue(isGranted(manager, withRoleSet("ROLE_USER", "ROLE_POWER_USER")));
+    }
+
+    @Test
+    void check_userWithoutRequiredRoleInBitset_isDenied() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN", "POWER_USER");
+
+        assertFalse(isGranted(manager, withRoleSet("ROLE_USER")));
+    }
+
+    @Test
+    void check_bitsetPresent_ignoresRoleNames() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN");
+        List<GrantedAuthority> authorities = new ArrayList<>(roleSetAuthorities("ROLE_USER"));
+        authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+        // The bitset is authoritative for database roles
+        assertFalse(isGranted(manager, new UsernamePasswordAuthenticationToken("user", null, authorities)));
+    }
+
+    @Test
+    void check_noBitset_fallsBackToRoleNames() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN", "POWER_USER");
+
+        assertTrue(isGranted(manager, authenticated("ROLE_ADMIN")));
+        assertFalse(isGranted(manager, authenticated("ROLE_USER")));
+    }
+
+    @Test
+    void check_requiredRoleNotInDatabase_fallsBackToRoleNames() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "AUDITOR");
+        List<GrantedAuthority> authorities = new ArrayList<>(roleSetAuthorities("ROLE_USER"));
+        authorities.add(new SimpleGrantedAuthority("ROLE_AUDITOR"));
+
+        assertTrue(isGranted(manager, new UsernamePasswordAuthenticationToken("user", null, authorities)));
+    }
+
+    @Test
+    void check_resolvesRequiredRolesOnce() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN");
+
+        isGranted(manager, withRoleSet("ROLE_ADMIN"));
+        isGranted(manager, withRoleSet("ROLE_USER"));
+
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void check_anonymousOrUnauthenticated_isDenied() {
+        RoleAuthorizationManager<Object> manager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN");
+        Authentication anonymous = new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+        Authentication unauthenticated = new TestingAuthenticationToken("admin", null, "ROLE_ADMIN");
+        unauthenticated.setAuthenticated(false);
+
+        assertFalse(isGranted(manager, anonymous));
+        assertFalse(isGranted(manager, unauthenticated));
+        assertFalse(manager.authorize(() -> null, new Object()).isGranted());
+    }
+
+    private Authentication withRoleSet(String... roles) {
+        return new UsernamePasswordAuthenticationToken("user", null, roleSetAuthorities(roles));
+    }
+
+    private Set<GrantedAuthority> roleSetAuthorities(String... roles) {
+        return roleBits.withRoleSet(Set.copyOf(AuthorityUtils.createAuthorityList(roles)));
+    }
+
+    private static Authentication authenticated(String... roles) {
+        return new UsernamePasswordAuthenticationToken("user", null, AuthorityUtils.createAuthorityList(roles));
+    }
+
+    private static boolean isGranted(RoleAuthorizationManager<Object> manager, Authentication authentication) {
+        return manager.authorize(() -> authentication, new Object()).isGranted();
+    }
+}
@@ -0,0 +1,171 @@
+package dev.danvega;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpSessionEvent;
+import jakarta.servlet.http.HttpSessionListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.danvega.LoginPageCsrf.csrfFromLoginPage;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests that anonymous and pre-login traffic is served without creating HTTP sessions.
+ * <p>
+ * Runs on the embedded server, so sessions are counted by the container as they are created.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "GOOGLE_CLIENT_ID=test-google-id",
+        "GOOGLE_CLIENT_SECRET=test-google-secret",
+        "GITHUB_CLIENT_ID=test-github-id",
+        "GITHUB_CLIENT_SECRET=test-github-secret"
+})
+class SecurityConfigAnonymousSessionTest {
+
+    private static final int HITS = 100_000;
+    private static final int CLIENTS = 8;
+
+    // Public pages, protected pages that save the request, and redirects to both providers
+    private static final String[] PATHS = {
+            "/", "/login", "/dashboard", "/h2-console/", "/oauth2/authorization/google", "/oauth2/authorization/github"
+    };
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SessionCounter sessionCounter;
+
+    @LocalServerPort
+    private int port;
+
+    @Test
+    void anonymousTraffic_createsNoSessions() throws Exception {
+        AtomicInteger served = new AtomicInteger();
+        // Without a cookie handler every request arrives as a new visitor
+        try (HttpClient client = HttpClient.newHttpClient();
+             ExecutorService visitors = Executors.newFixedThreadPool(CLIENTS)) {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int first = 0; first < CLIENTS; first++) {
+                int start = first;
+                runs.add(visitors.submit(() -> {
+                    for (int i = start; i < HITS; i += CLIENTS) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                                URI.create("http://localhost:" + port + PATHS[i % PATHS.length])).build();
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status < 400) {
+                            served.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        }
+
+        assertEquals(HITS, served.get());
+        assertEquals(0, sessionCounter.created());
+    }
+
+    @Test
+    void homePage_doesNotGenerateCsrfToken() throws Exception {
+        mockMvc.perform(get("/"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().doesNotExist("APP_CSRF"));
+    }
+
+    @Test
+    void loginPage_bindsCsrfTokenToCookie() throws Exception {
+        mockMvc.perform(get("/login"))
+                .andExpect(status().isOk())
+                .andExpect(cookie().exists("APP_CSRF"))
+                .andExpect(content().string(containsString("name=\"_csrf\"")));
+    }
+
+    @Test
+    void oauth2Authorization_keepsRequestInCookie() throws Exception {
+        mockMvc.perform(get("/oauth2/authorization/google"))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(cookie().exists("APP_OAUTH2_REQUEST"))
+                .andExpect(cookie().httpOnly("APP_OAUTH2_REQUEST", true));
+    }
+
+    @Test
+    void formLogin_afterProtectedUrl_returnsToSavedRequestFromCookie() throws Exception {
+        Cookie savedRequest = mockMvc.perform(get("/h2-console/"))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(cookie().exists("REDIRECT_URI"))
+                .andReturn().getResponse().getCookie("REDIRECT_URI");
+
+        mockMvc.perform(post("/login")
+                .param("username", "admin")
+                .param("password", "admin123")
+                .cookie(savedRequest)
+                .with(csrfFromLoginPage(mockMvc)))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(header().string("Location", containsString("/h2-console/")));
+    }
+
+    @Test
+    void formLogin_withInvalidCredentials_createsNoSession() throws Exception {
+        MvcResult result = mockMvc.perform(post("/login")
+                .param("username", "admin")
+                .param("password", "wrongpassword")
+                .with(csrfFromLoginPage(mockMvc)))
+                .andExpect(redirectedUrl("/login?error"))
+                .andReturn();
+
+        assertNull(result.getRequest().getSession(false));
+    }
+
+    @TestConfiguration
+    static class SessionCounterConfig {
+
+        @Bean
+        SessionCounter sessionCounter() {
+            return new SessionCounter();
+        }
+    }
+
+    // Registered with the embedded server as a listener, like any HttpSessionListener bean
+    static class SessionCounter implements HttpSessionListener {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        @Override
+        public void sessionCreated(HttpSessionEvent event) {
+            created.incrementAndGet();
+        }
+
+        int created() {
+            return created.get();
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package dev.danvega;
 
-import dev.danvega.domain.Role;
-import dev.danvega.domain.RoleAssignment;
+import dev.danvega.config.OAuth2LookupExecutorConfig;
+import dev.danvega.config.RoleLookupProperties;
 import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.KnownUserFilter;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleIndex;
 import dev.danvega.service.RoleService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockedConstruction;
@@ -13,6 +20,7 @@ import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserService;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
@@ -21,9 +29,11 @@ import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
 import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 
+import javax.sql.DataSource;
 import java.lang.reflect.Method;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -37,24 +47,34 @@ class SecurityConfigOidcLambdaTest {
     private RoleAssignmentRepository roleAssignmentRepository;
     private ClientRegistrationRepository clientRegistrationRepository;
     private RoleService roleService;
+    private final ExecutorService lookupExecutor = new OAuth2LookupExecutorConfig().oauth2LookupExecutor();
     private SecurityConfig securityConfig;
 
     @BeforeEach
     void setUp() {
         roleAssignmentRepository = mock(RoleAssignmentRepository.class);
         clientRegistrationRepository = mock(ClientRegistrationRepository.class);
-        roleService = new RoleService(roleAssignmentRepository);
-        securityConfig = new SecurityConfig(clientRegistrationRepository, roleService);
+        AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+        KnownUserFilter knownUserFilter = new KnownUserFilter(mock(DataSource.class), RoleLookupProperties.defaults(),
+                new SimpleMeterRegistry());
+        RoleIndex roleIndex = mock(RoleIndex.class);
+        lenient().when(roleIndex.lookup(anyString())).thenReturn(Optional.empty());
+        roleService = new RoleService(roleAssignmentRepository, roleIndex, knownUserFilter, authorityRegistry,
+                RoleLookupProperties.defaults(), new SimpleMeterRegistry());
+        securityConfig = new SecurityConfig(clientRegistrationRepository, roleService, authorityRegistry,
+                new RoleBits(mock(RoleRepository.class)), lookupExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lookupExecutor.close();
     }
 
     @Test
     void oidcUserService_powerUserWithUserInfo_addsCustomClaimAndReturnsUser() throws Exception {
         // Setup: Power user role assignment
-        Role powerUserRole = new Role("ROLE_POWER_USER");
-        powerUserRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:poweruser@example.com", powerUserRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:poweruser@example.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@example.com"))
+                .thenReturn(List.of("ROLE_POWER_USER"));
 
         // Create mock OIDC user with userInfo
         OidcUser mockOidcUser = createMockOidcUser("poweruser@example.com", true);
@@ -77,11 +97,8 @@ class SecurityConfigOidcLambdaTest {
     @Test
     void oidcUserService_powerUserWithNullUserInfo_addsCustomClaimWithEmptyBaseClaims() throws Exception {
         // Setup: Power user role assignment
-        Role powerUserRole = new Role("ROLE_POWER_USER");
-        powerUserRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:poweruser@example.com", powerUserRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:poweruser@example.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@example.com"))
+                .thenReturn(List.of("ROLE_POWER_USER"));
 
         // Create mock OIDC user WITHOUT userInfo (null)
         OidcUser mockOidcUser = createMockOidcUser("poweruser@example.com", false);
@@ -102,11 +119,8 @@ class SecurityConfigOidcLambdaTest {
     @Test
     void oidcUserService_regularUser_returnsUserWithoutCustomClaim() throws Exception {
         // Setup: Regular user role assignment (not power user)
-        Role userRole = new Role("ROLE_USER");
-        userRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:regularuser@example.com", userRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:regularuser@example.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:regularuser@example.com"))
+                .thenReturn(List.of("ROLE_USER"));
 
         // Create mock OIDC user
         OidcUser mockOidcUser = createMockOidcUser("regularuser@example.com", true);
@@ -130,7 +144,7 @@ class SecurityConfigOidcLambdaTest {
     @Test
     void oidcUserService_noRolesInDatabase_returnsUserWithDefaultAuthorities() throws Exception {
         // Setup: No roles in database
-        when(roleAssignmentRepository.findByUserIdentifier("google:newuser@example.com"))
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:newuser@example.com"))
                 .thenReturn(Collections.emptyList());
 
         // Create mock OIDC user
@@ -152,11 +166,8 @@ class SecurityConfigOidcLambdaTest {
     @Test
     void oidcUserService_githubProvider_usesCorrectIdentifier() throws Exception {
         // Setup: GitHub user
-        Role userRole = new Role("ROLE_USER");
-        userRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("github:githubuser@example.com", userRole);
-        when(roleAssignmentRepository.findByUserIdentifier("github:githubuser@example.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("github:githubuser@example.com"))
+                .thenReturn(List.of("ROLE_USER"));
 
         // Create mock OIDC user
         OidcUser mockOidcUser = createMockOidcUser("githubuser@example.com", true);
@@ -169,16 +180,17 @@ class SecurityConfigOidcLambdaTest {
             OidcUser result = oidcUserService.loadUser(userRequest);
 
             assertNotNull(result);
-            verify(roleAssignmentRepository).findByUserIdentifier("github:githubuser@example.com");
+            verify(roleAssignmentRepository).findRoleNamesByUserIdentifier("github:githubuser@example.com");
         }
     }
 
     // Helper method to invoke private oidcUserService method
     @SuppressWarnings("unchecked")
     private OAuth2UserService<OidcUserRequest, OidcUser> getOidcUserService() throws Exception {
-        Method method = SecurityConfig.class.getDeclaredMethod("oidcUserService");
+        Method method = SecurityConfig.class.getDeclaredMethod("oidcUserService", OAuth2UserService.class);
         method.setAccessible(true);
-        return (OAuth2UserService<OidcUserRequest, OidcUser>) method.invoke(securityConfig);
+        return (OAuth2UserService<OidcUserRequest, OidcUser>) method.invoke(securityConfig,
+                new DefaultOAuth2UserService());
     }
 
     // Helper to create a mock OidcUser
@@ -0,0 +1,260 @@
+package dev.danvega;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.danvega.config.OAuth2LookupExecutorConfig;
+import dev.danvega.config.RoleLookupProperties;
+import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.KnownUserFilter;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleIndex;
+import dev.danvega.service.RoleService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AuthenticationException;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the OIDC user service against a local stub userinfo endpoint, checking that the
+ * role lookup overlaps the userinfo request and that claims-only registrations skip it.
+ */
+class SecurityConfigOidcStubProviderTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private HttpServer server;
+    private volatile String userInfoBody;
+    private final CountDownLatch userInfoRequested = new CountDownLatch(1);
+    private final CountDownLatch roleQueryStarted = new CountDownLatch(1);
+    private final AtomicBoolean roleQueryStartedDuringUserInfo = new AtomicBoolean();
+    private final AtomicInteger userInfoRequests = new AtomicInteger();
+
+    private RoleAssignmentRepository roleAssignmentRepository;
+    private final ExecutorService lookupExecutor = new OAuth2LookupExecutorConfig().oauth2LookupExecutor();
+    private SecurityConfig securityConfig;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/userinfo", exchange -> {
+            userInfoRequests.incrementAndGet();
+            userInfoRequested.countDown();
+            try {
+                // Hold the response until the role query has started (or give up)
+                roleQueryStartedDuringUserInfo.set(roleQueryStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] body = userInfoBody.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        roleAssignmentRepository = mock(RoleAssignmentRepository.class);
+        AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+        KnownUserFilter knownUserFilter = new KnownUserFilter(mock(DataSource.class), RoleLookupProperties.defaults(),
+                new SimpleMeterRegistry());
+        RoleIndex roleIndex = mock(RoleIndex.class);
+        lenient().when(roleIndex.lookup(anyString())).thenReturn(Optional.empty());
+        RoleService roleService = new RoleService(roleAssignmentRepository, roleIndex, knownUserFilter,
+                authorityRegistry, RoleLookupProperties.defaults(), new SimpleMeterRegistry());
+        securityConfig = new SecurityConfig(mock(ClientRegistrationRepository.class), roleService, authorityRegistry,
+                new RoleBits(mock(RoleRepository.class)), lookupExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        lookupExecutor.close();
+    }
+
+    @Test
+    void loadUser_emailInIdToken_looksUpRolesWhileUserInfoIsFetched() throws Exception {
+        userInfoBody = """
+                {"sub": "12345", "email": "poweruser@example.com", "name": "Power User"}""";
+        AtomicBoolean userInfoRequestedDuringRoleQuery = new AtomicBoolean();
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@example.com"))
+                .thenAnswer(invocation -> {
+                    roleQueryStarted.countDown();
+                    // Only returns promptly if the userinfo request is in flight at the same time
+                    userInfoRequestedDuringRoleQuery.set(userInfoRequested.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                    return List.of("ROLE_POWER_USER");
+                });
+
+        OidcUser user = getOidcUserService().loadUser(userRequest("poweruser@example.com"));
+
+        assertTrue(roleQueryStartedDuringUserInfo.get());
+        assertTrue(userInfoRequestedDuringRoleQuery.get());
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_POWER_USER".equals(a.getAuthority())));
+        assertEquals("Power User Active", user.getAttribute("custom_claim"));
+        assertEquals("Power User", user.getAttribute("name"));
+    }
+
+    @Test
+    void loadUser_noEmailInIdToken_looksUpRolesForUserInfoEmail() throws Exception {
+        userInfoBody = """
+                {"sub": "12345", "email": "regular@example.com"}""";
+        roleQueryStarted.countDown();
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:regular@example.com"))
+                .thenReturn(List.of("ROLE_USER"));
+
+        OidcUser user = getOidcUserService().loadUser(userRequest(null));
+
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_USER".equals(a.getAuthority())));
+        assertNull(user.getAttribute("custom_claim"));
+    }
+
+    @Test
+    void loadUser_userInfoEmailDiffers_keepsIdTokenEmail() throws Exception {
+        // The ID token's claims take precedence over userinfo's when the two are merged
+        userInfoBody = """
+                {"sub": "12345", "email": "new@example.com"}""";
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier(anyString())).thenAnswer(invocation -> {
+            roleQueryStarted.countDown();
+            String userIdentifier = invocation.getArgument(0);
+            return "google:old@example.com".equals(userIdentifier) ? List.of("ROLE_ADMIN") : List.of();
+        });
+
+        OidcUser user = getOidcUserService().loadUser(userRequest("old@example.com"));
+
+        assertEquals("old@example.com", user.getAttribute("email"));
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+        verify(roleAssignmentRepository).findRoleNamesByUserIdentifier("google:old@example.com");
+        verify(roleAssignmentRepository, never()).findRoleNamesByUserIdentifier("google:new@example.com");
+    }
+
+    @Test
+    void loadUser_userInfoSubjectMismatch_propagatesError() throws Exception {
+        userInfoBody = """
+                {"sub": "other-subject", "email": "poweruser@example.com"}""";
+        roleQueryStarted.countDown();
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier(anyString())).thenReturn(List.of());
+
+        OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService = getOidcUserService();
+
+        assertThrows(OAuth2AuthenticationException.class,
+                () -> oidcUserService.loadUser(userRequest("poweruser@example.com")));
+    }
+
+    @Test
+    void loadUser_claimsModeWithRequiredClaims_skipsUserInfo() throws Exception {
+        Thread caller = Thread.currentThread();
+        AtomicBoolean lookedUpOnCaller = new AtomicBoolean();
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@example.com"))
+                .thenAnswer(invocation -> {
+                    lookedUpOnCaller.set(Thread.currentThread() == caller);
+                    return List.of("ROLE_POWER_USER");
+                });
+
+        OidcUser user = getOidcUserService().loadUser(userRequest("poweruser@example.com", "Power User",
+                claimsOnlyMetadata()));
+
+        assertEquals(0, userInfoRequests.get());
+        // Nothing to overlap with, so no hand-off to the lookup executor
+        assertTrue(lookedUpOnCaller.get());
+        assertEquals("Power User", user.getAttribute("name"));
+        assertEquals("Power User Active", user.getAttribute("custom_claim"));
+        assertTrue(user.getAuthorities().stream().anyMatch(a -> "ROLE_POWER_USER".equals(a.getAuthority())));
+    }
+
+    @Test
+    void loadUser_claimsModeMissingRequiredClaim_fallsBackToUserInfo() throws Exception {
+        userInfoBody = """
+                {"sub": "12345", "email": "regular@example.com", "name": "Regular User"}""";
+        roleQueryStarted.countDown();
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:regular@example.com"))
+                .thenReturn(List.of("ROLE_USER"));
+
+        OidcUser user = getOidcUserService().loadUser(userRequest("regular@example.com", null,
+                claimsOnlyMetadata()));
+
+        assertEquals(1, userInfoRequests.get());
+        assertEquals("Regular User", user.getAttribute("name"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private OAuth2UserService<OidcUserRequest, OidcUser> getOidcUserService() throws Exception {
+        Method method = SecurityConfig.class.getDeclaredMethod("oidcUserService", OAuth2UserService.class);
+        method.setAccessible(true);
+        return (OAuth2UserService<OidcUserRequest, OidcUser>) method.invoke(securityConfig,
+                new DefaultOAuth2UserService());
+    }
+
+    private static Map<String, Object> claimsOnlyMetadata() {
+        return Map.of(OAuth2ClientConfig.USERINFO_MODE, OAuth2ClientConfig.UserInfoMode.CLAIMS.name(),
+                OAuth2ClientConfig.USERINFO_REQUIRED_CLAIMS, List.of("email", "name"));
+    }
+
+    private OidcUserRequest userRequest(String idTokenEmail) {
+        return userRequest(idTokenEmail, null, Map.of());
+    }
+
+    private OidcUserRequest userRequest(String idTokenEmail, String idTokenName, Map<String, Object> metadata) {
+        ClientRegistration clientRegistration = ClientRegistration.withRegistrationId("google")
+                .clientId("test-client-id")
+                .clientSecret("test-client-secret")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .scope("openid", "email", "profile")
+                .authorizationUri("http://127.0.0.1/auth")
+                .tokenUri("http://127.0.0.1/token")
+                .userInfoUri("http://127.0.0.1:" + server.getAddress().getPort() + "/userinfo")
+                .userNameAttributeName("sub")
+                .jwkSetUri("http://127.0.0.1/jwks")
+                .providerConfigurationMetadata(metadata)
+                .clientName("Google")
+                .build();
+
+        OAuth2AccessToken accessToken = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER,
+                "test-access-token", Instant.now(), Instant.now().plusSeconds(3600),
+                Set.of("openid", "email", "profile"));
+
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "12345");
+        claims.put("iss", "https://accounts.google.com");
+        if (idTokenEmail != null) {
+            claims.put("email", idTokenEmail);
+        }
+        if (idTokenName != null) {
+            claims.put("name", idTokenName);
+        }
+        OidcIdToken idToken = new OidcIdToken("test-id-token", Instant.now(), Instant.now().plusSeconds(3600), claims);
+
+        return new OidcUserRequest(clientRegistration, accessToken, idToken);
+    }
+}
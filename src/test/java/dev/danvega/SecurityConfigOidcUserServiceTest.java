@@ -1,10 +1,17 @@
 package dev.danvega;
 
-import dev.danvega.domain.Role;
-import dev.danvega.domain.RoleAssignment;
+import dev.danvega.config.PasswordHashingProperties;
+import dev.danvega.config.OAuth2LookupExecutorConfig;
+import dev.danvega.config.RoleLookupProperties;
 import dev.danvega.repository.RoleAssignmentRepository;
 import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.AuthorityRegistry;
+import dev.danvega.service.KnownUserFilter;
+import dev.danvega.service.RoleBits;
+import dev.danvega.service.RoleIndex;
 import dev.danvega.service.RoleService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.core.GrantedAuthority;
@@ -12,6 +19,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.client.oidc.userinfo.OidcUserRequest;
 import org.springframework.security.oauth2.client.registration.ClientRegistration;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
+import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
 import org.springframework.security.oauth2.client.userinfo.OAuth2UserService;
 import org.springframework.security.oauth2.core.AuthorizationGrantType;
 import org.springframework.security.oauth2.core.OAuth2AccessToken;
@@ -20,9 +28,11 @@ import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
 import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
 import org.springframework.security.oauth2.core.oidc.user.OidcUser;
 
+import javax.sql.DataSource;
 import java.lang.reflect.Method;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -35,24 +45,34 @@ class SecurityConfigOidcUserServiceTest {
     private RoleService roleService;
     private RoleAssignmentRepository roleAssignmentRepository;
     private ClientRegistrationRepository clientRegistrationRepository;
+    private final ExecutorService lookupExecutor = new OAuth2LookupExecutorConfig().oauth2LookupExecutor();
     private SecurityConfig securityConfig;
 
     @BeforeEach
     void setUp() {
         roleAssignmentRepository = mock(RoleAssignmentRepository.class);
         clientRegistrationRepository = mock(ClientRegistrationRepository.class);
-        roleService = new RoleService(roleAssignmentRepository);
-        securityConfig = new SecurityConfig(clientRegistrationRepository, roleService);
+        AuthorityRegistry authorityRegistry = new AuthorityRegistry();
+        KnownUserFilter knownUserFilter = new KnownUserFilter(mock(DataSource.class), RoleLookupProperties.defaults(),
+                new SimpleMeterRegistry());
+        RoleIndex roleIndex = mock(RoleIndex.class);
+        lenient().when(roleIndex.lookup(anyString())).thenReturn(Optional.empty());
+        roleService = new RoleService(roleAssignmentRepository, roleIndex, knownUserFilter, authorityRegistry,
+                RoleLookupProperties.defaults(), new SimpleMeterRegistry());
+        securityConfig = new SecurityConfig(clientRegistrationRepository, roleService, authorityRegistry,
+                new RoleBits(mock(RoleRepository.class)), lookupExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        lookupExecutor.close();
     }
 
     @Test
     void oidcUserService_withPowerUser_andUserInfo_addsCustomClaim() throws Exception {
         // Setup: User has ROLE_POWER_USER and has userInfo
-        Role powerUserRole = new Role("ROLE_POWER_USER");
-        powerUserRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:poweruser@gmail.com", powerUserRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:poweruser@gmail.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@gmail.com"))
+                .thenReturn(List.of("ROLE_POWER_USER"));
 
         // Get the oidcUserService via reflection
         OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService = getOidcUserService();
@@ -68,11 +88,8 @@ class SecurityConfigOidcUserServiceTest {
     @Test
     void oidcUserService_withPowerUser_andNullUserInfo_addsCustomClaim() throws Exception {
         // Setup: User has ROLE_POWER_USER but userInfo is null
-        Role powerUserRole = new Role("ROLE_POWER_USER");
-        powerUserRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:poweruser@gmail.com", powerUserRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:poweruser@gmail.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:poweruser@gmail.com"))
+                .thenReturn(List.of("ROLE_POWER_USER"));
 
         // Get the oidcUserService via reflection
         OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService = getOidcUserService();
@@ -83,11 +100,8 @@ class SecurityConfigOidcUserServiceTest {
     @Test
     void oidcUserService_withRegularUser_returnsStandardUser() throws Exception {
         // Setup: User has ROLE_USER (not power user)
-        Role userRole = new Role("ROLE_USER");
-        userRole.setId(1L);
-        RoleAssignment assignment = new RoleAssignment("google:regularuser@gmail.com", userRole);
-        when(roleAssignmentRepository.findByUserIdentifier("google:regularuser@gmail.com"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:regularuser@gmail.com"))
+                .thenReturn(List.of("ROLE_USER"));
 
         // Get the oidcUserService via reflection
         OAuth2UserService<OidcUserRequest, OidcUser> oidcUserService = getOidcUserService();
@@ -98,7 +112,7 @@ class SecurityConfigOidcUserServiceTest {
     @Test
     void oidcUserService_withNoRoles_returnsUserWithDefaultAuthorities() throws Exception {
         // Setup: User has no roles in database
-        when(roleAssignmentRepository.findByUserIdentifier("google:newuser@gmail.com"))
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:newuser@gmail.com"))
                 .thenReturn(Collections.emptyList());
 
         // Get the oidcUserService via reflection
@@ -151,12 +165,12 @@ class SecurityConfigOidcUserServiceTest {
 
     @Test
     void passwordEncoder_returnsNonNull() {
-        assertNotNull(securityConfig.passwordEncoder());
+        assertNotNull(securityConfig.passwordEncoder(PasswordHashingProperties.defaults(), new SimpleMeterRegistry()));
     }
 
     @Test
     void passwordEncoder_encodeAndMatchWorks() {
-        var encoder = securityConfig.passwordEncoder();
+        var encoder = securityConfig.passwordEncoder(PasswordHashingProperties.defaults(), new SimpleMeterRegistry());
         String rawPassword = "testPassword";
         String encoded = encoder.encode(rawPassword);
 
@@ -174,9 +188,10 @@ class SecurityConfigOidcUserServiceTest {
     // Helper method to get the oidcUserService
     @SuppressWarnings("unchecked")
     private OAuth2UserService<OidcUserRequest, OidcUser> getOidcUserService() throws Exception {
-        Method method = SecurityConfig.class.getDeclaredMethod("oidcUserService");
+        Method method = SecurityConfig.class.getDeclaredMethod("oidcUserService", OAuth2UserService.class);
         method.setAccessible(true);
-        return (OAuth2UserService<OidcUserRequest, OidcUser>) method.invoke(securityConfig);
+        return (OAuth2UserService<OidcUserRequest, OidcUser>) method.invoke(securityConfig,
+                new DefaultOAuth2UserService());
     }
 
     // Helper to create mock client registration
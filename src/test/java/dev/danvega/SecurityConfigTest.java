@@ -1,5 +1,7 @@
 package dev.danvega;
 
+import dev.danvega.repository.UserAccountRepository;
+import jakarta.servlet.http.Cookie;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -7,8 +9,13 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
 
-import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static dev.danvega.LoginPageCsrf.csrfFromLoginPage;
+import static dev.danvega.LoginPageCsrf.renderedCsrfToken;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -29,6 +36,9 @@ class SecurityConfigTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private UserAccountRepository userAccountRepository;
+
     // === PUBLIC ENDPOINTS ===
 
     @Test
@@ -37,6 +47,27 @@ class SecurityConfigTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void homeEndpoint_matchingETag_returnsNotModified() throws Exception {
+        MvcResult home = mockMvc.perform(get("/"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andReturn();
+        String eTag = home.getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void loginEndpoint_isNotCached() throws Exception {
+        mockMvc.perform(get("/login"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("ETag"))
+                .andExpect(header().string("Cache-Control", containsString("no-store")));
+    }
+
     @Test
     void loginEndpoint_isAccessibleWithoutAuth() throws Exception {
         mockMvc.perform(get("/login"))
@@ -118,17 +149,30 @@ class SecurityConfigTest {
         mockMvc.perform(post("/login")
                 .param("username", "admin")
                 .param("password", "admin123")
-                .with(csrf()))
+                .with(csrfFromLoginPage(mockMvc)))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/dashboard"));
     }
 
+    @Test
+    void formLogin_withValidCredentials_upgradesLegacyPasswordHash() throws Exception {
+        mockMvc.perform(post("/login")
+                .param("username", "admin")
+                .param("password", "admin123")
+                .with(csrfFromLoginPage(mockMvc)))
+                .andExpect(redirectedUrl("/dashboard"));
+
+        // The seeded hash has no {id} prefix, so it is re-encoded on the first login
+        String passwordHash = userAccountRepository.findByUsername("admin").orElseThrow().getPasswordHash();
+        assertTrue(passwordHash.startsWith("{bcrypt}"));
+    }
+
     @Test
     void formLogin_withInvalidCredentials_redirectsToLoginWithError() throws Exception {
         mockMvc.perform(post("/login")
                 .param("username", "admin")
                 .param("password", "wrongpassword")
-                .with(csrf()))
+                .with(csrfFromLoginPage(mockMvc)))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/login?error"));
     }
@@ -138,17 +182,41 @@ class SecurityConfigTest {
         mockMvc.perform(post("/login")
                 .param("username", "unknownuser")
                 .param("password", "password")
-                .with(csrf()))
+                .with(csrfFromLoginPage(mockMvc)))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/login?error"));
     }
 
+    @Test
+    void formLogin_beyondUsernameThrottle_isRejectedWith429() throws Exception {
+        RequestPostProcessor csrf = csrfFromLoginPage(mockMvc);
+        // Default throttle allows 5 attempts per username back to back
+        for (int i = 0; i < 5; i++) {
+            mockMvc.perform(post("/login")
+                    .param("username", "throttled")
+                    .param("password", "password")
+                    .with(request -> {
+                        request.setRemoteAddr("10.0.0.1");
+                        return request;
+                    })
+                    .with(csrf))
+                    .andExpect(redirectedUrl("/login?error"));
+        }
+
+        mockMvc.perform(post("/login")
+                .param("username", "throttled")
+                .param("password", "password")
+                .with(csrf))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists("Retry-After"));
+    }
+
     // === LOGOUT ===
 
     @Test
     @WithMockUser(username = "admin")
     void logout_redirectsToHome() throws Exception {
-        mockMvc.perform(post("/logout").with(csrf()))
+        mockMvc.perform(post("/logout").with(csrfFromLoginPage(mockMvc)))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrl("/"));
     }
@@ -162,4 +230,29 @@ class SecurityConfigTest {
                 .param("password", "admin123"))
                 .andExpect(status().isForbidden());
     }
+
+    @Test
+    void formLogin_withTokenFromLoginPage_redirectsToDashboard() throws Exception {
+        MvcResult loginPage = mockMvc.perform(get("/login")).andReturn();
+        Cookie bindingCookie = loginPage.getResponse().getCookie("APP_CSRF");
+
+        mockMvc.perform(post("/login")
+                .param("username", "admin")
+                .param("password", "admin123")
+                .param("_csrf", renderedCsrfToken(loginPage))
+                .cookie(bindingCookie))
+                .andExpect(status().is3xxRedirection())
+                .andExpect(redirectedUrl("/dashboard"));
+    }
+
+    @Test
+    void formLogin_withTokenFromLoginPageButNoBindingCookie_isForbidden() throws Exception {
+        MvcResult loginPage = mockMvc.perform(get("/login")).andReturn();
+
+        mockMvc.perform(post("/login")
+                .param("username", "admin")
+                .param("password", "admin123")
+                .param("_csrf", renderedCsrfToken(loginPage)))
+                .andExpect(status().isForbidden());
+    }
 }
@@ -4,9 +4,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.oauth2.client.web.OAuth2LoginAuthenticationFilter;
+import org.springframework.security.web.FilterChainProxy;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
 
+import jakarta.servlet.Filter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -26,6 +33,22 @@ class SecurityConfigWithOAuth2Test {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private FilterChainProxy filterChainProxy;
+
+    @Test
+    void loginFilters_throttleRunsBeforeAdmissionAndAuthentication() {
+        List<Class<?>> filters = filterChainProxy.getFilterChains().getFirst().getFilters().stream()
+                .<Class<?>>map(Filter::getClass)
+                .toList();
+
+        int throttle = filters.indexOf(LoginThrottleFilter.class);
+        int admission = filters.indexOf(AuthenticationAdmissionFilter.class);
+        assertTrue(throttle >= 0 && throttle < admission, filters.toString());
+        assertTrue(admission < filters.indexOf(OAuth2LoginAuthenticationFilter.class), filters.toString());
+        assertTrue(admission < filters.indexOf(UsernamePasswordAuthenticationFilter.class), filters.toString());
+    }
+
     @Test
     void loginPage_withOAuth2Configured_isAccessible() throws Exception {
         mockMvc.perform(get("/login"))
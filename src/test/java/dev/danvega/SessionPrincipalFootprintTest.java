@@ -0,0 +1,143 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.OidcUserInfo;
+import org.springframework.security.oauth2.core.oidc.user.DefaultOidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUser;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares what one session holds for a Google login with the {@code DefaultOidcUser} the
+ * OIDC user service used to return and with the {@link CompactOidcUser} it returns now.
+ * <p>
+ * Retained heap per session is estimated from the used heap after building
+ * {@value #SESSIONS} principals, each with its own token and claim values as real sessions
+ * have; serialized size is what a persistent session store would write.
+ */
+class SessionPrincipalFootprintTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionPrincipalFootprintTest.class);
+
+    private static final int SESSIONS = 10_000;
+
+    // Shared instances, as AuthorityRegistry hands them out
+    private static final List<GrantedAuthority> SHARED_AUTHORITIES = List.of(
+            new SimpleGrantedAuthority("SCOPE_openid"), new SimpleGrantedAuthority("SCOPE_email"),
+            new SimpleGrantedAuthority("SCOPE_profile"), new SimpleGrantedAuthority("ROLE_POWER_USER"));
+
+    @Test
+    void compactPrincipal_retainsLessThanDefaultOidcUser() throws Exception {
+        long defaultHeap = retainedHeapPerSession(SessionPrincipalFootprintTest::defaultUser);
+        long compactHeap = retainedHeapPerSession(SessionPrincipalFootprintTest::compactUser);
+        int defaultSerialized = serializedSize(defaultUser(0));
+        int compactSerialized = serializedSize(compactUser(0));
+
+        logger.info("Retained heap per session: {} bytes with DefaultOidcUser, {} bytes with CompactOidcUser",
+                defaultHeap, compactHeap);
+        logger.info("Serialized principal: {} bytes with DefaultOidcUser, {} bytes with CompactOidcUser",
+                defaultSerialized, compactSerialized);
+
+        assertTrue(compactHeap < defaultHeap,
+                "retained heap per session: " + compactHeap + " bytes compact, " + defaultHeap + " bytes default");
+        assertTrue(compactSerialized < defaultSerialized / 2,
+                "serialized size: " + compactSerialized + " bytes compact, " + defaultSerialized + " bytes default");
+    }
+
+    private static long retainedHeapPerSession(IntFunction<OidcUser> principals) {
+        Runtime runtime = Runtime.getRuntime();
+        long before = usedHeap(runtime);
+        List<OidcUser> sessions = new ArrayList<>(SESSIONS);
+        for (int i = 0; i < SESSIONS; i++) {
+            sessions.add(principals.apply(i));
+        }
+        long after = usedHeap(runtime);
+        // Keep the principals reachable until measured
+        assertEquals(SESSIONS, sessions.size());
+        return (after - before) / SESSIONS;
+    }
+
+    private static long usedHeap(Runtime runtime) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static int serializedSize(Object principal) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(principal);
+        }
+        return bytes.size();
+    }
+
+    // What OidcUserService plus the role mapping used to keep for a power user
+    private static OidcUser defaultUser(int i) {
+        OidcIdToken idToken = idToken(i);
+        Map<String, Object> claims = new HashMap<>(userInfoClaims(i));
+        claims.put("custom_claim", "Power User Active");
+        OidcUserInfo userInfo = new OidcUserInfo(claims);
+        List<GrantedAuthority> authorities = new ArrayList<>(SHARED_AUTHORITIES);
+        authorities.add(new OidcUserAuthority(idToken, userInfo));
+        return new DefaultOidcUser(authorities, idToken, userInfo, "sub");
+    }
+
+    private static OidcUser compactUser(int i) {
+        OidcIdToken idToken = idToken(i);
+        OidcUserInfo userInfo = new OidcUserInfo(userInfoClaims(i));
+        List<GrantedAuthority> authorities = new ArrayList<>(SHARED_AUTHORITIES);
+        authorities.add(new OidcUserAuthority(idToken, userInfo));
+        OidcUser loaded = new DefaultOidcUser(authorities, idToken, userInfo, "sub");
+
+        Map<String, Object> attributes = CompactOAuth2User.retainedAttributes(loaded.getAttributes(), "sub");
+        attributes.put("custom_claim", "Power User Active");
+        return new CompactOidcUser(attributes, CompactOAuth2User.withoutUserAttributes(loaded.getAuthorities()),
+                loaded.getIdToken(), "sub");
+    }
+
+    private static OidcIdToken idToken(int i) {
+        Instant issuedAt = Instant.now();
+        Map<String, Object> claims = new HashMap<>(userInfoClaims(i));
+        claims.put("iss", "https://accounts.google.com");
+        claims.put("azp", "1234567890-abcdefghijklmnop.apps.googleusercontent.com");
+        claims.put("aud", List.of("1234567890-abcdefghijklmnop.apps.googleusercontent.com"));
+        claims.put("at_hash", "HK6E_P6Dh8Y93mRNtsDB1Q" + i);
+        claims.put("nonce", "n-0S6_WzA2Mj" + i);
+        claims.put("iat", issuedAt);
+        claims.put("exp", issuedAt.plusSeconds(3600));
+        // A signed Google ID token is a little under a kilobyte
+        String tokenValue = "eyJhbGciOiJSUzI1NiIsImtpZCI6IjEifQ." + "x".repeat(700) + i + "." + "s".repeat(342);
+        return new OidcIdToken(tokenValue, issuedAt, issuedAt.plusSeconds(3600), claims);
+    }
+
+    private static Map<String, Object> userInfoClaims(int i) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", "1098765432101234567" + i);
+        claims.put("email", "user" + i + "@example.com");
+        claims.put("email_verified", true);
+        claims.put("name", "Test User " + i);
+        claims.put("given_name", "Test");
+        claims.put("family_name", "User " + i);
+        claims.put("picture", "https://lh3.googleusercontent.com/a/ACg8ocJ" + i + "=s96-c");
+        claims.put("locale", "en");
+        claims.put("hd", "example.com");
+        return claims;
+    }
+}
@@ -0,0 +1,67 @@
+package dev.danvega;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TokenBucket.
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    @Test
+    void tryConsume_allowsBurstThenReportsWaitForNextToken() {
+        TokenBucket bucket = new TokenBucket(3, Duration.ofSeconds(10), 0);
+
+        assertEquals(0, bucket.tryConsume(0));
+        assertEquals(0, bucket.tryConsume(0));
+        assertEquals(0, bucket.tryConsume(0));
+        assertEquals(10 * SECOND, bucket.tryConsume(0));
+        assertEquals(4 * SECOND, bucket.tryConsume(6 * SECOND));
+    }
+
+    @Test
+    void tryConsume_refillsOneTokenPerPeriod() {
+        TokenBucket bucket = new TokenBucket(2, Duration.ofSeconds(10), 0);
+        bucket.tryConsume(0);
+        bucket.tryConsume(0);
+
+        assertEquals(0, bucket.tryConsume(10 * SECOND));
+        assertTrue(bucket.tryConsume(10 * SECOND) > 0);
+    }
+
+    @Test
+    void tryConsume_idleBucketDoesNotSaveUpBeyondBurst() {
+        TokenBucket bucket = new TokenBucket(2, Duration.ofSeconds(1), 0);
+
+        long later = 3600 * SECOND;
+        assertEquals(0, bucket.tryConsume(later));
+        assertEquals(0, bucket.tryConsume(later));
+        assertTrue(bucket.tryConsume(later) > 0);
+    }
+
+    @Test
+    void tryConsume_concurrentCallers_neverExceedBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, Duration.ofHours(1), 0);
+        AtomicInteger granted = new AtomicInteger();
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 1_000; i++) {
+                executor.execute(() -> {
+                    if (bucket.tryConsume(0) == 0) {
+                        granted.incrementAndGet();
+                    }
+                });
+            }
+        }
+
+        assertEquals(100, granted.get());
+    }
+}
@@ -0,0 +1,120 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.CsrfHiddenInput;
+import gg.jte.Content;
+import gg.jte.TemplateOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares rendering the CSRF hidden input with {@code String.formatted}, as
+ * {@link CsrfHiddenInput} used to, with the precomputed UTF-8 fragments it writes now. The
+ * token is a masked HMAC token of the length the application renders.
+ * <p>
+ * Both write into {@link ReusableUtf8Output}, which stands in for jte's {@code Utf8ByteOutput}
+ * but is reset after every render so the output buffer itself allocates nothing.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="CsrfHiddenInputBenchmark -prof gc"}
+ * and compare {@code gc.alloc.rate.norm} (bytes per render) alongside the average time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsrfHiddenInputBenchmark {
+
+    private final ReusableUtf8Output output = new ReusableUtf8Output();
+    private Content formatted;
+    private Content precomputed;
+
+    @Setup
+    public void setUp() {
+        CsrfToken token = new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf",
+                "Q0SR0SqmFVQx-2dJw0mSfdPrVj3jt9JzS3Cy1WQ8eBp3pBl5HQwHlgUsCG3zkHjKXfAx25OWS2dIK4lmw9oUxK0Yv"
+                        + "Q9UXHOTUbC_mlDNQ8mAizG2vVk1G1MnI6rZ_j5ZeTbEx3Q==");
+        formatted = new FormattedCsrfHiddenInput(token);
+        precomputed = new CsrfHiddenInput(token);
+    }
+
+    @Benchmark
+    public int formatted() {
+        return render(formatted);
+    }
+
+    @Benchmark
+    public int precomputed() {
+        return render(precomputed);
+    }
+
+    private int render(Content content) {
+        content.writeTo(output);
+        return output.reset();
+    }
+
+    /** The rendering CsrfHiddenInput replaced. */
+    private record FormattedCsrfHiddenInput(CsrfToken csrfToken) implements Content {
+
+        @Override
+        public void writeTo(TemplateOutput templateOutput) {
+            templateOutput.writeContent("<input type=\"hidden\" name=\"%s\" value=\"%s\">"
+                    .formatted(csrfToken.getParameterName(), csrfToken.getToken()));
+        }
+    }
+
+    /**
+     * Fixed-size UTF-8 output: binary content is copied, strings are encoded character by
+     * character, as {@code Utf8ByteOutput} does.
+     */
+    private static final class ReusableUtf8Output implements TemplateOutput {
+
+        private final byte[] buffer = new byte[1024];
+        private int position;
+
+        @Override
+        public void writeContent(String value) {
+            writeContent(value, 0, value.length());
+        }
+
+        @Override
+        public void writeContent(String value, int beginIndex, int endIndex) {
+            for (int i = beginIndex; i < endIndex; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else {
+                    byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+                    position += bytes.length;
+                }
+            }
+        }
+
+        @Override
+        public void writeBinaryContent(byte[] value) {
+            System.arraycopy(value, 0, buffer, position, value.length);
+            position += value.length;
+        }
+
+        /** @return the number of bytes written since the last reset */
+        int reset() {
+            int written = position;
+            position = 0;
+            return written;
+        }
+    }
+}
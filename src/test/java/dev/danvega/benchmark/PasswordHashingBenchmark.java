@@ -0,0 +1,71 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.PasswordHashCalibration;
+import dev.danvega.config.PasswordHashingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of one password verification per algorithm and cost factor, to check on the target
+ * machine what {@code app.password-hashing.target-time} buys. {@code calibrated} is the
+ * encoder the application would build at startup with the default properties.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="PasswordHashingBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "correct horse battery staple";
+
+    @Param({"bcrypt:10", "bcrypt:11", "bcrypt:12", "bcrypt:13",
+            "pbkdf2:310000", "pbkdf2:620000", "pbkdf2:1240000", "calibrated"})
+    public String encoding;
+
+    private PasswordEncoder encoder;
+    private String hash;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        encoder = encoder(encoding);
+        hash = encoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return encoder.matches(PASSWORD, hash);
+    }
+
+    private static PasswordEncoder encoder(String encoding) {
+        if ("calibrated".equals(encoding)) {
+            return PasswordHashCalibration.create(PasswordHashingProperties.defaults());
+        }
+        String[] algorithmAndCost = encoding.split(":");
+        int cost = Integer.parseInt(algorithmAndCost[1]);
+        return switch (algorithmAndCost[0]) {
+            case "bcrypt" -> new BCryptPasswordEncoder(cost);
+            case "pbkdf2" -> new Pbkdf2PasswordEncoder("", 16, cost, SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256);
+            default -> throw new IllegalArgumentException("Unknown encoding: " + encoding);
+        };
+    }
+}
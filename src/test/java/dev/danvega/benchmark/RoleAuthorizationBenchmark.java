@@ -0,0 +1,118 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.RoleAuthorizationManager;
+import dev.danvega.domain.Role;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.service.RoleBits;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the string-matching {@code hasAnyRole} rule with {@link RoleAuthorizationManager}
+ * for the {@code /h2-console/**} rule, for a denied regular user (the whole authority list is
+ * scanned) and a granted power user.
+ * <p>
+ * {@code roles} sets the size of the roles table: 3 as seeded, 100 to exercise bitsets
+ * spanning more than one word. Users also carry the scope authorities an OIDC login adds.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="RoleAuthorizationBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoleAuthorizationBenchmark {
+
+    @Param({"3", "100"})
+    public int roles;
+
+    private AuthorityAuthorizationManager<Object> stringManager;
+    private RoleAuthorizationManager<Object> bitsetManager;
+    private Authentication regularUser;
+    private Authentication powerUser;
+    private final Object request = new Object();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Role> table = new ArrayList<>();
+        for (String name : List.of("ROLE_USER", "ROLE_ADMIN", "ROLE_POWER_USER")) {
+            table.add(role(table.size() + 1L, name));
+        }
+        while (table.size() < roles) {
+            table.add(role(table.size() + 1L, "ROLE_EXTRA_" + table.size()));
+        }
+        RoleRepository roleRepository = mock(RoleRepository.class);
+        when(roleRepository.findAll()).thenReturn(table);
+        RoleBits roleBits = new RoleBits(roleRepository);
+
+        stringManager = AuthorityAuthorizationManager.hasAnyRole("ADMIN", "POWER_USER");
+        bitsetManager = RoleAuthorizationManager.hasAnyRole(roleBits, "ADMIN", "POWER_USER");
+
+        // Users in large role tables hold one of the high roles as well
+        String extraRole = table.get(table.size() - 1).getName();
+        regularUser = user(roleBits, "ROLE_USER", extraRole);
+        powerUser = user(roleBits, "ROLE_USER", extraRole, "ROLE_POWER_USER");
+    }
+
+    @Benchmark
+    public boolean stringMatchDenied() {
+        return stringManager.authorize(() -> regularUser, request).isGranted();
+    }
+
+    @Benchmark
+    public boolean bitsetDenied() {
+        return bitsetManager.authorize(() -> regularUser, request).isGranted();
+    }
+
+    @Benchmark
+    public boolean stringMatchGranted() {
+        return stringManager.authorize(() -> powerUser, request).isGranted();
+    }
+
+    @Benchmark
+    public boolean bitsetGranted() {
+        return bitsetManager.authorize(() -> powerUser, request).isGranted();
+    }
+
+    private static Authentication user(RoleBits roleBits, String... roleNames) {
+        Set<GrantedAuthority> roles = roleBits.withRoleSet(Set.copyOf(AuthorityUtils.createAuthorityList(roleNames)));
+        List<GrantedAuthority> authorities = new ArrayList<>(
+                AuthorityUtils.createAuthorityList("OIDC_USER", "SCOPE_openid", "SCOPE_email", "SCOPE_profile"));
+        authorities.addAll(roles);
+        // Same order as DefaultOidcUser and User keep them in: sorted by authority string
+        authorities.sort(Comparator.comparing(GrantedAuthority::getAuthority));
+        return UsernamePasswordAuthenticationToken.authenticated("user", null, authorities);
+    }
+
+    private static Role role(long id, String name) {
+        Role role = new Role(name);
+        role.setId(id);
+        return role;
+    }
+}
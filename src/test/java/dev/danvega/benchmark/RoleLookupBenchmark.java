@@ -0,0 +1,126 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.Application;
+import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.service.RoleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares a role lookup served by the in-memory {@link RoleIndex} with the repository
+ * query that {@code RoleService} issues on a cache miss, at 1M and 10M role assignments.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="RoleLookupBenchmark"}.
+ * Seeding 10M rows into the in-memory H2 database needs a large heap, hence {@code -Xmx8g}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RoleLookupBenchmark {
+
+    private static final int ROLES_PER_USER = 2;
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final int SAMPLE_SIZE = 4_096;
+
+    @Param({"1000000", "10000000"})
+    public int assignments;
+
+    private ConfigurableApplicationContext context;
+    private RoleAssignmentRepository roleAssignmentRepository;
+    private RoleIndex roleIndex;
+    private String[] sample;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.h2.console.enabled=false",
+                        "spring.jpa.show-sql=false",
+                        "app.roles.index.enabled=true",
+                        "app.roles.index.poll-interval=1h",
+                        "logging.level.root=WARN")
+                .run();
+        roleAssignmentRepository = context.getBean(RoleAssignmentRepository.class);
+        roleIndex = context.getBean(RoleIndex.class);
+
+        int users = assignments / ROLES_PER_USER;
+        seed(context.getBean(JdbcTemplate.class), users);
+        roleIndex.rebuild();
+
+        Random random = new Random(42);
+        sample = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sample[i] = "bench:user" + random.nextInt(users);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Set<GrantedAuthority> repositoryPath() {
+        return roleAssignmentRepository.findRoleNamesByUserIdentifier(nextUser()).stream()
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    @Benchmark
+    public Set<GrantedAuthority> indexPath() {
+        return roleIndex.lookup(nextUser()).orElseThrow();
+    }
+
+    private String nextUser() {
+        return sample[next++ & (SAMPLE_SIZE - 1)];
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate, int users) {
+        // Bulk rows would otherwise be mirrored into the change log one by one
+        jdbcTemplate.execute("DROP TRIGGER trg_role_assignments_changed");
+        List<Long> roleIds = jdbcTemplate.queryForList("SELECT id FROM roles ORDER BY id", Long.class);
+
+        List<Object[]> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int user = 0; user < users; user++) {
+            for (int role = 0; role < ROLES_PER_USER; role++) {
+                batch.add(new Object[] {"bench:user" + user, roleIds.get((user + role) % roleIds.size())});
+            }
+            if (batch.size() >= INSERT_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate("INSERT INTO role_assignments (user_identifier, role_id) VALUES (?, ?)", batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO role_assignments (user_identifier, role_id) VALUES (?, ?)", batch);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.Application;
+import dev.danvega.repository.RoleAssignmentRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the entity query {@code RoleService} used to issue on a cache miss with the
+ * role name projection that replaced it. Both run inside a read-only transaction, as they
+ * would behind a service method, so the cost of registering and flushing hydrated entities
+ * is part of the entity path.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="RoleProjectionBenchmark -prof gc"}
+ * and compare {@code gc.alloc.rate.norm} (bytes per lookup) alongside the average time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoleProjectionBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final int ROLES_PER_USER = 2;
+    private static final int SAMPLE_SIZE = 4_096;
+
+    private ConfigurableApplicationContext context;
+    private RoleAssignmentRepository roleAssignmentRepository;
+    private TransactionTemplate transactionTemplate;
+    private String[] sample;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.h2.console.enabled=false",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        roleAssignmentRepository = context.getBean(RoleAssignmentRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        seed(context.getBean(JdbcTemplate.class));
+
+        Random random = new Random(42);
+        sample = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sample[i] = "bench:user" + random.nextInt(USERS);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Set<GrantedAuthority> entityPath() {
+        String userIdentifier = nextUser();
+        return transactionTemplate.execute(status ->
+                roleAssignmentRepository.findByUserIdentifier(userIdentifier).stream()
+                        .map(ra -> new SimpleGrantedAuthority(ra.getRole().getName()))
+                        .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    @Benchmark
+    public Set<GrantedAuthority> projectionPath() {
+        String userIdentifier = nextUser();
+        return transactionTemplate.execute(status ->
+                roleAssignmentRepository.findRoleNamesByUserIdentifier(userIdentifier).stream()
+                        .map(SimpleGrantedAuthority::new)
+                        .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    private String nextUser() {
+        return sample[next++ & (SAMPLE_SIZE - 1)];
+    }
+
+    private static void seed(JdbcTemplate jdbcTemplate) {
+        List<Long> roleIds = jdbcTemplate.queryForList("SELECT id FROM roles ORDER BY id", Long.class);
+
+        List<Object[]> batch = new ArrayList<>(USERS * ROLES_PER_USER);
+        for (int user = 0; user < USERS; user++) {
+            for (int role = 0; role < ROLES_PER_USER; role++) {
+                batch.add(new Object[] {"bench:user" + user, roleIds.get((user + role) % roleIds.size())});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO role_assignments (user_identifier, role_id) VALUES (?, ?)", batch);
+    }
+}
@@ -0,0 +1,112 @@
+package dev.danvega.benchmark;
+
+import dev.danvega.Application;
+import dev.danvega.repository.WriteBehindJdbcSessionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.session.MapSessionRepository;
+import org.springframework.session.Session;
+import org.springframework.session.SessionRepository;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the session work of one request (load, touch, save, as Spring Session's filter
+ * does it) on {@link WriteBehindJdbcSessionRepository} with the same work on an in-memory
+ * {@link MapSessionRepository}, for requests that only touch the session and for requests
+ * that also change an attribute.
+ * <p>
+ * Run with {@code ./mvnw -Pbenchmark test-compile exec:exec -Djmh.args="SessionRepositoryBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SessionRepositoryBenchmark {
+
+    private static final int SESSIONS = 10_000;
+
+    @Param({"memory", "jdbc"})
+    public String store;
+
+    private ConfigurableApplicationContext context;
+    private SessionRepository<Session> sessionRepository;
+    private String[] sessionIds;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        if ("jdbc".equals(store)) {
+            context = new SpringApplicationBuilder(Application.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.h2.console.enabled=false",
+                            "spring.jpa.show-sql=false",
+                            "app.session.jdbc.enabled=true",
+                            "logging.level.root=WARN")
+                    .run();
+            sessionRepository = (SessionRepository<Session>) (SessionRepository<?>)
+                    context.getBean(WriteBehindJdbcSessionRepository.class);
+        } else {
+            sessionRepository = (SessionRepository<Session>) (SessionRepository<?>)
+                    new MapSessionRepository(new ConcurrentHashMap<>());
+        }
+
+        sessionIds = new String[SESSIONS];
+        for (int i = 0; i < SESSIONS; i++) {
+            Session session = sessionRepository.createSession();
+            session.setAttribute("saved-request", "/dashboard");
+            sessionRepository.save(session);
+            sessionIds[i] = session.getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public Session touch() {
+        Session session = sessionRepository.findById(nextSessionId());
+        session.setLastAccessedTime(Instant.now());
+        sessionRepository.save(session);
+        return session;
+    }
+
+    @Benchmark
+    public Session touchAndSetAttribute() {
+        Session session = sessionRepository.findById(nextSessionId());
+        session.setLastAccessedTime(Instant.now());
+        session.setAttribute("saved-request", "/dashboard?page=" + ThreadLocalRandom.current().nextInt(100));
+        sessionRepository.save(session);
+        return session;
+    }
+
+    private String nextSessionId() {
+        return sessionIds[ThreadLocalRandom.current().nextInt(SESSIONS)];
+    }
+}
@@ -2,6 +2,9 @@ package dev.danvega.repository;
 
 import dev.danvega.domain.Role;
 import dev.danvega.domain.RoleAssignment;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -18,7 +21,8 @@ import static org.junit.jupiter.api.Assertions.*;
 @DataJpaTest
 @TestPropertySource(properties = {
         "spring.liquibase.enabled=false",
-        "spring.jpa.hibernate.ddl-auto=create-drop"
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
 })
 class RoleAssignmentRepositoryTest {
 
@@ -104,4 +108,74 @@ class RoleAssignmentRepositoryTest {
         assertEquals(1, assignments.size());
         assertEquals("ROLE_POWER_USER", assignments.get(0).getRole().getName());
     }
+
+    @Test
+    void findRoleNamesByUserIdentifier_multipleRoles_returnsRoleNames() {
+        // Given
+        Role adminRole = new Role("ROLE_ADMIN");
+        Role userRole = new Role("ROLE_USER");
+        entityManager.persistAndFlush(adminRole);
+        entityManager.persistAndFlush(userRole);
+        entityManager.persistAndFlush(new RoleAssignment("form:multiuser", adminRole));
+        entityManager.persistAndFlush(new RoleAssignment("form:multiuser", userRole));
+
+        // When
+        List<String> roleNames = roleAssignmentRepository.findRoleNamesByUserIdentifier("form:multiuser");
+
+        // Then
+        assertEquals(2, roleNames.size());
+        assertTrue(roleNames.containsAll(List.of("ROLE_ADMIN", "ROLE_USER")));
+    }
+
+    @Test
+    void findRoleNamesByUserIdentifier_nonExistentUser_returnsEmptyList() {
+        assertTrue(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:unknown").isEmpty());
+    }
+
+    @Test
+    void findRoleNamesByUserIdentifier_issuesOneStatementWithoutLoadingEntities() {
+        // Given
+        Role role = new Role("ROLE_ADMIN");
+        entityManager.persistAndFlush(role);
+        entityManager.persistAndFlush(new RoleAssignment("form:testuser", role));
+        entityManager.clear();
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        // When
+        List<String> roleNames = roleAssignmentRepository.findRoleNamesByUserIdentifier("form:testuser");
+
+        // Then
+        assertEquals(List.of("ROLE_ADMIN"), roleNames);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(0, session().getStatistics().getEntityCount());
+    }
+
+    @Test
+    void findByUserIdentifier_hydratesAssignmentAndRoleIntoPersistenceContext() {
+        // Given
+        Role role = new Role("ROLE_ADMIN");
+        entityManager.persistAndFlush(role);
+        entityManager.persistAndFlush(new RoleAssignment("form:testuser", role));
+        entityManager.clear();
+        Statistics statistics = statistics();
+        statistics.clear();
+
+        // When
+        roleAssignmentRepository.findByUserIdentifier("form:testuser");
+
+        // Then
+        assertEquals(2, statistics.getEntityLoadCount());
+        assertEquals(2, session().getStatistics().getEntityCount());
+    }
+
+    private Statistics statistics() {
+        return entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private Session session() {
+        return entityManager.getEntityManager().unwrap(Session.class);
+    }
 }
@@ -0,0 +1,76 @@
+package dev.danvega.repository;
+
+import dev.danvega.domain.Role;
+import dev.danvega.domain.RoleAssignment;
+import dev.danvega.domain.UserAccount;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for UserAccountRepository.
+ */
+@DataJpaTest
+@TestPropertySource(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class UserAccountRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private UserAccountRepository userAccountRepository;
+
+    @Test
+    void findByUsername_existingUser_returnsUser() {
+        entityManager.persistAndFlush(new UserAccount("alice", "{noop}secret"));
+
+        UserAccount found = userAccountRepository.findByUsername("alice").orElseThrow();
+
+        assertEquals("{noop}secret", found.getPasswordHash());
+        assertTrue(found.isEnabled());
+    }
+
+    @Test
+    void findCredentialsByUsername_withRoles_returnsOneRowPerRole() {
+        entityManager.persist(new UserAccount("alice", "{noop}secret"));
+        Role admin = entityManager.persist(new Role("ROLE_ADMIN"));
+        Role user = entityManager.persist(new Role("ROLE_USER"));
+        entityManager.persist(new RoleAssignment("form:alice", admin));
+        entityManager.persist(new RoleAssignment("form:alice", user));
+        entityManager.persist(new RoleAssignment("google:alice", admin));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<UserCredentialRow> rows = userAccountRepository.findCredentialsByUsername("alice", "form:alice");
+
+        assertEquals(2, rows.size());
+        assertTrue(rows.stream().allMatch(row -> "{noop}secret".equals(row.passwordHash()) && row.enabled()));
+        assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"),
+                rows.stream().map(UserCredentialRow::roleName).sorted().toList());
+    }
+
+    @Test
+    void findCredentialsByUsername_withoutRoles_returnsSingleRowWithoutRole() {
+        UserAccount disabled = new UserAccount("bob", "{noop}secret");
+        disabled.setEnabled(false);
+        entityManager.persistAndFlush(disabled);
+
+        List<UserCredentialRow> rows = userAccountRepository.findCredentialsByUsername("bob", "form:bob");
+
+        assertEquals(List.of(new UserCredentialRow("{noop}secret", false, null)), rows);
+    }
+
+    @Test
+    void findCredentialsByUsername_unknownUser_returnsNoRows() {
+        assertTrue(userAccountRepository.findCredentialsByUsername("nobody", "form:nobody").isEmpty());
+    }
+}
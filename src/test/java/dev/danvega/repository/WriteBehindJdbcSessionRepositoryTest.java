@@ -0,0 +1,261 @@
+package dev.danvega.repository;
+
+import dev.danvega.config.JdbcSessionProperties;
+import dev.danvega.repository.WriteBehindJdbcSessionRepository.JdbcSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for WriteBehindJdbcSessionRepository with the Liquibase-managed database.
+ * <p>
+ * The repository is created without starting its flusher, so the tests decide when batches are
+ * written. Its writes are committed as they would be in the application, not rolled back.
+ */
+@JdbcTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WriteBehindJdbcSessionRepositoryTest {
+
+    private static final String FLUSHER_THREAD = "test-session-flusher";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch batchConnectionRequested = new CountDownLatch(1);
+    private final CountDownLatch batchConnectionReleased = new CountDownLatch(1);
+    private WriteBehindJdbcSessionRepository sessionRepository;
+
+    @BeforeEach
+    void setUp() {
+        // Connections asked for by the test's flusher thread wait until the test lets them go
+        DataSource gated = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (FLUSHER_THREAD.equals(Thread.currentThread().getName())) {
+                    batchConnectionRequested.countDown();
+                    try {
+                        batchConnectionReleased.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getConnection();
+            }
+        };
+        sessionRepository = new WriteBehindJdbcSessionRepository(gated, JdbcSessionProperties.defaults(),
+                meterRegistry);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        sessionRepository.flush();
+        jdbcTemplate.update("DELETE FROM app_sessions");
+    }
+
+    @Test
+    void save_newSession_isWrittenImmediately() {
+        JdbcSession session = sessionRepository.createSession();
+
+        sessionRepository.save(session);
+
+        assertEquals(1, rowCount(session.getId()));
+    }
+
+    @Test
+    void save_touches_areCoalescedUntilFlush() {
+        JdbcSession session = saveNewSession();
+        long storedAccess = lastAccessTime(session.getId());
+        double coalescedBefore = coalesced();
+
+        for (int i = 1; i <= 3; i++) {
+            JdbcSession loaded = sessionRepository.findById(session.getId());
+            loaded.setLastAccessedTime(Instant.now().plusSeconds(i));
+            sessionRepository.save(loaded);
+        }
+
+        assertEquals(storedAccess, lastAccessTime(session.getId()));
+        assertEquals(coalescedBefore + 2, coalesced());
+        assertEquals(1, meterRegistry.get("sessions.jdbc.pending").gauge().value());
+
+        sessionRepository.flush();
+
+        assertTrue(lastAccessTime(session.getId()) > storedAccess);
+        assertEquals(0, meterRegistry.get("sessions.jdbc.pending").gauge().value());
+    }
+
+    @Test
+    void findById_pendingAttributeChange_isVisibleBeforeFlush() {
+        JdbcSession session = saveNewSession();
+        JdbcSession loaded = sessionRepository.findById(session.getId());
+        loaded.setAttribute("saved-request", "/dashboard");
+        sessionRepository.save(loaded);
+
+        assertEquals("/dashboard", sessionRepository.findById(session.getId()).getAttribute("saved-request"));
+
+        sessionRepository.flush();
+        // Read from the table now that nothing is pending
+        assertEquals("/dashboard", sessionRepository.findById(session.getId()).getAttribute("saved-request"));
+    }
+
+    @Test
+    void save_touchAfterAttributeChange_stillWritesAttribute() {
+        JdbcSession session = saveNewSession();
+        JdbcSession changed = sessionRepository.findById(session.getId());
+        changed.setAttribute("saved-request", "/dashboard");
+        sessionRepository.save(changed);
+        JdbcSession touched = sessionRepository.findById(session.getId());
+        touched.setLastAccessedTime(Instant.now());
+        sessionRepository.save(touched);
+
+        sessionRepository.flush();
+
+        assertEquals("/dashboard", sessionRepository.findById(session.getId()).getAttribute("saved-request"));
+    }
+
+    @Test
+    void save_login_isWrittenImmediatelyAndFoundByPrincipalName() {
+        JdbcSession session = saveNewSession();
+        JdbcSession loaded = sessionRepository.findById(session.getId());
+        String oldId = loaded.getId();
+        loaded.changeSessionId();
+        loaded.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated("admin", null,
+                        AuthorityUtils.createAuthorityList("ROLE_ADMIN"))));
+
+        sessionRepository.save(loaded);
+
+        assertEquals(0, rowCount(oldId));
+        assertEquals(1, rowCount(loaded.getId()));
+        Map<String, JdbcSession> sessions = sessionRepository.findByIndexNameAndIndexValue(
+                FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, "admin");
+        assertEquals(Set.of(loaded.getId()), sessions.keySet());
+        assertEquals("admin", jdbcTemplate.queryForObject(
+                "SELECT principal_name FROM app_sessions WHERE session_id = ?", String.class, loaded.getId()));
+    }
+
+    @Test
+    void deleteById_dropsRowAndPendingChange() {
+        JdbcSession session = saveNewSession();
+        JdbcSession loaded = sessionRepository.findById(session.getId());
+        loaded.setAttribute("saved-request", "/dashboard");
+        sessionRepository.save(loaded);
+
+        sessionRepository.deleteById(session.getId());
+        sessionRepository.flush();
+
+        assertNull(sessionRepository.findById(session.getId()));
+        assertEquals(0, rowCount(session.getId()));
+    }
+
+    @Test
+    void flushBatch_whileWriting_letsOtherSessionsWriteAndWaitsOnlyForItsOwn() throws Exception {
+        JdbcSession batched = saveNewSession();
+        JdbcSession touched = sessionRepository.findById(batched.getId());
+        touched.setAttribute("saved-request", "/dashboard");
+        sessionRepository.save(touched);
+
+        CompletableFuture<Integer> batch = new CompletableFuture<>();
+        Thread.ofVirtual().name(FLUSHER_THREAD).start(() -> batch.complete(sessionRepository.flushBatch()));
+        assertTrue(batchConnectionRequested.await(5, TimeUnit.SECONDS));
+
+        // Another session is written while the batch is held up, and the batched change is still read
+        JdbcSession other = CompletableFuture.supplyAsync(this::saveNewSession).get(2, TimeUnit.SECONDS);
+        assertEquals(1, rowCount(other.getId()));
+        assertEquals("/dashboard", sessionRepository.findById(batched.getId()).getAttribute("saved-request"));
+
+        // A login in the batched session waits for the batch, so its older state cannot win
+        JdbcSession login = sessionRepository.findById(batched.getId());
+        login.setAttribute(HttpSessionSecurityContextRepository.SPRING_SECURITY_CONTEXT_KEY, new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated("admin", null,
+                        AuthorityUtils.createAuthorityList("ROLE_ADMIN"))));
+        CompletableFuture<Void> loginSaved = CompletableFuture.runAsync(() -> sessionRepository.save(login));
+        assertThrows(Exception.class, () -> loginSaved.get(200, TimeUnit.MILLISECONDS));
+
+        batchConnectionReleased.countDown();
+        assertEquals(1, batch.get(5, TimeUnit.SECONDS));
+        loginSaved.get(5, TimeUnit.SECONDS);
+
+        assertEquals("admin", jdbcTemplate.queryForObject(
+                "SELECT principal_name FROM app_sessions WHERE session_id = ?", String.class, batched.getId()));
+        assertEquals("/dashboard", sessionRepository.findById(batched.getId()).getAttribute("saved-request"));
+    }
+
+    @Test
+    void flushBatch_writesAtMostOneBatch() {
+        WriteBehindJdbcSessionRepository smallBatches = new WriteBehindJdbcSessionRepository(dataSource,
+                new JdbcSessionProperties(true, null, null, 2, null), new SimpleMeterRegistry());
+        for (int i = 0; i < 3; i++) {
+            JdbcSession session = smallBatches.createSession();
+            smallBatches.save(session);
+            JdbcSession loaded = smallBatches.findById(session.getId());
+            loaded.setLastAccessedTime(Instant.now().plusSeconds(1));
+            smallBatches.save(loaded);
+        }
+
+        assertEquals(2, smallBatches.flushBatch());
+        assertEquals(1, smallBatches.flushBatch());
+        assertEquals(0, smallBatches.flushBatch());
+    }
+
+    @Test
+    void deleteExpiredSessions_removesOnlyExpiredRows() {
+        JdbcSession expired = sessionRepository.createSession();
+        expired.setMaxInactiveInterval(Duration.ofSeconds(1));
+        expired.setLastAccessedTime(Instant.now().minusSeconds(60));
+        sessionRepository.save(expired);
+        JdbcSession active = saveNewSession();
+
+        assertEquals(1, sessionRepository.deleteExpiredSessions());
+
+        assertEquals(0, rowCount(expired.getId()));
+        assertEquals(1, rowCount(active.getId()));
+    }
+
+    private JdbcSession saveNewSession() {
+        JdbcSession session = sessionRepository.createSession();
+        sessionRepository.save(session);
+        return session;
+    }
+
+    private int rowCount(String id) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM app_sessions WHERE session_id = ?", Integer.class, id);
+    }
+
+    private long lastAccessTime(String id) {
+        return jdbcTemplate.queryForObject("SELECT last_access_time FROM app_sessions WHERE session_id = ?",
+                Long.class, id);
+    }
+
+    private double coalesced() {
+        return meterRegistry.get("sessions.jdbc.coalesced").counter().count();
+    }
+}
@@ -0,0 +1,86 @@
+package dev.danvega.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.core.oidc.OidcIdToken;
+import org.springframework.security.oauth2.core.oidc.user.OidcUserAuthority;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AuthorityRegistry.
+ */
+class AuthorityRegistryTest {
+
+    private final AuthorityRegistry registry = new AuthorityRegistry();
+
+    @Test
+    void authority_sameName_returnsSameInstance() {
+        assertSame(registry.authority("ROLE_ADMIN"), registry.authority("ROLE_ADMIN"));
+        assertEquals("ROLE_ADMIN", registry.authority("ROLE_ADMIN").getAuthority());
+    }
+
+    @Test
+    void authorities_sameCombinationInAnyOrder_returnsSameSet() {
+        Set<GrantedAuthority> first = registry.authorities(List.of("ROLE_ADMIN", "ROLE_USER"));
+        Set<GrantedAuthority> second = registry.authorities(List.of("ROLE_USER", "ROLE_ADMIN", "ROLE_USER"));
+
+        assertSame(first, second);
+        assertEquals(2, first.size());
+        assertTrue(first.contains(registry.authority("ROLE_ADMIN")));
+    }
+
+    @Test
+    void authorities_differentCombinations_shareAuthorityInstances() {
+        Set<GrantedAuthority> admin = registry.authorities(List.of("ROLE_ADMIN"));
+        Set<GrantedAuthority> adminAndUser = registry.authorities(List.of("ROLE_ADMIN", "ROLE_USER"));
+
+        assertNotSame(admin, adminAndUser);
+        GrantedAuthority fromAdmin = admin.iterator().next();
+        assertTrue(adminAndUser.stream().anyMatch(a -> a == fromAdmin));
+    }
+
+    @Test
+    void authorities_noNames_returnsEmptySet() {
+        assertTrue(registry.authorities(List.of()).isEmpty());
+    }
+
+    @Test
+    void authorities_returnsUnmodifiableSet() {
+        Set<GrantedAuthority> authorities = registry.authorities(List.of("ROLE_ADMIN"));
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> authorities.add(new SimpleGrantedAuthority("ROLE_OTHER")));
+    }
+
+    @Test
+    void merge_plainAuthorities_returnsCanonicalSet() {
+        Set<GrantedAuthority> merged = registry.merge(
+                List.of(new SimpleGrantedAuthority("SCOPE_openid")),
+                registry.authorities(List.of("ROLE_USER")));
+
+        assertSame(registry.authorities(List.of("SCOPE_openid", "ROLE_USER")), merged);
+    }
+
+    @Test
+    void merge_withUserSpecificAuthority_keepsItAndCanonicalizesTheRest() {
+        OidcIdToken idToken = new OidcIdToken("token", Instant.now(), Instant.now().plusSeconds(60),
+                Map.of("sub", "user"));
+        OidcUserAuthority oidcAuthority = new OidcUserAuthority(idToken);
+
+        Set<GrantedAuthority> merged = registry.merge(
+                List.of(oidcAuthority, new SimpleGrantedAuthority("SCOPE_email")),
+                registry.authorities(List.of("ROLE_USER")));
+
+        assertEquals(3, merged.size());
+        assertTrue(merged.stream().anyMatch(a -> a == oidcAuthority));
+        assertTrue(merged.stream().anyMatch(a -> a == registry.authority("SCOPE_email")));
+        assertTrue(merged.stream().anyMatch(a -> a == registry.authority("ROLE_USER")));
+    }
+}
@@ -0,0 +1,58 @@
+package dev.danvega.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BloomFilter.
+ */
+class BloomFilterTest {
+
+    @Test
+    void mightContain_everyInsertedValue_returnsTrue() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("google:user" + i + "@example.com");
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("google:user" + i + "@example.com"));
+        }
+    }
+
+    @Test
+    void mightContain_unknownValues_staysNearTargetFalsePositiveRate() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("google:user" + i + "@example.com");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("github:stranger" + i + "@example.com")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 2_000, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.expectedFalsePositiveRate(), 0.005);
+    }
+
+    @Test
+    void emptyFilter_containsNothing() {
+        BloomFilter filter = BloomFilter.create(0, 0.01);
+
+        assertFalse(filter.mightContain("form:admin"));
+        assertEquals(0.0, filter.expectedFalsePositiveRate());
+        assertTrue(filter.sizeInBytes() >= Long.BYTES);
+    }
+
+    @Test
+    void sizeInBytes_growsWithExpectedInsertions() {
+        // About 9.6 bits per value at 1%
+        long bytes = BloomFilter.create(1_000_000, 0.01).sizeInBytes();
+
+        assertTrue(bytes > 1_100_000 && bytes < 1_300_000, "bytes: " + bytes);
+    }
+}
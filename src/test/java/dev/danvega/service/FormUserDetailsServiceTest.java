@@ -0,0 +1,155 @@
+package dev.danvega.service;
+
+import dev.danvega.config.UserCredentialProperties;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
+import dev.danvega.repository.RoleRepository;
+import dev.danvega.repository.UserAccountRepository;
+import dev.danvega.repository.UserCredentialRow;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for FormUserDetailsService.
+ */
+@ExtendWith(MockitoExtension.class)
+class FormUserDetailsServiceTest {
+
+    private static final String HASH = "$2a$10$Tfv9my5koN08dz0AL77vA.26XHC1qJoDe.6.FrjGU2sq7dQG3lDzW";
+
+    @Mock
+    private UserAccountRepository userAccountRepository;
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    private FormUserDetailsService userDetailsService;
+
+    @BeforeEach
+    void setUp() {
+        userDetailsService = new FormUserDetailsService(userAccountRepository, new AuthorityRegistry(),
+                new RoleBits(roleRepository), UserCredentialProperties.defaults(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void loadUserByUsername_returnsHashAndRolesFromOneQuery() {
+        when(userAccountRepository.findCredentialsByUsername("admin", "form:admin")).thenReturn(List.of(
+                new UserCredentialRow(HASH, true, "ROLE_ADMIN"),
+                new UserCredentialRow(HASH, true, "ROLE_USER")));
+
+        UserDetails user = userDetailsService.loadUserByUsername("admin");
+
+        assertEquals("admin", user.getUsername());
+        assertEquals(HASH, user.getPassword());
+        assertTrue(user.isEnabled());
+        assertEquals(Set.of("ROLE_ADMIN", "ROLE_USER"), authorityNames(user));
+        verify(userAccountRepository).findCredentialsByUsername("admin", "form:admin");
+    }
+
+    @Test
+    void loadUserByUsername_withoutRoles_returnsUserWithNoAuthorities() {
+        when(userAccountRepository.findCredentialsByUsername("alice", "form:alice"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, null)));
+
+        UserDetails user = userDetailsService.loadUserByUsername("alice");
+
+        assertTrue(user.getAuthorities().isEmpty());
+    }
+
+    @Test
+    void loadUserByUsername_disabledUser_returnsDisabledUser() {
+        when(userAccountRepository.findCredentialsByUsername("bob", "form:bob"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, false, "ROLE_USER")));
+
+        assertFalse(userDetailsService.loadUserByUsername("bob").isEnabled());
+    }
+
+    @Test
+    void loadUserByUsername_unknownUser_throwsAndIsNotCached() {
+        when(userAccountRepository.findCredentialsByUsername("nobody", "form:nobody")).thenReturn(List.of());
+
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("nobody"));
+        assertThrows(UsernameNotFoundException.class, () -> userDetailsService.loadUserByUsername("nobody"));
+
+        verify(userAccountRepository, times(2)).findCredentialsByUsername("nobody", "form:nobody");
+    }
+
+    @Test
+    void loadUserByUsername_repeatedLogin_isServedFromCacheWithFreshInstances() {
+        when(userAccountRepository.findCredentialsByUsername("admin", "form:admin"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, "ROLE_ADMIN")));
+
+        UserDetails first = userDetailsService.loadUserByUsername("admin");
+        // What the authentication manager does once the password has been checked
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = userDetailsService.loadUserByUsername("admin");
+
+        assertNotSame(first, second);
+        assertEquals(HASH, second.getPassword());
+        verify(userAccountRepository, times(1)).findCredentialsByUsername("admin", "form:admin");
+    }
+
+    @Test
+    void onRoleAssignmentChanged_formUser_evictsCachedCredentials() {
+        when(userAccountRepository.findCredentialsByUsername("admin", "form:admin"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, "ROLE_ADMIN")))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, "ROLE_ADMIN"),
+                        new UserCredentialRow(HASH, true, "ROLE_POWER_USER")));
+
+        userDetailsService.loadUserByUsername("admin");
+        userDetailsService.onRoleAssignmentChanged(new RoleAssignmentChangedEvent("form:admin"));
+        UserDetails user = userDetailsService.loadUserByUsername("admin");
+
+        assertEquals(Set.of("ROLE_ADMIN", "ROLE_POWER_USER"), authorityNames(user));
+        verify(userAccountRepository, times(2)).findCredentialsByUsername("admin", "form:admin");
+    }
+
+    @Test
+    void onRoleAssignmentChanged_otherProvider_keepsCachedCredentials() {
+        when(userAccountRepository.findCredentialsByUsername("admin", "form:admin"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, "ROLE_ADMIN")));
+
+        userDetailsService.loadUserByUsername("admin");
+        userDetailsService.onRoleAssignmentChanged(new RoleAssignmentChangedEvent("google:admin"));
+        userDetailsService.loadUserByUsername("admin");
+
+        verify(userAccountRepository, times(1)).findCredentialsByUsername("admin", "form:admin");
+    }
+
+    @Test
+    void updatePassword_storesNewHashAndEvictsCachedCredentials() {
+        String upgraded = "{bcrypt}" + HASH;
+        when(userAccountRepository.findCredentialsByUsername("admin", "form:admin"))
+                .thenReturn(List.of(new UserCredentialRow(HASH, true, "ROLE_ADMIN")))
+                .thenReturn(List.of(new UserCredentialRow(upgraded, true, "ROLE_ADMIN")));
+        UserDetails user = userDetailsService.loadUserByUsername("admin");
+
+        UserDetails updated = userDetailsService.updatePassword(user, upgraded);
+
+        verify(userAccountRepository).updatePasswordHash("admin", upgraded);
+        assertEquals(upgraded, updated.getPassword());
+        assertEquals(user.getAuthorities(), updated.getAuthorities());
+        assertEquals(upgraded, userDetailsService.loadUserByUsername("admin").getPassword());
+    }
+
+    private static Set<String> authorityNames(UserDetails user) {
+        return user.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .filter(name -> !name.startsWith(RoleSetAuthority.PREFIX))
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,122 @@
+package dev.danvega.service;
+
+import dev.danvega.domain.Role;
+import dev.danvega.domain.RoleAssignment;
+import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.repository.RoleRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for KnownUserFilter with the Liquibase-managed database.
+ */
+@SpringBootTest
+@TestPropertySource(properties = {
+        "GOOGLE_CLIENT_ID=",
+        "GOOGLE_CLIENT_SECRET=",
+        "GITHUB_CLIENT_ID=",
+        "GITHUB_CLIENT_SECRET=",
+        "app.roles.filter.rebuild-interval=1h"
+})
+class KnownUserFilterIntegrationTest {
+
+    @Autowired
+    private KnownUserFilter knownUserFilter;
+
+    @Autowired
+    private RoleService roleService;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private RoleAssignmentRepository roleAssignmentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM role_assignments WHERE user_identifier LIKE 'filter:%'");
+        knownUserFilter.rebuild();
+    }
+
+    @Test
+    void mightHaveRoles_seededUser_returnsTrue() {
+        assertTrue(knownUserFilter.mightHaveRoles("form:admin"));
+    }
+
+    @Test
+    void getRolesForUser_userWithoutAssignments_isFilteredOut() {
+        double before = negativeLookups();
+
+        assertTrue(roleService.getRolesForUser("filter:nobody").isEmpty());
+
+        assertEquals(before + 1, negativeLookups());
+    }
+
+    @Test
+    void mightHaveRoles_afterJpaWrite_returnsTrueWithoutRebuild() {
+        Role role = roleRepository.findByName("ROLE_USER").orElseThrow();
+
+        roleAssignmentRepository.save(new RoleAssignment("filter:jpa-user", role));
+
+        assertTrue(knownUserFilter.mightHaveRoles("filter:jpa-user"));
+        assertEquals(1, roleService.getRolesForUser("filter:jpa-user").size());
+    }
+
+    @Test
+    void rebuild_picksUpWritesMadeOutsideJpa() {
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('filter:sql-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+
+        knownUserFilter.rebuild();
+
+        assertTrue(knownUserFilter.mightHaveRoles("filter:sql-user"));
+    }
+
+    @Test
+    void mightHaveRoles_afterWriteOutsideJpa_returnsTrueWithoutPoll() {
+        assertFalse(knownUserFilter.mightHaveRoles("filter:trigger-user"));
+
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('filter:trigger-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+
+        assertTrue(knownUserFilter.mightHaveRoles("filter:trigger-user"));
+        assertEquals(1, roleService.getRolesForUser("filter:trigger-user").size());
+    }
+
+    @Test
+    void poll_addsUsersWrittenOutsideJpaWithoutRebuild() {
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('filter:console-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+
+        knownUserFilter.poll();
+
+        assertTrue(knownUserFilter.mightHaveRoles("filter:console-user"));
+        assertEquals(1, roleService.getRolesForUser("filter:console-user").size());
+    }
+
+    @Test
+    void metrics_reportMemoryAndExpectedFalsePositiveRate() {
+        assertTrue(meterRegistry.get("roles.filter.memory").gauge().value() > 0);
+        assertTrue(meterRegistry.get("roles.filter.expected.fpp").gauge().value() < 0.01);
+    }
+
+    private double negativeLookups() {
+        return meterRegistry.get("roles.filter.lookups").tag("result", "negative").counter().count();
+    }
+}
@@ -0,0 +1,161 @@
+package dev.danvega.service;
+
+import dev.danvega.domain.Role;
+import dev.danvega.repository.RoleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for RoleBits and RoleSetAuthority.
+ */
+@ExtendWith(MockitoExtension.class)
+class RoleBitsTest {
+
+    @Mock
+    private RoleRepository roleRepository;
+
+    private RoleBits roleBits;
+
+    @BeforeEach
+    void setUp() {
+        roleBits = new RoleBits(roleRepository);
+    }
+
+    @Test
+    void position_isRoleIdMinusOne() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER", "ROLE_ADMIN", "ROLE_POWER_USER"));
+
+        assertEquals(0, roleBits.position("ROLE_USER"));
+        assertEquals(2, roleBits.position("ROLE_POWER_USER"));
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void position_unknownRole_reloadsAndReturnsMinusOne() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER"));
+        roleBits.position("ROLE_USER");
+
+        assertEquals(-1, roleBits.position("ROLE_MISSING"));
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void position_unknownRoleAskedAgain_doesNotReloadAgain() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER"));
+        roleBits.position("ROLE_USER");
+
+        assertEquals(-1, roleBits.position("ROLE_MISSING"));
+        assertEquals(-1, roleBits.position("ROLE_MISSING"));
+        assertEquals(-1, roleBits.position("ROLE_MISSING"));
+        verify(roleRepository, times(2)).findAll();
+    }
+
+    @Test
+    void position_nonRoleAuthority_doesNotReload() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER"));
+        roleBits.position("ROLE_USER");
+
+        assertEquals(-1, roleBits.position("SCOPE_openid"));
+        verify(roleRepository, times(1)).findAll();
+    }
+
+    @Test
+    void position_roleAddedAtRuntime_isPickedUp() {
+        when(roleRepository.findAll())
+                .thenReturn(roles("ROLE_USER"))
+                .thenReturn(roles("ROLE_USER", "ROLE_AUDITOR"));
+
+        assertEquals(0, roleBits.position("ROLE_USER"));
+        assertEquals(1, roleBits.position("ROLE_AUDITOR"));
+    }
+
+    @Test
+    void encode_sameRoles_returnsSharedBitset() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER", "ROLE_ADMIN", "ROLE_POWER_USER"));
+
+        RoleSetAuthority first = roleBits.encode(authorities("ROLE_ADMIN", "ROLE_USER", "SCOPE_openid"));
+        RoleSetAuthority second = roleBits.encode(authorities("ROLE_USER", "ROLE_ADMIN"));
+
+        assertSame(first, second);
+        assertTrue(first.contains(0));
+        assertTrue(first.contains(1));
+        assertFalse(first.contains(2));
+        assertEquals("ROLESET_3", first.getAuthority());
+    }
+
+    @Test
+    void intersects_withinOneWord_matchesSharedRoles() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER", "ROLE_ADMIN", "ROLE_POWER_USER"));
+        RoleSetAuthority required = roleBits.encodeNames(List.of("ROLE_ADMIN", "ROLE_POWER_USER"));
+
+        assertTrue(roleBits.encodeNames(List.of("ROLE_USER", "ROLE_POWER_USER")).intersects(required));
+        assertFalse(roleBits.encodeNames(List.of("ROLE_USER")).intersects(required));
+        assertFalse(roleBits.encodeNames(List.of()).intersects(required));
+    }
+
+    @Test
+    void intersects_beyondSixtyFourRoles_usesFurtherWords() {
+        String[] names = new String[130];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "ROLE_" + i;
+        }
+        when(roleRepository.findAll()).thenReturn(roles(names));
+
+        RoleSetAuthority high = roleBits.encodeNames(List.of("ROLE_3", "ROLE_129"));
+        RoleSetAuthority required = roleBits.encodeNames(List.of("ROLE_129"));
+
+        assertEquals(129, roleBits.position("ROLE_129"));
+        assertTrue(high.contains(129));
+        assertTrue(high.intersects(required));
+        assertTrue(required.intersects(high));
+        assertFalse(roleBits.encodeNames(List.of("ROLE_3", "ROLE_64")).intersects(required));
+        assertFalse(roleBits.encodeNames(List.of("ROLE_4")).intersects(required));
+        assertEquals("ROLESET_2" + "0".repeat(16) + "0000000000000008", high.getAuthority());
+    }
+
+    @Test
+    void withRoleSet_addsBitsetAndSharesResult() {
+        when(roleRepository.findAll()).thenReturn(roles("ROLE_USER", "ROLE_ADMIN"));
+        Set<GrantedAuthority> roles = Set.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+        Set<GrantedAuthority> withRoleSet = roleBits.withRoleSet(roles);
+
+        assertEquals(2, withRoleSet.size());
+        assertTrue(withRoleSet.contains(roleBits.encodeNames(List.of("ROLE_ADMIN"))));
+        assertSame(withRoleSet, roleBits.withRoleSet(Set.of(new SimpleGrantedAuthority("ROLE_ADMIN"))));
+    }
+
+    @Test
+    void withRoleSet_noKnownRoles_returnsRolesUnchanged() {
+        Set<GrantedAuthority> roles = Set.of();
+
+        assertSame(roles, roleBits.withRoleSet(roles));
+    }
+
+    private static List<Role> roles(String... names) {
+        List<Role> roles = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Role role = new Role(names[i]);
+            role.setId(i + 1L);
+            roles.add(role);
+        }
+        return roles;
+    }
+
+    private static List<GrantedAuthority> authorities(String... names) {
+        return Arrays.stream(names).<GrantedAuthority>map(SimpleGrantedAuthority::new).toList();
+    }
+}
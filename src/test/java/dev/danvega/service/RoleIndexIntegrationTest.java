@@ -0,0 +1,142 @@
+package dev.danvega.service;
+
+import dev.danvega.domain.Role;
+import dev.danvega.domain.RoleAssignment;
+import dev.danvega.repository.RoleAssignmentRepository;
+import dev.danvega.repository.RoleRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.context.TestPropertySource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Integration tests for RoleIndex with the Liquibase-managed database and change log trigger.
+ */
+@SpringBootTest
+@TestPropertySource(properties = {
+        "GOOGLE_CLIENT_ID=",
+        "GOOGLE_CLIENT_SECRET=",
+        "GITHUB_CLIENT_ID=",
+        "GITHUB_CLIENT_SECRET=",
+        "app.roles.index.enabled=true",
+        "app.roles.index.poll-interval=1h"
+})
+class RoleIndexIntegrationTest {
+
+    @Autowired
+    private RoleIndex roleIndex;
+
+    @Autowired
+    private RoleService roleService;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private RoleAssignmentRepository roleAssignmentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM role_assignments WHERE user_identifier LIKE 'index:%'");
+        roleIndex.refresh();
+    }
+
+    @Test
+    void lookup_afterStartup_servesSeededRoles() {
+        Set<GrantedAuthority> roles = roleIndex.lookup("form:admin").orElseThrow();
+
+        assertTrue(roles.stream().anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority())));
+    }
+
+    @Test
+    void lookup_unknownUser_returnsEmptySet() {
+        assertEquals(Optional.of(Set.of()), roleIndex.lookup("index:nobody"));
+    }
+
+    @Test
+    void lookup_afterJpaWrite_fallsBackUntilRefreshed() {
+        Role role = roleRepository.findByName("ROLE_USER").orElseThrow();
+
+        roleAssignmentRepository.save(new RoleAssignment("index:jpa-user", role));
+
+        assertTrue(roleIndex.lookup("index:jpa-user").isEmpty());
+        assertEquals(1, roleService.getRolesForUser("index:jpa-user").size());
+
+        roleIndex.refresh();
+
+        Set<GrantedAuthority> roles = roleIndex.lookup("index:jpa-user").orElseThrow();
+        assertTrue(roles.stream().anyMatch(a -> "ROLE_USER".equals(a.getAuthority())));
+    }
+
+    @Test
+    void refresh_picksUpWritesMadeOutsideJpa() {
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('index:sql-user', (SELECT id FROM roles WHERE name = 'ROLE_POWER_USER'))""");
+
+        roleIndex.refresh();
+
+        Set<GrantedAuthority> roles = roleIndex.lookup("index:sql-user").orElseThrow();
+        assertTrue(roles.stream().anyMatch(a -> "ROLE_POWER_USER".equals(a.getAuthority())));
+
+        jdbcTemplate.update("DELETE FROM role_assignments WHERE user_identifier = 'index:sql-user'");
+        roleIndex.refresh();
+
+        assertEquals(Optional.of(Set.of()), roleIndex.lookup("index:sql-user"));
+    }
+
+    @Test
+    void refresh_afterChangeLogPruned_rebuildsIndex() {
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('index:pruned-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+        jdbcTemplate.update("DELETE FROM role_assignment_changes");
+        jdbcTemplate.update("""
+                INSERT INTO role_assignments (user_identifier, role_id)
+                VALUES ('index:later-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+
+        roleIndex.refresh();
+
+        assertEquals(1, roleIndex.lookup("index:pruned-user").orElseThrow().size());
+        assertEquals(1, roleIndex.lookup("index:later-user").orElseThrow().size());
+    }
+
+    @Test
+    void refresh_changeCommittedAfterHigherId_isApplied() throws Exception {
+        try (Connection slow = dataSource.getConnection(); Statement statement = slow.createStatement()) {
+            slow.setAutoCommit(false);
+            statement.executeUpdate("""
+                    INSERT INTO role_assignments (user_identifier, role_id)
+                    VALUES ('index:slow-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+
+            jdbcTemplate.update("""
+                    INSERT INTO role_assignments (user_identifier, role_id)
+                    VALUES ('index:fast-user', (SELECT id FROM roles WHERE name = 'ROLE_USER'))""");
+            roleIndex.refresh();
+            assertEquals(Optional.of(Set.of()), roleIndex.lookup("index:slow-user"));
+
+            slow.commit();
+        }
+        roleIndex.refresh();
+
+        assertEquals(1, roleIndex.lookup("index:slow-user").orElseThrow().size());
+        assertEquals(1, roleIndex.lookup("index:fast-user").orElseThrow().size());
+    }
+}
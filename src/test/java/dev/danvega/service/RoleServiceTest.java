@@ -1,17 +1,20 @@
 package dev.danvega.service;
 
-import dev.danvega.domain.Role;
-import dev.danvega.domain.RoleAssignment;
+import dev.danvega.config.RoleLookupProperties;
+import dev.danvega.domain.RoleAssignmentChangedEvent;
 import dev.danvega.repository.RoleAssignmentRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,30 +29,40 @@ class RoleServiceTest {
     @Mock
     private RoleAssignmentRepository roleAssignmentRepository;
 
+    @Mock
+    private RoleIndex roleIndex;
+
+    @Mock
+    private KnownUserFilter knownUserFilter;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private RoleService roleService;
 
     @BeforeEach
     void setUp() {
-        roleService = new RoleService(roleAssignmentRepository);
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(roleIndex.lookup(anyString())).thenReturn(Optional.empty());
+        lenient().when(knownUserFilter.mightHaveRoles(anyString())).thenReturn(true);
+        roleService = new RoleService(roleAssignmentRepository, roleIndex, knownUserFilter, new AuthorityRegistry(),
+                RoleLookupProperties.defaults(), meterRegistry);
     }
 
     @Test
     void getRolesForUser_withNoRoles_returnsEmptySet() {
-        when(roleAssignmentRepository.findByUserIdentifier("form:unknown"))
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:unknown"))
                 .thenReturn(Collections.emptyList());
 
         Set<GrantedAuthority> authorities = roleService.getRolesForUser("form:unknown");
 
         assertTrue(authorities.isEmpty());
-        verify(roleAssignmentRepository).findByUserIdentifier("form:unknown");
+        verify(roleAssignmentRepository).findRoleNamesByUserIdentifier("form:unknown");
     }
 
     @Test
     void getRolesForUser_withSingleRole_returnsAuthority() {
-        Role role = new Role("ROLE_ADMIN");
-        RoleAssignment assignment = new RoleAssignment("form:admin", role);
-        when(roleAssignmentRepository.findByUserIdentifier("form:admin"))
-                .thenReturn(List.of(assignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN"));
 
         Set<GrantedAuthority> authorities = roleService.getRolesForUser("form:admin");
 
@@ -60,12 +73,8 @@ class RoleServiceTest {
 
     @Test
     void getRolesForUser_withMultipleRoles_returnsAllAuthorities() {
-        Role adminRole = new Role("ROLE_ADMIN");
-        Role userRole = new Role("ROLE_USER");
-        RoleAssignment adminAssignment = new RoleAssignment("form:admin", adminRole);
-        RoleAssignment userAssignment = new RoleAssignment("form:admin", userRole);
-        when(roleAssignmentRepository.findByUserIdentifier("form:admin"))
-                .thenReturn(List.of(adminAssignment, userAssignment));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN", "ROLE_USER"));
 
         Set<GrantedAuthority> authorities = roleService.getRolesForUser("form:admin");
 
@@ -76,6 +85,91 @@ class RoleServiceTest {
                 .anyMatch(a -> "ROLE_USER".equals(a.getAuthority())));
     }
 
+    @Test
+    void getRolesForUser_calledTwice_queriesDatabaseOnce() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN"));
+
+        Set<GrantedAuthority> first = roleService.getRolesForUser("form:admin");
+        Set<GrantedAuthority> second = roleService.getRolesForUser("form:admin");
+
+        assertSame(first, second);
+        verify(roleAssignmentRepository, times(1)).findRoleNamesByUserIdentifier("form:admin");
+    }
+
+    @Test
+    void getRolesForUser_usersWithSameRoles_shareOneSet() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN", "ROLE_USER"));
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:admin@example.com"))
+                .thenReturn(List.of("ROLE_USER", "ROLE_ADMIN"));
+
+        assertSame(roleService.getRolesForUser("form:admin"),
+                roleService.getRolesForUser("google:admin@example.com"));
+    }
+
+    @Test
+    void getRolesForUser_returnsUnmodifiableSet() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN"));
+
+        Set<GrantedAuthority> authorities = roleService.getRolesForUser("form:admin");
+
+        assertThrows(UnsupportedOperationException.class, authorities::clear);
+    }
+
+    @Test
+    void onRoleAssignmentChanged_evictsCachedRoles() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN"))
+                .thenReturn(List.of("ROLE_ADMIN", "ROLE_USER"));
+
+        assertEquals(1, roleService.getRolesForUser("form:admin").size());
+
+        roleService.onRoleAssignmentChanged(new RoleAssignmentChangedEvent("form:admin"));
+
+        assertEquals(2, roleService.getRolesForUser("form:admin").size());
+        verify(roleAssignmentRepository, times(2)).findRoleNamesByUserIdentifier("form:admin");
+    }
+
+    @Test
+    void onRoleAssignmentChanged_otherUser_keepsCachedRoles() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(List.of("ROLE_ADMIN"));
+
+        roleService.getRolesForUser("form:admin");
+        roleService.onRoleAssignmentChanged(new RoleAssignmentChangedEvent("form:other"));
+        roleService.getRolesForUser("form:admin");
+
+        verify(roleAssignmentRepository, times(1)).findRoleNamesByUserIdentifier("form:admin");
+    }
+
+    @Test
+    void getRolesForUser_publishesHitAndMissMetrics() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("form:admin"))
+                .thenReturn(Collections.emptyList());
+
+        roleService.getRolesForUser("form:admin");
+        roleService.getRolesForUser("form:admin");
+        roleService.getRolesForUser("form:admin");
+
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", "roles", "result", "miss").functionCounter().count());
+        assertEquals(2.0, meterRegistry.get("cache.gets")
+                .tags("cache", "roles", "result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void getRolesForUser_answeredByIndex_skipsDatabase() {
+        Set<GrantedAuthority> indexed = Set.of(new SimpleGrantedAuthority("ROLE_ADMIN"));
+        when(roleIndex.lookup("form:admin")).thenReturn(Optional.of(indexed));
+
+        Set<GrantedAuthority> authorities = roleService.getRolesForUser("form:admin");
+
+        assertSame(indexed, authorities);
+        verifyNoInteractions(roleAssignmentRepository);
+    }
+
     @Test
     void buildFormUserIdentifier_returnsFormattedIdentifier() {
         String identifier = RoleService.buildFormUserIdentifier("testuser");
@@ -103,4 +197,24 @@ class RoleServiceTest {
 
         assertEquals("github:developer@github.com", identifier);
     }
+
+    @Test
+    void getRolesForUser_userNotInFilter_skipsCacheAndDatabase() {
+        when(knownUserFilter.mightHaveRoles("google:nobody@example.com")).thenReturn(false);
+
+        assertTrue(roleService.getRolesForUser("google:nobody@example.com").isEmpty());
+
+        verifyNoInteractions(roleAssignmentRepository);
+        verify(knownUserFilter, never()).recordFalsePositive();
+    }
+
+    @Test
+    void getRolesForUser_filterPassesUserWithoutRoles_recordsFalsePositive() {
+        when(roleAssignmentRepository.findRoleNamesByUserIdentifier("google:nobody@example.com"))
+                .thenReturn(Collections.emptyList());
+
+        roleService.getRolesForUser("google:nobody@example.com");
+
+        verify(knownUserFilter).recordFalsePositive();
+    }
 }